@@ -0,0 +1,245 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.nusmv.BeepBeepModel;
+import ca.uqac.lif.cep.nusmv.BeepBeepPipeline;
+import ca.uqac.lif.cep.nusmv.BinaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.CountDecimateModule;
+import ca.uqac.lif.cep.nusmv.CumulateModule;
+import ca.uqac.lif.cep.nusmv.FilterModule;
+import ca.uqac.lif.cep.nusmv.ForkModule;
+import ca.uqac.lif.cep.nusmv.PassthroughModule;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.cep.nusmv.ProcessorQueue;
+import ca.uqac.lif.cep.nusmv.SlidingAggregateModule;
+import ca.uqac.lif.cep.nusmv.TrimModule;
+import ca.uqac.lif.cep.nusmv.TurnIntoModule;
+import ca.uqac.lif.cep.nusmv.UnaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.WindowModule;
+import ca.uqac.lif.cep.nusmv.NusmvNumbers.Addition;
+import ca.uqac.lif.cep.nusmv.NusmvNumbers.IsEven;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
+
+/**
+ * Measures the generation of the NuSMV code for a single processor module.
+ * Each concrete module is instantiated with the queue sizes, window width
+ * and domain size given as parameters; the defaults are kept small, and
+ * larger values can be passed on the command line with <tt>-p</tt>, e.g.
+ * <tt>-p Q_in=1,2,4,8</tt>.
+ * <p>
+ * A module keeps its formulas until it is modified. The {@code getInit},
+ * {@code getTrans}, {@code print} and {@code model} benchmarks mark the
+ * module as modified before each call (see {@link Invalidated}), so that
+ * they measure the generation of the formulas; the {@code Cached} variants
+ * leave the module untouched, and measure the formulas being returned from
+ * the module once generated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleBenchmark
+{
+	@Param({"BinaryApply", "CountDecimate", "Cumulate", "Filter", "Fork", "Passthrough", "SlidingAggregate", "SlidingWindow", "Trim", "TurnInto", "UnaryApply", "Window"})
+	public String module;
+
+	@Param({"2"})
+	public int Q_in;
+
+	@Param({"2"})
+	public int Q_b;
+
+	@Param({"2"})
+	public int Q_out;
+
+	@Param({"2", "3"})
+	public int width;
+
+	@Param({"3", "5"})
+	public int domainSize;
+
+	@Param({"true"})
+	public boolean simplify;
+
+	/**
+	 * The module under test.
+	 */
+	protected ProcessorModule m_module;
+
+	/**
+	 * A model containing only the module under test.
+	 */
+	protected BeepBeepModel m_model;
+
+	/**
+	 * A stream discarding everything that is printed to it.
+	 */
+	protected PrettyPrintStream m_out;
+
+	@Setup
+	public void setup()
+	{
+		ProcessorModule.s_simplify = simplify;
+		IntegerRange d = new IntegerRange(0, domainSize - 1);
+		m_module = createModule(module, d, Q_in, Q_b, Q_out, width);
+		m_model = new BeepBeepModel(wrap(m_module));
+		m_out = new PrettyPrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public Condition getInit(Invalidated i)
+	{
+		return m_module.getInit();
+	}
+
+	@Benchmark
+	public Condition getTrans(Invalidated i)
+	{
+		return m_module.getTrans();
+	}
+
+	@Benchmark
+	public PrettyPrintStream print(Invalidated i)
+	{
+		m_module.print(m_out);
+		return m_out;
+	}
+
+	@Benchmark
+	public PrettyPrintStream model(Invalidated i)
+	{
+		m_model.print(m_out);
+		return m_out;
+	}
+
+	@Benchmark
+	public Condition getInitCached()
+	{
+		return m_module.getInit();
+	}
+
+	@Benchmark
+	public Condition getTransCached()
+	{
+		return m_module.getTrans();
+	}
+
+	@Benchmark
+	public PrettyPrintStream printCached()
+	{
+		m_module.print(m_out);
+		return m_out;
+	}
+
+	/**
+	 * Marks the module under test as modified before each call of a
+	 * benchmark, so that its formulas are generated again instead of being
+	 * taken from the module. The time taken by this setup is not measured.
+	 */
+	@State(Scope.Thread)
+	public static class Invalidated
+	{
+		@Setup(Level.Invocation)
+		public void invalidate(ModuleBenchmark b)
+		{
+			b.m_module.setDirty();
+		}
+	}
+
+	/**
+	 * Creates an instance of a concrete processor module.
+	 * @param name The name of the module, as given in the parameters of the
+	 * benchmark
+	 * @param d The domain of the input events
+	 * @param Q_in The size of the input queues
+	 * @param Q_b The size of the internal buffers
+	 * @param Q_out The size of the output queues
+	 * @param width The width of windows, or the interval of decimation and
+	 * trimming
+	 * @return The module
+	 */
+	public static ProcessorModule createModule(String name, IntegerRange d, int Q_in, int Q_b, int Q_out, int width)
+	{
+		switch (name)
+		{
+		case "BinaryApply":
+			return new BinaryApplyFunctionModule("Add", new Addition(d), Q_in, Q_b, Q_out);
+		case "CountDecimate":
+			return new CountDecimateModule("Decimate", width, d, Q_in, Q_out);
+		case "Cumulate":
+			return new CumulateModule("Sum", new Addition(d), Q_in, Q_out);
+		case "Filter":
+			return new FilterModule("Filter", d, Q_in, Q_b, Q_out);
+		case "Fork":
+			return new ForkModule("Fork", d, 2, Q_in);
+		case "Passthrough":
+			return new PassthroughModule("Passthrough", d, Q_in);
+		case "SlidingAggregate":
+			return new SlidingAggregateModule("SlidingSum", new Addition(d), width, Q_in, Q_out);
+		case "SlidingWindow":
+			return new WindowModule("Window", new CumulateModule("Sum", new Addition(d), width, width), width, d, d, Q_in, Q_out, true);
+		case "Trim":
+			return new TrimModule("Trim", width, d, Q_in);
+		case "TurnInto":
+			return new TurnIntoModule("TurnInto", d, d, 0, Q_in, Q_out);
+		case "UnaryApply":
+			return new UnaryApplyFunctionModule("IsEven", new IsEven(d), Q_in, Q_out);
+		case "Window":
+			return new WindowModule("Window", new CumulateModule("Sum", new Addition(d), width, width), width, d, d, Q_in, Q_out);
+		default:
+			throw new IllegalArgumentException("Unknown module " + name);
+		}
+	}
+
+	/**
+	 * Places a module alone inside a pipeline, whose input and output queues
+	 * have the same size and domain as the module's porches.
+	 * @param m The module
+	 * @return The pipeline
+	 */
+	protected static BeepBeepPipeline wrap(ProcessorModule m)
+	{
+		ProcessorQueue[] inputs = new ProcessorQueue[m.getInputArity()];
+		for (int i = 0; i < inputs.length; i++)
+		{
+			ProcessorQueue fp = m.getFrontPorch(i);
+			inputs[i] = new ProcessorQueue("in" + i, "in" + i + "_c", "in" + i + "_b", fp.getSize(), fp.getDomain());
+		}
+		ProcessorQueue[] outputs = new ProcessorQueue[m.getOutputArity()];
+		for (int i = 0; i < outputs.length; i++)
+		{
+			ProcessorQueue bp = m.getBackPorch(i);
+			outputs[i] = new ProcessorQueue("ou" + i, "ou" + i + "_c", "ou" + i + "_b", bp.getSize(), bp.getDomain());
+		}
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Main", inputs, outputs);
+		pipeline.add(m);
+		for (int i = 0; i < inputs.length; i++)
+		{
+			pipeline.setInput(m, i, i);
+		}
+		for (int i = 0; i < outputs.length; i++)
+		{
+			pipeline.setOutput(m, i, i);
+		}
+		return pipeline;
+	}
+}
@@ -0,0 +1,181 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.cep.nusmv.BeepBeepModel;
+import ca.uqac.lif.cep.nusmv.BeepBeepPipeline;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.cep.nusmv.ProcessorQueue;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.Module;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
+import examples.ConsecutiveSum;
+import examples.CumulateOnes;
+import examples.Filter;
+import examples.FilterEven;
+import examples.OutputIfSmallerK;
+import examples.Sum;
+import examples.WindowSum;
+
+/**
+ * Measures the generation of complete NuSMV models for the pipelines of the
+ * examples. The {@code build} benchmark includes the creation of the
+ * pipeline and of the model, while {@code print} only measures the printing
+ * of a model created beforehand. Since modules keep their formulas until
+ * they are modified, the modules of this model are marked as modified
+ * before each call of {@code print} (see {@link Invalidated}), whereas
+ * {@code printCached} prints the formulas kept from the previous call.
+ * <p>
+ * Most examples connect queues of sizes Q_in, Q_b and Q_out directly to one
+ * another, and only accept equal values for the three (and Q_in = 1 for
+ * {@link OutputIfSmallerK}); other combinations make the setup fail with a
+ * connector exception.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark
+{
+	@Param({"ConsecutiveSum", "CumulateOnes", "Filter", "FilterEven", "OutputIfSmallerK", "Sum", "WindowSum", "SlidingWindowSum"})
+	public String pipeline;
+
+	@Param({"1"})
+	public int Q_in;
+
+	@Param({"1"})
+	public int Q_b;
+
+	@Param({"1"})
+	public int Q_out;
+
+	@Param({"2", "3"})
+	public int width;
+
+	@Param({"3", "5"})
+	public int domainSize;
+
+	@Param({"true"})
+	public boolean simplify;
+
+	/**
+	 * A model of the pipeline under test.
+	 */
+	protected BeepBeepModel m_model;
+
+	/**
+	 * A stream discarding everything that is printed to it.
+	 */
+	protected PrettyPrintStream m_out;
+
+	@Setup
+	public void setup()
+	{
+		ProcessorModule.s_simplify = simplify;
+		m_model = new BeepBeepModel(createPipeline());
+		m_out = new PrettyPrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public PrettyPrintStream print(Invalidated i)
+	{
+		m_model.print(m_out);
+		return m_out;
+	}
+
+	@Benchmark
+	public PrettyPrintStream printCached()
+	{
+		m_model.print(m_out);
+		return m_out;
+	}
+
+	@Benchmark
+	public PrettyPrintStream build()
+	{
+		new BeepBeepModel(createPipeline()).print(m_out);
+		return m_out;
+	}
+
+	/**
+	 * Marks the modules of the model under test as modified before each call
+	 * of a benchmark, so that their formulas are generated again instead of
+	 * being taken from the modules. The time taken by this setup is not
+	 * measured.
+	 */
+	@State(Scope.Thread)
+	public static class Invalidated
+	{
+		@Setup(Level.Invocation)
+		public void invalidate(PipelineBenchmark b)
+		{
+			for (Module m : b.m_model.getModules())
+			{
+				if (m instanceof ProcessorModule)
+				{
+					((ProcessorModule) m).setDirty();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an instance of the pipeline under test, using the current
+	 * values of the parameters.
+	 * @return The pipeline
+	 */
+	protected BeepBeepPipeline createPipeline()
+	{
+		IntegerRange d = new IntegerRange(0, domainSize - 1);
+		switch (pipeline)
+		{
+		case "ConsecutiveSum":
+			return new ConsecutiveSum(input("in", d), d, Q_in, Q_b);
+		case "CumulateOnes":
+			return new CumulateOnes(input("in", d), Q_in, Q_out, d);
+		case "Filter":
+			return new Filter(input("in1", d), input("in2", BooleanDomain.instance), Q_in, Q_out, d, width);
+		case "FilterEven":
+			return new FilterEven(Q_in, Q_out, d, width);
+		case "OutputIfSmallerK":
+			return new OutputIfSmallerK(input("in", d), 1, Q_in, Q_b, Q_out, d);
+		case "Sum":
+			return new Sum(input("in1", d), input("in2", d), d, Q_in, Q_b);
+		case "WindowSum":
+			return new WindowSum(Q_in, Q_out, d, width);
+		case "SlidingWindowSum":
+			return new WindowSum(Q_in, Q_out, d, width, true);
+		default:
+			throw new IllegalArgumentException("Unknown pipeline " + pipeline);
+		}
+	}
+
+	/**
+	 * Creates an input queue for a pipeline.
+	 * @param name The name of the queue
+	 * @param d The domain of the events in the queue
+	 * @return The queue
+	 */
+	protected ProcessorQueue input(String name, Domain d)
+	{
+		return new ProcessorQueue(name, name + "_c", name + "_b", Q_in, d);
+	}
+}
@@ -0,0 +1,634 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A package of reduced ordered binary decision diagrams (ROBDD). A diagram
+ * is designated by an integer, its root node; {@link #FALSE} and
+ * {@link #TRUE} are the two terminal nodes. The nodes of all the diagrams
+ * are stored in flat arrays; a unique table ensures that two equivalent
+ * diagrams are the same integer, and a computed table remembers the
+ * results of recent operations.
+ * <p>
+ * Variables are numbered from 0, and variable 0 is at the top of every
+ * diagram; the variable ordering is therefore chosen by the way callers
+ * number their variables. Nodes are never freed: a package is meant to be
+ * discarded once a computation is over.
+ */
+public class Bdd
+{
+	/**
+	 * The diagram of the constant false.
+	 */
+	public static final int FALSE = 0;
+
+	/**
+	 * The diagram of the constant true.
+	 */
+	public static final int TRUE = 1;
+
+	/**
+	 * Operation codes used as keys of the computed table.
+	 */
+	protected static final int OP_ITE = 0, OP_EXISTS = 1, OP_AND_EXISTS = 2, OP_REPLACE = 3;
+
+	/**
+	 * The number of variables.
+	 */
+	protected final int m_numVars;
+
+	/**
+	 * The variable of each node; terminal nodes have variable
+	 * {@link #m_numVars}.
+	 */
+	/*@ non_null @*/ protected int[] m_var;
+
+	/**
+	 * The child of each node when its variable is false.
+	 */
+	/*@ non_null @*/ protected int[] m_low;
+
+	/**
+	 * The child of each node when its variable is true.
+	 */
+	/*@ non_null @*/ protected int[] m_high;
+
+	/**
+	 * The next node in the same bucket of the unique table.
+	 */
+	/*@ non_null @*/ protected int[] m_chain;
+
+	/**
+	 * The first node of each bucket of the unique table, or -1.
+	 */
+	/*@ non_null @*/ protected int[] m_buckets;
+
+	/**
+	 * The number of nodes.
+	 */
+	protected int m_size;
+
+	/**
+	 * The keys and results of the computed table: five integers per entry.
+	 */
+	/*@ non_null @*/ protected int[] m_cache;
+
+	/**
+	 * A counter used to tell apart the variable maps of successive calls to
+	 * {@link #replace(int, int[])} in the computed table.
+	 */
+	protected int m_replaceId;
+
+	/**
+	 * Creates a new package.
+	 * @param num_vars The number of variables
+	 */
+	public Bdd(int num_vars)
+	{
+		super();
+		m_numVars = num_vars;
+		allocate(1024);
+		m_size = 0;
+		addNode(num_vars, FALSE, FALSE);
+		addNode(num_vars, TRUE, TRUE);
+		m_replaceId = 0;
+	}
+
+	/**
+	 * Gets the number of variables.
+	 * @return The number of variables
+	 */
+	/*@ pure @*/ public int getVariableCount()
+	{
+		return m_numVars;
+	}
+
+	/**
+	 * Gets the number of nodes created so far, for all diagrams.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public int getNodeCount()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Gets the diagram of a variable.
+	 * @param v The variable
+	 * @return The diagram
+	 */
+	public int var(int v)
+	{
+		return mk(v, FALSE, TRUE);
+	}
+
+	/**
+	 * Gets the diagram of the negation of a variable.
+	 * @param v The variable
+	 * @return The diagram
+	 */
+	public int nvar(int v)
+	{
+		return mk(v, TRUE, FALSE);
+	}
+
+	/**
+	 * Computes the negation of a diagram.
+	 * @param f The diagram
+	 * @return The diagram
+	 */
+	public int not(int f)
+	{
+		return ite(f, FALSE, TRUE);
+	}
+
+	/**
+	 * Computes the conjunction of two diagrams.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram
+	 */
+	public int and(int f, int g)
+	{
+		return ite(f, g, FALSE);
+	}
+
+	/**
+	 * Computes the disjunction of two diagrams.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram
+	 */
+	public int or(int f, int g)
+	{
+		return ite(f, TRUE, g);
+	}
+
+	/**
+	 * Computes the exclusive disjunction of two diagrams.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram
+	 */
+	public int xor(int f, int g)
+	{
+		return ite(f, not(g), g);
+	}
+
+	/**
+	 * Computes the equivalence of two diagrams.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram
+	 */
+	public int iff(int f, int g)
+	{
+		return ite(f, g, not(g));
+	}
+
+	/**
+	 * Computes the implication between two diagrams.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @return The diagram
+	 */
+	public int implies(int f, int g)
+	{
+		return ite(f, g, TRUE);
+	}
+
+	/**
+	 * Computes the diagram of "if f then g else h".
+	 * @param f The condition
+	 * @param g The diagram when the condition is true
+	 * @param h The diagram when the condition is false
+	 * @return The diagram
+	 */
+	public int ite(int f, int g, int h)
+	{
+		if (f == TRUE || g == h)
+		{
+			return g;
+		}
+		if (f == FALSE)
+		{
+			return h;
+		}
+		if (g == TRUE && h == FALSE)
+		{
+			return f;
+		}
+		int cached = lookup(OP_ITE, f, g, h);
+		if (cached >= 0)
+		{
+			return cached;
+		}
+		int top = Math.min(m_var[f], Math.min(m_var[g], m_var[h]));
+		int low = ite(cofactor(f, top, false), cofactor(g, top, false), cofactor(h, top, false));
+		int high = ite(cofactor(f, top, true), cofactor(g, top, true), cofactor(h, top, true));
+		return store(OP_ITE, f, g, h, mk(top, low, high));
+	}
+
+	/**
+	 * Gets the conjunction of a set of variables, to be used as the
+	 * variables to quantify in {@link #exists(int, int)} and
+	 * {@link #andExists(int, int, int)}.
+	 * @param vars The variables
+	 * @return The diagram
+	 */
+	public int cube(/*@ non_null @*/ int ... vars)
+	{
+		int[] sorted = vars.clone();
+		Arrays.sort(sorted);
+		int c = TRUE;
+		for (int i = sorted.length - 1; i >= 0; i--)
+		{
+			c = mk(sorted[i], FALSE, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Gets the conjunction of literals giving a value to each variable of a
+	 * set.
+	 * @param vars The variables
+	 * @param values The value of each variable
+	 * @return The diagram
+	 */
+	public int minterm(/*@ non_null @*/ int[] vars, /*@ non_null @*/ boolean[] values)
+	{
+		int m = TRUE;
+		for (int i = 0; i < vars.length; i++)
+		{
+			m = and(m, values[i] ? var(vars[i]) : nvar(vars[i]));
+		}
+		return m;
+	}
+
+	/**
+	 * Existentially quantifies variables.
+	 * @param f The diagram
+	 * @param cube The variables, as returned by {@link #cube(int...)}
+	 * @return The diagram
+	 */
+	public int exists(int f, int cube)
+	{
+		if (f == TRUE || f == FALSE || cube == TRUE)
+		{
+			return f;
+		}
+		while (cube != TRUE && m_var[cube] < m_var[f])
+		{
+			cube = m_high[cube];
+		}
+		if (cube == TRUE)
+		{
+			return f;
+		}
+		int cached = lookup(OP_EXISTS, f, cube, 0);
+		if (cached >= 0)
+		{
+			return cached;
+		}
+		int result;
+		if (m_var[f] == m_var[cube])
+		{
+			result = or(exists(m_low[f], m_high[cube]), exists(m_high[f], m_high[cube]));
+		}
+		else
+		{
+			result = mk(m_var[f], exists(m_low[f], cube), exists(m_high[f], cube));
+		}
+		return store(OP_EXISTS, f, cube, 0, result);
+	}
+
+	/**
+	 * Computes the conjunction of two diagrams and existentially quantifies
+	 * variables in a single pass, without building the conjunction.
+	 * @param f The first diagram
+	 * @param g The second diagram
+	 * @param cube The variables, as returned by {@link #cube(int...)}
+	 * @return The diagram
+	 */
+	public int andExists(int f, int g, int cube)
+	{
+		if (f == FALSE || g == FALSE)
+		{
+			return FALSE;
+		}
+		if (f == TRUE || f == g)
+		{
+			return exists(g, cube);
+		}
+		if (g == TRUE)
+		{
+			return exists(f, cube);
+		}
+		int top = Math.min(m_var[f], m_var[g]);
+		while (cube != TRUE && m_var[cube] < top)
+		{
+			cube = m_high[cube];
+		}
+		if (cube == TRUE)
+		{
+			return and(f, g);
+		}
+		if (f > g)
+		{
+			int t = f;
+			f = g;
+			g = t;
+		}
+		int cached = lookup(OP_AND_EXISTS, f, g, cube);
+		if (cached >= 0)
+		{
+			return cached;
+		}
+		int result;
+		if (m_var[cube] == top)
+		{
+			int low = andExists(cofactor(f, top, false), cofactor(g, top, false), m_high[cube]);
+			result = low == TRUE ? TRUE : or(low, andExists(cofactor(f, top, true), cofactor(g, top, true), m_high[cube]));
+		}
+		else
+		{
+			result = mk(top, andExists(cofactor(f, top, false), cofactor(g, top, false), cube), andExists(cofactor(f, top, true), cofactor(g, top, true), cube));
+		}
+		return store(OP_AND_EXISTS, f, g, cube, result);
+	}
+
+	/**
+	 * Renames the variables of a diagram.
+	 * @param f The diagram
+	 * @param map The new name of each variable
+	 * @return The diagram
+	 */
+	public int replace(int f, /*@ non_null @*/ int[] map)
+	{
+		m_replaceId++;
+		return replace(f, map, m_replaceId);
+	}
+
+	protected int replace(int f, int[] map, int id)
+	{
+		if (f == TRUE || f == FALSE)
+		{
+			return f;
+		}
+		int cached = lookup(OP_REPLACE, f, id, 0);
+		if (cached >= 0)
+		{
+			return cached;
+		}
+		int result = ite(var(map[m_var[f]]), replace(m_high[f], map, id), replace(m_low[f], map, id));
+		return store(OP_REPLACE, f, id, 0, result);
+	}
+
+	/**
+	 * Counts the assignments of a set of variables that satisfy a diagram.
+	 * @param f The diagram, which must only depend on these variables
+	 * @param vars The variables
+	 * @return The number of assignments
+	 * @throws IllegalArgumentException If the diagram depends on other
+	 * variables
+	 */
+	public double satCount(int f, /*@ non_null @*/ int[] vars)
+	{
+		int[] position = new int[m_numVars + 1];
+		Arrays.fill(position, -1);
+		int[] sorted = vars.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++)
+		{
+			position[sorted[i]] = i;
+		}
+		position[m_numVars] = sorted.length;
+		return satCount(f, position, new HashMap<Integer,Double>()) * Math.pow(2, getPosition(f, position));
+	}
+
+	protected double satCount(int f, int[] position, Map<Integer,Double> memo)
+	{
+		if (f == FALSE || f == TRUE)
+		{
+			return f;
+		}
+		Double count = memo.get(f);
+		if (count == null)
+		{
+			int p = getPosition(f, position);
+			count = satCount(m_low[f], position, memo) * Math.pow(2, getPosition(m_low[f], position) - p - 1)
+					+ satCount(m_high[f], position, memo) * Math.pow(2, getPosition(m_high[f], position) - p - 1);
+			memo.put(f, count);
+		}
+		return count;
+	}
+
+	protected int getPosition(int f, int[] position)
+	{
+		int p = position[m_var[f]];
+		if (p < 0)
+		{
+			throw new IllegalArgumentException("The diagram depends on variable " + m_var[f]);
+		}
+		return p;
+	}
+
+	/**
+	 * Finds an assignment satisfying a diagram.
+	 * @param f The diagram
+	 * @return The value of each variable: 1 or 0, or -1 if the variable does
+	 * not matter; <tt>null</tt> if the diagram is unsatisfiable
+	 */
+	/*@ null @*/ public int[] satOne(int f)
+	{
+		if (f == FALSE)
+		{
+			return null;
+		}
+		int[] values = new int[m_numVars];
+		Arrays.fill(values, -1);
+		while (f != TRUE)
+		{
+			if (m_low[f] != FALSE)
+			{
+				values[m_var[f]] = 0;
+				f = m_low[f];
+			}
+			else
+			{
+				values[m_var[f]] = 1;
+				f = m_high[f];
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Counts the nodes of a diagram.
+	 * @param f The diagram
+	 * @return The number of nodes, including terminal nodes
+	 */
+	public int size(int f)
+	{
+		Set<Integer> visited = new HashSet<Integer>();
+		size(f, visited);
+		return visited.size();
+	}
+
+	protected void size(int f, Set<Integer> visited)
+	{
+		if (visited.add(f) && f != TRUE && f != FALSE)
+		{
+			size(m_low[f], visited);
+			size(m_high[f], visited);
+		}
+	}
+
+	/**
+	 * Gets the cofactor of a diagram with respect to a variable that is not
+	 * below its root.
+	 * @param f The diagram
+	 * @param v The variable
+	 * @param value The value given to the variable
+	 * @return The cofactor
+	 */
+	protected int cofactor(int f, int v, boolean value)
+	{
+		if (m_var[f] != v)
+		{
+			return f;
+		}
+		return value ? m_high[f] : m_low[f];
+	}
+
+	/**
+	 * Gets the node with a given variable and children, creating it if it
+	 * does not exist.
+	 * @param v The variable
+	 * @param low The child when the variable is false
+	 * @param high The child when the variable is true
+	 * @return The node
+	 */
+	protected int mk(int v, int low, int high)
+	{
+		if (low == high)
+		{
+			return low;
+		}
+		int b = hash(v, low, high) & (m_buckets.length - 1);
+		for (int n = m_buckets[b]; n >= 0; n = m_chain[n])
+		{
+			if (m_var[n] == v && m_low[n] == low && m_high[n] == high)
+			{
+				return n;
+			}
+		}
+		if (m_size == m_var.length)
+		{
+			grow();
+			b = hash(v, low, high) & (m_buckets.length - 1);
+		}
+		int n = addNode(v, low, high);
+		m_chain[n] = m_buckets[b];
+		m_buckets[b] = n;
+		return n;
+	}
+
+	protected int addNode(int v, int low, int high)
+	{
+		int n = m_size++;
+		m_var[n] = v;
+		m_low[n] = low;
+		m_high[n] = high;
+		m_chain[n] = -1;
+		return n;
+	}
+
+	/**
+	 * Allocates the tables for a given number of nodes. The computed table
+	 * is emptied.
+	 * @param capacity The number of nodes
+	 */
+	protected void allocate(int capacity)
+	{
+		m_var = m_var == null ? new int[capacity] : Arrays.copyOf(m_var, capacity);
+		m_low = m_low == null ? new int[capacity] : Arrays.copyOf(m_low, capacity);
+		m_high = m_high == null ? new int[capacity] : Arrays.copyOf(m_high, capacity);
+		m_chain = new int[capacity];
+		m_buckets = new int[capacity];
+		Arrays.fill(m_buckets, -1);
+		m_cache = new int[5 * capacity];
+		Arrays.fill(m_cache, -1);
+	}
+
+	/**
+	 * Doubles the capacity of the tables, and rebuilds the unique table.
+	 */
+	protected void grow()
+	{
+		allocate(2 * m_var.length);
+		for (int n = 2; n < m_size; n++)
+		{
+			int b = hash(m_var[n], m_low[n], m_high[n]) & (m_buckets.length - 1);
+			m_chain[n] = m_buckets[b];
+			m_buckets[b] = n;
+		}
+	}
+
+	protected int lookup(int op, int a, int b, int c)
+	{
+		int e = 5 * (hash(op, a, b, c) & (m_cache.length / 5 - 1));
+		if (m_cache[e] == op && m_cache[e + 1] == a && m_cache[e + 2] == b && m_cache[e + 3] == c)
+		{
+			return m_cache[e + 4];
+		}
+		return -1;
+	}
+
+	protected int store(int op, int a, int b, int c, int result)
+	{
+		int e = 5 * (hash(op, a, b, c) & (m_cache.length / 5 - 1));
+		m_cache[e] = op;
+		m_cache[e + 1] = a;
+		m_cache[e + 2] = b;
+		m_cache[e + 3] = c;
+		m_cache[e + 4] = result;
+		return result;
+	}
+
+	protected static int hash(int a, int b, int c)
+	{
+		return hash(a, b, c, 0);
+	}
+
+	protected static int hash(int a, int b, int c, int d)
+	{
+		int h = a * 0x9E3779B1;
+		h = (h ^ b) * 0x85EBCA6B;
+		h = (h ^ c) * 0xC2B2AE35;
+		h = (h ^ d) * 0x27D4EB2F;
+		return h ^ (h >>> 16);
+	}
+}
@@ -18,44 +18,593 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.Module;
 import ca.uqac.lif.nusmv4j.ModuleDomain;
 import ca.uqac.lif.nusmv4j.NusmvFile;
 import ca.uqac.lif.nusmv4j.NusmvPrintable;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 
 /**
  * A NuSMV file made of a BeepBeep pipeline. A BeepBeep model takes care of
- * fetching all distinct module definitions (all modules with different names)
- * and printing them to a file, with the main module at the end.
+ * fetching all distinct module definitions and printing them to a file, with
+ * the main module at the end. Modules are compared by their key (see
+ * {@link ProcessorModule#getDefinitionKey()}) rather than by their name:
+ * modules with the same definition are printed once, under a single name,
+ * and modules with different definitions but the same name are renamed.
+ * Modules that have no key, such as groups, are compared by their
+ * fingerprint (see {@link ProcessorModule#getFingerprint()}), which requires
+ * generating their formulas.
+ * Since modules are shared with the pipeline, their names are changed
+ * accordingly.
+ * <p>
+ * The formulas of distinct modules do not depend on each other, and can be
+ * generated in parallel on a {@link ForkJoinPool}, when the model is
+ * created; they are then kept by each module until it is printed. Modules
+ * are handled one level at a time, starting with those that contain no
+ * other module; the file is printed in the same order whether or not a pool
+ * is used.
  */
 public class BeepBeepModel extends NusmvFile
 {
+	/**
+	 * The pattern matching identifiers in the text of a NuSMV property.
+	 */
+	/*@ non_null @*/ protected static final Pattern s_identifier = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*");
+
+	/**
+	 * The size of the buffer used by {@link #write(WritableByteChannel)}.
+	 */
+	public static int s_bufferSize = 1 << 16;
+
+	/**
+	 * The pipeline used as the main module.
+	 */
+	/*@ non_null @*/ protected final BeepBeepPipeline m_pipeline;
+
+	/**
+	 * The cache where the definitions of modules are looked up, if any.
+	 */
+	/*@ null @*/ protected final ModuleCache m_cache;
+
+	/**
+	 * The pool where the formulas of modules are generated, or <tt>null</tt>
+	 * to generate them in the current thread.
+	 */
+	/*@ null @*/ protected final ForkJoinPool m_pool;
+	
 	/**
 	 * Creates a new BeepBeep model.
 	 * @param pipeline The pipeline used as the main module
 	 */
 	public BeepBeepModel(BeepBeepPipeline pipeline)
+	{
+		this(pipeline, (ModuleCache) null);
+	}
+
+	/**
+	 * Creates a new BeepBeep model whose module definitions are taken from a
+	 * cache when possible. The definitions found in the cache are printed as
+	 * is, instead of being generated; the others are generated once and
+	 * stored in the cache.
+	 * @param pipeline The pipeline used as the main module
+	 * @param cache The cache, or <tt>null</tt> to generate all definitions
+	 */
+	public BeepBeepModel(BeepBeepPipeline pipeline, /*@ null @*/ ModuleCache cache)
+	{
+		this(pipeline, cache, null);
+	}
+
+	/**
+	 * Creates a new BeepBeep model whose module formulas are generated in
+	 * parallel. The formulas of all the modules printed in the model, except
+	 * those whose definition is found in the cache, are generated by this
+	 * constructor with the printing flags of the calling thread (see
+	 * {@link ProcessorModule#s_simplify}).
+	 * @param pipeline The pipeline used as the main module
+	 * @param cache The cache, or <tt>null</tt> to generate all definitions
+	 * @param pool The pool where formulas are generated, or <tt>null</tt> to
+	 * generate them in the current thread
+	 */
+	public BeepBeepModel(BeepBeepPipeline pipeline, /*@ null @*/ ModuleCache cache, /*@ null @*/ ForkJoinPool pool)
 	{
 		super();
+		m_pipeline = pipeline;
+		m_cache = cache;
+		m_pool = pool;
+		Map<String,String> definitions = new HashMap<String,String>();
 		Set<String> module_names = new HashSet<String>();
-		Set<ProcessorModule> modules = new HashSet<ProcessorModule>();
-		pipeline.addModules(modules);
-		for (ProcessorModule mod : modules)
+		module_names.add(pipeline.getName());
+		// Inner modules are renamed before the modules that contain them are
+		// generated, so that the definition of a container refers to the
+		// final names
+		for (final List<ProcessorModule> level : getLevels(pipeline))
 		{
-			String mod_name = mod.getName();
-			if (!module_names.contains(mod_name))
+			final String[] identities = new String[level.size()];
+			forEach(level.size(), new IntConsumer() {
+				@Override
+				public void accept(int i)
+				{
+					identities[i] = getIdentity(level.get(i));
+				}
+			});
+			final List<ProcessorModule> added = new ArrayList<ProcessorModule>();
+			for (int i = 0; i < identities.length; i++)
 			{
-				add(mod);
+				ProcessorModule mod = level.get(i);
+				String mod_name = definitions.get(identities[i]);
+				if (mod_name != null)
+				{
+					// Same definition as a module already added
+					mod.setName(mod_name);
+					continue;
+				}
+				mod_name = getFreshName(mod.getName(), module_names);
+				mod.setName(mod_name);
 				module_names.add(mod_name);
+				definitions.put(identities[i], mod_name);
+				add(mod);
+				added.add(mod);
+			}
+			if (m_pool != null)
+			{
+				forEach(added.size(), new IntConsumer() {
+					@Override
+					public void accept(int i)
+					{
+						generate(added.get(i));
+					}
+				});
 			}
 		}
 		add(pipeline);
 	}
 	
+	/**
+	 * Creates a new BeepBeep model, using a specific encoding for all the
+	 * queues of the pipeline. Since modules are shared between models,
+	 * setting the encoding affects any other model built from the same
+	 * pipeline.
+	 * @param pipeline The pipeline used as the main module
+	 * @param e The encoding for the occupancy of the queues
+	 */
+	public BeepBeepModel(BeepBeepPipeline pipeline, Encoding e)
+	{
+		this(pipeline.setQueueEncoding(e));
+	}
+	
+	/**
+	 * Creates a new BeepBeep model restricted to the part of a pipeline that
+	 * can influence a property. The pipeline is sliced according to the
+	 * variables and module instances that the property mentions (see
+	 * {@link BeepBeepPipeline#slice(java.util.Collection)}), and the property
+	 * is printed at the end of the file. Note that the pipeline itself is
+	 * modified.
+	 * @param pipeline The pipeline used as the main module
+	 * @param spec The property, including its keyword (e.g.
+	 * <tt>LTLSPEC G !ou_b[0]</tt>)
+	 */
+	public BeepBeepModel(BeepBeepPipeline pipeline, final String spec)
+	{
+		this(pipeline.slice(getIdentifiers(spec)));
+		add(new NusmvPrintable() {
+			@Override
+			public void print(PrettyPrintStream ps)
+			{
+				ps.println(spec);
+			}
+		});
+	}
+	
+	/**
+	 * Gets the pipeline used as the main module of this model.
+	 * @return The pipeline
+	 */
+	/*@ pure non_null @*/ public BeepBeepPipeline getPipeline()
+	{
+		return m_pipeline;
+	}
+
+	/**
+	 * Writes this model to a file. Unlike {@link #print(PrettyPrintStream)},
+	 * the formulas of each module are generated while they are written, one
+	 * conjunct at a time (see
+	 * {@link ProcessorModule#printStreaming(PrettyPrintStream)}), so that
+	 * the memory needed does not grow with the size of the whole model.
+	 * @param path The file, which is replaced if it exists
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(/*@ non_null @*/ Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(channel);
+		}
+	}
+
+	/**
+	 * Writes this model to a channel, in the same way as
+	 * {@link #write(Path)}. The channel is not closed.
+	 * @param channel The channel
+	 * @throws IOException If the channel cannot be written
+	 */
+	public void write(/*@ non_null @*/ WritableByteChannel channel) throws IOException
+	{
+		PrettyPrintStream ps = new PrettyPrintStream(new BufferedOutputStream(Channels.newOutputStream(channel), s_bufferSize));
+		for (NusmvPrintable p : m_parts)
+		{
+			printPart(ps, p, true);
+		}
+		ps.flush();
+		if (ps.checkError())
+		{
+			throw new IOException("Could not write the model");
+		}
+	}
+
+	@Override
+	public void print(PrettyPrintStream ps)
+	{
+		for (NusmvPrintable p : m_parts)
+		{
+			printPart(ps, p, false);
+		}
+	}
+
+	/**
+	 * Prints one part of this model. The definition of a processor module is
+	 * taken from the cache when it is found there.
+	 * @param ps The stream where to print the part
+	 * @param p The part
+	 * @param streaming Set to <tt>true</tt> to generate the formulas of
+	 * processor modules while they are printed
+	 */
+	protected void printPart(/*@ non_null @*/ PrettyPrintStream ps, /*@ non_null @*/ NusmvPrintable p, boolean streaming)
+	{
+		if (p instanceof ProcessorModule)
+		{
+			ProcessorModule pm = (ProcessorModule) p;
+			byte[] definition = getCachedDefinition(pm);
+			if (definition == null || !spliceDefinition(ps, pm.getName(), definition))
+			{
+				if (streaming)
+				{
+					pm.printStreaming(ps);
+				}
+				else
+				{
+					pm.print(ps);
+				}
+			}
+		}
+		else
+		{
+			p.print(ps);
+		}
+		ps.println();
+	}
+
+	/**
+	 * Gets the definition of a module from the cache of this model. A
+	 * definition missing from the cache is generated and stored in it.
+	 * @param mod The module
+	 * @return The definition of the module without its name, or
+	 * <tt>null</tt> if this model has no cache or if the module cannot be
+	 * cached
+	 */
+	/*@ null @*/ protected byte[] getCachedDefinition(/*@ non_null @*/ ProcessorModule mod)
+	{
+		if (m_cache == null)
+		{
+			return null;
+		}
+		String key = mod.getDefinitionKey();
+		if (key == null)
+		{
+			return null;
+		}
+		byte[] definition = m_cache.get(key);
+		if (definition == null)
+		{
+			definition = mod.getDefinition();
+			m_cache.put(key, definition);
+		}
+		return definition;
+	}
+
+	/**
+	 * Performs an action for each index of a list of modules, in the pool of
+	 * this model if it has one.
+	 * @param size The number of modules
+	 * @param action The action, which must only read and modify the module
+	 * at the index it is given
+	 */
+	protected void forEach(int size, /*@ non_null @*/ IntConsumer action)
+	{
+		if (m_pool == null || size < 2)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				action.accept(i);
+			}
+		}
+		else
+		{
+			m_pool.invoke(new ModuleTask(0, size, action, ProcessorModule.getFlags()));
+		}
+	}
+
+	/**
+	 * Gets the value identifying the definition of a module: its key if it
+	 * has one, and otherwise its fingerprint. Modules with the same key have
+	 * the same fingerprint, but the key is obtained without generating any
+	 * formula.
+	 * @param mod The module
+	 * @return The value
+	 */
+	/*@ non_null @*/ protected String getIdentity(/*@ non_null @*/ ProcessorModule mod)
+	{
+		String key = mod.getDefinitionKey();
+		if (key != null)
+		{
+			return key;
+		}
+		if (m_pool != null)
+		{
+			// Kept for when the module is printed
+			mod.getInit();
+			mod.getTrans();
+		}
+		return mod.getFingerprint();
+	}
+
+	/**
+	 * Generates the formulas of a module, which it keeps until it is
+	 * printed. A module whose definition is found in the cache is printed
+	 * from the cache, and its formulas are not needed.
+	 * @param mod The module
+	 */
+	protected void generate(/*@ non_null @*/ ProcessorModule mod)
+	{
+		if (getCachedDefinition(mod) != null)
+		{
+			return;
+		}
+		mod.getInit();
+		mod.getTrans();
+	}
+
+	/**
+	 * Sorts the modules contained in a pipeline by level. The modules of
+	 * level 0 contain no other module; the modules of level <i>n</i> contain
+	 * modules of level at most <i>n</i>-1.
+	 * @param pipeline The pipeline
+	 * @return The list of modules of each level, in the order they are found
+	 * in the pipeline
+	 */
+	/*@ non_null @*/ protected static List<List<ProcessorModule>> getLevels(/*@ non_null @*/ CompositeProcessorModule pipeline)
+	{
+		Set<ProcessorModule> modules = new LinkedHashSet<ProcessorModule>();
+		pipeline.addModules(modules);
+		Map<ProcessorModule,Integer> levels = new HashMap<ProcessorModule,Integer>();
+		List<List<ProcessorModule>> lists = new ArrayList<List<ProcessorModule>>();
+		for (ProcessorModule mod : modules)
+		{
+			int level = getLevel(mod, levels);
+			while (lists.size() <= level)
+			{
+				lists.add(new ArrayList<ProcessorModule>());
+			}
+			lists.get(level).add(mod);
+		}
+		return lists;
+	}
+
+	/**
+	 * Computes the level of a module, as defined in
+	 * {@link #getLevels(CompositeProcessorModule)}.
+	 * @param mod The module
+	 * @param levels The levels of the modules already visited
+	 * @return The level
+	 */
+	protected static int getLevel(/*@ non_null @*/ ProcessorModule mod, /*@ non_null @*/ Map<ProcessorModule,Integer> levels)
+	{
+		Integer level = levels.get(mod);
+		if (level != null)
+		{
+			return level;
+		}
+		int max = 0;
+		if (mod instanceof CompositeProcessorModule)
+		{
+			Set<ProcessorModule> inner = new LinkedHashSet<ProcessorModule>();
+			((CompositeProcessorModule) mod).addModules(inner);
+			for (ProcessorModule m : inner)
+			{
+				max = Math.max(max, getLevel(m, levels) + 1);
+			}
+		}
+		levels.put(mod, max);
+		return max;
+	}
+
+	/**
+	 * Prints a definition produced by
+	 * {@link ProcessorModule#printDefinition(java.io.OutputStream)}, inserting
+	 * the name of the module after the <tt>MODULE</tt> keyword.
+	 * @param ps The stream where to print the definition
+	 * @param name The name of the module
+	 * @param definition The definition
+	 * @return <tt>true</tt> if the definition was printed, <tt>false</tt> if
+	 * it does not have the expected form
+	 */
+	protected static boolean spliceDefinition(/*@ non_null @*/ PrettyPrintStream ps, /*@ non_null @*/ String name, /*@ non_null @*/ byte[] definition)
+	{
+		byte[] keyword = "MODULE (".getBytes();
+		int pos = indexOf(definition, keyword);
+		if (pos < 0)
+		{
+			return false;
+		}
+		int end = pos + keyword.length - 1;
+		ps.write(definition, 0, end);
+		ps.print(name);
+		ps.write(definition, end, definition.length - end);
+		return true;
+	}
+
+	/**
+	 * Finds the first occurrence of a sequence of bytes in another.
+	 * @param haystack The bytes to look into
+	 * @param needle The bytes to look for
+	 * @return The position of the first occurrence, or -1 if there is none
+	 */
+	protected static int indexOf(/*@ non_null @*/ byte[] haystack, /*@ non_null @*/ byte[] needle)
+	{
+		outer: for (int i = 0; i + needle.length <= haystack.length; i++)
+		{
+			for (int j = 0; j < needle.length; j++)
+			{
+				if (haystack[i + j] != needle[j])
+				{
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets a name that is not already taken by another module, by appending
+	 * a number to a name if necessary.
+	 * @param name The name
+	 * @param taken The names already taken
+	 * @return The name, or a numbered variant of it
+	 */
+	/*@ non_null @*/ protected static String getFreshName(/*@ non_null @*/ String name, /*@ non_null @*/ Set<String> taken)
+	{
+		String fresh = name;
+		for (int i = 1; taken.contains(fresh); i++)
+		{
+			fresh = name + "_" + i;
+		}
+		return fresh;
+	}
+
+	/**
+	 * Gets the set of all the identifiers occurring in the text of a NuSMV
+	 * expression. For a qualified name such as <tt>p_0.cnt</tt>, both parts
+	 * are included.
+	 * @param s The text
+	 * @return The set of identifiers
+	 */
+	/*@ non_null @*/ public static Set<String> getIdentifiers(/*@ non_null @*/ String s)
+	{
+		Set<String> names = new HashSet<String>();
+		Matcher mat = s_identifier.matcher(s);
+		while (mat.find())
+		{
+			names.add(mat.group());
+		}
+		return names;
+	}
+	
+	/**
+	 * Computes the size and shape of the formulas of each module printed in
+	 * this model.
+	 * @return A map associating the name of each module with the metrics of
+	 * its initial condition, of its transition relation and of its DEFINE
+	 * section, in this order
+	 */
+	/*@ non_null @*/ public Map<String,FormulaMetrics[]> getMetrics()
+	{
+		Map<String,FormulaMetrics[]> metrics = new LinkedHashMap<String,FormulaMetrics[]>();
+		for (NusmvPrintable p : m_parts)
+		{
+			if (p instanceof ProcessorModule)
+			{
+				ProcessorModule pm = (ProcessorModule) p;
+				metrics.put(pm.getName(), new FormulaMetrics[] {pm.getInitMetrics(), pm.getTransMetrics(), pm.getDefineMetrics()});
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Computes the size and shape of all the formulas printed in this model,
+	 * taken together.
+	 * @return The metrics
+	 */
+	/*@ non_null @*/ public FormulaMetrics getTotalMetrics()
+	{
+		FormulaMetrics total = new FormulaMetrics();
+		for (FormulaMetrics[] fms : getMetrics().values())
+		{
+			total.add(fms[0]).add(fms[1]).add(fms[2]);
+		}
+		return total;
+	}
+
+	/**
+	 * Prints the size and shape of the formulas of this model, as a
+	 * tab-separated table with one line per module and per formula (the
+	 * DEFINE section being omitted when it is empty), followed by a line with
+	 * the totals.
+	 * @param ps The stream where to print the table
+	 */
+	public void printMetrics(/*@ non_null @*/ PrintStream ps)
+	{
+		ps.println("module\tformula\tnodes\tdepth\tvariables\trepeated");
+		FormulaMetrics total = new FormulaMetrics();
+		for (Map.Entry<String,FormulaMetrics[]> e : getMetrics().entrySet())
+		{
+			FormulaMetrics[] fms = e.getValue();
+			printMetrics(ps, e.getKey(), "INIT", fms[0]);
+			printMetrics(ps, e.getKey(), "TRANS", fms[1]);
+			if (fms[2].getNodeCount() > 0)
+			{
+				printMetrics(ps, e.getKey(), "DEFINE", fms[2]);
+			}
+			total.add(fms[0]).add(fms[1]).add(fms[2]);
+		}
+		printMetrics(ps, "*", "*", total);
+	}
+
+	/**
+	 * Prints one line of the table of metrics.
+	 * @param ps The stream where to print the line
+	 * @param module The name of the module
+	 * @param formula The name of the formula
+	 * @param fm The metrics of the formula
+	 */
+	protected static void printMetrics(PrintStream ps, String module, String formula, FormulaMetrics fm)
+	{
+		ps.println(module + "\t" + formula + "\t" + fm.getNodeCount() + "\t" + fm.getDepth() + "\t" + fm.getVariableCount() + "\t" + fm.getRepeatedCount());
+	}
+
 	public Set<Module> getModules()
 	{
 		Set<Module> modules = new HashSet<Module>();
@@ -81,4 +630,56 @@ public class BeepBeepModel extends NusmvFile
 		}
 		modules.add(m);
 	}
+
+	/**
+	 * A task performing an action on a range of modules, splitting it in two
+	 * until it contains a single module. Worker threads do not see the flags
+	 * set for the thread that created the model; each task uses the flags it
+	 * is given instead.
+	 */
+	protected class ModuleTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected final int m_from;
+
+		protected final int m_to;
+
+		protected final IntConsumer m_action;
+
+		protected final int m_flags;
+
+		protected ModuleTask(int from, int to, IntConsumer action, int flags)
+		{
+			super();
+			m_from = from;
+			m_to = to;
+			m_action = action;
+			m_flags = flags;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_to - m_from > 1)
+			{
+				int middle = (m_from + m_to) / 2;
+				invokeAll(new ModuleTask(m_from, middle, m_action, m_flags),
+						new ModuleTask(middle, m_to, m_action, m_flags));
+				return;
+			}
+			Integer flags = ProcessorModule.setThreadFlags(m_flags);
+			try
+			{
+				for (int i = m_from; i < m_to; i++)
+				{
+					m_action.accept(i);
+				}
+			}
+			finally
+			{
+				ProcessorModule.setThreadFlags(flags);
+			}
+		}
+	}
 }
@@ -18,12 +18,25 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.cep.nusmv.NusmvConnector.ProcessorConnection;
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.BooleanVariableCondition;
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.Variable;
 
 /**
  * The main module of a NuSMV model containing a pipeline of BeepBeep
@@ -39,11 +52,18 @@ public class BeepBeepPipeline extends ContainerModule
 	
 	/*@ non_null @*/ protected final String m_mainName;
 	
+	/**
+	 * The input and output queues of the pipeline that have been removed by
+	 * a call to {@link #slice(Collection)}.
+	 */
+	/*@ non_null @*/ protected final Set<ProcessorQueue> m_slicedQueues;
+	
 	public BeepBeepPipeline(String name, ProcessorQueue[] inputs, ProcessorQueue[] outputs)
 	{
 		super("main", 0, new Domain[0], 0, new Domain[0], false, 0, 0);
 		m_inputs = inputs;
 		m_mainName = name;
+		m_slicedQueues = new HashSet<ProcessorQueue>();
 		for (ProcessorQueue in : inputs)
 		{
 			add(in.getVariables());
@@ -56,6 +76,534 @@ public class BeepBeepPipeline extends ContainerModule
 		add(m_resetFlag);
 	}
 	
+	@Override
+	public BeepBeepPipeline setQueueEncoding(Encoding e)
+	{
+		super.setQueueEncoding(e);
+		for (ProcessorQueue q : m_inputs)
+		{
+			q.setEncoding(e);
+			declareOccupancyVariable(q);
+		}
+		for (ProcessorQueue q : m_outputs)
+		{
+			q.setEncoding(e);
+			declareOccupancyVariable(q);
+		}
+		return this;
+	}
+	
+	/**
+	 * Removes from this pipeline the processor modules and queues that cannot
+	 * influence a given set of variables. A module is kept if it is named
+	 * in the set, if it writes to a queue whose variables are in the set, or
+	 * if it writes to an input of a module that is kept. Since every module
+	 * accepts any input, removing the modules downstream of those that are
+	 * kept does not change the behavior of the latter. The queues that are
+	 * kept are those connected to a kept module, and those whose variables
+	 * are in the set. The only exception are the outputs of a fork that feed
+	 * no kept module: the fork is replaced by one with fewer outputs, under
+	 * the same instance name, unless the fork itself is in the set.
+	 * @param names The names of the variables a property refers to. These
+	 * can be names of queue variables, or names of module instances within
+	 * the pipeline.
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public BeepBeepPipeline slice(/*@ non_null @*/ Collection<String> names)
+	{
+		Map<ProcessorQueue,ProcessorModule> producers = new HashMap<ProcessorQueue,ProcessorModule>();
+		for (Map.Entry<ProcessorModule,Map<Integer,ProcessorConnection>> e : m_connector.m_outputConnections.entrySet())
+		{
+			for (ProcessorConnection conn : e.getValue().values())
+			{
+				producers.put(conn.getQueue(), e.getKey());
+			}
+		}
+		// Walk the pipeline upstream from the modules and queues in the set
+		List<ProcessorModule> to_visit = new ArrayList<ProcessorModule>();
+		for (Map.Entry<ProcessorModule,String> e : m_contents.entrySet())
+		{
+			if (names.contains(e.getValue()))
+			{
+				to_visit.add(e.getKey());
+			}
+		}
+		Set<ProcessorQueue> kept_queues = new HashSet<ProcessorQueue>();
+		for (ProcessorQueue q : getQueues())
+		{
+			if (isMentioned(names, q))
+			{
+				kept_queues.add(q);
+				if (producers.containsKey(q))
+				{
+					to_visit.add(producers.get(q));
+				}
+			}
+		}
+		Set<ProcessorModule> kept = new HashSet<ProcessorModule>();
+		while (!to_visit.isEmpty())
+		{
+			ProcessorModule mod = to_visit.remove(to_visit.size() - 1);
+			if (!kept.add(mod))
+			{
+				continue;
+			}
+			Map<Integer,ProcessorConnection> in_conns = m_connector.m_inputConnections.get(mod);
+			if (in_conns != null)
+			{
+				for (ProcessorConnection conn : in_conns.values())
+				{
+					if (producers.containsKey(conn.getQueue()))
+					{
+						to_visit.add(producers.get(conn.getQueue()));
+					}
+				}
+			}
+		}
+		for (ProcessorModule mod : kept)
+		{
+			addQueues(m_connector.m_inputConnections.get(mod), kept_queues);
+		}
+		List<ForkModule> forks = new ArrayList<ForkModule>();
+		for (ProcessorModule mod : kept)
+		{
+			if (mod instanceof ForkModule && !names.contains(m_contents.get(mod)))
+			{
+				// Only the outputs already kept are needed
+				forks.add((ForkModule) mod);
+			}
+			else
+			{
+				addQueues(m_connector.m_outputConnections.get(mod), kept_queues);
+			}
+		}
+		// Remove everything else
+		for (ProcessorModule mod : new ArrayList<ProcessorModule>(m_contents.keySet()))
+		{
+			if (!kept.contains(mod))
+			{
+				m_subModules.remove(m_contents.remove(mod));
+				m_connector.m_inputConnections.remove(mod);
+				m_connector.m_outputConnections.remove(mod);
+			}
+		}
+		for (ForkModule fork : forks)
+		{
+			narrowFork(fork, kept_queues);
+		}
+		Iterator<ProcessorQueue> it = m_connector.m_innerQueues.iterator();
+		while (it.hasNext())
+		{
+			ProcessorQueue q = it.next();
+			if (!kept_queues.contains(q))
+			{
+				it.remove();
+				m_variables.removeAll(q.getVariables());
+			}
+		}
+		for (ProcessorQueue q : m_inputs)
+		{
+			removeIfSliced(q, kept_queues);
+		}
+		for (ProcessorQueue q : m_outputs)
+		{
+			removeIfSliced(q, kept_queues);
+		}
+		setDirty();
+		return this;
+	}
+	
+	/**
+	 * Shrinks the queues of this pipeline to the smallest sizes that can
+	 * hold the events produced in a single computation step. Starting from
+	 * the size of the pipeline's inputs, the maximum number of events output
+	 * by each module is obtained from
+	 * {@link ProcessorModule#getOutputRange(IntegerRange...)}, and becomes the
+	 * size of the queue it writes to and of the porches connected to this
+	 * queue. Inputs that are not connected keep the size of their porch.
+	 * Sizes never exceed those given when the modules were created, and
+	 * modules that are not {@link ProcessorModule#isResizable() resizable}
+	 * keep their sizes. A pipeline can therefore be built with a uniform
+	 * queue size, and this method called once all the modules are
+	 * connected.
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public BeepBeepPipeline inferQueueSizes()
+	{
+		Map<ProcessorModule,int[]> fronts = new HashMap<ProcessorModule,int[]>();
+		Map<ProcessorModule,int[]> backs = new HashMap<ProcessorModule,int[]>();
+		Map<ProcessorQueue,Integer> sizes = new HashMap<ProcessorQueue,Integer>();
+		for (ProcessorModule mod : m_contents.keySet())
+		{
+			int[] front = new int[mod.getInputArity()];
+			int[] back = new int[mod.getOutputArity()];
+			for (int j = 0; j < front.length; j++)
+			{
+				if (!mod.isResizable() || getConnection(m_connector.m_inputConnections, mod, j) == null)
+				{
+					front[j] = mod.getFrontPorch(j).getSize();
+				}
+			}
+			if (!mod.isResizable())
+			{
+				for (int i = 0; i < back.length; i++)
+				{
+					back[i] = mod.getBackPorch(i).getSize();
+				}
+			}
+			fronts.put(mod, front);
+			backs.put(mod, back);
+		}
+		for (ProcessorQueue q : m_inputs)
+		{
+			sizes.put(q, q.getSize());
+		}
+		// Sizes only increase and are bounded by the current ones, so this
+		// loop eventually reaches a fixpoint
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (ProcessorModule mod : m_contents.keySet())
+			{
+				int[] front = fronts.get(mod);
+				int[] back = backs.get(mod);
+				IntegerRange[] ranges = new IntegerRange[mod.getInputArity()];
+				for (int j = 0; j < mod.getInputArity(); j++)
+				{
+					ProcessorConnection conn = getConnection(m_connector.m_inputConnections, mod, j);
+					if (conn == null)
+					{
+						ranges[j] = new IntegerRange(0, front[j]);
+						continue;
+					}
+					ProcessorQueue q = conn.getQueue();
+					int size = Math.min(mod.getFrontPorch(j).getSize(), Math.max(front[j], getSize(sizes, q)));
+					changed |= updateSize(sizes, q, size);
+					if (size > front[j])
+					{
+						front[j] = size;
+						changed = true;
+					}
+					ranges[j] = new IntegerRange(0, front[j]);
+				}
+				int needed = 0;
+				if (mod.isResizable())
+				{
+					needed = Math.max(1, mod.getOutputRange(ranges).getUpperBound());
+				}
+				for (int i = 0; i < mod.getOutputArity(); i++)
+				{
+					ProcessorConnection conn = getConnection(m_connector.m_outputConnections, mod, i);
+					ProcessorQueue q = conn == null ? null : conn.getQueue();
+					int size = Math.min(mod.getBackPorch(i).getSize(), Math.max(needed, q == null ? back[i] : Math.max(back[i], getSize(sizes, q))));
+					if (q != null)
+					{
+						changed |= updateSize(sizes, q, size);
+					}
+					if (size > back[i])
+					{
+						back[i] = size;
+						changed = true;
+					}
+				}
+			}
+		}
+		for (ProcessorModule mod : m_contents.keySet())
+		{
+			if (!mod.isResizable())
+			{
+				continue;
+			}
+			int[] front = fronts.get(mod);
+			int[] back = backs.get(mod);
+			for (int j = 0; j < mod.getInputArity(); j++)
+			{
+				if (mod.getFrontPorch(j).getSize() != front[j])
+				{
+					mod.setFrontPorchSize(j, front[j]);
+				}
+			}
+			for (int i = 0; i < mod.getOutputArity(); i++)
+			{
+				if (mod.getBackPorch(i).getSize() != back[i])
+				{
+					mod.setBackPorchSize(i, back[i]);
+				}
+			}
+		}
+		for (Map.Entry<ProcessorQueue,Integer> e : sizes.entrySet())
+		{
+			ProcessorQueue q = e.getKey();
+			if (q.getSize() != e.getValue())
+			{
+				q.setSize(e.getValue());
+			}
+		}
+		for (ProcessorQueue q : m_outputs)
+		{
+			declareOccupancyVariable(q);
+		}
+		return this;
+	}
+	
+	/**
+	 * Narrows the domain of the queues connecting the modules of this
+	 * pipeline to the values they can actually hold. Starting from the
+	 * domains of the pipeline's inputs, the interval of values each module
+	 * can output is obtained from
+	 * {@link ProcessorModule#getValueRange(int, IntegerRange...)}. Only queues
+	 * whose domain is an {@link IntegerRange} are narrowed, and only their
+	 * upper bound is lowered: the lower bound is the default value that
+	 * modules write into empty cells, and must remain in the domain. The
+	 * narrowed domains are then given to the front porches, buffers and back
+	 * porches of the modules connected to these queues. Other variables of
+	 * the modules, such as the counter of a {@link CumulateModule}, keep
+	 * their declared domain, and modules that contain other modules are left
+	 * unchanged.
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public BeepBeepPipeline narrowDomains()
+	{
+		IntegerRange[] ranges = new IntegerRange[m_inputs.length];
+		for (int j = 0; j < m_inputs.length; j++)
+		{
+			Domain d = m_inputs[j].getDomain();
+			if (d instanceof IntegerRange)
+			{
+				ranges[j] = (IntegerRange) d;
+			}
+		}
+		Map<ProcessorQueue,IntegerRange> queue_ranges = propagateRanges(true, ranges);
+		for (ProcessorQueue q : m_connector.getInnerQueues())
+		{
+			IntegerRange r = queue_ranges.get(q);
+			if (r == null || !(q.getDomain() instanceof IntegerRange))
+			{
+				continue;
+			}
+			IntegerRange d = (IntegerRange) q.getDomain();
+			int upper = Math.max(d.getLowerBound(), Math.min(d.getUpperBound(), r.getUpperBound()));
+			if (upper < d.getUpperBound())
+			{
+				q.setDomain(new IntegerRange(d.getLowerBound(), upper));
+			}
+		}
+		for (ProcessorModule mod : m_contents.keySet())
+		{
+			if (mod instanceof CompositeProcessorModule)
+			{
+				continue;
+			}
+			Map<Integer,ProcessorConnection> in_conns = m_connector.m_inputConnections.get(mod);
+			for (int i = 0; in_conns != null && i < mod.getInputArity(); i++)
+			{
+				Domain d = getNarrowedDomain(mod.getFrontPorch(i), in_conns.get(i));
+				if (d != null)
+				{
+					mod.setInputDomain(i, d);
+				}
+			}
+			Map<Integer,ProcessorConnection> out_conns = m_connector.m_outputConnections.get(mod);
+			for (int i = 0; out_conns != null && i < mod.getOutputArity(); i++)
+			{
+				Domain d = getNarrowedDomain(mod.getBackPorch(i), out_conns.get(i));
+				if (d != null)
+				{
+					mod.setOutputDomain(i, d);
+				}
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the domain a porch of a module must take after the queue it is
+	 * connected to has been narrowed.
+	 * @param porch The porch
+	 * @param conn The connection of this porch, or <tt>null</tt> if the porch
+	 * is not connected
+	 * @return The domain of the queue, or <tt>null</tt> if the domain of the
+	 * porch must not change
+	 */
+	/*@ null @*/ protected static Domain getNarrowedDomain(/*@ non_null @*/ ProcessorQueue porch, /*@ null @*/ ProcessorConnection conn)
+	{
+		if (conn == null || !(porch.getDomain() instanceof IntegerRange) || !(conn.getQueue().getDomain() instanceof IntegerRange))
+		{
+			return null;
+		}
+		IntegerRange d = (IntegerRange) porch.getDomain(), r = (IntegerRange) conn.getQueue().getDomain();
+		if (r.getLowerBound() != d.getLowerBound() || r.getUpperBound() >= d.getUpperBound())
+		{
+			return null;
+		}
+		return r;
+	}
+	
+	/**
+	 * Gets the connection of a pipe of a module.
+	 * @param connections The connections of the modules, indexed by module
+	 * and by pipe
+	 * @param mod The module
+	 * @param index The index of the pipe
+	 * @return The connection, or <tt>null</tt> if the pipe is not connected
+	 */
+	/*@ null @*/ protected static ProcessorConnection getConnection(Map<ProcessorModule,Map<Integer,ProcessorConnection>> connections, ProcessorModule mod, int index)
+	{
+		Map<Integer,ProcessorConnection> conns = connections.get(mod);
+		if (conns == null)
+		{
+			return null;
+		}
+		return conns.get(index);
+	}
+	
+	/**
+	 * Gets the size computed so far for a queue.
+	 * @param sizes The sizes computed so far
+	 * @param q The queue
+	 * @return The size, or 0 if none has been computed yet
+	 */
+	protected static int getSize(Map<ProcessorQueue,Integer> sizes, ProcessorQueue q)
+	{
+		if (!sizes.containsKey(q))
+		{
+			return 0;
+		}
+		return sizes.get(q);
+	}
+	
+	/**
+	 * Increases the size computed for a queue.
+	 * @param sizes The sizes computed so far
+	 * @param q The queue
+	 * @param size The new size
+	 * @return <tt>true</tt> if the size of the queue increased,
+	 * <tt>false</tt> otherwise
+	 */
+	protected static boolean updateSize(Map<ProcessorQueue,Integer> sizes, ProcessorQueue q, int size)
+	{
+		if (size > getSize(sizes, q))
+		{
+			sizes.put(q, size);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets all the queues of this pipeline, namely its inputs, its outputs
+	 * and the queues connecting its modules.
+	 * @return The list of queues
+	 */
+	/*@ non_null @*/ protected List<ProcessorQueue> getQueues()
+	{
+		List<ProcessorQueue> queues = new ArrayList<ProcessorQueue>();
+		for (ProcessorQueue q : m_inputs)
+		{
+			queues.add(q);
+		}
+		for (ProcessorQueue q : m_outputs)
+		{
+			queues.add(q);
+		}
+		queues.addAll(m_connector.getInnerQueues());
+		return queues;
+	}
+	
+	/**
+	 * Determines if one of the variables of a queue is in a set of names.
+	 * @param names The names
+	 * @param q The queue
+	 * @return <tt>true</tt> if a variable of the queue is mentioned,
+	 * <tt>false</tt> otherwise
+	 */
+	protected static boolean isMentioned(Collection<String> names, ProcessorQueue q)
+	{
+		for (Variable v : q.getVariables())
+		{
+			if (names.contains(v.getName()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds the queues of a set of connections to a set.
+	 * @param conns The connections, indexed by pipe; may be null
+	 * @param queues The set to which queues are added
+	 */
+	protected static void addQueues(Map<Integer,ProcessorConnection> conns, Set<ProcessorQueue> queues)
+	{
+		if (conns == null)
+		{
+			return;
+		}
+		for (ProcessorConnection conn : conns.values())
+		{
+			queues.add(conn.getQueue());
+		}
+	}
+	
+	/**
+	 * Replaces a fork of this pipeline by a fork that only has the outputs
+	 * connected to a queue to keep. The new fork takes the place of the old
+	 * one, under the same instance name; its outputs keep their order.
+	 * @param fork The fork
+	 * @param kept_queues The queues to keep
+	 */
+	protected void narrowFork(ForkModule fork, Set<ProcessorQueue> kept_queues)
+	{
+		Map<Integer,ProcessorConnection> out_conns = m_connector.m_outputConnections.get(fork);
+		List<ProcessorConnection> live = new ArrayList<ProcessorConnection>();
+		for (int i = 0; i < fork.getOutputArity(); i++)
+		{
+			ProcessorConnection conn = out_conns.get(i);
+			if (conn != null && kept_queues.contains(conn.getQueue()))
+			{
+				live.add(conn);
+			}
+		}
+		if (live.size() == fork.getOutputArity())
+		{
+			return;
+		}
+		ProcessorQueue front = fork.getFrontPorch(0);
+		ForkModule narrow = new ForkModule(fork.getName(), front.getDomain(), live.size(), front.getSize());
+		narrow.setQueueEncoding(front.getEncoding());
+		Map<ProcessorModule,String> contents = new LinkedHashMap<ProcessorModule,String>(m_contents);
+		m_contents.clear();
+		for (Map.Entry<ProcessorModule,String> e : contents.entrySet())
+		{
+			m_contents.put(e.getKey() == fork ? narrow : e.getKey(), e.getValue());
+		}
+		m_connector.m_inputConnections.put(narrow, m_connector.m_inputConnections.remove(fork));
+		m_connector.m_outputConnections.remove(fork);
+		Map<Integer,ProcessorConnection> narrow_conns = new HashMap<Integer,ProcessorConnection>(live.size());
+		for (int i = 0; i < live.size(); i++)
+		{
+			narrow_conns.put(i, live.get(i));
+		}
+		m_connector.m_outputConnections.put(narrow, narrow_conns);
+	}
+	
+	/**
+	 * Removes an input or output queue of the pipeline if it is not in a set
+	 * of queues to keep.
+	 * @param q The queue
+	 * @param kept_queues The queues to keep
+	 */
+	protected void removeIfSliced(ProcessorQueue q, Set<ProcessorQueue> kept_queues)
+	{
+		if (!kept_queues.contains(q))
+		{
+			m_slicedQueues.add(q);
+			m_variables.removeAll(q.getVariables());
+		}
+	}
+	
 	public void setInput(ProcessorModule p, int i, int j)
 	{
 		m_connector.setInput(p, i, m_inputs[j]);
@@ -78,11 +626,36 @@ public class BeepBeepPipeline extends ContainerModule
 		c.add(new Negation(new BooleanVariableCondition(m_resetFlag)));
 		for (int i = 0; i < m_inputs.length; i++)
 		{
-			m_inputs[i].addToInit(c);
+			if (!m_slicedQueues.contains(m_inputs[i]))
+			{
+				m_inputs[i].addToInit(c);
+			}
 		}
 		for (int i = 0; i < m_outputs.length; i++)
 		{
-			m_outputs[i].addToInit(c);
+			if (!m_slicedQueues.contains(m_outputs[i]))
+			{
+				m_outputs[i].addToInit(c);
+			}
+		}
+	}
+
+	@Override
+	protected void addToInvar(Conjunction c)
+	{
+		for (int i = 0; i < m_inputs.length; i++)
+		{
+			if (!m_slicedQueues.contains(m_inputs[i]))
+			{
+				m_inputs[i].addToInvar(c);
+			}
+		}
+		for (int i = 0; i < m_outputs.length; i++)
+		{
+			if (!m_slicedQueues.contains(m_outputs[i]))
+			{
+				m_outputs[i].addToInvar(c);
+			}
 		}
 	}
 
@@ -92,11 +665,17 @@ public class BeepBeepPipeline extends ContainerModule
 		c.add(new Negation(new BooleanVariableCondition(m_resetFlag.next())));
 		for (int i = 0; i < m_inputs.length; i++)
 		{
-			m_inputs[i].addToTrans(c);
+			if (!m_slicedQueues.contains(m_inputs[i]))
+			{
+				m_inputs[i].addToTrans(c);
+			}
 		}
 		for (int i = 0; i < m_outputs.length; i++)
 		{
-			m_outputs[i].addToTrans(c);
+			if (!m_slicedQueues.contains(m_outputs[i]))
+			{
+				m_outputs[i].addToTrans(c);
+			}
 		}
 	}
 	
@@ -108,8 +687,14 @@ public class BeepBeepPipeline extends ContainerModule
 	}
 
 	@Override
-	public IntegerRange getOutputRange(IntegerRange... ranges) {
-		// TODO Auto-generated method stub
-		return null;
+	protected ProcessorQueue[] getInputQueues()
+	{
+		return m_inputs;
+	}
+	
+	@Override
+	protected ProcessorQueue[] getOutputQueues()
+	{
+		return m_outputs;
 	}
 }
@@ -43,6 +43,12 @@ public class BinaryApplyFunctionModule extends BinaryModule
 		c.addLine("Module: ApplyFunction(" + m_function + ")");
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		return addToKey(key, m_function);
+	}
+
 	/**
 	 * Generates the condition stipulating that the size of the back porch is
 	 * equal to the number of complete event fronts in the input pipes.
@@ -110,4 +116,10 @@ public class BinaryApplyFunctionModule extends BinaryModule
 		int upper = Math.min(ranges[0].getUpperBound(), ranges[1].getUpperBound() + getBuffer(0).getSize());
 		return new IntegerRange(lower, upper);
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return m_function.getValueRange(ranges[0], ranges[1]);
+	}
 }
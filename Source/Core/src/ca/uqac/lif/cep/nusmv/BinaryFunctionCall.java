@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.nusmv;
 
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Term;
 
 /**
@@ -51,5 +52,34 @@ public interface BinaryFunctionCall
 	 * @param z The output of the function
 	 * @return The condition
 	 */
-	public Condition getCondition(Term<?> x, Term<?> y, Term<?> z);		
+	public Condition getCondition(Term<?> x, Term<?> y, Term<?> z);
+	
+	/**
+	 * Produces a term computing the output value of the function from its
+	 * arguments. Functions that can only be expressed as a condition linking
+	 * their arguments and their output return <tt>null</tt>.
+	 * @param x The first argument of the function
+	 * @param y The second argument of the function
+	 * @return The term, or <tt>null</tt> if no such term can be produced
+	 */
+	public default Term<?> getTerm(Term<?> x, Term<?> y)
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the interval of values the function can return, given intervals
+	 * on the values of its arguments. This only applies to functions
+	 * returning integers.
+	 * @param x The range of the first argument, or <tt>null</tt> if nothing
+	 * is known about it
+	 * @param y The range of the second argument, or <tt>null</tt> if nothing
+	 * is known about it
+	 * @return The range of the output value, or <tt>null</tt> if no range
+	 * can be inferred
+	 */
+	public default IntegerRange getValueRange(IntegerRange x, IntegerRange y)
+	{
+		return null;
+	}
 }
\ No newline at end of file
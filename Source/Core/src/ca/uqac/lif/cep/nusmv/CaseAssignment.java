@@ -0,0 +1,207 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.NusmvPrintable;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
+import ca.uqac.lif.nusmv4j.Term;
+
+/**
+ * A functional definition of a variable in the ASSIGN section of a NuSMV
+ * module, of the form:
+ * <pre>
+ * x := case
+ *   c1 : v1;
+ *   c2 : v2;
+ *   TRUE : v;
+ * esac;
+ * </pre>
+ * Depending on its {@link Kind}, the definition applies to the initial
+ * value of the variable, to its value in the next state, or to its value in
+ * every state. Cases are evaluated in the order they are added; the default
+ * value is taken when no case applies. A definition without any case is
+ * printed as a plain expression.
+ */
+public class CaseAssignment implements NusmvPrintable
+{
+	/**
+	 * The state to which the definition applies.
+	 */
+	public enum Kind
+	{
+		/**
+		 * Defines the initial value of the variable (<tt>init(x) :=</tt>).
+		 */
+		INIT,
+
+		/**
+		 * Defines the value of the variable in the next state
+		 * (<tt>next(x) :=</tt>).
+		 */
+		NEXT,
+
+		/**
+		 * Defines the value of the variable in every state (<tt>x :=</tt>).
+		 */
+		INVARIANT
+	}
+
+	/**
+	 * The state to which the definition applies.
+	 */
+	/*@ non_null @*/ protected final Kind m_kind;
+
+	/**
+	 * The term designating the variable (or array cell) being defined, in the
+	 * current state.
+	 */
+	/*@ non_null @*/ protected final Term<?> m_target;
+
+	/**
+	 * The guard of each case.
+	 */
+	/*@ non_null @*/ protected final List<Condition> m_guards;
+
+	/**
+	 * The value of each case.
+	 */
+	/*@ non_null @*/ protected final List<Term<?>> m_values;
+
+	/**
+	 * The value taken when no case applies.
+	 */
+	/*@ non_null @*/ protected final Term<?> m_default;
+
+	/**
+	 * Creates a new definition.
+	 * @param kind The state to which the definition applies
+	 * @param target The term designating the variable being defined, in the
+	 * current state
+	 * @param default_value The value taken when no case applies
+	 */
+	public CaseAssignment(/*@ non_null @*/ Kind kind, /*@ non_null @*/ Term<?> target, /*@ non_null @*/ Term<?> default_value)
+	{
+		super();
+		m_kind = kind;
+		m_target = target;
+		m_default = default_value;
+		m_guards = new ArrayList<Condition>();
+		m_values = new ArrayList<Term<?>>();
+	}
+
+	/**
+	 * Adds a case to this definition.
+	 * @param guard The condition under which the case applies
+	 * @param value The value of the variable in that case
+	 * @return This definition
+	 */
+	/*@ non_null @*/ public CaseAssignment add(/*@ non_null @*/ Condition guard, /*@ non_null @*/ Term<?> value)
+	{
+		m_guards.add(guard);
+		m_values.add(value);
+		return this;
+	}
+
+	/**
+	 * Gets the state to which the definition applies.
+	 * @return The kind of definition
+	 */
+	/*@ pure non_null @*/ public Kind getKind()
+	{
+		return m_kind;
+	}
+
+	/**
+	 * Gets the term designating the variable being defined.
+	 * @return The term
+	 */
+	/*@ pure non_null @*/ public Term<?> getTarget()
+	{
+		return m_target;
+	}
+
+	/**
+	 * Computes the value given to the variable by this definition, for a given
+	 * assignment of the variables it depends on.
+	 * @param a The assignment
+	 * @return The value
+	 */
+	public Object evaluate(Assignment a)
+	{
+		for (int i = 0; i < m_guards.size(); i++)
+		{
+			if (m_guards.get(i).evaluate(a))
+			{
+				return m_values.get(i).evaluate(a);
+			}
+		}
+		return m_default.evaluate(a);
+	}
+
+	@Override
+	public void print(PrettyPrintStream ps)
+	{
+		switch (m_kind)
+		{
+		case INIT:
+			ps.print("init(");
+			m_target.print(ps);
+			ps.print(")");
+			break;
+		case NEXT:
+			ps.print("next(");
+			m_target.print(ps);
+			ps.print(")");
+			break;
+		default:
+			m_target.print(ps);
+			break;
+		}
+		ps.print(" := ");
+		if (m_guards.isEmpty())
+		{
+			m_default.print(ps);
+			ps.print(";");
+			return;
+		}
+		ps.println("case");
+		for (int i = 0; i < m_guards.size(); i++)
+		{
+			Condition guard = m_guards.get(i);
+			if (ProcessorModule.hasFlag(ProcessorModule.FLAG_SIMPLIFY))
+			{
+				guard = Condition.simplify(guard);
+			}
+			ps.print("    ");
+			guard.print(ps);
+			ps.print(" : ");
+			m_values.get(i).print(ps);
+			ps.println(";");
+		}
+		ps.print("    TRUE : ");
+		m_default.print(ps);
+		ps.println(";");
+		ps.print("  esac;");
+	}
+}
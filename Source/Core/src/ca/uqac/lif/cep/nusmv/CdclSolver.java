@@ -0,0 +1,1174 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.uqac.lif.nusmv4j.ArrayAccess;
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+import ca.uqac.lif.nusmv4j.Solver;
+import ca.uqac.lif.nusmv4j.Term;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * A solver enumerating the solutions of a condition by translating it into
+ * a SAT problem. Contrary to a brute-force enumeration of assignments,
+ * whose cost grows exponentially with the number of free variables, the
+ * cost of this solver mostly depends on the number of solutions, which
+ * makes it possible to check the conditions of modules with queues of
+ * realistic sizes.
+ * <p>
+ * The condition is read from its {@link NusmvExpression}, built from the
+ * objects of the condition with {@link NusmvExpression#expand(ca.uqac.lif.nusmv4j.NusmvPrintable)}.
+ * Each variable (or array cell) that it mentions is either one of the
+ * variables declared to the solver with {@link #declare(Variable...)} or
+ * {@link #declare(ProcessorModule)}, or the variable found in the condition
+ * itself; declaring variables is hence only required for formulas parsed
+ * from text. Then:
+ * <ul>
+ * <li>if the assignment passed to the solver gives it a value, the
+ * variable is replaced by this value;</li>
+ * <li>otherwise, each value of its domain is associated with a Boolean
+ * variable, and clauses state that exactly one of them is true.</li>
+ * </ul>
+ * This one-hot encoding suits the domains used in pipelines, which are
+ * small and may contain arbitrary symbols. Every subterm is then encoded as
+ * a map from its possible values to the literal that holds when it takes
+ * that value, and every subformula as a literal defined by Tseitin
+ * clauses. Solutions are enumerated by calling a {@link SatCore} and
+ * adding, after each model, a clause that blocks the values it gives to
+ * the free variables.
+ * <p>
+ * Each solution assigns a value to all the cells of the declared variables
+ * that occur in the condition. Note that solutions are built with the
+ * {@code set} and {@code assign} methods of the variables, which hence
+ * hold the values of the last solution once the enumeration is over.
+ * <p>
+ * When a pool is given with {@link #setPool(ForkJoinPool)}, the search
+ * space is split and its parts are explored concurrently. Variables are
+ * only read by the tasks; the solutions are built in the calling thread.
+ */
+public class CdclSolver implements Solver
+{
+	/**
+	 * The variables declared to the solver, indexed by name.
+	 */
+	/*@ non_null @*/ protected final Map<String,Variable> m_variables;
+
+	/**
+	 * The pool used to enumerate solutions in parallel, or <tt>null</tt> to
+	 * enumerate them in the calling thread.
+	 */
+	/*@ null @*/ protected ForkJoinPool m_pool;
+
+	/**
+	 * The number of parts into which the search space is split for each
+	 * thread of the pool, so that threads finishing early can pick up the
+	 * remaining parts.
+	 */
+	public static int s_partsPerThread = 4;
+
+	/**
+	 * Creates a new solver without declared variables.
+	 */
+	public CdclSolver()
+	{
+		super();
+		m_variables = new HashMap<String,Variable>();
+		m_pool = null;
+	}
+
+	/**
+	 * Declares variables that can occur in the conditions given to the
+	 * solver. Only the variables of the current state need to be declared.
+	 * @param vars The variables
+	 * @return This solver
+	 */
+	/*@ non_null @*/ public CdclSolver declare(Variable ... vars)
+	{
+		for (Variable v : vars)
+		{
+			m_variables.put(v.getName(), v);
+		}
+		return this;
+	}
+
+	/**
+	 * Declares variables that can occur in the conditions given to the
+	 * solver.
+	 * @param vars The variables
+	 * @return This solver
+	 */
+	/*@ non_null @*/ public CdclSolver declare(Collection<? extends Variable> vars)
+	{
+		for (Variable v : vars)
+		{
+			m_variables.put(v.getName(), v);
+		}
+		return this;
+	}
+
+	/**
+	 * Declares all the variables of a module.
+	 * @param m The module
+	 * @return This solver
+	 * @see ProcessorModule#getDeclaredVariables()
+	 */
+	/*@ non_null @*/ public CdclSolver declare(ProcessorModule m)
+	{
+		return declare(m.getDeclaredVariables());
+	}
+
+	/**
+	 * Sets the pool used to enumerate solutions in parallel. The free cells
+	 * met first in the condition are split on: each combination of their
+	 * values defines a part of the search space, in which the solutions are
+	 * enumerated by a task of its own. The solutions of all parts are then
+	 * concatenated in the order of the combinations, so that the result
+	 * does not depend on the scheduling of the tasks.
+	 * @param pool The pool, or <tt>null</tt> to enumerate solutions in the
+	 * calling thread
+	 * @return This solver
+	 */
+	/*@ non_null @*/ public CdclSolver setPool(/*@ null @*/ ForkJoinPool pool)
+	{
+		m_pool = pool;
+		return this;
+	}
+
+	@Override
+	public List<Assignment> solveAll(Condition c, Assignment a, Condition ... side)
+	{
+		List<NusmvExpression> formulas = new ArrayList<NusmvExpression>(side.length + 1);
+		formulas.add(NusmvExpression.expand(c));
+		for (Condition s : side)
+		{
+			formulas.add(NusmvExpression.expand(s));
+		}
+		return solveAll(formulas, a);
+	}
+
+	/**
+	 * Enumerates the assignments that make a set of formulas true. This
+	 * method avoids parsing the same conditions again when they are
+	 * solved repeatedly.
+	 * @param formulas The syntax trees of the formulas
+	 * @param a The assignment giving the value of some variables
+	 * @return The solutions
+	 */
+	/*@ non_null @*/ public List<Assignment> solveAll(/*@ non_null @*/ List<NusmvExpression> formulas, /*@ non_null @*/ Assignment a)
+	{
+		Encoder enc = new Encoder(a);
+		for (NusmvExpression e : formulas)
+		{
+			enc.assertTrue(e);
+		}
+		List<Object[]> models;
+		List<Cell> split = m_pool == null ? new ArrayList<Cell>() : getSplitCells(enc);
+		if (split.isEmpty())
+		{
+			models = enc.enumerate();
+		}
+		else
+		{
+			models = m_pool.invoke(new PartTask(formulas, a, split, new Object[0]));
+		}
+		List<Assignment> solutions = new ArrayList<Assignment>(models.size());
+		for (Object[] model : models)
+		{
+			solutions.add(enc.getSolution(model));
+		}
+		return solutions;
+	}
+
+	/**
+	 * Enumerates the states that make a set of formulas true, as state
+	 * vectors. Contrary to the other methods of this solver, this method
+	 * neither reads nor sets the values held by the variables, and can
+	 * hence be called from several threads at once.
+	 * @param formulas The syntax trees of the formulas
+	 * @param current The current state, or <tt>null</tt> if the formulas
+	 * only refer to the current state. In the former case, the next state
+	 * is solved for; in the latter, the current state is.
+	 * @param given A state giving the value of some variables in the state
+	 * solved for; its layout is also the layout of the solutions
+	 * @param given_vars The variables whose value is taken from the given
+	 * state
+	 * @return The solutions
+	 */
+	/*@ non_null @*/ public List<StateVector> solveStates(/*@ non_null @*/ List<NusmvExpression> formulas, /*@ null @*/ StateVector current, /*@ non_null @*/ StateVector given, /*@ non_null @*/ Collection<? extends Variable> given_vars)
+	{
+		Set<String> given_names = new HashSet<String>();
+		for (Variable v : given_vars)
+		{
+			given_names.add(v.getName());
+		}
+		Encoder enc = new Encoder(current, given, given_names);
+		for (NusmvExpression e : formulas)
+		{
+			enc.assertTrue(e);
+		}
+		List<StateVector> states = new ArrayList<StateVector>();
+		while (enc.m_core.solve())
+		{
+			states.add(enc.getState());
+			if (!enc.block())
+			{
+				break;
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * Selects the free cells to split the search space on. Cells are taken
+	 * in the order in which they occur until the number of parts reaches
+	 * {@link #s_partsPerThread} times the parallelism of the pool.
+	 * @param enc The encoder of the conditions
+	 * @return The cells
+	 */
+	/*@ non_null @*/ protected List<Cell> getSplitCells(/*@ non_null @*/ Encoder enc)
+	{
+		List<Cell> cells = new ArrayList<Cell>();
+		long target = (long) s_partsPerThread * m_pool.getParallelism();
+		long parts = 1;
+		for (Cell c : enc.m_cells.values())
+		{
+			if (parts >= target || m_pool.getParallelism() < 2)
+			{
+				break;
+			}
+			if (!c.m_fixed)
+			{
+				cells.add(c);
+				parts *= c.m_values.size();
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * A task enumerating the solutions in the part of the search space
+	 * where the first split cells have given values. If some split cells
+	 * remain, the task forks one subtask for each value of the next cell;
+	 * otherwise, it encodes the conditions in a solver of its own.
+	 */
+	protected class PartTask extends RecursiveTask<List<Object[]>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The formulas that must be true.
+		 */
+		/*@ non_null @*/ protected final List<NusmvExpression> m_formulas;
+
+		/**
+		 * The assignment giving the value of some variables.
+		 */
+		/*@ non_null @*/ protected final Assignment m_assignment;
+
+		/**
+		 * The cells to split on.
+		 */
+		/*@ non_null @*/ protected final List<Cell> m_split;
+
+		/**
+		 * The values given to the first split cells.
+		 */
+		/*@ non_null @*/ protected final Object[] m_prefix;
+
+		protected PartTask(List<NusmvExpression> formulas, Assignment a, List<Cell> split, Object[] prefix)
+		{
+			super();
+			m_formulas = formulas;
+			m_assignment = a;
+			m_split = split;
+			m_prefix = prefix;
+		}
+
+		@Override
+		protected List<Object[]> compute()
+		{
+			if (m_prefix.length < m_split.size())
+			{
+				List<PartTask> tasks = new ArrayList<PartTask>();
+				for (Object value : m_split.get(m_prefix.length).m_values.keySet())
+				{
+					Object[] prefix = Arrays.copyOf(m_prefix, m_prefix.length + 1);
+					prefix[m_prefix.length] = value;
+					tasks.add(new PartTask(m_formulas, m_assignment, m_split, prefix));
+				}
+				invokeAll(tasks);
+				List<Object[]> models = new ArrayList<Object[]>();
+				for (PartTask t : tasks)
+				{
+					models.addAll(t.join());
+				}
+				return models;
+			}
+			Encoder enc = new Encoder(m_assignment);
+			for (NusmvExpression e : m_formulas)
+			{
+				enc.assertTrue(e);
+			}
+			for (int i = 0; i < m_prefix.length; i++)
+			{
+				enc.fix(m_split.get(i).m_key, m_prefix[i]);
+			}
+			return enc.enumerate();
+		}
+	}
+
+	/**
+	 * Gets the values of a domain.
+	 * @param d The domain
+	 * @return The values, in the order in which the domain prints them
+	 */
+	/*@ non_null @*/ protected static Object[] getValues(/*@ non_null @*/ Domain d)
+	{
+		return d.getValues();
+	}
+
+	/**
+	 * Reads the value of a term in an assignment.
+	 * @param t The term
+	 * @param a The assignment
+	 * @return The value, or <tt>null</tt> if the assignment does not define
+	 * it
+	 */
+	protected static Object getValue(Term<?> t, Assignment a)
+	{
+		try
+		{
+			return t.evaluate(a);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * A cell of a declared variable occurring in a condition.
+	 */
+	protected static class Cell
+	{
+		/**
+		 * The name of the cell, as printed in a condition.
+		 */
+		/*@ non_null @*/ protected final String m_key;
+
+		/**
+		 * The variable, in the current state.
+		 */
+		/*@ non_null @*/ protected final Variable m_variable;
+
+		/**
+		 * The index of the cell, or -1 for a scalar variable.
+		 */
+		protected final int m_index;
+
+		/**
+		 * Whether the cell is taken in the next state.
+		 */
+		protected final boolean m_next;
+
+		/**
+		 * The encoding of the values of the cell.
+		 */
+		/*@ non_null @*/ protected final Map<Object,Integer> m_values;
+
+		/**
+		 * Whether the value of the cell is given by the assignment.
+		 */
+		protected final boolean m_fixed;
+
+		protected Cell(String key, Variable v, int index, boolean next, Map<Object,Integer> values, boolean fixed)
+		{
+			super();
+			m_key = key;
+			m_variable = v;
+			m_index = index;
+			m_next = next;
+			m_values = values;
+			m_fixed = fixed;
+		}
+	}
+
+	/**
+	 * Translates conditions into clauses for a single call to
+	 * {@link CdclSolver#solveAll(Condition, Assignment, Condition...)}.
+	 */
+	protected class Encoder
+	{
+		/**
+		 * The SAT solver receiving the clauses.
+		 */
+		/*@ non_null @*/ protected final SatCore m_core;
+
+		/**
+		 * The assignment giving the value of some variables, or <tt>null</tt>
+		 * if they are given by state vectors.
+		 */
+		/*@ null @*/ protected final Assignment m_assignment;
+
+		/**
+		 * The current state, when the values of variables are given by state
+		 * vectors and the next state is solved for.
+		 */
+		/*@ null @*/ protected final StateVector m_current;
+
+		/**
+		 * The state giving the value of some variables in the state solved
+		 * for, when the values of variables are given by state vectors.
+		 */
+		/*@ null @*/ protected final StateVector m_given;
+
+		/**
+		 * The names of the variables whose value is taken from
+		 * {@link #m_given}.
+		 */
+		/*@ non_null @*/ protected final Set<String> m_givenNames;
+
+		/**
+		 * Whether the state solved for is the next state.
+		 */
+		protected final boolean m_solveNext;
+
+		/**
+		 * The literal that is always true.
+		 */
+		protected final int m_true;
+
+		/**
+		 * The cells occurring in the conditions, indexed by name.
+		 */
+		/*@ non_null @*/ protected final Map<String,Cell> m_cells;
+
+		/**
+		 * The values of domains that are printed as symbols, indexed by their
+		 * string.
+		 */
+		/*@ non_null @*/ protected final Map<String,Object> m_symbols;
+
+		/**
+		 * The variables found in the conditions that are not declared to the
+		 * solver, in the current state and indexed by name.
+		 */
+		/*@ non_null @*/ protected final Map<String,Variable> m_found;
+
+		/**
+		 * The encoding of the nodes already translated, in the current and
+		 * in the next state.
+		 */
+		/*@ non_null @*/ protected final List<Map<NusmvExpression,Map<Object,Integer>>> m_terms;
+
+		protected Encoder(Assignment a)
+		{
+			this(a, null, null, new HashSet<String>(), false);
+		}
+
+		protected Encoder(StateVector current, StateVector given, Set<String> given_names)
+		{
+			this(null, current, given, given_names, current != null);
+		}
+
+		protected Encoder(Assignment a, StateVector current, StateVector given, Set<String> given_names, boolean solve_next)
+		{
+			super();
+			m_core = new SatCore();
+			m_assignment = a;
+			m_current = current;
+			m_given = given;
+			m_givenNames = given_names;
+			m_solveNext = solve_next;
+			m_true = m_core.newVariable();
+			m_core.addClause(m_true);
+			m_cells = new LinkedHashMap<String,Cell>();
+			m_symbols = new HashMap<String,Object>();
+			m_found = new HashMap<String,Variable>();
+			for (Variable v : m_variables.values())
+			{
+				for (Object o : getValues(v.getDomain()))
+				{
+					if (o instanceof String)
+					{
+						m_symbols.put((String) o, o);
+					}
+				}
+			}
+			m_terms = List.of(new HashMap<NusmvExpression,Map<Object,Integer>>(), new HashMap<NusmvExpression,Map<Object,Integer>>());
+		}
+
+		/**
+		 * Adds the clauses stating that a formula is true.
+		 * @param e The formula
+		 */
+		protected void assertTrue(NusmvExpression e)
+		{
+			m_core.addClause(literal(e, false));
+		}
+
+		/**
+		 * Gets the value of a cell that is not solved for.
+		 * @param v The variable
+		 * @param index The index of the cell, or -1 for a scalar variable
+		 * @param next Whether the cell is taken in the next state
+		 * @return The value, or <tt>null</tt> if the cell is free
+		 */
+		protected Object getFixedValue(Variable v, int index, boolean next)
+		{
+			if (m_assignment != null)
+			{
+				Term<?> t;
+				if (index < 0)
+				{
+					ScalarVariable sv = (ScalarVariable) v;
+					t = next ? sv.next() : sv;
+				}
+				else
+				{
+					ArrayVariable av = (ArrayVariable) v;
+					t = ArrayAccess.get(next ? av.next() : av, index);
+				}
+				return getValue(t, m_assignment);
+			}
+			if (next != m_solveNext)
+			{
+				return m_current == null ? null : m_current.get(v, index);
+			}
+			return m_givenNames.contains(v.getName()) ? m_given.get(v, index) : null;
+		}
+
+		/**
+		 * Builds the state vector corresponding to the last model.
+		 * @return The state solved for, where cells that do not occur in the
+		 * conditions hold their value in the given state
+		 */
+		protected StateVector getState()
+		{
+			StateVector s = new StateVector(m_given.getLayout(), m_given.getSlots().clone());
+			for (Cell c : m_cells.values())
+			{
+				if (c.m_next != m_solveNext || c.m_fixed)
+				{
+					continue;
+				}
+				for (Map.Entry<Object,Integer> e : c.m_values.entrySet())
+				{
+					if (m_core.isTrue(e.getValue()))
+					{
+						s.set(c.m_variable, c.m_index, e.getKey());
+						break;
+					}
+				}
+			}
+			return s;
+		}
+
+		/**
+		 * Adds the clause stating that a cell takes a given value.
+		 * @param key The name of the cell
+		 * @param value The value
+		 */
+		protected void fix(String key, Object value)
+		{
+			m_core.addClause(m_cells.get(key).m_values.get(value));
+		}
+
+		/**
+		 * Enumerates the models of the clauses, each model being blocked
+		 * once found.
+		 * @return The values given to the cells by each model
+		 */
+		/*@ non_null @*/ protected List<Object[]> enumerate()
+		{
+			List<Object[]> models = new ArrayList<Object[]>();
+			while (m_core.solve())
+			{
+				models.add(getModel());
+				if (!block())
+				{
+					break;
+				}
+			}
+			return models;
+		}
+
+		/**
+		 * Adds a clause excluding the values given to the free cells by the
+		 * last model.
+		 * @return <tt>false</tt> if there are no free cells, meaning that
+		 * the model was the only solution, <tt>true</tt> otherwise
+		 */
+		protected boolean block()
+		{
+			List<Integer> clause = new ArrayList<Integer>();
+			for (Cell c : m_cells.values())
+			{
+				if (c.m_fixed)
+				{
+					continue;
+				}
+				for (int lit : c.m_values.values())
+				{
+					if (m_core.isTrue(lit))
+					{
+						clause.add(-lit);
+						break;
+					}
+				}
+			}
+			if (clause.isEmpty())
+			{
+				return false;
+			}
+			m_core.addClause(toArray(clause));
+			return true;
+		}
+
+		/**
+		 * Reads the value given to each cell by the last model.
+		 * @return The values, in the order of the cells
+		 */
+		protected Object[] getModel()
+		{
+			Object[] model = new Object[m_cells.size()];
+			int i = 0;
+			for (Cell c : m_cells.values())
+			{
+				for (Map.Entry<Object,Integer> e : c.m_values.entrySet())
+				{
+					if (m_core.isTrue(e.getValue()))
+					{
+						model[i] = e.getKey();
+						break;
+					}
+				}
+				i++;
+			}
+			return model;
+		}
+
+		/**
+		 * Builds the assignment corresponding to the values of the cells.
+		 * @param model The values, in the order of the cells
+		 * @return The assignment
+		 */
+		protected Assignment getSolution(Object[] model)
+		{
+			Assignment sol = new Assignment();
+			Map<Variable,Object[]> arrays = new LinkedHashMap<Variable,Object[]>();
+			int i = 0;
+			for (Cell c : m_cells.values())
+			{
+				Object value = model[i++];
+				if (c.m_index < 0)
+				{
+					ScalarVariable sv = (ScalarVariable) c.m_variable;
+					(c.m_next ? sv.next() : sv).set(value).assign(sol);
+					continue;
+				}
+				ArrayVariable av = (ArrayVariable) c.m_variable;
+				if (c.m_next)
+				{
+					av = av.next();
+				}
+				Object[] values = arrays.get(av);
+				if (values == null)
+				{
+					values = new Object[av.getDimension()];
+					for (int j = 0; j < values.length; j++)
+					{
+						values[j] = getValue(ArrayAccess.get(av, j), m_assignment);
+						if (values[j] == null)
+						{
+							values[j] = av.getDomain().getDefaultValue();
+						}
+					}
+					arrays.put(av, values);
+				}
+				values[c.m_index] = value;
+			}
+			for (Map.Entry<Variable,Object[]> e : arrays.entrySet())
+			{
+				ArrayVariable av = (ArrayVariable) e.getKey();
+				av.setValues(e.getValue());
+				av.assign(sol);
+			}
+			return sol;
+		}
+
+		/**
+		 * Gets the literal that is true when a formula is true.
+		 * @param e The formula
+		 * @param next Whether the formula is in the scope of <tt>next</tt>
+		 * @return The literal
+		 */
+		protected int literal(NusmvExpression e, boolean next)
+		{
+			Integer lit = term(e, next).get(Boolean.TRUE);
+			return lit == null ? -m_true : lit;
+		}
+
+		/**
+		 * Gets the encoding of the values of a term.
+		 * @param e The term
+		 * @param next Whether the term is in the scope of <tt>next</tt>
+		 * @return A map associating each possible value of the term with the
+		 * literal that is true when the term takes this value
+		 */
+		protected Map<Object,Integer> term(NusmvExpression e, boolean next)
+		{
+			Map<NusmvExpression,Map<Object,Integer>> memo = m_terms.get(next ? 1 : 0);
+			Map<Object,Integer> values = memo.get(e);
+			if (values == null)
+			{
+				values = translate(e, next);
+				memo.put(e, values);
+			}
+			return values;
+		}
+
+		protected Map<Object,Integer> translate(NusmvExpression e, boolean next)
+		{
+			String label = e.getLabel();
+			switch (e.getKind())
+			{
+			case CONSTANT:
+				if (e.getValue() != null)
+				{
+					return constant(e.getValue());
+				}
+				return constant(label.equals("TRUE") ? Boolean.TRUE : (label.equals("FALSE") ? Boolean.FALSE : (Object) Integer.valueOf(label)));
+			case VARIABLE:
+				return variable(label, e.getVariable(), next);
+			default:
+				break;
+			}
+			List<NusmvExpression> children = e.getChildren();
+			switch (label)
+			{
+			case "next":
+				return term(children.get(0), true);
+			case "!":
+				return bool(-literal(children.get(0), next));
+			case "&":
+				return bool(and(literals(children, next)));
+			case "|":
+				return bool(or(literals(children, next)));
+			case "->":
+				return bool(or(List.of(-literal(children.get(0), next), literal(children.get(1), next))));
+			case "<->":
+			case "xnor":
+				return bool(iff(literal(children.get(0), next), literal(children.get(1), next)));
+			case "xor":
+				return bool(-iff(literal(children.get(0), next), literal(children.get(1), next)));
+			case "=":
+			case "!=":
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				return bool(compare(label, term(children.get(0), next), term(children.get(1), next)));
+			case "[]":
+				return access(children.get(0).getLabel(), children.get(0).getVariable(), term(children.get(1), next), next);
+			default:
+				break;
+			}
+			if (children.size() == 1 && label.equals("-"))
+			{
+				return arithmetic("-", constant(0), term(children.get(0), next));
+			}
+			Map<Object,Integer> result = term(children.get(0), next);
+			for (int i = 1; i < children.size(); i++)
+			{
+				result = arithmetic(label, result, term(children.get(i), next));
+			}
+			return result;
+		}
+
+		protected List<Integer> literals(List<NusmvExpression> nodes, boolean next)
+		{
+			List<Integer> lits = new ArrayList<Integer>(nodes.size());
+			for (NusmvExpression n : nodes)
+			{
+				lits.add(literal(n, next));
+			}
+			return lits;
+		}
+
+		protected Map<Object,Integer> constant(Object o)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			values.put(o, m_true);
+			return values;
+		}
+
+		protected Map<Object,Integer> bool(int lit)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			values.put(Boolean.TRUE, lit);
+			values.put(Boolean.FALSE, -lit);
+			return values;
+		}
+
+		/**
+		 * Gets the encoding of a variable or of an array cell accessed with a
+		 * constant index. Identifiers that are neither declared variables nor
+		 * variables found in the condition are looked up among the symbols of
+		 * the declared domains.
+		 * @param name The name of the variable or cell
+		 * @param found The variable (or array) the node of the condition stands
+		 * for, or <tt>null</tt> if the condition was parsed from text
+		 * @param next Whether the variable is taken in the next state
+		 * @return The encoding of its values
+		 */
+		protected Map<Object,Integer> variable(String name, /*@ null @*/ Variable found, boolean next)
+		{
+			String key = next ? "next(" + name + ")" : name;
+			Cell c = m_cells.get(key);
+			if (c != null)
+			{
+				return c.m_values;
+			}
+			int bracket = name.indexOf('[');
+			String var_name = bracket < 0 ? name : name.substring(0, bracket);
+			int index = bracket < 0 ? -1 : Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+			Variable v = m_variables.get(var_name);
+			if (v == null && found != null)
+			{
+				v = m_found.computeIfAbsent(var_name, k -> current(found));
+			}
+			if (v == null)
+			{
+				if (bracket < 0 && m_symbols.containsKey(name))
+				{
+					return constant(m_symbols.get(name));
+				}
+				throw new IllegalArgumentException("Undeclared variable " + var_name);
+			}
+			if (index >= 0 && index >= ((ArrayVariable) v).getDimension())
+			{
+				throw new IllegalArgumentException("Index out of bounds: " + name);
+			}
+			Object value = getFixedValue(v, index, next);
+			Map<Object,Integer> values;
+			if (value != null)
+			{
+				values = constant(value);
+			}
+			else
+			{
+				values = oneHot(getValues(v.getDomain()));
+			}
+			m_cells.put(key, new Cell(key, v, index, next, values, value != null));
+			return values;
+		}
+
+		/**
+		 * Gets the variable of the current state corresponding to a variable
+		 * found in a condition, which may be taken in the next state.
+		 * @param v The variable
+		 * @return The variable in the current state
+		 */
+		protected Variable current(Variable v)
+		{
+			if (!v.isNext())
+			{
+				return v;
+			}
+			if (v instanceof ArrayVariable)
+			{
+				return new ArrayVariable(v.getName(), v.getDomain(), ((ArrayVariable) v).getDimension());
+			}
+			return new ScalarVariable(v.getName(), v.getDomain());
+		}
+
+		/**
+		 * Creates fresh literals for the values of a free cell, with clauses
+		 * stating that exactly one of them is true.
+		 * @param domain The values of the cell
+		 * @return The encoding of the values
+		 */
+		protected Map<Object,Integer> oneHot(Object[] domain)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			if (domain.length == 2)
+			{
+				int v = m_core.newVariable();
+				values.put(domain[0], -v);
+				values.put(domain[1], v);
+				return values;
+			}
+			int[] lits = new int[domain.length];
+			for (int i = 0; i < domain.length; i++)
+			{
+				lits[i] = m_core.newVariable();
+				values.put(domain[i], lits[i]);
+			}
+			m_core.addClause(lits);
+			for (int i = 0; i < lits.length; i++)
+			{
+				for (int j = i + 1; j < lits.length; j++)
+				{
+					m_core.addClause(-lits[i], -lits[j]);
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Encodes the access to an array cell at a computed index.
+		 * @param name The name of the array
+		 * @param found The array found in the condition, or <tt>null</tt>
+		 * @param index The encoding of the index
+		 * @param next Whether the array is taken in the next state
+		 * @return The encoding of the value of the cell
+		 */
+		protected Map<Object,Integer> access(String name, /*@ null @*/ Variable found, Map<Object,Integer> index, boolean next)
+		{
+			Map<Object,List<Integer>> cases = new LinkedHashMap<Object,List<Integer>>();
+			for (Map.Entry<Object,Integer> i : index.entrySet())
+			{
+				Map<Object,Integer> cell = variable(name + "[" + i.getKey() + "]", found, next);
+				for (Map.Entry<Object,Integer> v : cell.entrySet())
+				{
+					add(cases, v.getKey(), and(List.of(i.getValue(), v.getValue())));
+				}
+			}
+			return merge(cases);
+		}
+
+		protected int compare(String op, Map<Object,Integer> x, Map<Object,Integer> y)
+		{
+			if (op.equals("=") || op.equals("!="))
+			{
+				List<Integer> lits = new ArrayList<Integer>();
+				for (Map.Entry<Object,Integer> e : x.entrySet())
+				{
+					Integer l = y.get(e.getKey());
+					if (l != null)
+					{
+						lits.add(and(List.of(e.getValue(), l)));
+					}
+				}
+				int eq = or(lits);
+				return op.equals("=") ? eq : -eq;
+			}
+			List<Integer> lits = new ArrayList<Integer>();
+			for (Map.Entry<Object,Integer> e1 : x.entrySet())
+			{
+				for (Map.Entry<Object,Integer> e2 : y.entrySet())
+				{
+					int diff = toInt(e1.getKey()) - toInt(e2.getKey());
+					boolean holds = (op.equals("<") && diff < 0) || (op.equals("<=") && diff <= 0) || (op.equals(">") && diff > 0) || (op.equals(">=") && diff >= 0);
+					if (holds)
+					{
+						lits.add(and(List.of(e1.getValue(), e2.getValue())));
+					}
+				}
+			}
+			return or(lits);
+		}
+
+		protected Map<Object,Integer> arithmetic(String op, Map<Object,Integer> x, Map<Object,Integer> y)
+		{
+			Map<Object,List<Integer>> cases = new LinkedHashMap<Object,List<Integer>>();
+			for (Map.Entry<Object,Integer> e1 : x.entrySet())
+			{
+				for (Map.Entry<Object,Integer> e2 : y.entrySet())
+				{
+					int a = toInt(e1.getKey()), b = toInt(e2.getKey());
+					int both = and(List.of(e1.getValue(), e2.getValue()));
+					if ((op.equals("/") || op.equals("mod")) && b == 0)
+					{
+						// Division by zero is an error in NuSMV; exclude the case
+						m_core.addClause(-both);
+						continue;
+					}
+					add(cases, apply(op, a, b), both);
+				}
+			}
+			return merge(cases);
+		}
+
+		protected int apply(String op, int a, int b)
+		{
+			switch (op)
+			{
+			case "+":
+				return a + b;
+			case "-":
+				return a - b;
+			case "*":
+				return a * b;
+			case "/":
+				return a / b;
+			case "mod":
+				return a % b;
+			default:
+				throw new IllegalArgumentException("Unsupported operator " + op);
+			}
+		}
+
+		protected int toInt(Object o)
+		{
+			if (!(o instanceof Integer))
+			{
+				throw new IllegalArgumentException("Not a number: " + o);
+			}
+			return (Integer) o;
+		}
+
+		protected void add(Map<Object,List<Integer>> cases, Object value, int lit)
+		{
+			List<Integer> lits = cases.get(value);
+			if (lits == null)
+			{
+				lits = new ArrayList<Integer>();
+				cases.put(value, lits);
+			}
+			lits.add(lit);
+		}
+
+		protected Map<Object,Integer> merge(Map<Object,List<Integer>> cases)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			for (Map.Entry<Object,List<Integer>> e : cases.entrySet())
+			{
+				int lit = or(e.getValue());
+				if (lit != -m_true)
+				{
+					values.put(e.getKey(), lit);
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Gets a literal equivalent to the conjunction of other literals.
+		 * @param lits The literals
+		 * @return The literal
+		 */
+		protected int and(List<Integer> lits)
+		{
+			List<Integer> operands = new ArrayList<Integer>(lits.size());
+			for (int l : lits)
+			{
+				if (l == -m_true)
+				{
+					return -m_true;
+				}
+				if (l != m_true && !operands.contains(l))
+				{
+					if (operands.contains(-l))
+					{
+						return -m_true;
+					}
+					operands.add(l);
+				}
+			}
+			if (operands.isEmpty())
+			{
+				return m_true;
+			}
+			if (operands.size() == 1)
+			{
+				return operands.get(0);
+			}
+			int x = m_core.newVariable();
+			int[] clause = new int[operands.size() + 1];
+			clause[0] = x;
+			for (int i = 0; i < operands.size(); i++)
+			{
+				int l = operands.get(i);
+				m_core.addClause(-x, l);
+				clause[i + 1] = -l;
+			}
+			m_core.addClause(clause);
+			return x;
+		}
+
+		/**
+		 * Gets a literal equivalent to the disjunction of other literals.
+		 * @param lits The literals
+		 * @return The literal
+		 */
+		protected int or(List<Integer> lits)
+		{
+			List<Integer> negated = new ArrayList<Integer>(lits.size());
+			for (int l : lits)
+			{
+				negated.add(-l);
+			}
+			return -and(negated);
+		}
+
+		protected int iff(int a, int b)
+		{
+			if (a == b)
+			{
+				return m_true;
+			}
+			if (a == -b)
+			{
+				return -m_true;
+			}
+			if (a == m_true || a == -m_true)
+			{
+				return a == m_true ? b : -b;
+			}
+			if (b == m_true || b == -m_true)
+			{
+				return b == m_true ? a : -a;
+			}
+			int x = m_core.newVariable();
+			m_core.addClause(-x, -a, b);
+			m_core.addClause(-x, a, -b);
+			m_core.addClause(x, a, b);
+			m_core.addClause(x, -a, -b);
+			return x;
+		}
+
+		protected int[] toArray(List<Integer> list)
+		{
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++)
+			{
+				array[i] = list.get(i);
+			}
+			return array;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Condition;
+
+/**
+ * A condition translated into a tree of closures reading the slots of
+ * state vectors. Evaluating a compiled condition involves no lookup of
+ * variables by name and no boxing of values; it is meant for checking
+ * large numbers of states, for instance when simulating a model.
+ * <p>
+ * A condition is compiled against a {@link StateLayout}, which must
+ * contain every variable occurring in the condition. Identifiers that are
+ * not variables of the layout are read as symbols of their domains. The
+ * condition is evaluated on two state vectors: the current state, and the
+ * next state read by the <tt>next</tt> operator; conditions that do not
+ * mention the next state, such as the <tt>INIT</tt> of a module, can be
+ * evaluated on the current state alone.
+ * <p>
+ * The condition is read from its printed text. It is printed with
+ * {@link ProcessorModule#s_defines} and {@link ProcessorModule#s_assign}
+ * turned off for the calling thread, whatever their global values, so that
+ * references to macros are replaced by the formulas they stand for.
+ */
+public class CompiledCondition
+{
+	/**
+	 * A node of a compiled expression.
+	 */
+	protected interface Node
+	{
+		/**
+		 * Evaluates the node.
+		 * @param current The current state
+		 * @param next The next state
+		 * @return The code of the value of the node; Boolean nodes return 1
+		 * for <tt>true</tt> and 0 for <tt>false</tt>
+		 */
+		public int eval(int[] current, int[] next);
+	}
+
+	/**
+	 * The root of the compiled expression.
+	 */
+	/*@ non_null @*/ protected final Node m_root;
+
+	/**
+	 * The layout of the state vectors.
+	 */
+	/*@ non_null @*/ protected final StateLayout m_layout;
+
+	/**
+	 * Creates a compiled condition.
+	 * @param root The root of the compiled expression
+	 * @param layout The layout of the state vectors
+	 */
+	protected CompiledCondition(Node root, StateLayout layout)
+	{
+		super();
+		m_root = root;
+		m_layout = layout;
+	}
+
+	/**
+	 * Compiles a condition.
+	 * @param c The condition
+	 * @param layout The layout of the state vectors
+	 * @return The compiled condition
+	 * @throws IllegalArgumentException If the condition mentions an
+	 * identifier that is neither a variable nor a symbol of the layout
+	 */
+	/*@ non_null @*/ public static CompiledCondition compile(/*@ non_null @*/ Condition c, /*@ non_null @*/ StateLayout layout)
+	{
+		NusmvExpression e;
+		Integer flags = ProcessorModule.setThreadFlags(ProcessorModule.getFlags() & ~(ProcessorModule.FLAG_DEFINES | ProcessorModule.FLAG_ASSIGN));
+		try
+		{
+			e = NusmvExpression.parse(c);
+		}
+		finally
+		{
+			ProcessorModule.setThreadFlags(flags);
+		}
+		return compile(e, layout);
+	}
+
+	/**
+	 * Compiles the syntax tree of a condition.
+	 * @param e The root of the tree
+	 * @param layout The layout of the state vectors
+	 * @return The compiled condition
+	 * @throws IllegalArgumentException If the condition mentions an
+	 * identifier that is neither a variable nor a symbol of the layout
+	 */
+	/*@ non_null @*/ public static CompiledCondition compile(/*@ non_null @*/ NusmvExpression e, /*@ non_null @*/ StateLayout layout)
+	{
+		Compiler comp = new Compiler(layout);
+		return new CompiledCondition(comp.compile(e, false), layout);
+	}
+
+	/**
+	 * Gets the layout of the state vectors read by this condition.
+	 * @return The layout
+	 */
+	/*@ pure non_null @*/ public StateLayout getLayout()
+	{
+		return m_layout;
+	}
+
+	/**
+	 * Evaluates the condition on a pair of states.
+	 * @param current The current state
+	 * @param next The next state
+	 * @return The value of the condition
+	 */
+	public boolean evaluate(/*@ non_null @*/ int[] current, /*@ non_null @*/ int[] next)
+	{
+		return m_root.eval(current, next) != 0;
+	}
+
+	/**
+	 * Evaluates the condition on a single state.
+	 * @param current The state
+	 * @return The value of the condition
+	 */
+	public boolean evaluate(/*@ non_null @*/ int[] current)
+	{
+		return m_root.eval(current, current) != 0;
+	}
+
+	/**
+	 * Translates syntax trees into closures. Shared subtrees are compiled
+	 * only once.
+	 */
+	protected static class Compiler
+	{
+		/**
+		 * The layout of the state vectors.
+		 */
+		/*@ non_null @*/ protected final StateLayout m_layout;
+
+		/**
+		 * The nodes already compiled, in the current and in the next state.
+		 */
+		/*@ non_null @*/ protected final List<Map<NusmvExpression,Node>> m_compiled;
+
+		protected Compiler(StateLayout layout)
+		{
+			super();
+			m_layout = layout;
+			m_compiled = List.of(new HashMap<NusmvExpression,Node>(), new HashMap<NusmvExpression,Node>());
+		}
+
+		protected Node compile(NusmvExpression e, boolean next)
+		{
+			Map<NusmvExpression,Node> compiled = m_compiled.get(next ? 1 : 0);
+			Node n = compiled.get(e);
+			if (n == null)
+			{
+				n = translate(e, next);
+				compiled.put(e, n);
+			}
+			return n;
+		}
+
+		protected Node[] compile(List<NusmvExpression> nodes, boolean next)
+		{
+			Node[] out = new Node[nodes.size()];
+			for (int i = 0; i < out.length; i++)
+			{
+				out[i] = compile(nodes.get(i), next);
+			}
+			return out;
+		}
+
+		protected Node translate(NusmvExpression e, boolean next)
+		{
+			String label = e.getLabel();
+			switch (e.getKind())
+			{
+			case CONSTANT:
+			{
+				int v = label.equals("TRUE") ? 1 : (label.equals("FALSE") ? 0 : Integer.parseInt(label));
+				return (c, x) -> v;
+			}
+			case VARIABLE:
+				return variable(label, next);
+			default:
+				break;
+			}
+			List<NusmvExpression> children = e.getChildren();
+			if (label.equals("next"))
+			{
+				return compile(children.get(0), true);
+			}
+			if (label.equals("[]"))
+			{
+				return access(children.get(0).getLabel(), compile(children.get(1), next), next);
+			}
+			Node[] ops = compile(children, next);
+			if (ops.length == 1)
+			{
+				Node a = ops[0];
+				if (label.equals("!"))
+				{
+					return (c, x) -> 1 - a.eval(c, x);
+				}
+				return (c, x) -> -a.eval(c, x);
+			}
+			Node a = ops[0], b = ops[1];
+			switch (label)
+			{
+			case "&":
+				if (ops.length == 2)
+				{
+					return (c, x) -> a.eval(c, x) != 0 && b.eval(c, x) != 0 ? 1 : 0;
+				}
+				return (c, x) -> {
+					for (Node n : ops)
+					{
+						if (n.eval(c, x) == 0)
+						{
+							return 0;
+						}
+					}
+					return 1;
+				};
+			case "|":
+				if (ops.length == 2)
+				{
+					return (c, x) -> a.eval(c, x) != 0 || b.eval(c, x) != 0 ? 1 : 0;
+				}
+				return (c, x) -> {
+					for (Node n : ops)
+					{
+						if (n.eval(c, x) != 0)
+						{
+							return 1;
+						}
+					}
+					return 0;
+				};
+			case "->":
+				return (c, x) -> a.eval(c, x) == 0 || b.eval(c, x) != 0 ? 1 : 0;
+			case "<->":
+			case "xnor":
+				return (c, x) -> (a.eval(c, x) != 0) == (b.eval(c, x) != 0) ? 1 : 0;
+			case "xor":
+				return (c, x) -> (a.eval(c, x) != 0) != (b.eval(c, x) != 0) ? 1 : 0;
+			case "=":
+				return (c, x) -> a.eval(c, x) == b.eval(c, x) ? 1 : 0;
+			case "!=":
+				return (c, x) -> a.eval(c, x) != b.eval(c, x) ? 1 : 0;
+			case "<":
+				return (c, x) -> a.eval(c, x) < b.eval(c, x) ? 1 : 0;
+			case "<=":
+				return (c, x) -> a.eval(c, x) <= b.eval(c, x) ? 1 : 0;
+			case ">":
+				return (c, x) -> a.eval(c, x) > b.eval(c, x) ? 1 : 0;
+			case ">=":
+				return (c, x) -> a.eval(c, x) >= b.eval(c, x) ? 1 : 0;
+			case "+":
+				if (ops.length == 2)
+				{
+					return (c, x) -> a.eval(c, x) + b.eval(c, x);
+				}
+				return (c, x) -> {
+					int sum = 0;
+					for (Node n : ops)
+					{
+						sum += n.eval(c, x);
+					}
+					return sum;
+				};
+			case "*":
+				if (ops.length == 2)
+				{
+					return (c, x) -> a.eval(c, x) * b.eval(c, x);
+				}
+				return (c, x) -> {
+					int product = 1;
+					for (Node n : ops)
+					{
+						product *= n.eval(c, x);
+					}
+					return product;
+				};
+			case "-":
+				return (c, x) -> a.eval(c, x) - b.eval(c, x);
+			case "/":
+				return (c, x) -> a.eval(c, x) / b.eval(c, x);
+			case "mod":
+				return (c, x) -> a.eval(c, x) % b.eval(c, x);
+			default:
+				throw new IllegalArgumentException("Unsupported operator " + label);
+			}
+		}
+
+		/**
+		 * Compiles a reference to a variable, an array cell or a symbol.
+		 * @param name The identifier
+		 * @param next Whether the variable is taken in the next state
+		 * @return The node
+		 */
+		protected Node variable(String name, boolean next)
+		{
+			int slot = m_layout.getSlot(name);
+			if (slot >= 0)
+			{
+				return next ? (c, x) -> x[slot] : (c, x) -> c[slot];
+			}
+			if (name.indexOf('[') < 0 && m_layout.canEncode(name))
+			{
+				int v = m_layout.encode(name);
+				return (c, x) -> v;
+			}
+			throw new IllegalArgumentException("Undeclared variable " + name);
+		}
+
+		/**
+		 * Compiles the access to an array cell at a computed index.
+		 * @param name The name of the array
+		 * @param index The node computing the index
+		 * @param next Whether the array is taken in the next state
+		 * @return The node
+		 */
+		protected Node access(String name, Node index, boolean next)
+		{
+			int offset = m_layout.getOffset(name);
+			if (offset < 0 || !(m_layout.getVariable(offset) instanceof ArrayVariable))
+			{
+				throw new IllegalArgumentException("Undeclared array " + name);
+			}
+			int dimension = ((ArrayVariable) m_layout.getVariable(offset)).getDimension();
+			return (c, x) -> {
+				int i = index.eval(c, x);
+				if (i < 0 || i >= dimension)
+				{
+					throw new IndexOutOfBoundsException("Index " + i + " out of bounds for " + name);
+				}
+				return next ? x[offset + i] : c[offset + i];
+			};
+		}
+	}
+}
@@ -1,12 +1,16 @@
 package ca.uqac.lif.cep.nusmv;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import ca.uqac.lif.cep.nusmv.NusmvConnector.InputProcessorConnection;
 import ca.uqac.lif.cep.nusmv.NusmvConnector.OutputProcessorConnection;
+import ca.uqac.lif.cep.nusmv.NusmvConnector.ProcessorConnection;
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.ModuleDomain;
@@ -20,7 +24,8 @@ public abstract class ContainerModule extends ProcessorModule implements Composi
 	/**
 	 * The processor modules that are "contained" within This container module. The map
 	 * links module instances with the unique identifier given to them when
-	 * added to the group.
+	 * added to the group. Modules are kept in the order they are added, so
+	 * that the same group is always printed the same way.
 	 */
 	/*@ non_null @*/ protected final Map<ProcessorModule,String> m_contents;
 	
@@ -56,7 +61,7 @@ public abstract class ContainerModule extends ProcessorModule implements Composi
 		super(name, in_arity, in_domains, out_arity, out_domains, has_reset, Q_in, 0, Q_out);
 		m_moduleCounter = 0;
 		m_prefix = "p_";
-		m_contents = new HashMap<ProcessorModule,String>();
+		m_contents = new LinkedHashMap<ProcessorModule,String>();
 		m_connector = new NusmvConnector(m_resetFlag);
 		m_inputConnections = new HashMap<Integer,InputProcessorConnection>(in_arity);
 		m_outputConnections = new HashMap<Integer,OutputProcessorConnection>(out_arity);
@@ -75,6 +80,7 @@ public abstract class ContainerModule extends ProcessorModule implements Composi
 			m_moduleCounter++;
 			m_contents.put(m, var_name);
 		}
+		setDirty();
 		return this;
 	}
 	
@@ -107,23 +113,151 @@ public abstract class ContainerModule extends ProcessorModule implements Composi
 	}
 	
 	@Override
-	public void print(PrettyPrintStream ps)
+	public long getLastModified()
+	{
+		long last = Math.max(super.getLastModified(), m_connector.getLastModified());
+		for (ProcessorModule mod : m_contents.keySet())
+		{
+			last = Math.max(last, mod.getLastModified());
+		}
+		return last;
+	}
+	
+	@Override
+	public boolean isResizable()
+	{
+		// The porches must match those of the modules inside
+		return false;
+	}
+	
+	@Override
+	public ContainerModule setQueueEncoding(Encoding e)
+	{
+		super.setQueueEncoding(e);
+		for (ProcessorModule mod : m_contents.keySet())
+		{
+			mod.setQueueEncoding(e);
+		}
+		for (ProcessorQueue q : m_connector.getInnerQueues())
+		{
+			q.setEncoding(e);
+		}
+		return this;
+	}
+	
+	@Override
+	protected void print(PrettyPrintStream ps, boolean streaming)
 	{
 		// Add any new queue variables from the connector before printing
 		updateVariables();
 		// Update the definition of each inner module to reflect connections
 		updateModules();
-		super.print(ps);
+		super.print(ps, streaming);
 	}
 	
-
-	/*@Override
+	@Override
 	public IntegerRange getOutputRange(IntegerRange ... ranges)
 	{
-		for (int i = 0)
-		m_connector.m_inputConnections.get(arg0);
-				return null;
-	}*/
+		Map<ProcessorQueue,IntegerRange> queue_ranges = propagateRanges(false, ranges);
+		IntegerRange out = null;
+		for (ProcessorQueue q : getOutputQueues())
+		{
+			IntegerRange r = queue_ranges.get(q);
+			out = out == null ? r : union(out, r);
+		}
+		return out;
+	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return propagateRanges(true, ranges).get(getOutputQueues()[index]);
+	}
+	
+	/**
+	 * Gets the queues receiving the events given to this container.
+	 * @return The queues, in the order of the container's input pipes
+	 */
+	/*@ pure non_null @*/ protected ProcessorQueue[] getInputQueues()
+	{
+		return m_frontPorches;
+	}
+	
+	/**
+	 * Gets the queues holding the events output by this container.
+	 * @return The queues, in the order of the container's output pipes
+	 */
+	/*@ pure non_null @*/ protected ProcessorQueue[] getOutputQueues()
+	{
+		return m_backPorches;
+	}
+	
+	/**
+	 * Propagates ranges from the inputs of this container to all its queues,
+	 * following the connections between its modules. A module is processed
+	 * once the ranges of all its input queues are known.
+	 * @param values Set to <tt>true</tt> to propagate ranges of event values
+	 * (see {@link ProcessorModule#getValueRange(int, IntegerRange...)}),
+	 * <tt>false</tt> to propagate ranges of event counts (see
+	 * {@link ProcessorModule#getOutputRange(IntegerRange...)})
+	 * @param ranges The ranges for each input queue of the container
+	 * @return A map associating queues to their range. A queue is absent if
+	 * the ranges of its producer's inputs could not be computed, and is
+	 * associated to <tt>null</tt> if its range could not be inferred.
+	 */
+	/*@ non_null @*/ protected Map<ProcessorQueue,IntegerRange> propagateRanges(boolean values, IntegerRange ... ranges)
+	{
+		Map<ProcessorQueue,IntegerRange> queue_ranges = new HashMap<ProcessorQueue,IntegerRange>();
+		ProcessorQueue[] inputs = getInputQueues();
+		for (int j = 0; j < inputs.length && j < ranges.length; j++)
+		{
+			queue_ranges.put(inputs[j], ranges[j]);
+		}
+		Set<ProcessorModule> done = new HashSet<ProcessorModule>();
+		boolean progress = true;
+		while (progress)
+		{
+			progress = false;
+			for (ProcessorModule mod : m_contents.keySet())
+			{
+				Map<Integer,ProcessorConnection> in_conns = m_connector.m_inputConnections.get(mod);
+				Map<Integer,ProcessorConnection> out_conns = m_connector.m_outputConnections.get(mod);
+				if (done.contains(mod) || in_conns == null || out_conns == null)
+				{
+					continue;
+				}
+				IntegerRange[] in_ranges = new IntegerRange[mod.getInputArity()];
+				boolean ready = true, known = true;
+				for (int j = 0; j < in_ranges.length && ready; j++)
+				{
+					ProcessorQueue q = in_conns.get(j).getQueue();
+					ready = queue_ranges.containsKey(q);
+					in_ranges[j] = queue_ranges.get(q);
+					known &= in_ranges[j] != null;
+				}
+				if (!ready)
+				{
+					continue;
+				}
+				for (int i = 0; i < mod.getOutputArity(); i++)
+				{
+					IntegerRange r = null;
+					if (values)
+					{
+						r = mod.getValueRange(i, in_ranges);
+					}
+					else if (known)
+					{
+						r = mod.getOutputRange(in_ranges);
+					}
+					queue_ranges.put(out_conns.get(i).getQueue(), r);
+				}
+				done.add(mod);
+				progress = true;
+			}
+		}
+		return queue_ranges;
+	}
 	
 	/**
 	 * Updates the list of internal queues of the processor to their most
@@ -134,14 +268,8 @@ public abstract class ContainerModule extends ProcessorModule implements Composi
 		List<ProcessorQueue> queues = m_connector.getInnerQueues();
 		for (ProcessorQueue q : queues)
 		{
-			if (!m_variables.contains(q.m_arrayContents))
-			{
-				m_variables.add(q.m_arrayContents);
-			}
-			if (!m_variables.contains(q.m_arrayFlags))
-			{
-				m_variables.add(q.m_arrayFlags);
-			}
+			declareVariable(q.m_arrayContents);
+			declareOccupancyVariable(q);
 		}
 	}
 	
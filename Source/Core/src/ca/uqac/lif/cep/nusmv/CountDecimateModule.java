@@ -18,6 +18,8 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.List;
+
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
@@ -59,6 +61,13 @@ public class CountDecimateModule extends SubsetProcessorModule
 		c.addLine("Module: CountDecimate(" + m_interval + ")");
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		key.append(m_interval);
+		return true;
+	}
+
 	/**
 	 * Gets the internal variable acting as the processor's counter.
 	 * @return The variable
@@ -182,6 +191,39 @@ public class CountDecimateModule extends SubsetProcessorModule
 		return big_and;
 	}
 
+	@Override
+	protected boolean isFunctional()
+	{
+		return true;
+	}
+	
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		super.addAssignments(list);
+		list.add(new CaseAssignment(CaseAssignment.Kind.INIT, m_counter, new Constant(m_counter.getDomain().getDefaultValue())));
+		// Counter does not change if there are no inputs
+		CaseAssignment next_counter = new CaseAssignment(CaseAssignment.Kind.NEXT, m_counter, m_counter);
+		int porch_size = getFrontPorch(0).getSize();
+		for (int num_inputs = 1; num_inputs <= porch_size; num_inputs++)
+		{
+			{
+				Conjunction and = new Conjunction();
+				and.add(hasInputs(false, num_inputs));
+				and.add(new IsReset(false));
+				next_counter.add(and, new Constant(num_inputs % m_interval));
+			}
+			for (int c = 0; c < m_interval; c++)
+			{
+				Conjunction and = new Conjunction();
+				and.add(hasInputs(false, num_inputs));
+				and.add(new Equality(m_counter, new Constant(c)));
+				next_counter.add(and, new Constant((c + num_inputs) % m_interval));
+			}
+		}
+		list.add(next_counter);
+	}
+
 	@Override
 	public CountDecimateModule duplicate()
 	{
@@ -195,4 +237,10 @@ public class CountDecimateModule extends SubsetProcessorModule
 	{
 		return new IntegerRange((int) Math.ceil((double) ranges[0].getLowerBound() / (double) m_interval), (int) Math.ceil((double) ranges[0].getUpperBound() / (double) m_interval));
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return ranges[0];
+	}
 }
@@ -18,6 +18,8 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.List;
+
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
@@ -58,6 +60,12 @@ public class CumulateModule extends UnaryProcessorModule
 		c.addLine("Module: Cumulate(" + m_function + ")");
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		return addToKey(key, m_function);
+	}
+
 	/**
 	 * Gets the internal variable acting as the processor's counter.
 	 * @return The variable
@@ -184,6 +192,50 @@ public class CumulateModule extends UnaryProcessorModule
 		return big_and;
 	}
 
+	@Override
+	protected boolean isFunctional()
+	{
+		return m_function.getTerm(m_counter, getFrontPorch(0).valueAt(false, 0)) != null;
+	}
+	
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		ProcessorQueue front_porch = getFrontPorch(0);
+		ProcessorQueue back_porch = getBackPorch(0);
+		Condition[] has_length = new Condition[front_porch.getSize() + 1];
+		for (int i = 0; i < has_length.length; i++)
+		{
+			has_length[i] = front_porch.hasLength(false, i);
+		}
+		assignLength(list, back_porch, has_length);
+		for (int i = 0; i <= back_porch.getSize() - 1; i++)
+		{
+			CaseAssignment ca = assignCell(back_porch, i);
+			if (i == 0)
+			{
+				Conjunction and = new Conjunction();
+				and.add(front_porch.hasAt(false, i));
+				and.add(new IsReset(false));
+				ca.add(and, m_function.getTerm(new Constant(m_function.getInputDomain(0).getDefaultValue()), front_porch.valueAt(false, i)));
+				ca.add(front_porch.hasAt(false, i), m_function.getTerm(m_counter, front_porch.valueAt(false, i)));
+			}
+			else
+			{
+				ca.add(front_porch.hasAt(false, i), m_function.getTerm(back_porch.valueAt(false, i - 1), front_porch.valueAt(false, i)));
+			}
+			list.add(ca);
+		}
+		list.add(new CaseAssignment(CaseAssignment.Kind.INIT, m_counter, new Constant(m_counter.getDomain().getDefaultValue())));
+		// Counter stays unchanged if no inputs
+		CaseAssignment next_counter = new CaseAssignment(CaseAssignment.Kind.NEXT, m_counter, m_counter);
+		for (int nf = 1; nf <= back_porch.getSize(); nf++)
+		{
+			next_counter.add(hasInputs(false, nf), back_porch.valueAt(false, nf - 1));
+		}
+		list.add(next_counter);
+	}
+
 	@Override
 	public CumulateModule duplicate()
 	{
@@ -203,4 +255,28 @@ public class CumulateModule extends UnaryProcessorModule
 	{
 		return ranges[0];
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		Object start = m_function.getInputDomain(0).getDefaultValue();
+		if (!(start instanceof Integer))
+		{
+			return null;
+		}
+		// The accumulated value is either the start value or a previous
+		// output; widen the range of outputs until it no longer changes
+		IntegerRange initial = new IntegerRange((Integer) start, (Integer) start);
+		IntegerRange out = m_function.getValueRange(initial, ranges[0]);
+		while (out != null)
+		{
+			IntegerRange new_out = union(out, m_function.getValueRange(union(initial, out), ranges[0]));
+			if (new_out == null || (new_out.getLowerBound() == out.getLowerBound() && new_out.getUpperBound() == out.getUpperBound()))
+			{
+				return new_out;
+			}
+			out = new_out;
+		}
+		return null;
+	}
 }
@@ -56,6 +56,13 @@ public class FilterModule extends BinaryModule
 		c.addLine("Module: Filter");
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		// The behavior only depends on the domains and the sizes of the queues
+		return true;
+	}
+
 	/**
 	 * Generates the condition stipulating that the size of the back porch is
 	 * equal to the number of complete event fronts in the input pipes.
@@ -186,7 +193,7 @@ public class FilterModule extends BinaryModule
 		}
 	}
 
-	public Condition hasNTrueQueue(boolean next, QueueType type, int pipe_index, int m, int n)
+	public Condition hasNTrueQueue(boolean next, final QueueType type, final int pipe_index, final int m, final int n)
 	{
 		if (n > m + 1)
 		{
@@ -198,6 +205,34 @@ public class FilterModule extends BinaryModule
 		{
 			throw new QueueOutOfBoundsException("Queue has size " + queue.getSize() + ", asking for index " + m);
 		}
+		if (m < 0)
+		{
+			// Empty prefix of the queue: nothing to share
+			return buildHasNTrueQueue(next, type, pipe_index, m, n);
+		}
+		return new SharedFormula("hnt_" + getFormulaName(type, pipe_index, m, n)) {
+			@Override
+			protected Condition build(boolean nx)
+			{
+				return buildHasNTrueQueue(nx, type, pipe_index, m, n);
+			}
+		}.get(next);
+	}
+	
+	/**
+	 * Builds the condition returned by
+	 * {@link #hasNTrueQueue(boolean, QueueType, int, int, int)}.
+	 * @param next A flag indicating if the condition applies to the
+	 * current state or the next state
+	 * @param type The queue (porch or buffer)
+	 * @param pipe_index The index of the input pipe
+	 * @param m The position in the queue
+	 * @param n The number of true events
+	 * @return The condition
+	 */
+	protected Condition buildHasNTrueQueue(boolean next, QueueType type, int pipe_index, int m, int n)
+	{
+		ProcessorQueue queue = (type == QueueType.BUFFER ? getBuffer(pipe_index) : getFrontPorch(pipe_index));
 		if (m == 0)
 		{
 			Conjunction and = new Conjunction();
@@ -316,7 +351,7 @@ public class FilterModule extends BinaryModule
 		return totalNTrueQueue(next, type, pipe_index, queue.getSize() - 1, n);
 	}
 
-	protected Condition totalNTrueQueue(boolean next, QueueType type, int pipe_index, int m, int n)
+	protected Condition totalNTrueQueue(boolean next, final QueueType type, final int pipe_index, final int m, final int n)
 	{
 		if (n > m + 1)
 		{
@@ -328,6 +363,34 @@ public class FilterModule extends BinaryModule
 		{
 			throw new QueueOutOfBoundsException("Queue has size " + queue.getSize() + ", asking for index " + m);
 		}
+		if (m < 0)
+		{
+			// Empty queue: nothing to share
+			return buildTotalNTrueQueue(next, type, pipe_index, m, n);
+		}
+		return new SharedFormula("tnt_" + getFormulaName(type, pipe_index, m, n)) {
+			@Override
+			protected Condition build(boolean nx)
+			{
+				return buildTotalNTrueQueue(nx, type, pipe_index, m, n);
+			}
+		}.get(next);
+	}
+	
+	/**
+	 * Builds the condition returned by
+	 * {@link #totalNTrueQueue(boolean, QueueType, int, int, int)}.
+	 * @param next A flag indicating if the condition applies to the
+	 * current state or the next state
+	 * @param type The queue (porch or buffer)
+	 * @param pipe_index The index of the input pipe
+	 * @param m The last position in the queue
+	 * @param n The number of true events
+	 * @return The condition
+	 */
+	protected Condition buildTotalNTrueQueue(boolean next, QueueType type, int pipe_index, int m, int n)
+	{
+		ProcessorQueue queue = (type == QueueType.BUFFER ? getBuffer(pipe_index) : getFrontPorch(pipe_index));
 		if (m == 0)
 		{
 			if (n > 1)
@@ -413,13 +476,19 @@ public class FilterModule extends BinaryModule
 	 * a queue (porch or buffer), there are exactly n events in the full
 	 * input pipe (porch + buffer) with the value true.
 	 */
-	public Condition hasNTrue(boolean next, QueueType type, int pipe_index, int m, int n)
+	public Condition hasNTrue(boolean next, QueueType type, final int pipe_index, final int m, final int n)
 	{
 		if (type == QueueType.BUFFER)
 		{
 			return hasNTrueQueue(next, QueueType.BUFFER, pipe_index, m, n);
 		}
-		return new HasNTruePorch(next, pipe_index, m, n);
+		return new SharedFormula("hntp_" + pipe_index + "_" + m + "_" + n) {
+			@Override
+			protected Condition build(boolean nx)
+			{
+				return new HasNTruePorch(nx, pipe_index, m, n);
+			}
+		}.get(next);
 	}
 
 	protected class HasNTruePorch extends Disjunction
@@ -459,13 +528,19 @@ public class FilterModule extends BinaryModule
 		}
 	}
 
-	public Condition isNthTrue(boolean next, QueueType type, int pipe_index, int m, int n)
+	public Condition isNthTrue(boolean next, final QueueType type, final int pipe_index, final int m, final int n)
 	{
 		if (m > n + 1 || n == 0)
 		{
 			return ConstantFalse.FALSE;
 		}
-		return new IsNthTrue(next, type, pipe_index, m, n);
+		return new SharedFormula("nth_" + getFormulaName(type, pipe_index, m, n)) {
+			@Override
+			protected Condition build(boolean nx)
+			{
+				return new IsNthTrue(nx, type, pipe_index, m, n);
+			}
+		}.get(next);
 	}
 
 	/**
@@ -525,6 +600,20 @@ public class FilterModule extends BinaryModule
 		}
 	}
 
+	/**
+	 * Produces the suffix used to name the shared counting conditions for a
+	 * given queue, position and number of events.
+	 * @param type The queue (porch or buffer)
+	 * @param pipe_index The index of the input pipe
+	 * @param m The position in the queue
+	 * @param n The number of events
+	 * @return The name suffix
+	 */
+	protected static String getFormulaName(QueueType type, int pipe_index, int m, int n)
+	{
+		return (type == QueueType.BUFFER ? "b" : "p") + pipe_index + "_" + m + "_" + n;
+	}
+
 	@Override
 	public Condition getOutputCondition(boolean next, QueueType sigma1, int m1, QueueType sigma2, int m2, int n)
 	{
@@ -544,4 +633,11 @@ public class FilterModule extends BinaryModule
 	{
 		return new IntegerRange(0, Math.min(ranges[0].getUpperBound(), ranges[1].getUpperBound()) + getBuffer(0).getSize());
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		// Events that pass the filter are unchanged
+		return ranges[0];
+	}
 }
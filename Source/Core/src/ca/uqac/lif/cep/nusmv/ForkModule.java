@@ -18,10 +18,13 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
-import ca.uqac.lif.nusmv4j.ArrayVariable;
+import java.util.List;
+
+import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.Equivalence;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 
 /**
@@ -51,6 +54,13 @@ public class ForkModule extends ProcessorModule
 		return out;
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		// The behavior only depends on the domain and the number of outputs
+		return true;
+	}
+
 	@Override
 	public ForkModule duplicate()
 	{
@@ -69,6 +79,32 @@ public class ForkModule extends ProcessorModule
 		c.add(new AllEqual(true));
 	}
 	
+	@Override
+	protected boolean isFunctional()
+	{
+		return true;
+	}
+	
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		ProcessorQueue front = m_frontPorches[0];
+		Condition[] has_length = new Condition[front.getSize() + 1];
+		for (int n = 0; n < has_length.length; n++)
+		{
+			has_length[n] = front.hasLength(false, n);
+		}
+		for (int i = 0; i < m_backPorches.length; i++)
+		{
+			ProcessorQueue back = m_backPorches[i];
+			assignLength(list, back, has_length);
+			for (int j = 0; j < front.getSize(); j++)
+			{
+				list.add(new CaseAssignment(CaseAssignment.Kind.INVARIANT, back.valueAt(false, j), front.valueAt(false, j)));
+			}
+		}
+	}
+	
 	protected class AllEqual extends Conjunction
 	{
 		protected final boolean m_next;
@@ -77,17 +113,20 @@ public class ForkModule extends ProcessorModule
 		{
 			super();
 			m_next = next;
-			ArrayVariable f_c = m_frontPorches[0].m_arrayContents;
-			ArrayVariable f_b = m_frontPorches[0].m_arrayFlags;
+			ProcessorQueue front = m_frontPorches[0];
 			for (int i = 0; i < m_backPorches.length; i++)
 			{
-				ArrayVariable b_c = m_backPorches[i].m_arrayContents;
-				ArrayVariable b_b = m_backPorches[i].m_arrayFlags;
-				for (int j = 0; j < f_c.getDimension(); j++)
+				ProcessorQueue back = m_backPorches[i];
+				for (int j = 0; j < front.getSize(); j++)
 				{
-					add(new Equality(f_c.at(next, j), b_c.at(next, j)));
-					add(new Equality(f_b.at(next, j), b_b.at(next, j)));
-				}	
+					// Empty cells are copied too, so that the back porch has a
+					// single possible content
+					Equivalence eq = new Equivalence();
+					eq.add(front.hasAt(next, j));
+					eq.add(back.hasAt(next, j));
+					add(eq);
+					add(new Equality(front.valueAt(next, j), back.valueAt(next, j)));
+				}
 			}
 		}
 		
@@ -102,5 +141,11 @@ public class ForkModule extends ProcessorModule
 	public IntegerRange getOutputRange(IntegerRange... ranges) 
 	{
 		return ranges[0];
-	}      
+	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return ranges[0];
+	}
 }
@@ -0,0 +1,239 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.nusmv4j.Condition;
+
+/**
+ * Measures the size and shape of a NuSMV formula. The metrics are:
+ * <ul>
+ * <li>the number of nodes of the syntax tree, where chains of the same
+ * associative operator (such as <tt>a &amp; b &amp; c</tt>) count as a
+ * single node;</li>
+ * <li>the maximum depth of the tree, a single variable or constant having
+ * a depth of 1;</li>
+ * <li>the set of distinct variables, where <tt>x</tt> and <tt>next(x)</tt>
+ * designate the same variable, and each cell of an array accessed with a
+ * constant index is a variable of its own;</li>
+ * <li>the number of repeated subtrees, that is, the number of occurrences
+ * of a subtree other than a variable or a constant that is identical to
+ * another subtree met before it.</li>
+ * </ul>
+ * The metrics of a condition are computed on the {@link NusmvExpression}
+ * built from its objects by {@link NusmvExpression#of(ca.uqac.lif.nusmv4j.NusmvPrintable)},
+ * which has the shape of the formula as it is printed in a NuSMV file. They
+ * therefore reflect what the model checker receives: when
+ * {@link ProcessorModule#s_defines} is set, a reference to a macro is
+ * counted as a variable (the bodies of the macros are measured apart, see
+ * {@link ProcessorModule#getDefineMetrics()}), and when
+ * {@link ProcessorModule#s_simplify} is set, the simplified formula is
+ * measured. The condition is not printed; a subformula occurring several
+ * times as the same object is visited only once.
+ * <p>
+ * Metrics can be added to each other to compute totals over several
+ * formulas; in this case, node counts and repetitions are summed, depths
+ * are maximized and sets of variables are merged.
+ */
+public class FormulaMetrics
+{
+	/**
+	 * The number of nodes in the formula.
+	 */
+	protected long m_nodes;
+
+	/**
+	 * The maximum depth of the formula.
+	 */
+	protected int m_depth;
+
+	/**
+	 * The distinct variables occurring in the formula.
+	 */
+	/*@ non_null @*/ protected final Set<String> m_variables;
+
+	/**
+	 * The number of repeated subtrees in the formula.
+	 */
+	protected long m_repeated;
+
+	/**
+	 * Creates an empty set of metrics.
+	 */
+	public FormulaMetrics()
+	{
+		super();
+		m_nodes = 0;
+		m_depth = 0;
+		m_variables = new HashSet<String>();
+		m_repeated = 0;
+	}
+
+	/**
+	 * Computes the metrics of a condition.
+	 * @param c The condition
+	 * @return The metrics
+	 */
+	/*@ non_null @*/ public static FormulaMetrics of(/*@ non_null @*/ Condition c)
+	{
+		return of(NusmvExpression.of(c));
+	}
+
+	/**
+	 * Computes the metrics of a NuSMV expression given as text.
+	 * @param expression The expression
+	 * @return The metrics
+	 * @throws IllegalArgumentException If the expression cannot be parsed
+	 */
+	/*@ non_null @*/ public static FormulaMetrics of(/*@ non_null @*/ String expression)
+	{
+		if (expression.trim().isEmpty())
+		{
+			return new FormulaMetrics();
+		}
+		return of(NusmvExpression.parse(expression));
+	}
+
+	/**
+	 * Computes the metrics of the syntax tree of an expression.
+	 * @param e The root of the tree
+	 * @return The metrics
+	 */
+	/*@ non_null @*/ public static FormulaMetrics of(/*@ non_null @*/ NusmvExpression e)
+	{
+		FormulaMetrics fm = new FormulaMetrics();
+		Map<Integer,long[]> visited = new HashMap<Integer,long[]>();
+		long[] root = visit(e, visited, fm.m_variables);
+		fm.m_nodes = root[0];
+		fm.m_depth = (int) root[1];
+		int distinct_operators = 0;
+		for (long[] v : visited.values())
+		{
+			distinct_operators += v[3];
+		}
+		fm.m_repeated = root[2] - distinct_operators;
+		return fm;
+	}
+
+	/**
+	 * Visits a node of a syntax tree. Since identical subtrees are shared,
+	 * the values computed for each node are memoized.
+	 * @param e The node
+	 * @param visited A map associating the identifier of each node already
+	 * visited with the values computed for it
+	 * @param variables The set where variable names are added
+	 * @return An array containing the number of nodes, the depth and the
+	 * number of occurrences of operators in the tree rooted at the node,
+	 * followed by 1 if the node is an operator and 0 otherwise
+	 */
+	protected static long[] visit(NusmvExpression e, Map<Integer,long[]> visited, Set<String> variables)
+	{
+		long[] values = visited.get(e.getId());
+		if (values != null)
+		{
+			return values;
+		}
+		values = new long[] {1, 1, 0, e.isOperator() ? 1 : 0};
+		if (e.getKind() == NusmvExpression.Kind.VARIABLE)
+		{
+			variables.add(e.getLabel());
+		}
+		values[2] = values[3];
+		long depth = 0;
+		for (NusmvExpression child : e.getChildren())
+		{
+			long[] v = visit(child, visited, variables);
+			values[0] += v[0];
+			values[2] += v[2];
+			depth = Math.max(depth, v[1]);
+		}
+		values[1] += depth;
+		visited.put(e.getId(), values);
+		return values;
+	}
+
+	/**
+	 * Adds the metrics of another formula to these metrics.
+	 * @param fm The other metrics
+	 * @return These metrics
+	 */
+	/*@ non_null @*/ public FormulaMetrics add(/*@ non_null @*/ FormulaMetrics fm)
+	{
+		m_nodes += fm.m_nodes;
+		m_depth = Math.max(m_depth, fm.m_depth);
+		m_variables.addAll(fm.m_variables);
+		m_repeated += fm.m_repeated;
+		return this;
+	}
+
+	/**
+	 * Gets the number of nodes in the formula.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public long getNodeCount()
+	{
+		return m_nodes;
+	}
+
+	/**
+	 * Gets the maximum depth of the formula.
+	 * @return The depth
+	 */
+	/*@ pure @*/ public int getDepth()
+	{
+		return m_depth;
+	}
+
+	/**
+	 * Gets the number of distinct variables occurring in the formula.
+	 * @return The number of variables
+	 */
+	/*@ pure @*/ public int getVariableCount()
+	{
+		return m_variables.size();
+	}
+
+	/**
+	 * Gets the distinct variables occurring in the formula.
+	 * @return The set of variable names
+	 */
+	/*@ pure non_null @*/ public Set<String> getVariables()
+	{
+		return m_variables;
+	}
+
+	/**
+	 * Gets the number of repeated subtrees in the formula.
+	 * @return The number of repeated subtrees
+	 */
+	/*@ pure @*/ public long getRepeatedCount()
+	{
+		return m_repeated;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "nodes=" + m_nodes + ", depth=" + m_depth + ", variables=" + m_variables.size() + ", repeated=" + m_repeated;
+	}
+}
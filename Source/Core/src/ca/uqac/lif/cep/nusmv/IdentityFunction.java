@@ -21,6 +21,7 @@ package ca.uqac.lif.cep.nusmv;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Term;
 
 /**
@@ -61,4 +62,16 @@ public class IdentityFunction implements UnaryFunctionCall
 	{
 		return new Equality(x, y);
 	}
+	
+	@Override
+	public Term<?> getTerm(Term<?> x)
+	{
+		return x;
+	}
+	
+	@Override
+	public IntegerRange getValueRange(IntegerRange x)
+	{
+		return x;
+	}
 }
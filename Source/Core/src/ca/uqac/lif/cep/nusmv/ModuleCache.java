@@ -0,0 +1,262 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A folder storing the definitions of processor modules from one run to the
+ * next. Each definition is stored in its own file, named after a digest of
+ * the key of the module (see {@link ProcessorModule#getDefinitionKey()}).
+ * The total size of the folder is bounded: when it is exceeded, the files
+ * that have been used least recently are deleted.
+ * <p>
+ * A cache that cannot be read or written behaves as if it were empty; the
+ * definitions are then simply generated again. The name of a file also
+ * depends on {@link #s_formatVersion}, so that definitions printed by
+ * another version of this library are never reused; they are eventually
+ * evicted like any other file.
+ */
+public class ModuleCache
+{
+	/**
+	 * The extension of the files containing module definitions.
+	 */
+	/*@ non_null @*/ protected static final String s_extension = ".smv";
+
+	/**
+	 * The version of the text of module definitions. It must be increased
+	 * whenever a change to the library modifies the way a module is printed
+	 * for the same key.
+	 */
+	protected static final int s_formatVersion = 1;
+
+	/**
+	 * The folder where definitions are stored.
+	 */
+	/*@ non_null @*/ protected final Path m_folder;
+
+	/**
+	 * The maximum number of bytes taken by the files of the cache.
+	 */
+	protected final long m_maxSize;
+
+	/**
+	 * Creates a new cache.
+	 * @param folder The folder where definitions are stored. It is created if
+	 * it does not exist.
+	 * @param max_size The maximum number of bytes taken by the files of the
+	 * cache
+	 * @throws IOException If the folder cannot be created
+	 */
+	public ModuleCache(/*@ non_null @*/ Path folder, long max_size) throws IOException
+	{
+		super();
+		m_folder = folder;
+		m_maxSize = max_size;
+		Files.createDirectories(folder);
+	}
+
+	/**
+	 * Gets the definition stored for a module key, and marks it as the most
+	 * recently used.
+	 * @param key The key
+	 * @return The definition, or <tt>null</tt> if none is stored for this key
+	 */
+	/*@ null @*/ public synchronized byte[] get(/*@ non_null @*/ String key)
+	{
+		Path p = getPath(key);
+		try
+		{
+			byte[] definition = Files.readAllBytes(p);
+			Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+			return definition;
+		}
+		catch (IOException e)
+		{
+			// Not stored, or not readable
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the definition of a module, and evicts the least recently used
+	 * definitions if the cache becomes too large.
+	 * @param key The key of the module
+	 * @param definition The definition
+	 */
+	public synchronized void put(/*@ non_null @*/ String key, /*@ non_null @*/ byte[] definition)
+	{
+		Path p = getPath(key);
+		Path tmp = null;
+		try
+		{
+			// Written aside first, so that no other process reads half a file
+			tmp = Files.createTempFile(m_folder, "module", ".tmp");
+			Files.write(tmp, definition);
+			Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tmp = null;
+			evict();
+		}
+		catch (IOException e)
+		{
+			// The definition is simply not cached
+		}
+		finally
+		{
+			deleteQuietly(tmp);
+		}
+	}
+
+	/**
+	 * Deletes a file, if it exists, ignoring any error.
+	 * @param p The file, or <tt>null</tt> to do nothing
+	 */
+	protected static void deleteQuietly(/*@ null @*/ Path p)
+	{
+		if (p == null)
+		{
+			return;
+		}
+		try
+		{
+			Files.deleteIfExists(p);
+		}
+		catch (IOException e)
+		{
+			// Left behind; no file with this extension is read by the cache
+		}
+	}
+
+	/**
+	 * Gets the total number of bytes taken by the files of the cache.
+	 * @return The number of bytes
+	 */
+	public synchronized long getSize()
+	{
+		long size = 0;
+		try
+		{
+			for (Path p : getFiles())
+			{
+				size += Files.size(p);
+			}
+		}
+		catch (IOException e)
+		{
+			// Count what could be read
+		}
+		return size;
+	}
+
+	/**
+	 * Deletes the least recently used files until the size of the cache is
+	 * within its bound.
+	 * @throws IOException If the folder cannot be read
+	 */
+	protected void evict() throws IOException
+	{
+		// Sizes and times are read once, as other processes may touch the
+		// files while they are sorted
+		List<Path> files = new ArrayList<Path>();
+		final Map<Path,FileTime> times = new HashMap<Path,FileTime>();
+		Map<Path,Long> sizes = new HashMap<Path,Long>();
+		long size = 0;
+		for (Path p : getFiles())
+		{
+			try
+			{
+				times.put(p, Files.getLastModifiedTime(p));
+				sizes.put(p, Files.size(p));
+			}
+			catch (IOException e)
+			{
+				// Deleted in the meantime
+				continue;
+			}
+			files.add(p);
+			size += sizes.get(p);
+		}
+		if (size <= m_maxSize)
+		{
+			return;
+		}
+		Collections.sort(files, new Comparator<Path>() {
+			@Override
+			public int compare(Path p1, Path p2)
+			{
+				return times.get(p1).compareTo(times.get(p2));
+			}
+		});
+		for (Path p : files)
+		{
+			if (size <= m_maxSize)
+			{
+				break;
+			}
+			if (Files.deleteIfExists(p))
+			{
+				size -= sizes.get(p);
+			}
+		}
+	}
+
+	/**
+	 * Gets the files of the cache.
+	 * @return The list of files
+	 * @throws IOException If the folder cannot be read
+	 */
+	/*@ non_null @*/ protected List<Path> getFiles() throws IOException
+	{
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(m_folder, "*" + s_extension))
+		{
+			for (Path p : ds)
+			{
+				files.add(p);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Gets the file where the definition for a key is stored. The charset is
+	 * part of the name, since definitions are stored as printed bytes, and so
+	 * is the version of their format.
+	 * @param key The key
+	 * @return The file
+	 */
+	/*@ non_null @*/ protected Path getPath(/*@ non_null @*/ String key)
+	{
+		String name = ProcessorModule.getDigest((key + "\n" + Charset.defaultCharset().name() + "\n" + s_formatVersion).getBytes());
+		return m_folder.resolve(name + s_extension);
+	}
+}
@@ -35,7 +35,9 @@ public class NusmvConnector
 {
 	/**
 	 * A counter to give unique names to each new processor queue created by
-	 * this connector.
+	 * this connector. Connections are made by a single thread; only the
+	 * generation of formulas by {@link BeepBeepModel} runs in parallel, and
+	 * it creates no queue.
 	 */
 	protected int m_queueCounter;
 
@@ -67,6 +69,12 @@ public class NusmvConnector
 	 */
 	protected ScalarVariable m_resetFlag;
 
+	/**
+	 * The moment the connections of this connector were last modified, as
+	 * given by the modification clock of {@link ProcessorModule}.
+	 */
+	protected long m_lastModified;
+
 	/**
 	 * Creates a new connector instance.
 	 */
@@ -79,6 +87,41 @@ public class NusmvConnector
 		m_innerQueues = new ArrayList<ProcessorQueue>();
 		m_queueCounter = 0;
 		m_queuePrefix = "q_";
+		m_lastModified = 0;
+	}
+
+	/**
+	 * Records that the connections of this connector have just been
+	 * modified.
+	 */
+	protected void touch()
+	{
+		m_lastModified = ProcessorModule.tick();
+	}
+
+	/**
+	 * Gets the moment this connector or one of the queues it connects was
+	 * last modified.
+	 * @return The tick of the modification clock of {@link ProcessorModule}
+	 */
+	/*@ pure @*/ public long getLastModified()
+	{
+		long last = m_lastModified;
+		for (Map<Integer,ProcessorConnection> conns : m_inputConnections.values())
+		{
+			for (ProcessorConnection conn : conns.values())
+			{
+				last = Math.max(last, conn.getQueue().getLastModified());
+			}
+		}
+		for (Map<Integer,ProcessorConnection> conns : m_outputConnections.values())
+		{
+			for (ProcessorConnection conn : conns.values())
+			{
+				last = Math.max(last, conn.getQueue().getLastModified());
+			}
+		}
+		return last;
 	}
 	
 	/**
@@ -148,7 +191,8 @@ public class NusmvConnector
 			entries = new HashMap<Integer,ProcessorConnection>(p.getInputArity());
 			m_inputConnections.put(p, entries);
 		}
-		entries.put(j, conn);	
+		entries.put(j, conn);
+		touch();	
 	}
 	
 	/**
@@ -175,6 +219,7 @@ public class NusmvConnector
 			m_outputConnections.put(p, entries);
 		}
 		entries.put(i, conn);
+		touch();
 	}
 	
 	/**
@@ -200,7 +245,7 @@ public class NusmvConnector
 			}
 			ProcessorConnection conn = in_conns.get(i);
 			arguments[index++] = conn.m_pipe.m_arrayContents;
-			arguments[index++] = conn.m_pipe.m_arrayFlags;
+			arguments[index++] = conn.m_pipe.getOccupancyVariable();
 			
 		}
 		if (!m_outputConnections.containsKey(p))
@@ -217,7 +262,7 @@ public class NusmvConnector
 			ProcessorConnection conn = out_conns.get(i);
 			ProcessorQueue q = conn.getQueue();
 			arguments[index++] = q.m_arrayContents;
-			arguments[index++] = q.m_arrayFlags;
+			arguments[index++] = q.getOccupancyVariable();
 		}
 		arguments[index++] = m_resetFlag;
 		return new ModuleDomain(p, arguments);
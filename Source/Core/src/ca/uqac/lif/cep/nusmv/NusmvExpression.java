@@ -0,0 +1,894 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import ca.uqac.lif.cep.nusmv.ProcessorModule.DefineReference;
+import ca.uqac.lif.cep.nusmv.ProcessorModule.StreamedConjunction;
+import ca.uqac.lif.nusmv4j.Addition;
+import ca.uqac.lif.nusmv4j.Addition.AdditionModulo;
+import ca.uqac.lif.nusmv4j.ArrayAccess;
+import ca.uqac.lif.nusmv4j.BooleanArrayAccessCondition;
+import ca.uqac.lif.nusmv4j.BooleanVariableCondition;
+import ca.uqac.lif.nusmv4j.Conjunction;
+import ca.uqac.lif.nusmv4j.Constant;
+import ca.uqac.lif.nusmv4j.ConstantFalse;
+import ca.uqac.lif.nusmv4j.ConstantTrue;
+import ca.uqac.lif.nusmv4j.Disjunction;
+import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.Equivalence;
+import ca.uqac.lif.nusmv4j.GreaterOrEqual;
+import ca.uqac.lif.nusmv4j.GreaterThan;
+import ca.uqac.lif.nusmv4j.Implication;
+import ca.uqac.lif.nusmv4j.LessOrEqual;
+import ca.uqac.lif.nusmv4j.LessThan;
+import ca.uqac.lif.nusmv4j.Modulo;
+import ca.uqac.lif.nusmv4j.Multiplication;
+import ca.uqac.lif.nusmv4j.Multiplication.MultiplicationModulo;
+import ca.uqac.lif.nusmv4j.NaryCondition;
+import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.NusmvPrintable;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * The syntax tree of a NuSMV expression. The tree is either obtained by
+ * parsing the text of the expression, or built with {@link #of(NusmvPrintable)}
+ * by walking the conditions and terms it is made of. Both produce the same
+ * tree as the one the expression prints to; in the latter case, the leaves
+ * also keep the variable or the value they stand for.
+ * <p>
+ * The parser shares identical subtrees: within the same expression, two
+ * occurrences of the same subexpression are represented by the same
+ * object. The syntax tree is hence a directed acyclic graph, and
+ * algorithms that visit it can memoize their results by node.
+ * <p>
+ * Chains of the same associative operator (<tt>&amp;</tt>, <tt>|</tt>,
+ * <tt>+</tt>, <tt>*</tt>) produce a single node. The cell of an array
+ * accessed with a constant index, such as <tt>x[3]</tt>, is a variable of
+ * its own; the access to a computed index produces a node labeled
+ * <tt>[]</tt>. References to the next state produce a node labeled
+ * <tt>next</tt>, whichever of the forms <tt>next(x[3])</tt> or
+ * <tt>next(x)[3]</tt> is used.
+ */
+public class NusmvExpression
+{
+	/**
+	 * The kinds of nodes of a syntax tree.
+	 */
+	public enum Kind
+	{
+		/**
+		 * A variable, or an array cell accessed with a constant index.
+		 */
+		VARIABLE,
+
+		/**
+		 * A constant: an integer or one of <tt>TRUE</tt> and <tt>FALSE</tt>.
+		 */
+		CONSTANT,
+
+		/**
+		 * An operator applied to one or more operands.
+		 */
+		OPERATOR
+	}
+
+	/**
+	 * The kind of this node.
+	 */
+	/*@ non_null @*/ protected final Kind m_kind;
+
+	/**
+	 * The label of this node, which is the name of the variable, the text of
+	 * the constant or the symbol of the operator.
+	 */
+	/*@ non_null @*/ protected final String m_label;
+
+	/**
+	 * The operands of this node.
+	 */
+	/*@ non_null @*/ protected final List<NusmvExpression> m_children;
+
+	/**
+	 * A number uniquely identifying this node within the expression it
+	 * belongs to.
+	 */
+	protected final int m_id;
+
+	/**
+	 * The object this node stands for, if the node was built from the
+	 * objects of an expression: the variable of a variable node, or the
+	 * value of a constant node. This field is <tt>null</tt> for operators
+	 * and for nodes obtained by parsing text.
+	 */
+	/*@ null @*/ protected Object m_source;
+
+	/**
+	 * Creates a new node.
+	 * @param kind The kind of node
+	 * @param label The label of the node
+	 * @param children The operands of the node
+	 * @param id The number identifying the node
+	 */
+	protected NusmvExpression(Kind kind, String label, List<NusmvExpression> children, int id)
+	{
+		super();
+		m_kind = kind;
+		m_label = label;
+		m_children = children;
+		m_id = id;
+		m_source = null;
+	}
+
+	/**
+	 * Builds the syntax tree of a NuSMV object by walking the conditions and
+	 * terms it is made of, without printing it. Each object is visited only
+	 * once, even if it occurs in several places of the expression. Objects
+	 * of classes that are not known to this method are printed and parsed.
+	 * @param p The object, typically a condition or a term
+	 * @return The root of the syntax tree
+	 */
+	/*@ non_null @*/ public static NusmvExpression of(/*@ non_null @*/ NusmvPrintable p)
+	{
+		return new Builder(false).build(p);
+	}
+
+	/**
+	 * Builds the syntax tree of the formula a NuSMV object stands for. This
+	 * is the same as {@link #of(NusmvPrintable)}, except that references to
+	 * DEFINE macros are replaced by the body of the macro, so that the tree
+	 * can be evaluated without the DEFINE section of its module.
+	 * @param p The object, typically a condition or a term
+	 * @return The root of the syntax tree
+	 */
+	/*@ non_null @*/ public static NusmvExpression expand(/*@ non_null @*/ NusmvPrintable p)
+	{
+		return new Builder(true).build(p);
+	}
+
+	/**
+	 * Parses the printed form of a NuSMV object.
+	 * @param p The object, typically a condition or a term
+	 * @return The root of the syntax tree
+	 * @throws IllegalArgumentException If the expression cannot be parsed
+	 */
+	/*@ non_null @*/ public static NusmvExpression parse(/*@ non_null @*/ NusmvPrintable p)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		p.print(ps);
+		ps.flush();
+		return parse(baos.toString());
+	}
+
+	/**
+	 * Parses a NuSMV expression given as text.
+	 * @param expression The expression
+	 * @return The root of the syntax tree
+	 * @throws IllegalArgumentException If the expression cannot be parsed
+	 */
+	/*@ non_null @*/ public static NusmvExpression parse(/*@ non_null @*/ String expression)
+	{
+		Parser p = new Parser(expression);
+		NusmvExpression e = p.parse();
+		if (p.hasMoreTokens())
+		{
+			throw new IllegalArgumentException("Unexpected token " + p.peek() + " in expression");
+		}
+		return e;
+	}
+
+	/**
+	 * Gets the kind of this node.
+	 * @return The kind
+	 */
+	/*@ pure non_null @*/ public Kind getKind()
+	{
+		return m_kind;
+	}
+
+	/**
+	 * Gets the label of this node.
+	 * @return The label
+	 */
+	/*@ pure non_null @*/ public String getLabel()
+	{
+		return m_label;
+	}
+
+	/**
+	 * Gets the operands of this node.
+	 * @return The list of operands, which is empty for variables and
+	 * constants
+	 */
+	/*@ pure non_null @*/ public List<NusmvExpression> getChildren()
+	{
+		return m_children;
+	}
+
+	/**
+	 * Gets the number uniquely identifying this node within its expression.
+	 * @return The number
+	 */
+	/*@ pure @*/ public int getId()
+	{
+		return m_id;
+	}
+
+	/**
+	 * Gets the variable standing for this node, if the node was built from
+	 * the objects of an expression. For the cell of an array, this is the
+	 * array.
+	 * @return The variable, or <tt>null</tt> if the node is not a variable or
+	 * was obtained by parsing text
+	 */
+	/*@ pure null @*/ public Variable getVariable()
+	{
+		return m_kind == Kind.VARIABLE ? (Variable) m_source : null;
+	}
+
+	/**
+	 * Gets the value of this node, if it is a constant built from the
+	 * objects of an expression.
+	 * @return The value, or <tt>null</tt> if the node is not a constant or
+	 * was obtained by parsing text
+	 */
+	/*@ pure null @*/ public Object getValue()
+	{
+		return m_kind == Kind.CONSTANT ? m_source : null;
+	}
+
+	/**
+	 * Determines if this node is an operator.
+	 * @return <tt>true</tt> if the node is an operator, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isOperator()
+	{
+		return m_kind == Kind.OPERATOR;
+	}
+
+	@Override
+	public String toString()
+	{
+		if (m_children.isEmpty())
+		{
+			return m_label;
+		}
+		StringBuilder out = new StringBuilder();
+		out.append(m_label).append("(");
+		for (int i = 0; i < m_children.size(); i++)
+		{
+			if (i > 0)
+			{
+				out.append(",");
+			}
+			out.append(m_children.get(i));
+		}
+		out.append(")");
+		return out.toString();
+	}
+
+	/**
+	 * A recursive descent parser for NuSMV expressions. Operators are handled
+	 * with the precedence defined in the NuSMV manual, from the loosest
+	 * (<tt>-&gt;</tt>) to the tightest (<tt>*</tt>, <tt>/</tt> and
+	 * <tt>mod</tt>).
+	 */
+	protected static class Parser
+	{
+		/**
+		 * The binary operators, grouped by precedence level.
+		 */
+		/*@ non_null @*/ protected static final String[][] s_levels = {
+				{"->"},
+				{"<->"},
+				{"|", "xor", "xnor"},
+				{"&"},
+				{"=", "!=", "<", "<=", ">", ">="},
+				{"+", "-"},
+				{"*", "/", "mod"}};
+
+		/**
+		 * The operators whose consecutive operands are grouped into a single
+		 * node.
+		 */
+		/*@ non_null @*/ protected static final Set<String> s_associative = new HashSet<String>(List.of("&", "|", "+", "*"));
+
+		/**
+		 * The tokens of the expression.
+		 */
+		/*@ non_null @*/ protected final List<String> m_tokens;
+
+		/**
+		 * The position of the next token to read.
+		 */
+		protected int m_position;
+
+		/**
+		 * The nodes created so far, indexed by a key made of their label and
+		 * the identifiers of their children.
+		 */
+		/*@ non_null @*/ protected final Map<String,NusmvExpression> m_nodes;
+
+		/**
+		 * Creates a new parser.
+		 * @param expression The expression to parse
+		 */
+		protected Parser(String expression)
+		{
+			this(expression, new HashMap<String,NusmvExpression>());
+		}
+
+		/**
+		 * Creates a new parser adding its nodes to an existing set of nodes.
+		 * @param expression The expression to parse
+		 * @param nodes The nodes created so far
+		 */
+		protected Parser(String expression, Map<String,NusmvExpression> nodes)
+		{
+			super();
+			m_tokens = tokenize(expression);
+			m_position = 0;
+			m_nodes = nodes;
+		}
+
+		/**
+		 * Parses an expression, starting at the current token.
+		 * @return The root of the expression
+		 */
+		protected NusmvExpression parse()
+		{
+			return parseLevel(0);
+		}
+
+		protected boolean hasMoreTokens()
+		{
+			return m_position < m_tokens.size();
+		}
+
+		protected String peek()
+		{
+			return hasMoreTokens() ? m_tokens.get(m_position) : null;
+		}
+
+		protected NusmvExpression parseLevel(int level)
+		{
+			if (level == s_levels.length)
+			{
+				return parseUnary();
+			}
+			NusmvExpression left = parseLevel(level + 1);
+			if (level == 0)
+			{
+				// Implication is right-associative
+				if ("->".equals(peek()))
+				{
+					m_position++;
+					NusmvExpression right = parseLevel(0);
+					return node("->", List.of(left, right));
+				}
+				return left;
+			}
+			String op = operatorAt(level);
+			while (op != null)
+			{
+				List<NusmvExpression> operands = new ArrayList<NusmvExpression>();
+				operands.add(left);
+				do
+				{
+					m_position++;
+					operands.add(parseLevel(level + 1));
+				} while (s_associative.contains(op) && op.equals(peek()));
+				left = node(op, operands);
+				op = operatorAt(level);
+			}
+			return left;
+		}
+
+		/**
+		 * Gets the operator at the current position, if it belongs to a given
+		 * precedence level.
+		 * @param level The level
+		 * @return The operator, or <tt>null</tt> if the current token is not
+		 * an operator of that level
+		 */
+		protected String operatorAt(int level)
+		{
+			String t = peek();
+			for (String op : s_levels[level])
+			{
+				if (op.equals(t))
+				{
+					return op;
+				}
+			}
+			return null;
+		}
+
+		protected NusmvExpression parseUnary()
+		{
+			String t = peek();
+			if ("!".equals(t) || "-".equals(t))
+			{
+				m_position++;
+				return node(t, List.of(parseUnary()));
+			}
+			return parsePrimary();
+		}
+
+		protected NusmvExpression parsePrimary()
+		{
+			String t = next();
+			if (t.equals("("))
+			{
+				NusmvExpression n = parse();
+				expect(")");
+				return n;
+			}
+			if (t.equals("next") && "(".equals(peek()))
+			{
+				m_position++;
+				NusmvExpression n = parse();
+				expect(")");
+				if (n.m_kind == Kind.VARIABLE && "[".equals(peek()))
+				{
+					// Form next(x)[i]
+					n = parseIndex(n.m_label);
+				}
+				return node("next", List.of(n));
+			}
+			if (t.equals("TRUE") || t.equals("FALSE") || Character.isDigit(t.charAt(0)))
+			{
+				return leaf(Kind.CONSTANT, t);
+			}
+			if (!isIdentifierStart(t.charAt(0)))
+			{
+				throw new IllegalArgumentException("Unexpected token " + t + " in expression");
+			}
+			if (!"[".equals(peek()))
+			{
+				return leaf(Kind.VARIABLE, t);
+			}
+			return parseIndex(t);
+		}
+
+		/**
+		 * Parses the index of an access to an array cell.
+		 * @param name The name of the array
+		 * @return The node representing the access
+		 */
+		protected NusmvExpression parseIndex(String name)
+		{
+			expect("[");
+			String index = peek();
+			if (index != null && Character.isDigit(index.charAt(0)) && "]".equals(lookAhead(1)))
+			{
+				m_position += 2;
+				return leaf(Kind.VARIABLE, name + "[" + index + "]");
+			}
+			NusmvExpression n = parse();
+			expect("]");
+			return node("[]", List.of(leaf(Kind.VARIABLE, name), n));
+		}
+
+		protected String next()
+		{
+			if (!hasMoreTokens())
+			{
+				throw new IllegalArgumentException("Unexpected end of expression");
+			}
+			return m_tokens.get(m_position++);
+		}
+
+		protected String lookAhead(int offset)
+		{
+			int pos = m_position + offset;
+			return pos < m_tokens.size() ? m_tokens.get(pos) : null;
+		}
+
+		protected void expect(String token)
+		{
+			String t = next();
+			if (!t.equals(token))
+			{
+				throw new IllegalArgumentException("Expected " + token + ", found " + t);
+			}
+		}
+
+		/**
+		 * Gets the leaf with a given label, creating it if it does not exist.
+		 * @param kind The kind of leaf
+		 * @param label The label of the leaf
+		 * @return The leaf
+		 */
+		protected NusmvExpression leaf(Kind kind, String label)
+		{
+			return intern(kind.name() + ":" + label, kind, label, Collections.emptyList());
+		}
+
+		/**
+		 * Gets the operator node with a given label and children, creating it
+		 * if it does not exist.
+		 * @param label The operator of the node
+		 * @param children The children of the node
+		 * @return The node
+		 */
+		protected NusmvExpression node(String label, List<NusmvExpression> children)
+		{
+			StringBuilder key = new StringBuilder(label);
+			for (NusmvExpression n : children)
+			{
+				key.append(',').append(n.m_id);
+			}
+			return intern(key.toString(), Kind.OPERATOR, label, children);
+		}
+
+		protected NusmvExpression intern(String key, Kind kind, String label, List<NusmvExpression> children)
+		{
+			NusmvExpression n = m_nodes.get(key);
+			if (n == null)
+			{
+				n = new NusmvExpression(kind, label, children, m_nodes.size());
+				m_nodes.put(key, n);
+			}
+			return n;
+		}
+
+		/**
+		 * Splits the text of an expression into tokens.
+		 * @param s The text
+		 * @return The list of tokens
+		 */
+		protected static List<String> tokenize(String s)
+		{
+			List<String> tokens = new ArrayList<String>();
+			int i = 0;
+			while (i < s.length())
+			{
+				char c = s.charAt(i);
+				if (Character.isWhitespace(c))
+				{
+					i++;
+				}
+				else if (isIdentifierStart(c))
+				{
+					int j = i + 1;
+					while (j < s.length() && isIdentifierPart(s.charAt(j)))
+					{
+						j++;
+					}
+					tokens.add(s.substring(i, j));
+					i = j;
+				}
+				else if (Character.isDigit(c))
+				{
+					int j = i + 1;
+					while (j < s.length() && Character.isDigit(s.charAt(j)))
+					{
+						j++;
+					}
+					tokens.add(s.substring(i, j));
+					i = j;
+				}
+				else if (s.startsWith("<->", i))
+				{
+					tokens.add("<->");
+					i += 3;
+				}
+				else if (s.startsWith("->", i) || s.startsWith("!=", i) || s.startsWith("<=", i) || s.startsWith(">=", i))
+				{
+					tokens.add(s.substring(i, i + 2));
+					i += 2;
+				}
+				else
+				{
+					tokens.add(Character.toString(c));
+					i++;
+				}
+			}
+			return tokens;
+		}
+
+		protected static boolean isIdentifierStart(char c)
+		{
+			return Character.isLetter(c) || c == '_';
+		}
+
+		protected static boolean isIdentifierPart(char c)
+		{
+			return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.';
+		}
+	}
+
+	/**
+	 * Builds syntax trees by walking the objects of an expression. The nodes
+	 * are created the same way as by the parser, so that the tree is the one
+	 * obtained by parsing the printed expression: an n-ary condition or
+	 * term produces a single node, unless it has fewer than two operands.
+	 */
+	protected static class Builder extends Parser
+	{
+		/**
+		 * The nodes already built for each object, compared by identity.
+		 */
+		/*@ non_null @*/ protected final Map<Object,NusmvExpression> m_built;
+
+		/**
+		 * Whether references to DEFINE macros are replaced by their body.
+		 */
+		protected final boolean m_expandMacros;
+
+		/**
+		 * Creates a new builder.
+		 * @param expand_macros Whether references to DEFINE macros are
+		 * replaced by their body
+		 */
+		protected Builder(boolean expand_macros)
+		{
+			super("");
+			m_built = new IdentityHashMap<Object,NusmvExpression>();
+			m_expandMacros = expand_macros;
+		}
+
+		/**
+		 * Builds the node for an object, or retrieves it if the object has
+		 * already been visited.
+		 * @param p The object
+		 * @return The node
+		 */
+		protected NusmvExpression build(NusmvPrintable p)
+		{
+			NusmvExpression n = m_built.get(p);
+			if (n == null)
+			{
+				n = translate(p);
+				m_built.put(p, n);
+			}
+			return n;
+		}
+
+		protected NusmvExpression translate(NusmvPrintable p)
+		{
+			if (p instanceof DefineReference)
+			{
+				DefineReference r = (DefineReference) p;
+				if (m_expandMacros || !r.isPrintedByName())
+				{
+					return build(r.getBody());
+				}
+			}
+			if (p instanceof StreamedConjunction)
+			{
+				List<NusmvExpression> parts = new ArrayList<NusmvExpression>();
+				for (Consumer<Conjunction> part : ((StreamedConjunction) p).m_parts)
+				{
+					parts.add(build(StreamedConjunction.generate(part)));
+				}
+				return operator("&", parts, "TRUE");
+			}
+			if (p instanceof ConstantTrue || p instanceof ConstantFalse)
+			{
+				return constant(p instanceof ConstantTrue);
+			}
+			if (p instanceof Conjunction)
+			{
+				return operator("&", operands(((NaryCondition) p).getOperands()), "TRUE");
+			}
+			if (p instanceof Disjunction)
+			{
+				return operator("|", operands(((NaryCondition) p).getOperands()), "FALSE");
+			}
+			if (p instanceof Negation)
+			{
+				return node("!", List.of(build(((Negation) p).getOperands().get(0))));
+			}
+			if (p instanceof Implication)
+			{
+				return implication(operands(((Implication) p).getOperands()), 0);
+			}
+			if (p instanceof Equivalence)
+			{
+				List<NusmvExpression> ops = operands(((Equivalence) p).getOperands());
+				NusmvExpression left = ops.get(0);
+				for (int i = 1; i < ops.size(); i++)
+				{
+					left = node("<->", List.of(left, ops.get(i)));
+				}
+				return left;
+			}
+			if (p instanceof Equality)
+			{
+				return node("=", List.of(build(((Equality) p).getLeft()), build(((Equality) p).getRight())));
+			}
+			if (p instanceof LessThan)
+			{
+				return node("<", List.of(build(((LessThan) p).getLeft()), build(((LessThan) p).getRight())));
+			}
+			if (p instanceof LessOrEqual)
+			{
+				return node("<=", List.of(build(((LessOrEqual) p).getLeft()), build(((LessOrEqual) p).getRight())));
+			}
+			if (p instanceof GreaterThan)
+			{
+				return node(">", List.of(build(((GreaterThan) p).getLeft()), build(((GreaterThan) p).getRight())));
+			}
+			if (p instanceof GreaterOrEqual)
+			{
+				return node(">=", List.of(build(((GreaterOrEqual) p).getLeft()), build(((GreaterOrEqual) p).getRight())));
+			}
+			if (p instanceof AdditionModulo)
+			{
+				NusmvExpression sum = operator("+", operands(((Addition) p).getOperands()), "0");
+				return node("mod", List.of(sum, constant(((AdditionModulo) p).getModulus())));
+			}
+			if (p instanceof Addition)
+			{
+				return operator("+", operands(((Addition) p).getOperands()), "0");
+			}
+			if (p instanceof MultiplicationModulo)
+			{
+				NusmvExpression product = operator("*", operands(((Multiplication) p).getOperands()), "1");
+				return node("mod", List.of(product, constant(((MultiplicationModulo) p).getModulus())));
+			}
+			if (p instanceof Multiplication)
+			{
+				return operator("*", operands(((Multiplication) p).getOperands()), "1");
+			}
+			if (p instanceof Modulo)
+			{
+				return node("mod", List.of(build(((Modulo) p).getLeft()), build(((Modulo) p).getRight())));
+			}
+			if (p instanceof Constant)
+			{
+				return constant(((Constant) p).getValue());
+			}
+			if (p instanceof ScalarVariable)
+			{
+				ScalarVariable v = (ScalarVariable) p;
+				return variable(v.getName(), v, v.isNext());
+			}
+			if (p instanceof ArrayAccess)
+			{
+				ArrayAccess a = (ArrayAccess) p;
+				return variable(a.getVariable().getName() + "[" + a.getIndex() + "]", a.getVariable(), a.getVariable().isNext());
+			}
+			if (p instanceof BooleanArrayAccessCondition)
+			{
+				return build(((BooleanArrayAccessCondition) p).getAccess());
+			}
+			if (p instanceof BooleanVariableCondition)
+			{
+				return build(((BooleanVariableCondition) p).getVariable());
+			}
+			// Any other object is read from its printed form
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			PrettyPrintStream ps = new PrettyPrintStream(baos);
+			p.print(ps);
+			ps.flush();
+			Parser parser = new Parser(baos.toString(), m_nodes);
+			NusmvExpression e = parser.parse();
+			if (parser.hasMoreTokens())
+			{
+				throw new IllegalArgumentException("Unexpected token " + parser.peek() + " in expression");
+			}
+			return e;
+		}
+
+		protected List<NusmvExpression> operands(List<? extends NusmvPrintable> terms)
+		{
+			List<NusmvExpression> nodes = new ArrayList<NusmvExpression>(terms.size());
+			for (NusmvPrintable t : terms)
+			{
+				nodes.add(build(t));
+			}
+			return nodes;
+		}
+
+		/**
+		 * Gets the node for an n-ary operator.
+		 * @param label The operator
+		 * @param operands The nodes of the operands
+		 * @param empty The constant the operator stands for when it has no
+		 * operand
+		 * @return The node
+		 */
+		protected NusmvExpression operator(String label, List<NusmvExpression> operands, String empty)
+		{
+			if (operands.isEmpty())
+			{
+				return leaf(Kind.CONSTANT, empty);
+			}
+			if (operands.size() == 1)
+			{
+				return operands.get(0);
+			}
+			return node(label, operands);
+		}
+
+		/**
+		 * Gets the node for a chain of implications, which associates to the
+		 * right.
+		 * @param operands The nodes of the operands
+		 * @param from The position of the first operand of the chain
+		 * @return The node
+		 */
+		protected NusmvExpression implication(List<NusmvExpression> operands, int from)
+		{
+			if (from == operands.size() - 1)
+			{
+				return operands.get(from);
+			}
+			return node("->", List.of(operands.get(from), implication(operands, from + 1)));
+		}
+
+		/**
+		 * Gets the node for a constant.
+		 * @param value The value of the constant
+		 * @return The node
+		 */
+		protected NusmvExpression constant(Object value)
+		{
+			String label = value instanceof Boolean ? (((Boolean) value) ? "TRUE" : "FALSE") : value.toString();
+			return source(leaf(Kind.CONSTANT, label), value);
+		}
+
+		/**
+		 * Gets the node for a variable or for an array cell accessed with a
+		 * constant index.
+		 * @param label The name of the variable or of the cell
+		 * @param v The variable, or the array
+		 * @param next Whether the variable is taken in the next state
+		 * @return The node
+		 */
+		protected NusmvExpression variable(String label, Variable v, boolean next)
+		{
+			NusmvExpression n = source(leaf(Kind.VARIABLE, label), v);
+			return next ? node("next", List.of(n)) : n;
+		}
+
+		/**
+		 * Records the object a leaf stands for, unless the leaf already
+		 * stands for one.
+		 * @param n The leaf
+		 * @param o The object
+		 * @return The leaf
+		 */
+		protected static NusmvExpression source(NusmvExpression n, Object o)
+		{
+			if (n.m_source == null)
+			{
+				n.m_source = o;
+			}
+			return n;
+		}
+	}
+}
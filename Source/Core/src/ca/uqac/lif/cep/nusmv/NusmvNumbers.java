@@ -30,6 +30,7 @@ import ca.uqac.lif.nusmv4j.Equality;
 import ca.uqac.lif.nusmv4j.Equivalence;
 import ca.uqac.lif.nusmv4j.GreaterOrEqual;
 import ca.uqac.lif.nusmv4j.GreaterThan;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.LessOrEqual;
 import ca.uqac.lif.nusmv4j.Modulo;
 import ca.uqac.lif.nusmv4j.Multiplication.MultiplicationModulo;
@@ -70,6 +71,24 @@ public class NusmvNumbers
 		{
 			return m_domain;
 		}
+		
+		/**
+		 * Gets the range of values of a modular operation whose result, before
+		 * the modulo is applied, lies in a given interval. The interval is
+		 * kept as is if the modulo has no effect on it; otherwise, the result
+		 * can be any value of the domain.
+		 * @param lower The lower bound of the result
+		 * @param upper The upper bound of the result
+		 * @return The range
+		 */
+		/*@ non_null @*/ protected IntegerRange getModuloRange(int lower, int upper)
+		{
+			if (upper < m_domain.getSize())
+			{
+				return new IntegerRange(lower, upper);
+			}
+			return new IntegerRange(0, m_domain.getSize() - 1);
+		}
 	}
 	
 	/**
@@ -122,6 +141,16 @@ public class NusmvNumbers
 			super(d);
 		}
 		
+		@SuppressWarnings("unchecked")
+		@Override
+		public Term<?> getTerm(Term<?> x, Term<?> y)
+		{
+			AdditionModulo plus = new AdditionModulo(m_domain.getSize());
+			plus.add((Term<Number>) x);
+			plus.add((Term<Number>) y);
+			return plus;
+		}
+		
 		@SuppressWarnings("unchecked")
 		@Override
 		public Condition getCondition(Term<?> x, Term<?> y, Term<?> z)
@@ -133,6 +162,16 @@ public class NusmvNumbers
 			return eq;
 		}
 		
+		@Override
+		public IntegerRange getValueRange(IntegerRange x, IntegerRange y)
+		{
+			if (x == null || y == null)
+			{
+				return null;
+			}
+			return getModuloRange(x.getLowerBound() + y.getLowerBound(), x.getUpperBound() + y.getUpperBound());
+		}
+		
 		@Override
 		public String toString()
 		{
@@ -157,6 +196,16 @@ public class NusmvNumbers
 			super(d);
 		}
 		
+		@SuppressWarnings("unchecked")
+		@Override
+		public Term<?> getTerm(Term<?> x, Term<?> y)
+		{
+			MultiplicationModulo mul = new MultiplicationModulo(m_domain.getSize());
+			mul.add((Term<Number>) x);
+			mul.add((Term<Number>) y);
+			return mul;
+		}
+		
 		@SuppressWarnings("unchecked")
 		@Override
 		public Condition getCondition(Term<?> x, Term<?> y, Term<?> z)
@@ -168,6 +217,16 @@ public class NusmvNumbers
 			return eq;
 		}
 		
+		@Override
+		public IntegerRange getValueRange(IntegerRange x, IntegerRange y)
+		{
+			if (x == null || y == null)
+			{
+				return null;
+			}
+			return getModuloRange(x.getLowerBound() * y.getLowerBound(), x.getUpperBound() * y.getUpperBound());
+		}
+		
 		@Override
 		public String toString()
 		{
@@ -359,6 +418,16 @@ public class NusmvNumbers
 			return or;
 		}
 		
+		@Override
+		public IntegerRange getValueRange(IntegerRange x, IntegerRange y)
+		{
+			if (x == null || y == null)
+			{
+				return null;
+			}
+			return new IntegerRange(Math.max(x.getLowerBound(), y.getLowerBound()), Math.max(x.getUpperBound(), y.getUpperBound()));
+		}
+		
 		@Override
 		public String toString()
 		{
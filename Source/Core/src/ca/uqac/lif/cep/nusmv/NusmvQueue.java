@@ -63,6 +63,16 @@ public class NusmvQueue
 		return m_arrayFlags;
 	}
 	
+	/**
+	 * Gets the variable telling which cells of this queue are occupied, and
+	 * which is declared in the modules that use the queue.
+	 * @return The variable
+	 */
+	/*@ pure non_null @*/ public Variable getOccupancyVariable()
+	{
+		return m_arrayFlags;
+	}
+	
 	/**
 	 * Gets the list of all variables modeling this queue.
 	 * @return The list of variables
@@ -70,7 +80,7 @@ public class NusmvQueue
 	/*@ pure non_null @*/ public List<Variable> getVariables()
 	{
 		List<Variable> vars = new ArrayList<Variable>();
-		vars.add(m_arrayFlags);
+		vars.add(getOccupancyVariable());
 		return vars;
 	}
 }
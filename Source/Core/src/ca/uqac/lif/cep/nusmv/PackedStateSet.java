@@ -0,0 +1,267 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+/**
+ * A set of states packed into fixed-length arrays of <tt>long</tt>, which
+ * can be filled from several threads at once. The states are stored one
+ * after the other in flat arrays of <tt>long</tt>, with open addressing
+ * and linear probing, so that the set holds no object per state. The set
+ * is split into stripes, chosen from the hash code of a state, each
+ * stripe having its own table and its own lock; threads adding states to
+ * different stripes do not wait for each other.
+ */
+public class PackedStateSet
+{
+	/**
+	 * The number of <tt>long</tt> in a state.
+	 */
+	protected final int m_width;
+
+	/**
+	 * The stripes of the set.
+	 */
+	/*@ non_null @*/ protected final Stripe[] m_stripes;
+
+	/**
+	 * Creates a new empty set.
+	 * @param width The number of <tt>long</tt> in a state
+	 * @param num_stripes The number of stripes; it is rounded up to a power
+	 * of two
+	 */
+	public PackedStateSet(int width, int num_stripes)
+	{
+		super();
+		m_width = width;
+		int n = 1;
+		while (n < num_stripes)
+		{
+			n *= 2;
+		}
+		m_stripes = new Stripe[n];
+		for (int i = 0; i < n; i++)
+		{
+			m_stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Adds a state to the set.
+	 * @param state The state
+	 * @return <tt>true</tt> if the state was not already in the set
+	 */
+	public boolean add(/*@ non_null @*/ long[] state)
+	{
+		int h = hash(state);
+		Stripe s = m_stripes[h & (m_stripes.length - 1)];
+		synchronized (s)
+		{
+			return s.add(state, h >>> 8);
+		}
+	}
+
+	/**
+	 * Determines if a state is in the set.
+	 * @param state The state
+	 * @return <tt>true</tt> if the state is in the set
+	 */
+	public boolean contains(/*@ non_null @*/ long[] state)
+	{
+		int h = hash(state);
+		Stripe s = m_stripes[h & (m_stripes.length - 1)];
+		synchronized (s)
+		{
+			return s.find(state, h >>> 8) >= 0;
+		}
+	}
+
+	/**
+	 * Gets the number of states in the set.
+	 * @return The number of states
+	 */
+	public long size()
+	{
+		long size = 0;
+		for (Stripe s : m_stripes)
+		{
+			synchronized (s)
+			{
+				size += s.m_size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Computes the hash code of a state.
+	 * @param state The state
+	 * @return The hash code
+	 */
+	protected static int hash(long[] state)
+	{
+		long h = 0x9E3779B97F4A7C15L;
+		for (long w : state)
+		{
+			h ^= w;
+			h *= 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * A table of states protected by a single lock.
+	 */
+	protected class Stripe
+	{
+		/**
+		 * The states, one after the other.
+		 */
+		/*@ non_null @*/ protected long[] m_table;
+
+		/**
+		 * A bit mask telling which entries of the table hold a state.
+		 */
+		/*@ non_null @*/ protected long[] m_used;
+
+		/**
+		 * The number of entries of the table; always a power of two.
+		 */
+		protected int m_capacity;
+
+		/**
+		 * The number of states in the table.
+		 */
+		protected int m_size;
+
+		protected Stripe()
+		{
+			super();
+			allocate(16);
+		}
+
+		/**
+		 * Replaces the table by an empty table.
+		 * @param capacity The number of entries of the new table
+		 */
+		protected void allocate(int capacity)
+		{
+			m_capacity = capacity;
+			m_table = new long[capacity * m_width];
+			m_used = new long[(capacity + 63) / 64];
+			m_size = 0;
+		}
+
+		/**
+		 * Finds the entry of a state.
+		 * @param state The state
+		 * @param h The hash code of the state
+		 * @return The entry, or <tt>-1 - e</tt> if the state is absent, where
+		 * <tt>e</tt> is the free entry where it would go
+		 */
+		protected int find(long[] state, int h)
+		{
+			int e = h & (m_capacity - 1);
+			while (isUsed(e))
+			{
+				if (matches(e, state))
+				{
+					return e;
+				}
+				e = (e + 1) & (m_capacity - 1);
+			}
+			return -1 - e;
+		}
+
+		/**
+		 * Adds a state to the table, growing it when it is more than half
+		 * full.
+		 * @param state The state
+		 * @param h The hash code of the state
+		 * @return <tt>true</tt> if the state was not already in the table
+		 */
+		protected boolean add(long[] state, int h)
+		{
+			int e = find(state, h);
+			if (e >= 0)
+			{
+				return false;
+			}
+			put(-1 - e, state);
+			if (2 * m_size > m_capacity)
+			{
+				long[] table = m_table;
+				long[] used = m_used;
+				int capacity = m_capacity;
+				allocate(capacity * 2);
+				long[] entry = new long[m_width];
+				for (int i = 0; i < capacity; i++)
+				{
+					if ((used[i >>> 6] & (1L << i)) != 0)
+					{
+						System.arraycopy(table, i * m_width, entry, 0, m_width);
+						put(-1 - find(entry, hash(entry) >>> 8), entry);
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Writes a state into a free entry.
+		 * @param e The entry
+		 * @param state The state
+		 */
+		protected void put(int e, long[] state)
+		{
+			System.arraycopy(state, 0, m_table, e * m_width, m_width);
+			m_used[e >>> 6] |= 1L << e;
+			m_size++;
+		}
+
+		/**
+		 * Determines if an entry holds a state.
+		 * @param e The entry
+		 * @return <tt>true</tt> if the entry holds a state
+		 */
+		protected boolean isUsed(int e)
+		{
+			return (m_used[e >>> 6] & (1L << e)) != 0;
+		}
+
+		/**
+		 * Determines if an entry holds a given state.
+		 * @param e The entry
+		 * @param state The state
+		 * @return <tt>true</tt> if the entry holds the state
+		 */
+		protected boolean matches(int e, long[] state)
+		{
+			int offset = e * m_width;
+			for (int i = 0; i < m_width; i++)
+			{
+				if (m_table[offset + i] != state[i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
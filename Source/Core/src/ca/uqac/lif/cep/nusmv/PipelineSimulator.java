@@ -0,0 +1,441 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.cep.nusmv.NusmvConnector.ProcessorConnection;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * Computes the successive states of a pipeline for a given sequence of
+ * input events, without calling NuSMV. At each step, the modules of the
+ * pipeline are visited in the order of their connections. The contents of
+ * the front porches of a module are those of the queues it is connected
+ * to; its next state is obtained by solving its initial condition (at the
+ * first step) or its transition relation (at the following steps) with
+ * {@link CdclSolver}, and the contents of its back porches are copied to
+ * the queues of its outputs. The modules of a container nested in the
+ * pipeline are visited as if they were part of the pipeline.
+ * <p>
+ * The simulator is meant for deterministic modules: if a module has no
+ * successor state, or more than one, it throws an
+ * {@link IllegalStateException}. The formulas of the modules are built
+ * once, when the simulator is created, with
+ * {@link ProcessorModule#s_defines}, {@link ProcessorModule#s_assign} and
+ * {@link ProcessorModule#s_invar} temporarily turned off, so that they
+ * contain the whole behavior of each module.
+ */
+public class PipelineSimulator
+{
+	/**
+	 * The pipeline to simulate.
+	 */
+	/*@ non_null @*/ protected final ContainerModule m_pipeline;
+
+	/**
+	 * The simulated modules, in an order where each module comes after the
+	 * modules producing its inputs.
+	 */
+	/*@ non_null @*/ protected final List<ModuleState> m_modules;
+
+	/**
+	 * The current state of each module, in the order of
+	 * {@link #m_modules}; the states are <tt>null</tt> before the first
+	 * step.
+	 */
+	/*@ non_null @*/ protected final StateVector[] m_states;
+
+	/**
+	 * The number of steps computed so far.
+	 */
+	protected int m_steps;
+
+	/**
+	 * Creates a simulator for the pipeline of a model.
+	 * @param m The model
+	 */
+	public PipelineSimulator(/*@ non_null @*/ BeepBeepModel m)
+	{
+		this(m.getPipeline());
+	}
+
+	/**
+	 * Creates a simulator for a pipeline.
+	 * @param pipeline The pipeline
+	 * @throws IllegalArgumentException If some module of the pipeline is
+	 * not connected to the inputs of the pipeline
+	 */
+	public PipelineSimulator(/*@ non_null @*/ ContainerModule pipeline)
+	{
+		super();
+		m_pipeline = pipeline;
+		m_modules = getModules(pipeline);
+		m_states = new StateVector[m_modules.size()];
+		m_steps = 0;
+	}
+
+	/**
+	 * Gets the modules of a pipeline, in an order where each module comes
+	 * after the modules producing its inputs.
+	 * @param pipeline The pipeline
+	 * @return The modules
+	 * @throws IllegalArgumentException If some module of the pipeline is
+	 * not connected to the inputs of the pipeline
+	 */
+	/*@ non_null @*/ protected static List<ModuleState> getModules(/*@ non_null @*/ ContainerModule pipeline)
+	{
+		List<ModuleState> modules = new ArrayList<ModuleState>();
+		// Only this thread generates plain formulas
+		Integer flags = ProcessorModule.setThreadFlags(ProcessorModule.getFlags() & ProcessorModule.FLAG_SIMPLIFY);
+		try
+		{
+			sortModules(pipeline, new HashMap<ProcessorQueue,ProcessorQueue>(), modules);
+		}
+		finally
+		{
+			ProcessorModule.setThreadFlags(flags);
+		}
+		return modules;
+	}
+
+	/**
+	 * Adds the modules of a container to a list, each module coming after
+	 * the modules producing its inputs.
+	 * @param container The container
+	 * @param aliases A map associating the porches of the container to the
+	 * queues they are connected to in the enclosing pipeline
+	 * @param modules The list where modules are added
+	 */
+	protected static void sortModules(ContainerModule container, Map<ProcessorQueue,ProcessorQueue> aliases, List<ModuleState> modules)
+	{
+		Set<ProcessorQueue> ready = new HashSet<ProcessorQueue>();
+		for (ProcessorQueue q : container.getInputQueues())
+		{
+			ready.add(resolve(aliases, q));
+		}
+		Set<ProcessorModule> remaining = new LinkedHashSet<ProcessorModule>(container.m_contents.keySet());
+		boolean progress = true;
+		while (progress && !remaining.isEmpty())
+		{
+			progress = false;
+			for (ProcessorModule mod : new ArrayList<ProcessorModule>(remaining))
+			{
+				Map<Integer,ProcessorConnection> in_conns = container.m_connector.m_inputConnections.get(mod);
+				Map<Integer,ProcessorConnection> out_conns = container.m_connector.m_outputConnections.get(mod);
+				ProcessorQueue[] inputs = new ProcessorQueue[mod.getInputArity()];
+				ProcessorQueue[] outputs = new ProcessorQueue[mod.getOutputArity()];
+				boolean is_ready = true;
+				for (int j = 0; j < inputs.length && is_ready; j++)
+				{
+					inputs[j] = in_conns == null || in_conns.get(j) == null ? null : resolve(aliases, in_conns.get(j).getQueue());
+					is_ready = inputs[j] != null && ready.contains(inputs[j]);
+				}
+				if (!is_ready)
+				{
+					continue;
+				}
+				for (int i = 0; i < outputs.length; i++)
+				{
+					outputs[i] = out_conns == null || out_conns.get(i) == null ? null : resolve(aliases, out_conns.get(i).getQueue());
+					if (outputs[i] != null)
+					{
+						ready.add(outputs[i]);
+					}
+				}
+				if (mod instanceof ContainerModule)
+				{
+					ContainerModule inner = (ContainerModule) mod;
+					Map<ProcessorQueue,ProcessorQueue> inner_aliases = new HashMap<ProcessorQueue,ProcessorQueue>(aliases);
+					for (int j = 0; j < inputs.length; j++)
+					{
+						inner_aliases.put(inner.getInputQueues()[j], inputs[j]);
+					}
+					for (int i = 0; i < outputs.length; i++)
+					{
+						if (outputs[i] != null)
+						{
+							inner_aliases.put(inner.getOutputQueues()[i], outputs[i]);
+						}
+					}
+					sortModules(inner, inner_aliases, modules);
+				}
+				else
+				{
+					modules.add(new ModuleState(mod, inputs, outputs));
+				}
+				remaining.remove(mod);
+				progress = true;
+			}
+		}
+		if (!remaining.isEmpty())
+		{
+			throw new IllegalArgumentException("Module " + remaining.iterator().next().getName() + " is not reachable from the inputs of the pipeline");
+		}
+	}
+
+	/**
+	 * Gets the queue of the enclosing pipeline a queue stands for.
+	 * @param aliases The map of aliases
+	 * @param q The queue
+	 * @return The queue it stands for, or the queue itself
+	 */
+	protected static ProcessorQueue resolve(Map<ProcessorQueue,ProcessorQueue> aliases, ProcessorQueue q)
+	{
+		ProcessorQueue alias = aliases.get(q);
+		return alias == null ? q : alias;
+	}
+
+	/**
+	 * Computes the next step of the pipeline.
+	 * @param inputs The events entering each input pipe of the pipeline at
+	 * this step
+	 * @return The events in each output pipe of the pipeline at this step
+	 * @throws IllegalStateException If some module has no successor state,
+	 * or more than one
+	 */
+	/*@ non_null @*/ public Object[][] step(/*@ non_null @*/ Object[] ... inputs)
+	{
+		Map<ProcessorQueue,Object[]> contents = new HashMap<ProcessorQueue,Object[]>();
+		ProcessorQueue[] in_queues = m_pipeline.getInputQueues();
+		for (int j = 0; j < in_queues.length; j++)
+		{
+			contents.put(in_queues[j], j < inputs.length ? inputs[j] : new Object[0]);
+		}
+		for (int k = 0; k < m_states.length; k++)
+		{
+			ModuleState ms = m_modules.get(k);
+			List<StateVector> successors = ms.getSuccessors(m_states[k], contents);
+			if (successors.size() != 1)
+			{
+				throw new IllegalStateException("Module " + ms.m_module.getName() + " has " + successors.size() + " successor states at step " + m_steps);
+			}
+			m_states[k] = successors.get(0);
+			ms.putOutputs(m_states[k], contents);
+		}
+		m_steps++;
+		return getOutputs(m_pipeline, contents);
+	}
+
+	/**
+	 * Gets the contents of the output queues of a pipeline.
+	 * @param pipeline The pipeline
+	 * @param contents The contents of the queues of the pipeline
+	 * @return The events in each output pipe of the pipeline
+	 */
+	/*@ non_null @*/ protected static Object[][] getOutputs(ContainerModule pipeline, Map<ProcessorQueue,Object[]> contents)
+	{
+		ProcessorQueue[] out_queues = pipeline.getOutputQueues();
+		Object[][] outputs = new Object[out_queues.length][];
+		for (int i = 0; i < out_queues.length; i++)
+		{
+			Object[] events = contents.get(out_queues[i]);
+			outputs[i] = events == null ? new Object[0] : events;
+		}
+		return outputs;
+	}
+
+	/**
+	 * Computes a number of steps of the pipeline, taking the input events
+	 * from the input queues of the pipeline that are instances of
+	 * {@link PresetProcessorQueue}. Other input queues receive no events.
+	 * @param num_steps The number of steps
+	 * @return The events in each output pipe of the pipeline, for each step
+	 */
+	/*@ non_null @*/ public List<Object[][]> run(int num_steps)
+	{
+		ProcessorQueue[] in_queues = m_pipeline.getInputQueues();
+		List<Object[][]> trace = new ArrayList<Object[][]>(num_steps);
+		for (int k = 0; k < num_steps; k++)
+		{
+			Object[][] inputs = new Object[in_queues.length][];
+			for (int j = 0; j < in_queues.length; j++)
+			{
+				inputs[j] = in_queues[j] instanceof PresetProcessorQueue ? ((PresetProcessorQueue) in_queues[j]).getStep(m_steps) : new Object[0];
+			}
+			trace.add(step(inputs));
+		}
+		return trace;
+	}
+
+	/**
+	 * Gets the number of steps computed so far.
+	 * @return The number of steps
+	 */
+	/*@ pure @*/ public int getStepCount()
+	{
+		return m_steps;
+	}
+
+	/**
+	 * Prints the contents of the output pipes of the pipeline at each step,
+	 * one step per line. Columns are separated by tabs; the first line
+	 * gives the names of the output queues.
+	 * @param ps The stream where to print
+	 * @param trace The events in each output pipe, for each step, as
+	 * returned by {@link #run(int)}
+	 */
+	public void print(/*@ non_null @*/ PrintStream ps, /*@ non_null @*/ List<Object[][]> trace)
+	{
+		print(ps, m_pipeline.getOutputQueues(), trace);
+	}
+
+	/**
+	 * Prints the contents of queues at each step, one step per line.
+	 * @param ps The stream where to print
+	 * @param queues The queues
+	 * @param trace The events in each queue, for each step
+	 */
+	protected static void print(PrintStream ps, ProcessorQueue[] queues, List<Object[][]> trace)
+	{
+		ps.print("step");
+		for (ProcessorQueue q : queues)
+		{
+			ps.print("\t" + q.getName());
+		}
+		ps.println();
+		for (int k = 0; k < trace.size(); k++)
+		{
+			ps.print(k);
+			for (Object[] events : trace.get(k))
+			{
+				ps.print("\t" + Arrays.toString(events));
+			}
+			ps.println();
+		}
+	}
+
+	/**
+	 * The formulas and connections of a module of the pipeline. The state of
+	 * the module itself is kept outside of this object, so that its
+	 * successors can be computed from several threads at once.
+	 */
+	protected static class ModuleState
+	{
+		/**
+		 * The module.
+		 */
+		/*@ non_null @*/ protected final ProcessorModule m_module;
+
+		/**
+		 * The queues connected to the inputs of the module.
+		 */
+		/*@ non_null @*/ protected final ProcessorQueue[] m_inputs;
+
+		/**
+		 * The queues connected to the outputs of the module; an output that
+		 * is not connected is <tt>null</tt>.
+		 */
+		/*@ non_null @*/ protected final ProcessorQueue[] m_outputs;
+
+		/**
+		 * The layout of the state of the module.
+		 */
+		/*@ non_null @*/ protected final StateLayout m_layout;
+
+		/**
+		 * The solver for the conditions of the module.
+		 */
+		/*@ non_null @*/ protected final CdclSolver m_solver;
+
+		/**
+		 * The initial condition of the module.
+		 */
+		/*@ non_null @*/ protected final List<NusmvExpression> m_init;
+
+		/**
+		 * The transition relation of the module.
+		 */
+		/*@ non_null @*/ protected final List<NusmvExpression> m_trans;
+
+		/**
+		 * The variables whose value is given when computing a state: those
+		 * of the front porches, and the reset flag.
+		 */
+		/*@ non_null @*/ protected final List<Variable> m_given;
+
+		protected ModuleState(ProcessorModule mod, ProcessorQueue[] inputs, ProcessorQueue[] outputs)
+		{
+			super();
+			m_module = mod;
+			m_inputs = inputs;
+			m_outputs = outputs;
+			m_layout = new StateLayout(mod);
+			m_solver = new CdclSolver().declare(mod);
+			m_init = List.of(NusmvExpression.expand(mod.getInit()));
+			m_trans = List.of(NusmvExpression.expand(mod.getTrans()));
+			m_given = new ArrayList<Variable>();
+			for (int j = 0; j < mod.getInputArity(); j++)
+			{
+				m_given.addAll(mod.getFrontPorch(j).getVariables());
+			}
+			if (mod.m_hasReset)
+			{
+				m_given.add(mod.getResetFlag());
+			}
+		}
+
+		/**
+		 * Computes the possible successors of a state of the module.
+		 * @param state The current state, or <tt>null</tt> to compute the
+		 * initial states
+		 * @param contents The contents of the queues of the pipeline
+		 * @return The states
+		 */
+		/*@ non_null @*/ protected List<StateVector> getSuccessors(/*@ null @*/ StateVector state, /*@ non_null @*/ Map<ProcessorQueue,Object[]> contents)
+		{
+			StateVector given = new StateVector(m_layout);
+			for (int j = 0; j < m_inputs.length; j++)
+			{
+				m_module.getFrontPorch(j).setContents(given, contents.get(m_inputs[j]));
+			}
+			if (m_module.m_hasReset)
+			{
+				given.set(m_module.getResetFlag(), 0, false);
+			}
+			return m_solver.solveStates(state == null ? m_init : m_trans, state, given, m_given);
+		}
+
+		/**
+		 * Copies the contents of the back porches of the module in a given
+		 * state to the queues of its outputs.
+		 * @param state The state of the module
+		 * @param contents The contents of the queues of the pipeline
+		 */
+		protected void putOutputs(/*@ non_null @*/ StateVector state, /*@ non_null @*/ Map<ProcessorQueue,Object[]> contents)
+		{
+			for (int i = 0; i < m_outputs.length; i++)
+			{
+				if (m_outputs[i] != null)
+				{
+					contents.put(m_outputs[i], m_module.getBackPorch(i).getContents(state));
+				}
+			}
+		}
+
+	}
+}
@@ -119,9 +119,30 @@ public class PresetProcessorQueue extends ProcessorQueue
 			}
 		}
 		m_steps.add(events);
+		touch();
 		return this;
 	}
 
+	/**
+	 * Gets the events output at a given computation step.
+	 * @param k The index of the step, starting at 0
+	 * @return The events; past the end of the sequence, these are the
+	 * events of the beginning if the sequence loops, and no events
+	 * otherwise
+	 */
+	/*@ pure non_null @*/ public Object[] getStep(int k)
+	{
+		if (k < m_steps.size())
+		{
+			return m_steps.get(k);
+		}
+		if (m_loop && !m_steps.isEmpty())
+		{
+			return m_steps.get(k % m_steps.size());
+		}
+		return new Object[0];
+	}
+
 	@Override
 	public void addToInit(Conjunction c)
 	{
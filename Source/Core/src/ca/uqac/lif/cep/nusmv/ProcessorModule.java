@@ -20,17 +20,34 @@ package ca.uqac.lif.cep.nusmv;
 
 import static ca.uqac.lif.nusmv4j.ConstantFalse.FALSE;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Assignment;
 import ca.uqac.lif.nusmv4j.BooleanDomain;
 import ca.uqac.lif.nusmv4j.BooleanVariableCondition;
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
+import ca.uqac.lif.nusmv4j.Constant;
 import ca.uqac.lif.nusmv4j.Disjunction;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.LogicModule;
+import ca.uqac.lif.nusmv4j.ModuleDomain;
 import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 import ca.uqac.lif.nusmv4j.ScalarVariable;
 import ca.uqac.lif.nusmv4j.Term;
 import ca.uqac.lif.nusmv4j.Variable;
@@ -47,170 +64,1364 @@ public abstract class ProcessorModule extends LogicModule
 	protected static String s_dashes = "------------------------------------------------------------";
 	
 	/**
-	 * A flag determining if the formulas of the transition relation are
-	 * simplified before being printed.
+	 * A flag determining if the formulas of the transition relation are
+	 * simplified before being printed.
+	 */
+	public static volatile boolean s_simplify = true;
+	
+	/**
+	 * A flag determining if shared subformulas of the transition relation are
+	 * printed only once, as NuSMV DEFINE macros, and referred to by name
+	 * everywhere else.
+	 */
+	public static volatile boolean s_defines = false;
+	
+	/**
+	 * A flag determining if the modules that are deterministic describe their
+	 * behavior as functional ASSIGN definitions instead of TRANS constraints.
+	 * Modules that cannot do so keep using TRANS.
+	 */
+	public static volatile boolean s_assign = false;
+	
+	/**
+	 * A flag determining if the well-formedness of the queues of a module is
+	 * stated once in an INVAR section, instead of being asserted in both INIT
+	 * and TRANS.
+	 */
+	public static volatile boolean s_invar = false;
+
+	/**
+	 * The bit standing for {@link #s_simplify} in the value returned by
+	 * {@link #getFlags()}.
+	 */
+	protected static final int FLAG_SIMPLIFY = 1;
+
+	/**
+	 * The bit standing for {@link #s_defines}.
+	 */
+	protected static final int FLAG_DEFINES = 2;
+
+	/**
+	 * The bit standing for {@link #s_assign}.
+	 */
+	protected static final int FLAG_ASSIGN = 4;
+
+	/**
+	 * The bit standing for {@link #s_invar}.
+	 */
+	protected static final int FLAG_INVAR = 8;
+
+	/**
+	 * Values of the printing flags that replace the global ones in the
+	 * current thread, if any. This makes it possible to generate formulas
+	 * with other flags without affecting the other threads, and to give
+	 * worker threads the flags of the thread that started them.
+	 */
+	/*@ non_null @*/ protected static final ThreadLocal<Integer> s_threadFlags = new ThreadLocal<Integer>();
+	
+	protected enum QueueType {PORCH, BUFFER}
+
+	/**
+	 * The front porches of this processor.
+	 */
+	protected final ProcessorQueue[] m_frontPorches;
+
+	/**
+	 * The reset porches of this processor.
+	 */
+	protected final ScalarVariable m_resetFlag;
+
+	/**
+	 * The internal buffers of this processor.
+	 */
+	protected final ProcessorQueue[] m_buffers;
+
+	/**
+	 * The back porches of this processor.
+	 */
+	protected final ProcessorQueue[] m_backPorches;
+	
+	/**
+	 * A flag indicating if the processor has a reset flag as one of its
+	 * parameters.
+	 */
+	protected boolean m_hasReset;
+	
+	/**
+	 * The encoding used for the occupancy of the queues of this module.
+	 */
+	/*@ non_null @*/ protected Encoding m_queueEncoding;
+	
+	/**
+	 * The subformulas that have already been generated for this module,
+	 * indexed by name. Each entry contains the formula in the current and in
+	 * the next state. When {@link #s_defines} is set, these formulas are
+	 * printed as the DEFINE section of the module.
+	 */
+	/*@ non_null @*/ protected final Map<String,Condition[]> m_sharedFormulas;
+	
+	/**
+	 * The conditions returned in place of each shared subformula, indexed by
+	 * name (with a prime for the next state).
+	 */
+	/*@ non_null @*/ protected final Map<String,Condition> m_sharedReferences;
+	
+	/**
+	 * The clock used to order the modifications of modules, connectors and
+	 * queues. Each modification takes a new tick of the clock.
+	 */
+	/*@ non_null @*/ protected static final AtomicLong s_clock = new AtomicLong();
+
+	/**
+	 * The moment this module was last modified, as a tick of
+	 * {@link #s_clock}.
+	 */
+	protected long m_lastModified;
+
+	/**
+	 * The moment of the last modification of this module (see
+	 * {@link #getLastModified()}) when its formulas were last generated.
+	 */
+	protected long m_generatedAt;
+
+	/**
+	 * The global printing flags in effect when the formulas of this module
+	 * were last generated.
+	 */
+	protected int m_generatedFlags;
+
+	/**
+	 * The initial condition generated for this module, kept until the module
+	 * is modified.
+	 */
+	/*@ null @*/ protected Condition m_init;
+
+	/**
+	 * The transition relation generated for this module, kept until the
+	 * module is modified.
+	 */
+	/*@ null @*/ protected Condition m_trans;
+
+	/**
+	 * The fingerprint computed for this module, kept until the module is
+	 * modified.
+	 */
+	/*@ null @*/ protected String m_fingerprint;
+
+	public ProcessorModule(String name, int in_arity, Domain[] in_domains, int out_arity, Domain[] out_domains, boolean has_reset, int Q_in, int Q_b, int Q_out)
+	{
+		super(name);
+		m_hasReset = has_reset;
+		m_queueEncoding = Encoding.FLAGS;
+		m_sharedFormulas = new LinkedHashMap<String,Condition[]>();
+		m_sharedReferences = new HashMap<String,Condition>();
+		m_lastModified = tick();
+		m_generatedAt = -1;
+		m_frontPorches = new ProcessorQueue[in_arity];
+		m_resetFlag = instantiateResetFlag();
+		for (int i = 0; i < in_arity; i++)
+		{
+			m_frontPorches[i] = new ProcessorQueue("in_" + i, new ArrayVariable("inc_" + i, in_domains[i], Q_in), new ArrayVariable("inb_" + i, BooleanDomain.instance, Q_in));
+		}
+		m_buffers = new ProcessorQueue[in_arity];
+		for (int i = 0; i < in_arity; i++)
+		{
+			m_buffers[i] = new ProcessorQueue("bf_" + i, new ArrayVariable("bfc_" + i, m_frontPorches[i].m_arrayContents.getDomain(), Q_b), new ArrayVariable("bfb_" + i, BooleanDomain.instance, Q_b));
+		}
+		m_backPorches = new ProcessorQueue[out_arity];
+		for (int i = 0; i < out_arity; i++)
+		{
+			m_backPorches[i] = new ProcessorQueue("ou" + i, new ArrayVariable("ouc_" + i, out_domains[i], Q_out), new ArrayVariable("oub_" + i, BooleanDomain.instance, Q_out));
+		}
+		declareParameters();
+		if (Q_b > 0)
+		{
+			for (int i = 0; i < in_arity; i++)
+			{
+				add(m_buffers[i].m_arrayContents);
+				add(m_buffers[i].getOccupancyVariable());
+			}
+		}
+	}
+	
+	/**
+	 * Sets the parameters of this module (see
+	 * {@link #getParameterVariables()}).
+	 */
+	protected void declareParameters()
+	{
+		setParameters(getParameterVariables());
+	}
+
+	/**
+	 * Gets the parameters of this module, which are the variables of its
+	 * front porches, followed by those of its back porches and by the reset
+	 * flag, if any.
+	 * @return The parameters
+	 */
+	/*@ non_null @*/ protected Variable[] getParameterVariables()
+	{
+		int in_arity = m_frontPorches.length, out_arity = m_backPorches.length;
+		int num_params = 2 * (in_arity) + 2 * (out_arity) + (m_hasReset ? 1 : 0);
+		Variable[] params = new Variable[num_params];
+		int index = 0;
+		for (int i = 0; i < in_arity; i++)
+		{
+			params[index++] = m_frontPorches[i].m_arrayContents;
+			params[index++] = m_frontPorches[i].getOccupancyVariable();
+		}
+		for (int i = 0; i < out_arity; i++)
+		{
+			params[index++] = m_backPorches[i].m_arrayContents;
+			params[index++] = m_backPorches[i].getOccupancyVariable();
+		}
+		if (m_hasReset)
+		{
+			params[index++] = m_resetFlag;
+		}
+		return params;
+	}
+	
+	/**
+	 * Declares the occupancy variable of a queue among the variables of this
+	 * module. If a variable of the same name is already declared (typically
+	 * the variable of the queue under another encoding), it is replaced.
+	 * @param q The queue
+	 */
+	protected void declareOccupancyVariable(/*@ non_null @*/ ProcessorQueue q)
+	{
+		Variable v = q.getOccupancyVariable();
+		for (int i = 0; i < m_variables.size(); i++)
+		{
+			Variable w = m_variables.get(i);
+			if (w != q.m_arrayContents && w.getName().equals(v.getName()))
+			{
+				m_variables.set(i, v);
+				return;
+			}
+		}
+		m_variables.add(v);
+	}
+	
+	/**
+	 * Declares a variable of this module. If a variable of the same name is
+	 * already declared, it is replaced.
+	 * @param v The variable
+	 */
+	protected void declareVariable(/*@ non_null @*/ Variable v)
+	{
+		for (int i = 0; i < m_variables.size(); i++)
+		{
+			if (m_variables.get(i).getName().equals(v.getName()))
+			{
+				m_variables.set(i, v);
+				return;
+			}
+		}
+		m_variables.add(v);
+	}
+	
+	/**
+	 * Sets the encoding used for the occupancy of the queues of this module,
+	 * and updates its parameters and variables accordingly.
+	 * @param e The encoding
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setQueueEncoding(/*@ non_null @*/ Encoding e)
+	{
+		m_queueEncoding = e;
+		for (ProcessorQueue q : m_frontPorches)
+		{
+			q.setEncoding(e);
+		}
+		for (ProcessorQueue q : m_backPorches)
+		{
+			q.setEncoding(e);
+		}
+		declareParameters();
+		for (ProcessorQueue q : m_buffers)
+		{
+			q.setEncoding(e);
+			if (q.getSize() > 0)
+			{
+				declareOccupancyVariable(q);
+			}
+		}
+		setDirty();
+		return this;
+	}
+	
+	/**
+	 * Gets the encoding used for the occupancy of the queues of this module.
+	 * @return The encoding
+	 */
+	/*@ pure non_null @*/ public Encoding getQueueEncoding()
+	{
+		return m_queueEncoding;
+	}
+	
+	/**
+	 * Instantiates the reset flag for this processor.
+	 * @return The variable for the reset flag
+	 */
+	/*@ non_null @*/ protected ScalarVariable instantiateResetFlag()
+	{
+		return new ScalarVariable("rst", BooleanDomain.instance);
+	}
+	
+	@Override
+	protected Comment getComment()
+	{
+		Comment c = new Comment(s_dashes);
+		addToComment(c);
+		String line = "";
+		if (m_frontPorches.length > 0)
+		{
+			line += "Q_in = " + m_frontPorches[0].getSize() + " ";
+		}
+		if (m_buffers.length > 0)
+		{
+			line += "Q_b = " + m_buffers[0].getSize() + " ";
+		}
+		if (m_backPorches.length > 0)
+		{
+			line += "Q_out = " + m_backPorches[0].getSize() + " ";	
+		}
+		c.addLine(line);
+		c.addLine(s_dashes);
+		return c;
+	}
+	
+	/**
+	 * Adds new lines to the top comment for this module.
+	 * @param c The comment
+	 */
+	protected void addToComment(Comment c)
+	{
+		// Do nothing
+	}
+	
+	@Override
+	public Condition getInit()
+	{
+		return getInit(false);
+	}
+	
+	/**
+	 * Gets the initial condition of this module.
+	 * @param streaming Set to <tt>true</tt> to get a condition whose terms
+	 * are generated while it is printed, and not kept; the condition is
+	 * still taken from the cache when it is found there
+	 * @return The condition
+	 */
+	/*@ non_null @*/ public Condition getInit(boolean streaming)
+	{
+		validate();
+		if (m_init != null)
+		{
+			return m_init;
+		}
+		if (streaming)
+		{
+			return new StreamedConjunction(getInitParts());
+		}
+		Conjunction and_init = new Conjunction();
+		for (Consumer<Conjunction> part : getInitParts())
+		{
+			part.accept(and_init);
+		}
+		m_init = (m_generatedFlags & FLAG_SIMPLIFY) != 0 ? Condition.simplify(and_init) : and_init;
+		return m_init;
+	}
+	
+	@Override
+	public Condition getTrans()
+	{
+		return getTrans(false);
+	}
+	
+	/**
+	 * Gets the transition relation of this module, in the same way as
+	 * {@link #getInit(boolean)}.
+	 * @param streaming Set to <tt>true</tt> to get a condition whose terms
+	 * are generated while it is printed, and not kept
+	 * @return The condition
+	 */
+	/*@ non_null @*/ public Condition getTrans(boolean streaming)
+	{
+		validate();
+		if (m_trans != null)
+		{
+			return m_trans;
+		}
+		if (streaming)
+		{
+			return new StreamedConjunction(getTransParts());
+		}
+		Conjunction and_trans = new Conjunction();
+		for (Consumer<Conjunction> part : getTransParts())
+		{
+			part.accept(and_trans);
+		}
+		m_trans = (m_generatedFlags & FLAG_SIMPLIFY) != 0 ? Condition.simplify(and_trans) : and_trans;
+		return m_trans;
+	}
+	
+	/**
+	 * Gets the parts of the initial condition of this module: one for each
+	 * input pipe, one for each output pipe and one for the behavior of the
+	 * module itself. Each part adds its terms to the conjunction it is given.
+	 * @return The parts
+	 */
+	/*@ non_null @*/ protected List<Consumer<Conjunction>> getInitParts()
+	{
+		List<Consumer<Conjunction>> parts = new ArrayList<Consumer<Conjunction>>();
+		for (int i = 0; i < getInputArity(); i++)
+		{
+			final int index = i;
+			parts.add(c -> {
+				c.add(m_buffers[index].hasLength(false, 0));
+				m_buffers[index].addToInit(c);
+				m_frontPorches[index].addToInit(c);
+			});
+		}
+		for (int i = 0; i < getOutputArity(); i++)
+		{
+			final int index = i;
+			parts.add(c -> m_backPorches[index].addToInit(c));
+		}
+		if (!usesAssignments())
+		{
+			parts.add(c -> addToInit(c));
+		}
+		return parts;
+	}
+	
+	/**
+	 * Gets the parts of the transition relation of this module, in the same
+	 * way as {@link #getInitParts()}.
+	 * @return The parts
+	 */
+	/*@ non_null @*/ protected List<Consumer<Conjunction>> getTransParts()
+	{
+		List<Consumer<Conjunction>> parts = new ArrayList<Consumer<Conjunction>>();
+		for (int i = 0; i < getInputArity(); i++)
+		{
+			final int index = i;
+			parts.add(c -> {
+				m_buffers[index].addToTrans(c);
+				m_frontPorches[index].addToTrans(c);
+			});
+		}
+		for (int i = 0; i < getOutputArity(); i++)
+		{
+			final int index = i;
+			parts.add(c -> m_backPorches[index].addToTrans(c));
+		}
+		if (!usesAssignments())
+		{
+			parts.add(c -> addToTrans(c));
+		}
+		return parts;
+	}
+	
+	/**
+	 * Prints this module, generating its initial condition and transition
+	 * relation while they are being printed. Each conjunct is printed as
+	 * soon as it is produced and then discarded, so that the whole formulas
+	 * are never held in memory at once. The text is the same as the one
+	 * produced by {@link #print(PrettyPrintStream)}, except for the way the
+	 * formulas are parenthesized.
+	 * @param ps The stream where to print the module
+	 */
+	public void printStreaming(/*@ non_null @*/ PrettyPrintStream ps)
+	{
+		print(ps, true);
+	}
+
+	/**
+	 * Sets the name under which this module is defined and instantiated.
+	 * @param name The name
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setName(/*@ non_null @*/ String name)
+	{
+		if (!name.equals(m_name))
+		{
+			// The modules declaring an instance of this one change
+			m_name = name;
+			setDirty();
+		}
+		return this;
+	}
+
+	/**
+	 * Prints the definition of this module without its name, that is, with
+	 * an empty identifier after the <tt>MODULE</tt> keyword. The formulas
+	 * are generated while they are printed, as in
+	 * {@link #printStreaming(PrettyPrintStream)}.
+	 * @param os The stream where to print the definition
+	 */
+	public void printDefinition(/*@ non_null @*/ OutputStream os)
+	{
+		String name = m_name;
+		m_name = "";
+		try
+		{
+			PrettyPrintStream ps = new PrettyPrintStream(os);
+			printStreaming(ps);
+			ps.flush();
+		}
+		finally
+		{
+			m_name = name;
+		}
+	}
+
+	/**
+	 * Gets the definition of this module without its name, as printed by
+	 * {@link #printDefinition(OutputStream)}.
+	 * @return The bytes of the definition
+	 */
+	/*@ non_null @*/ public byte[] getDefinition()
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		printDefinition(baos);
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Computes a fingerprint of the definition of this module. The
+	 * fingerprint is a digest of the text of the module, printed without its
+	 * name (see {@link #printDefinition(OutputStream)}); it therefore depends
+	 * on the kind of processor, its parameters, its domains and the size of
+	 * its queues, but not on the name of the module. Two modules with the
+	 * same fingerprint can share a single MODULE definition.
+	 * @return The fingerprint, as a string of hexadecimal digits
+	 */
+	/*@ non_null @*/ public String getFingerprint()
+	{
+		validate();
+		if (m_fingerprint != null)
+		{
+			return m_fingerprint;
+		}
+		final MessageDigest md = getMessageDigest();
+		printDefinition(new OutputStream() {
+			@Override
+			public void write(int b)
+			{
+				md.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len)
+			{
+				md.update(b, off, len);
+			}
+		});
+		m_fingerprint = toHex(md.digest());
+		return m_fingerprint;
+	}
+
+	/**
+	 * Computes the digest of a sequence of bytes, in the same way as the
+	 * fingerprint of a module. The digest of the bytes printed by
+	 * {@link #printDefinition(OutputStream)} is therefore the fingerprint of
+	 * the module.
+	 * @param bytes The bytes
+	 * @return The digest, as a string of hexadecimal digits
+	 */
+	/*@ non_null @*/ public static String getDigest(/*@ non_null @*/ byte[] bytes)
+	{
+		return toHex(getMessageDigest().digest(bytes));
+	}
+
+	/**
+	 * Gets a key describing the definition of this module, computed from its
+	 * class, its parameters and the declarations of its variables, without
+	 * generating any formula. Two modules with the same key have the same
+	 * definition (up to their name), and thus the same fingerprint. The key
+	 * also includes the global flags that affect the way formulas are
+	 * printed.
+	 * @return The key, or <tt>null</tt> if the definition of this module
+	 * cannot be described without being generated
+	 */
+	/*@ null @*/ public String getDefinitionKey()
+	{
+		StringBuilder key = new StringBuilder();
+		key.append(getClass().getName()).append("\n");
+		if (!addToKey(key))
+		{
+			return null;
+		}
+		key.append("\n").append(getFlags()).append("\n");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		List<Variable> declared = new ArrayList<Variable>();
+		for (ProcessorQueue q : m_frontPorches)
+		{
+			declared.add(q.m_arrayContents);
+			declared.add(q.getOccupancyVariable());
+		}
+		for (ProcessorQueue q : m_backPorches)
+		{
+			declared.add(q.m_arrayContents);
+			declared.add(q.getOccupancyVariable());
+		}
+		declared.addAll(m_variables);
+		for (Variable v : declared)
+		{
+			ps.print(v.getName() + " : ");
+			if (v instanceof ArrayVariable)
+			{
+				ps.print("array 0.." + (((ArrayVariable) v).getDimension() - 1) + " of ");
+			}
+			v.getDomain().print(ps);
+			ps.println();
+		}
+		ps.println(m_hasReset);
+		for (Map.Entry<String,ModuleDomain> e : getSubModules().entrySet())
+		{
+			ps.print(e.getKey() + " : ");
+			e.getValue().print(ps);
+			ps.println();
+		}
+		ps.flush();
+		key.append(baos.toString());
+		return key.toString();
+	}
+
+	/**
+	 * Adds to the key of this module the parameters that are not reflected
+	 * by the declarations of its variables (see {@link #getDefinitionKey()}).
+	 * By default, a module does not know its parameters and cannot produce a
+	 * key; descendants override this method when their behavior only depends
+	 * on values that can be written down.
+	 * @param key The key
+	 * @return <tt>true</tt> if the key is complete, <tt>false</tt> if this
+	 * module cannot be described by a key
+	 */
+	protected boolean addToKey(/*@ non_null @*/ StringBuilder key)
+	{
+		return false;
+	}
+
+	/**
+	 * Adds a function to the key of a module. Only the functions provided by
+	 * this library can be described: their behavior depends solely on their
+	 * class, their domains (which appear in the declarations of the module)
+	 * and, for "turn into" functions, the value they return.
+	 * @param key The key
+	 * @param f The function
+	 * @return <tt>true</tt> if the function could be described,
+	 * <tt>false</tt> otherwise
+	 */
+	protected static boolean addToKey(/*@ non_null @*/ StringBuilder key, /*@ non_null @*/ Object f)
+	{
+		Class<?> clazz = f.getClass();
+		if (clazz.getPackage() != ProcessorModule.class.getPackage())
+		{
+			return false;
+		}
+		key.append(clazz.getName());
+		if (f instanceof UnaryTurnIntoFunction)
+		{
+			key.append(" ").append(((UnaryTurnIntoFunction) f).getValue());
+		}
+		if (f instanceof BinaryTurnIntoFunction)
+		{
+			key.append(" ").append(((BinaryTurnIntoFunction) f).getValue());
+		}
+		return true;
+	}
+
+	/**
+	 * Gets a new instance of the digest algorithm used for fingerprints.
+	 * @return The digest
+	 */
+	/*@ non_null @*/ protected static MessageDigest getMessageDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes a sequence of bytes as hexadecimal digits.
+	 * @param bytes The bytes
+	 * @return The string of digits
+	 */
+	/*@ non_null @*/ protected static String toHex(/*@ non_null @*/ byte[] bytes)
+	{
+		StringBuilder out = new StringBuilder();
+		for (byte b : bytes)
+		{
+			out.append(String.format("%02x", b));
+		}
+		return out.toString();
+	}
+
+	@Override
+	public void print(PrettyPrintStream ps)
+	{
+		print(ps, false);
+	}
+	
+	/**
+	 * Prints this module.
+	 * @param ps The stream where to print the module
+	 * @param streaming Set to <tt>true</tt> to generate the initial
+	 * condition and the transition relation while they are printed
+	 */
+	protected void print(/*@ non_null @*/ PrettyPrintStream ps, boolean streaming)
+	{
+		// Shared subformulas are kept along with INIT and TRANS
+		validate();
+		if (streaming)
+		{
+			new StreamedModule().print(ps);
+		}
+		else
+		{
+			super.print(ps);
+		}
+		if (hasFlag(FLAG_INVAR))
+		{
+			printInvar(ps);
+		}
+		if (usesAssignments())
+		{
+			printAssignments(ps);
+		}
+		if (hasFlag(FLAG_DEFINES))
+		{
+			printDefines(ps);
+		}
+	}
+	
+	/**
+	 * Prints the DEFINE section of this module, containing one macro for each
+	 * shared subformula generated for its initial condition and transition
+	 * relation. The section comes after TRANS, since the macros are only
+	 * known once these formulas have been produced.
+	 * @param ps The stream where to print the section
+	 */
+	protected void printDefines(PrettyPrintStream ps)
+	{
+		if (m_sharedFormulas.isEmpty())
+		{
+			return;
+		}
+		ps.println("DEFINE");
+		for (Map.Entry<String,Condition[]> e : m_sharedFormulas.entrySet())
+		{
+			Condition body = e.getValue()[0];
+			if (hasFlag(FLAG_SIMPLIFY))
+			{
+				body = Condition.simplify(body);
+			}
+			ps.print("  " + e.getKey() + " := ");
+			body.print(ps);
+			ps.println(";");
+		}
+	}
+	
+	/**
+	 * Gets the invariant of this module, which is made of the
+	 * well-formedness conditions of its queues.
+	 * @return The invariant
+	 */
+	/*@ non_null @*/ public Condition getInvar()
+	{
+		Conjunction and_invar = new Conjunction();
+		for (int i = 0; i < getInputArity(); i++)
+		{
+			m_buffers[i].addToInvar(and_invar);
+			m_frontPorches[i].addToInvar(and_invar);
+		}
+		for (int i = 0; i < getOutputArity(); i++)
+		{
+			m_backPorches[i].addToInvar(and_invar);
+		}
+		addToInvar(and_invar);
+		if (hasFlag(FLAG_SIMPLIFY))
+		{
+			return Condition.simplify(and_invar);
+		}
+		return and_invar;
+	}
+	
+	/**
+	 * Adds any extra terms to the conjunction defining the invariant of the
+	 * module.
+	 * @param c The conjunction
+	 */
+	protected void addToInvar(/*@ non_null @*/ Conjunction c)
+	{
+		// Nothing to do
+	}
+	
+	/**
+	 * Computes the size and shape of the initial condition of this module.
+	 * @return The metrics of the condition
+	 */
+	/*@ non_null @*/ public FormulaMetrics getInitMetrics()
+	{
+		return FormulaMetrics.of(getInit());
+	}
+
+	/**
+	 * Computes the size and shape of the transition relation of this module.
+	 * @return The metrics of the condition
+	 */
+	/*@ non_null @*/ public FormulaMetrics getTransMetrics()
+	{
+		return FormulaMetrics.of(getTrans());
+	}
+
+	/**
+	 * Computes the size and shape of the DEFINE section of this module,
+	 * taking the body of each macro once. The section is empty unless
+	 * {@link #s_defines} is set, and only contains the macros generated so
+	 * far: the metrics must be computed after those of the initial condition
+	 * and of the transition relation.
+	 * @return The metrics of the bodies of the macros, added together
+	 */
+	/*@ non_null @*/ public FormulaMetrics getDefineMetrics()
+	{
+		FormulaMetrics fm = new FormulaMetrics();
+		for (Condition[] bodies : m_sharedFormulas.values())
+		{
+			fm.add(FormulaMetrics.of(hasFlag(FLAG_SIMPLIFY) ? Condition.simplify(bodies[0]) : bodies[0]));
+		}
+		return fm;
+	}
+
+	/**
+	 * Prints the INVAR section of this module.
+	 * @param ps The stream where to print the section
+	 */
+	protected void printInvar(PrettyPrintStream ps)
+	{
+		ps.println("INVAR");
+		getInvar().print(ps);
+		ps.println();
+	}
+	
+	/**
+	 * Prints the ASSIGN section of this module.
+	 * @param ps The stream where to print the section
+	 */
+	protected void printAssignments(PrettyPrintStream ps)
+	{
+		ps.println("ASSIGN");
+		for (CaseAssignment ca : getAssignments())
+		{
+			ps.print("  ");
+			ca.print(ps);
+			ps.println();
+		}
+	}
+	
+	/**
+	 * Determines if the behavior of this module is described by ASSIGN
+	 * definitions rather than by the constraints added in
+	 * {@link #addToInit(Conjunction)} and {@link #addToTrans(Conjunction)}.
+	 * @return <tt>true</tt> if ASSIGN definitions are used, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean usesAssignments()
+	{
+		return hasFlag(FLAG_ASSIGN) && isFunctional();
+	}
+	
+	/**
+	 * Determines if this module can describe its behavior as functional
+	 * definitions. Modules that override this method to return <tt>true</tt>
+	 * must also override {@link #addAssignments(List)}.
+	 * @return <tt>true</tt> if the module is functional, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ protected boolean isFunctional()
+	{
+		return false;
+	}
+	
+	/**
+	 * Gets the functional definitions describing the behavior of this module.
+	 * @return The list of definitions, which is empty if the module is not
+	 * functional
+	 */
+	/*@ non_null @*/ public List<CaseAssignment> getAssignments()
+	{
+		List<CaseAssignment> list = new ArrayList<CaseAssignment>();
+		if (isFunctional())
+		{
+			addAssignments(list);
+		}
+		return list;
+	}
+	
+	/**
+	 * Adds the functional definitions describing the behavior of this module.
+	 * These definitions replace the constraints added by
+	 * {@link #addToInit(Conjunction)} and {@link #addToTrans(Conjunction)};
+	 * the well-formedness of the queues is still asserted in INIT and TRANS.
+	 * @param list The list to which definitions are added
+	 */
+	protected void addAssignments(/*@ non_null @*/ List<CaseAssignment> list)
+	{
+		// Nothing to do
+	}
+	
+	/**
+	 * Adds the definitions fixing the length of a queue in every state.
+	 * @param list The list to which definitions are added
+	 * @param q The queue
+	 * @param has_length An array of mutually exclusive conditions, where the
+	 * condition at index <i>n</i> stipulates that the queue has <i>n</i>
+	 * elements. The queue is empty when none of them holds.
+	 */
+	protected static void assignLength(/*@ non_null @*/ List<CaseAssignment> list, /*@ non_null @*/ ProcessorQueue q, /*@ non_null @*/ Condition[] has_length)
+	{
+		int Q = q.getSize();
+		if (q.getEncoding() == Encoding.LENGTH)
+		{
+			CaseAssignment ca = new CaseAssignment(CaseAssignment.Kind.INVARIANT, q.getLengthVariable(), new Constant(0));
+			for (int n = 1; n <= Q && n < has_length.length; n++)
+			{
+				ca.add(has_length[n], new Constant(n));
+			}
+			list.add(ca);
+			return;
+		}
+		for (int i = 0; i < Q; i++)
+		{
+			Disjunction or = new Disjunction();
+			for (int n = i + 1; n <= Q && n < has_length.length; n++)
+			{
+				or.add(has_length[n]);
+			}
+			list.add(new CaseAssignment(CaseAssignment.Kind.INVARIANT, q.hasAt(false, i), or));
+		}
+	}
+	
+	/**
+	 * Creates the definition of the content of a cell of a queue in every
+	 * state, whose default value is the default value of the queue's domain.
+	 * Callers add the cases for which the cell is occupied.
+	 * @param q The queue
+	 * @param index The index of the cell
+	 * @return The definition
+	 */
+	/*@ non_null @*/ protected static CaseAssignment assignCell(/*@ non_null @*/ ProcessorQueue q, int index)
+	{
+		return new CaseAssignment(CaseAssignment.Kind.INVARIANT, q.valueAt(false, index), new Constant(q.getDomain().getDefaultValue()));
+	}
+	
+	/**
+	 * Gets a new tick of the modification clock.
+	 * @return The tick
+	 */
+	protected static long tick()
+	{
+		return s_clock.incrementAndGet();
+	}
+
+	/**
+	 * Records that this module has just been modified, so that its formulas
+	 * are generated again the next time they are requested. Modifications
+	 * made through the methods of this library are recorded automatically;
+	 * this method only needs to be called after changing a module by other
+	 * means.
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setDirty()
+	{
+		m_lastModified = tick();
+		return this;
+	}
+
+	/**
+	 * Gets the moment this module, or one of its queues, was last modified.
+	 * Descendants that depend on other objects take them into account.
+	 * @return The tick of the modification clock
+	 */
+	/*@ pure @*/ public long getLastModified()
+	{
+		long last = m_lastModified;
+		for (ProcessorQueue q : m_frontPorches)
+		{
+			last = Math.max(last, q.getLastModified());
+		}
+		for (ProcessorQueue q : m_buffers)
+		{
+			last = Math.max(last, q.getLastModified());
+		}
+		for (ProcessorQueue q : m_backPorches)
+		{
+			last = Math.max(last, q.getLastModified());
+		}
+		return last;
+	}
+
+	/**
+	 * Determines if the formulas of this module must be generated again,
+	 * because the module was modified or because the global printing flags
+	 * were changed since they were last generated.
+	 * @return <tt>true</tt> if the formulas are out of date, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isDirty()
+	{
+		return m_generatedAt != getLastModified() || m_generatedFlags != getFlags();
+	}
+
+	/**
+	 * Discards the formulas kept for this module if they are out of date.
 	 */
-	public static boolean s_simplify = true;
-	
-	protected enum QueueType {PORCH, BUFFER}
+	protected void validate()
+	{
+		if (isDirty())
+		{
+			clearSharedFormulas();
+			m_init = null;
+			m_trans = null;
+			m_fingerprint = null;
+			m_generatedAt = getLastModified();
+			m_generatedFlags = getFlags();
+		}
+	}
 
 	/**
-	 * The front porches of this processor.
+	 * Gets the current value of the global printing flags, as a single
+	 * number.
+	 * @return The flags
 	 */
-	protected final ProcessorQueue[] m_frontPorches;
+	protected static int getFlags()
+	{
+		Integer flags = s_threadFlags.get();
+		if (flags != null)
+		{
+			return flags;
+		}
+		return (s_simplify ? FLAG_SIMPLIFY : 0) | (s_defines ? FLAG_DEFINES : 0) | (s_assign ? FLAG_ASSIGN : 0) | (s_invar ? FLAG_INVAR : 0);
+	}
 
 	/**
-	 * The reset porches of this processor.
+	 * Determines if a printing flag is set for the current thread.
+	 * @param flag The bit standing for the flag
+	 * @return <tt>true</tt> if the flag is set, <tt>false</tt> otherwise
 	 */
-	protected final ScalarVariable m_resetFlag;
+	protected static boolean hasFlag(int flag)
+	{
+		return (getFlags() & flag) != 0;
+	}
 
 	/**
-	 * The internal buffers of this processor.
+	 * Replaces the global printing flags by other values in the current
+	 * thread.
+	 * @param flags The values of the flags, as returned by
+	 * {@link #getFlags()}, or <tt>null</tt> to use the global flags again
+	 * @return The values replaced, or <tt>null</tt> if the global flags were
+	 * used
 	 */
-	protected final ProcessorQueue[] m_buffers;
+	/*@ null @*/ protected static Integer setThreadFlags(/*@ null @*/ Integer flags)
+	{
+		Integer old = s_threadFlags.get();
+		if (flags == null)
+		{
+			s_threadFlags.remove();
+		}
+		else
+		{
+			s_threadFlags.set(flags);
+		}
+		return old;
+	}
 
 	/**
-	 * The back porches of this processor.
+	 * Discards all the shared subformulas generated so far for this module.
 	 */
-	protected final ProcessorQueue[] m_backPorches;
+	protected void clearSharedFormulas()
+	{
+		m_sharedFormulas.clear();
+		m_sharedReferences.clear();
+	}
 	
 	/**
-	 * A flag indicating if the processor has a reset flag as one of its
-	 * parameters.
+	 * A subformula that occurs multiple times in the conditions of a module.
+	 * The formula is built only once for a given name; subsequent requests
+	 * return the same instance. When {@link ProcessorModule#s_defines} is set,
+	 * the instance returned is a reference to a DEFINE macro of that name.
 	 */
-	protected boolean m_hasReset;
-
-
-	public ProcessorModule(String name, int in_arity, Domain[] in_domains, int out_arity, Domain[] out_domains, boolean has_reset, int Q_in, int Q_b, int Q_out)
+	protected abstract class SharedFormula
 	{
-		super(name);
-		m_hasReset = has_reset;
-		m_frontPorches = new ProcessorQueue[in_arity];
-		m_resetFlag = instantiateResetFlag();
-		for (int i = 0; i < in_arity; i++)
-		{
-			m_frontPorches[i] = new ProcessorQueue("in_" + i, new ArrayVariable("inc_" + i, in_domains[i], Q_in), new ArrayVariable("inb_" + i, BooleanDomain.instance, Q_in));
-		}
-		m_buffers = new ProcessorQueue[in_arity];
-		for (int i = 0; i < in_arity; i++)
+		/**
+		 * The name of the subformula, which must be unique within the module.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		public SharedFormula(String name)
 		{
-			m_buffers[i] = new ProcessorQueue("bf_" + i, new ArrayVariable("bfc_" + i, m_frontPorches[i].m_arrayContents.getDomain(), Q_b), new ArrayVariable("bfb_" + i, BooleanDomain.instance, Q_b));
+			super();
+			m_name = name;
 		}
-		m_backPorches = new ProcessorQueue[out_arity];
-		for (int i = 0; i < out_arity; i++)
+		
+		/**
+		 * Gets the condition standing for this subformula.
+		 * @param next A flag indicating if the condition applies to the
+		 * current state or the next state
+		 * @return The condition
+		 */
+		/*@ non_null @*/ public Condition get(boolean next)
 		{
-			m_backPorches[i] = new ProcessorQueue("ou" + i, new ArrayVariable("ouc_" + i, out_domains[i], Q_out), new ArrayVariable("oub_" + i, BooleanDomain.instance, Q_out));
+			String key = next ? m_name + "'" : m_name;
+			Condition c = m_sharedReferences.get(key);
+			if (c != null)
+			{
+				return c;
+			}
+			if (hasFlag(FLAG_DEFINES))
+			{
+				Condition[] bodies = m_sharedFormulas.get(m_name);
+				if (bodies == null)
+				{
+					// The macro is expressed on the current state; next(name) refers
+					// to its value in the next state
+					bodies = new Condition[] {build(false), build(true)};
+					m_sharedFormulas.put(m_name, bodies);
+				}
+				c = new DefineReference(m_name, next, bodies[next ? 1 : 0]);
+			}
+			else
+			{
+				c = build(next);
+			}
+			m_sharedReferences.put(key, c);
+			return c;
 		}
-		int num_params = 2 * (in_arity) + 2 * (out_arity) + (has_reset ? 1 : 0);
-		Variable[] params = new Variable[num_params];
-		int index = 0;
-		for (int i = 0; i < in_arity; i++)
+		
+		/**
+		 * Builds the subformula.
+		 * @param next A flag indicating if the condition applies to the
+		 * current state or the next state
+		 * @return The condition
+		 */
+		/*@ non_null @*/ protected abstract Condition build(boolean next);
+	}
+	
+	/**
+	 * Copy of the declarations of this module, whose initial condition and
+	 * transition relation are generated while they are printed.
+	 */
+	protected class StreamedModule extends LogicModule
+	{
+		public StreamedModule()
 		{
-			params[index++] = m_frontPorches[i].m_arrayContents;
-			params[index++] = m_frontPorches[i].m_arrayFlags;
+			super(ProcessorModule.this.m_name);
+			setParameters(getParameterVariables());
+			m_variables.addAll(ProcessorModule.this.m_variables);
+			m_subModules.putAll(ProcessorModule.this.getSubModules());
 		}
-		for (int i = 0; i < out_arity; i++)
+		
+		@Override
+		protected Comment getComment()
 		{
-			params[index++] = m_backPorches[i].m_arrayContents;
-			params[index++] = m_backPorches[i].m_arrayFlags;
+			return ProcessorModule.this.getComment();
 		}
-		if (has_reset)
+		
+		@Override
+		public Condition getInit()
 		{
-			params[index++] = m_resetFlag;
+			return ProcessorModule.this.getInit(true);
 		}
-		setParameters(params);
-		if (Q_b > 0)
+		
+		@Override
+		public Condition getTrans()
 		{
-			for (int i = 0; i < in_arity; i++)
-			{
-				add(m_buffers[i].m_arrayContents);
-				add(m_buffers[i].m_arrayFlags);
-			}
+			return ProcessorModule.this.getTrans(true);
 		}
 	}
 	
 	/**
-	 * Instantiates the reset flag for this processor.
-	 * @return The variable for the reset flag
+	 * Conjunction whose terms are generated part by part when it is printed
+	 * or evaluated, and discarded right after.
 	 */
-	/*@ non_null @*/ protected ScalarVariable instantiateResetFlag()
-	{
-		return new ScalarVariable("rst", BooleanDomain.instance);
-	}
-	
-	@Override
-	protected Comment getComment()
+	protected static class StreamedConjunction extends Conjunction
 	{
-		Comment c = new Comment(s_dashes);
-		addToComment(c);
-		String line = "";
-		if (m_frontPorches.length > 0)
+		/**
+		 * The parts of the conjunction.
+		 */
+		/*@ non_null @*/ protected final List<Consumer<Conjunction>> m_parts;
+		
+		public StreamedConjunction(/*@ non_null @*/ List<Consumer<Conjunction>> parts)
 		{
-			line += "Q_in = " + m_frontPorches[0].getSize() + " ";
+			super();
+			m_parts = parts;
 		}
-		if (m_buffers.length > 0)
+		
+		@Override
+		public void print(PrettyPrintStream ps)
 		{
-			line += "Q_b = " + m_buffers[0].getSize() + " ";
+			PrintedConjunction c = new PrintedConjunction(ps);
+			for (Consumer<Conjunction> part : m_parts)
+			{
+				part.accept(c);
+			}
+			if (c.m_first)
+			{
+				ps.print("TRUE");
+			}
 		}
-		if (m_backPorches.length > 0)
+		
+		/**
+		 * Generates one part of the conjunction, as it is printed.
+		 * @param part The part
+		 * @return The condition for this part
+		 */
+		/*@ non_null @*/ protected static Condition generate(/*@ non_null @*/ Consumer<Conjunction> part)
 		{
-			line += "Q_out = " + m_backPorches[0].getSize() + " ";	
+			Conjunction c = new Conjunction();
+			part.accept(c);
+			return hasFlag(FLAG_SIMPLIFY) ? Condition.simplify(c) : c;
+		}
+		
+		@Override
+		public Boolean evaluate(Assignment a)
+		{
+			for (Consumer<Conjunction> part : m_parts)
+			{
+				Conjunction c = new Conjunction();
+				part.accept(c);
+				if (!c.evaluate(a))
+				{
+					return false;
+				}
+			}
+			return true;
 		}
-		c.addLine(line);
-		c.addLine(s_dashes);
-		return c;
 	}
 	
 	/**
-	 * Adds new lines to the top comment for this module.
-	 * @param c The comment
+	 * Conjunction that prints each term as soon as it is added, instead of
+	 * keeping it.
 	 */
-	protected void addToComment(Comment c)
+	protected static class PrintedConjunction extends Conjunction
 	{
-		// Do nothing
+		/**
+		 * The stream where the terms are printed.
+		 */
+		/*@ non_null @*/ protected final PrettyPrintStream m_stream;
+		
+		/**
+		 * A flag indicating that no term has been printed yet.
+		 */
+		protected boolean m_first;
+		
+		public PrintedConjunction(/*@ non_null @*/ PrettyPrintStream ps)
+		{
+			super();
+			m_stream = ps;
+			m_first = true;
+		}
+		
+		@Override
+		public PrintedConjunction add(Term<?> t)
+		{
+			if (!m_first)
+			{
+				m_stream.println(" &");
+			}
+			Term<?> to_print = t;
+			if (hasFlag(FLAG_SIMPLIFY) && t instanceof Condition)
+			{
+				to_print = Condition.simplify((Condition) t);
+			}
+			to_print.print(m_stream);
+			m_first = false;
+			return this;
+		}
 	}
 	
-	@Override
-	public Condition getInit()
+	/**
+	 * Condition referring by name to a DEFINE macro of the module. The
+	 * condition prints as the name of the macro, but evaluates as its body.
+	 */
+	public class DefineReference extends BooleanVariableCondition
 	{
-		Conjunction and_init = new Conjunction();
-		for (int i = 0; i < getInputArity(); i++)
+		/**
+		 * The name of the macro.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		protected final boolean m_next;
+		
+		/**
+		 * The formula the macro stands for.
+		 */
+		/*@ non_null @*/ protected final Condition m_body;
+		
+		public DefineReference(String name, boolean next, Condition body)
 		{
-			and_init.add(m_buffers[i].hasLength(false, 0));
-			m_buffers[i].addToInit(and_init);
-			m_frontPorches[i].addToInit(and_init);
+			super(next ? new ScalarVariable(name, BooleanDomain.instance).next() : new ScalarVariable(name, BooleanDomain.instance));
+			m_name = name;
+			m_next = next;
+			m_body = body;
 		}
-		for (int i = 0; i < getOutputArity(); i++)
+		
+		@Override
+		public Boolean evaluate(Assignment a)
 		{
-			m_backPorches[i].addToInit(and_init);
+			return m_body.evaluate(a);
 		}
-		addToInit(and_init);
-		if (s_simplify)
+		
+		/**
+		 * Determines if this reference is printed as the name of the macro,
+		 * or as its body when no DEFINE section is printed.
+		 * @return <tt>true</tt> if the name is printed, <tt>false</tt>
+		 * otherwise
+		 */
+		/*@ pure @*/ public boolean isPrintedByName()
 		{
-			return Condition.simplify(and_init);
+			return hasFlag(FLAG_DEFINES);
 		}
-		return and_init;
-	}
-	
-	@Override
-	public Condition getTrans()
-	{
-		Conjunction and_trans = new Conjunction();
-		for (int i = 0; i < getInputArity(); i++)
+		
+		/**
+		 * Gets the formula the macro stands for.
+		 * @return The formula
+		 */
+		/*@ pure non_null @*/ public Condition getBody()
 		{
-			m_buffers[i].addToTrans(and_trans);
-			m_frontPorches[i].addToTrans(and_trans);
+			return m_body;
 		}
-		for (int i = 0; i < getOutputArity(); i++)
+		
+		@Override
+		public void print(PrettyPrintStream ps)
 		{
-			m_backPorches[i].addToTrans(and_trans);	
+			if (isPrintedByName())
+			{
+				super.print(ps);
+				return;
+			}
+			// No DEFINE section is printed along with this condition
+			ps.print("(");
+			m_body.print(ps);
+			ps.print(")");
 		}
-		addToTrans(and_trans);
-		if (s_simplify)
+		
+		@Override
+		public String toString()
 		{
-			return Condition.simplify(and_trans);
+			return m_name + (m_next ? "'" : "");
 		}
-		return and_trans;
 	}
 	
 	/**
@@ -241,6 +1452,7 @@ public abstract class ProcessorModule extends LogicModule
 	public ProcessorModule setFrontPorch(ProcessorQueue q, int position)
 	{
 		m_frontPorches[position] = q;
+		setDirty();
 		return this;
 	}
 
@@ -254,6 +1466,21 @@ public abstract class ProcessorModule extends LogicModule
 	public ProcessorModule setBuffer(ProcessorQueue q, int position)
 	{
 		m_buffers[position] = q;
+		setDirty();
+		return this;
+	}
+
+	/**
+	 * Sets the processor queue corresponding to the processor's back porch
+	 * at a given position in its output pipes.
+	 * @param q The processor queue
+	 * @param position The position
+	 * @return This module
+	 */
+	public ProcessorModule setBackPorch(ProcessorQueue q, int position)
+	{
+		m_backPorches[position] = q;
+		setDirty();
 		return this;
 	}
 
@@ -312,6 +1539,115 @@ public abstract class ProcessorModule extends LogicModule
 	{
 		return m_backPorches[index];
 	}
+
+	/**
+	 * Gets all the variables that can occur in the formulas of this module:
+	 * the variables of its porches and buffers, its reset flag if any, and
+	 * the other variables it declares, such as counters.
+	 * @return The list of variables, in the current state
+	 */
+	/*@ non_null @*/ public List<Variable> getDeclaredVariables()
+	{
+		List<Variable> vars = new ArrayList<Variable>();
+		for (int i = 0; i < getInputArity(); i++)
+		{
+			vars.addAll(m_frontPorches[i].getVariables());
+			vars.addAll(m_buffers[i].getVariables());
+		}
+		for (int i = 0; i < getOutputArity(); i++)
+		{
+			vars.addAll(m_backPorches[i].getVariables());
+		}
+		if (m_hasReset)
+		{
+			vars.add(m_resetFlag);
+		}
+		for (Variable v : m_variables)
+		{
+			if (!vars.contains(v))
+			{
+				vars.add(v);
+			}
+		}
+		return vars;
+	}
+
+	/**
+	 * Determines if the size of the porches of this module can be changed
+	 * after it is created, using {@link #setFrontPorchSize(int, int)} and
+	 * {@link #setBackPorchSize(int, int)}. This is not the case of modules
+	 * whose internal structure depends on these sizes.
+	 * @return <tt>true</tt> if the porches can be resized, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isResizable()
+	{
+		return true;
+	}
+	
+	/**
+	 * Changes the size of the front porch at a given position.
+	 * @param index The index of the input pipe
+	 * @param size The new size of the porch
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setFrontPorchSize(int index, int size)
+	{
+		m_frontPorches[index].setSize(size);
+		declareParameters();
+		setDirty();
+		return this;
+	}
+	
+	/**
+	 * Changes the size of the back porch at a given position.
+	 * @param index The index of the output pipe
+	 * @param size The new size of the porch
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setBackPorchSize(int index, int size)
+	{
+		m_backPorches[index].setSize(size);
+		declareParameters();
+		setDirty();
+		return this;
+	}
+
+	/**
+	 * Changes the domain of the events received on an input pipe. This
+	 * replaces the domain of both the front porch and the buffer at this
+	 * position; the other variables of the module keep their domain.
+	 * @param index The index of the input pipe
+	 * @param d The new domain
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setInputDomain(int index, /*@ non_null @*/ Domain d)
+	{
+		m_frontPorches[index].setDomain(d);
+		m_buffers[index].setDomain(d);
+		if (m_buffers[index].getSize() > 0)
+		{
+			declareVariable(m_buffers[index].m_arrayContents);
+		}
+		declareParameters();
+		setDirty();
+		return this;
+	}
+
+	/**
+	 * Changes the domain of the events produced on an output pipe, which is
+	 * the domain of the back porch at this position.
+	 * @param index The index of the output pipe
+	 * @param d The new domain
+	 * @return This module
+	 */
+	/*@ non_null @*/ public ProcessorModule setOutputDomain(int index, /*@ non_null @*/ Domain d)
+	{
+		m_backPorches[index].setDomain(d);
+		declareParameters();
+		setDirty();
+		return this;
+	}
 	
 	/**
 	 * Gets the min/max number of output events this processor can produce, in
@@ -323,6 +1659,39 @@ public abstract class ProcessorModule extends LogicModule
 	 * @return The range of output events the processor can produce
 	 */
 	/*@ pure non_null @*/ public abstract IntegerRange getOutputRange(IntegerRange ... ranges);
+	
+	/**
+	 * Gets the interval of values this processor can output on one of its
+	 * pipes, given intervals on the values of the events it receives. This
+	 * only applies to pipes carrying integers. Unless overridden, nothing is
+	 * inferred about the output values.
+	 * @param index The index of the output pipe
+	 * @param ranges Ranges on the values of the events received on each
+	 * input pipe. A range is <tt>null</tt> if nothing is known about the
+	 * values of the corresponding pipe.
+	 * @return The range of output values, or <tt>null</tt> if no range can
+	 * be inferred
+	 */
+	/*@ pure null @*/ public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return null;
+	}
+	
+	/**
+	 * Computes the smallest interval containing two intervals.
+	 * @param r1 The first interval, or <tt>null</tt> if unknown
+	 * @param r2 The second interval, or <tt>null</tt> if unknown
+	 * @return The interval, or <tt>null</tt> if one of the intervals is
+	 * unknown
+	 */
+	/*@ null @*/ protected static IntegerRange union(/*@ null @*/ IntegerRange r1, /*@ null @*/ IntegerRange r2)
+	{
+		if (r1 == null || r2 == null)
+		{
+			return null;
+		}
+		return new IntegerRange(Math.min(r1.getLowerBound(), r2.getLowerBound()), Math.max(r1.getUpperBound(), r2.getUpperBound()));
+	}
 
 	public int length(QueueType t, int pipe_index)
 	{
@@ -642,9 +2011,10 @@ public abstract class ProcessorModule extends LogicModule
 	 */
 	protected void copyInto(ProcessorModule pm)
 	{
-		// Nothing to do. Only there so that descendants can call
-		// super.copyInto().
-		return;
+		if (m_queueEncoding != pm.m_queueEncoding)
+		{
+			pm.setQueueEncoding(m_queueEncoding);
+		}
 	}
 
 	/**
@@ -21,6 +21,7 @@ package ca.uqac.lif.cep.nusmv;
 import static ca.uqac.lif.nusmv4j.ConstantFalse.FALSE;
 import static ca.uqac.lif.nusmv4j.ConstantTrue.TRUE;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.nusmv4j.ArrayAccess;
@@ -33,8 +34,12 @@ import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Constant;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.GreaterOrEqual;
+import ca.uqac.lif.nusmv4j.GreaterThan;
 import ca.uqac.lif.nusmv4j.Implication;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
 import ca.uqac.lif.nusmv4j.Term;
 import ca.uqac.lif.nusmv4j.Variable;
 
@@ -42,9 +47,37 @@ import ca.uqac.lif.nusmv4j.Variable;
  * An event queue modeled as a pair of NuSMV array variables. Concretely,
  * this class is implemented as a descendant of {@link NusmvQueue} with an
  * extra array variable field.
+ * <p>
+ * The elementary conditions and terms on the queue's cells and length are
+ * requested many times while building the formulas of a module. The queue
+ * therefore memorizes them, and repeated calls with the same arguments return
+ * the same instance.
+ * <p>
+ * Two encodings of the queue's occupancy are available (see
+ * {@link Encoding}). By default, an array of Boolean flags tells which
+ * cells contain an event; alternately, a single integer variable holds the
+ * number of events in the queue. The choice of encoding is transparent to
+ * the modules that use the queue through its methods.
  */
 public class ProcessorQueue extends NusmvQueue
 {
+	/**
+	 * The possible ways of encoding which cells of a queue are occupied.
+	 */
+	public enum Encoding
+	{
+		/**
+		 * One Boolean flag per cell, the flags being true for a prefix of the
+		 * array.
+		 */
+		FLAGS,
+		
+		/**
+		 * A single integer variable ranging from 0 to the size of the queue.
+		 */
+		LENGTH
+	}
+	
 	/**
 	 * The name given to this queue.
 	 */
@@ -53,20 +86,77 @@ public class ProcessorQueue extends NusmvQueue
 	/**
 	 * The array variable that stores the actual events of the queue.
 	 */
-	/*@ non_null @*/ protected final ArrayVariable m_arrayContents;
+	/*@ non_null @*/ protected ArrayVariable m_arrayContents;
 
 	/**
 	 * A reference to an instance of the same variable in the next state. This
 	 * reference is null if the current object is already a "next" variable.
 	 */
 	/*@ null @*/ protected ProcessorQueue m_next;
+	
+	/**
+	 * The scalar variable holding the number of events in the queue, when the
+	 * queue uses the {@link Encoding#LENGTH LENGTH} encoding. This variable
+	 * has the same name as the array of flags, which it replaces.
+	 */
+	/*@ non_null @*/ protected ScalarVariable m_length;
+	
+	/**
+	 * The encoding used for the occupancy of the queue.
+	 */
+	/*@ non_null @*/ protected Encoding m_encoding;
+
+	/**
+	 * Cache of the conditions returned by {@link #hasAt(boolean, int)},
+	 * indexed by state (0 for current, 1 for next) and position.
+	 */
+	/*@ null @*/ protected Condition[][] m_hasAtCache;
+
+	/**
+	 * Cache of the conditions returned by
+	 * {@link #booleanValueAt(boolean, int)}, indexed by state and position.
+	 */
+	/*@ null @*/ protected Condition[][] m_booleanValueAtCache;
+
+	/**
+	 * Cache of the terms returned by {@link #valueAt(boolean, int)},
+	 * indexed by state and position.
+	 */
+	/*@ null @*/ protected Term<?>[][] m_valueAtCache;
+
+	/**
+	 * Cache of the conditions returned by {@link #minLength(boolean, int)},
+	 * indexed by state and length.
+	 */
+	/*@ null @*/ protected Condition[][] m_minLengthCache;
+
+	/**
+	 * Cache of the conditions returned by {@link #hasLength(boolean, int)},
+	 * indexed by state and length.
+	 */
+	/*@ null @*/ protected Condition[][] m_hasLengthCache;
+
+	/**
+	 * The moment this queue was last modified, as given by the modification
+	 * clock of {@link ProcessorModule}.
+	 */
+	protected long m_lastModified;
+
+	/**
+	 * The events last given to {@link #set(Object...)}, or <tt>null</tt> if
+	 * the method has not been called.
+	 */
+	/*@ null @*/ protected Object[] m_events;
 
 	public ProcessorQueue(String name, ArrayVariable contents, ArrayVariable flags)
 	{
 		super(flags);
 		m_arrayContents = contents;
 		m_name = name;
+		m_encoding = Encoding.FLAGS;
+		m_length = createLengthVariable();
 		m_next = new ProcessorQueue(name, contents.next(), flags.next(), true);
+		m_next.m_length = m_length.next();
 	}
 
 	protected ProcessorQueue(String name, ArrayVariable contents, ArrayVariable flags, boolean is_next)
@@ -74,6 +164,8 @@ public class ProcessorQueue extends NusmvQueue
 		super(flags);
 		m_name = name;
 		m_arrayContents = contents;
+		m_encoding = Encoding.FLAGS;
+		m_length = createLengthVariable();
 		m_next = null;
 	}
 
@@ -82,7 +174,86 @@ public class ProcessorQueue extends NusmvQueue
 		super(new ArrayVariable(flags, BooleanDomain.instance, size));
 		m_name = name;
 		m_arrayContents = new ArrayVariable(contents, d, size);
+		m_encoding = Encoding.FLAGS;
+		m_length = createLengthVariable();
 		m_next = new ProcessorQueue(name, m_arrayContents.next(), m_arrayFlags.next(), true);
+		m_next.m_length = m_length.next();
+	}
+	
+	/**
+	 * Creates the scalar variable holding the length of this queue, based on
+	 * its current size.
+	 * @return The variable
+	 */
+	/*@ non_null @*/ protected ScalarVariable createLengthVariable()
+	{
+		return new ScalarVariable(m_arrayFlags.getName(), new IntegerRange(0, getSize()));
+	}
+	
+	/**
+	 * Sets the encoding used for the occupancy of this queue. This must be
+	 * done before any formula is generated from the queue.
+	 * @param e The encoding
+	 * @return This queue
+	 */
+	/*@ non_null @*/ public ProcessorQueue setEncoding(/*@ non_null @*/ Encoding e)
+	{
+		if (e != m_encoding)
+		{
+			m_encoding = e;
+			clearCache();
+			if (m_next != null)
+			{
+				m_next.setEncoding(e);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the encoding used for the occupancy of this queue.
+	 * @return The encoding
+	 */
+	/*@ pure non_null @*/ public Encoding getEncoding()
+	{
+		return m_encoding;
+	}
+	
+	/**
+	 * Gets the scalar variable holding the number of events in this queue.
+	 * This variable is only part of the model when the queue uses the
+	 * {@link Encoding#LENGTH LENGTH} encoding.
+	 * @return The variable
+	 */
+	/*@ pure non_null @*/ public ScalarVariable getLengthVariable()
+	{
+		return m_length;
+	}
+	
+	/**
+	 * Gets the term designating the length variable of this queue, in the
+	 * current or the next state.
+	 * @param next A flag indicating if the term applies to the
+	 * current state or the next state
+	 * @return The term
+	 */
+	/*@ pure non_null @*/ protected ScalarVariable getLength(boolean next)
+	{
+		if (next)
+		{
+			return m_length.next();
+		}
+		return m_length;
+	}
+	
+	@Override
+	/*@ pure non_null @*/ public Variable getOccupancyVariable()
+	{
+		if (m_encoding == Encoding.LENGTH)
+		{
+			return m_length;
+		}
+		return m_arrayFlags;
 	}
 	
 	/**
@@ -93,7 +264,10 @@ public class ProcessorQueue extends NusmvQueue
 	 */
 	public void addToInit(Conjunction c)
 	{
-		c.add(isWellFormed(false));
+		if (!ProcessorModule.hasFlag(ProcessorModule.FLAG_INVAR))
+		{
+			c.add(isWellFormed(false));
+		}
 	}
 	
 	/**
@@ -104,7 +278,23 @@ public class ProcessorQueue extends NusmvQueue
 	 */
 	public void addToTrans(Conjunction c)
 	{
-		c.add(isWellFormed(true));
+		if (!ProcessorModule.hasFlag(ProcessorModule.FLAG_INVAR))
+		{
+			c.add(isWellFormed(true));
+		}
+	}
+	
+	/**
+	 * Adds conditions to the invariant of the module that contains this
+	 * queue. These conditions are only used when
+	 * {@link ProcessorModule#s_invar} is set; they are then omitted from
+	 * {@link #addToInit(Conjunction)} and {@link #addToTrans(Conjunction)}.
+	 * @param c The conjunction representing all the conditions of the
+	 * invariant of the module
+	 */
+	public void addToInvar(Conjunction c)
+	{
+		c.add(isWellFormed(false));
 	}
 
 	/**
@@ -146,8 +336,68 @@ public class ProcessorQueue extends NusmvQueue
 	{
 		m_arrayFlags.setDimension(size);
 		m_arrayContents.setDimension(size);
+		m_length = createLengthVariable();
+		clearCache();
+		if (m_next != null)
+		{
+			m_next.m_length = m_length.next();
+			m_next.clearCache();
+		}
 		return this;
 	}
+
+	/**
+	 * Replaces the domain of the events stored in this queue. The array
+	 * variable holding the events is replaced by a new one with the same
+	 * name; modules that declare this variable must therefore declare it
+	 * again.
+	 * @param d The new domain
+	 * @return This queue
+	 */
+	/*@ non_null @*/ public ProcessorQueue setDomain(/*@ non_null @*/ Domain d)
+	{
+		m_arrayContents = new ArrayVariable(m_arrayContents.getName(), d, getSize());
+		clearCache();
+		if (m_next != null)
+		{
+			m_next.m_arrayContents = m_arrayContents.next();
+			m_next.clearCache();
+		}
+		return this;
+	}
+	
+	/**
+	 * Records that this queue has just been modified, so that the formulas
+	 * generated by the modules using it are generated again.
+	 */
+	protected void touch()
+	{
+		m_lastModified = ProcessorModule.tick();
+	}
+
+	/**
+	 * Gets the moment this queue was last modified.
+	 * @return The tick of the modification clock of {@link ProcessorModule}
+	 */
+	/*@ pure @*/ public long getLastModified()
+	{
+		return m_lastModified;
+	}
+
+	/**
+	 * Discards all the conditions and terms memorized by this queue. The
+	 * caches are rebuilt lazily the next time they are queried. This method
+	 * must be called whenever the size of the queue changes.
+	 */
+	protected void clearCache()
+	{
+		touch();
+		m_hasAtCache = null;
+		m_booleanValueAtCache = null;
+		m_valueAtCache = null;
+		m_minLengthCache = null;
+		m_hasLengthCache = null;
+	}
 	
 	public class IsWellFormed extends Conjunction
 	{
@@ -161,7 +411,7 @@ public class ProcessorQueue extends NusmvQueue
 			Constant cv = new Constant(v);
 			for (int i = 0; i < getSize(); i++)
 			{
-				if (i > 0)
+				if (i > 0 && m_encoding == Encoding.FLAGS)
 				{
 					Implication imp = new Implication();
 					imp.add(hasAt(m_next, i));
@@ -195,6 +445,8 @@ public class ProcessorQueue extends NusmvQueue
 	 * that same position contains the default value for the queue's
 	 * domain</li> 
 	 * </ol>
+	 * With the {@link Encoding#LENGTH LENGTH} encoding, the first condition
+	 * holds by construction and is omitted.
 	 * @return The condition
 	 */
 	/*@ non_null @*/ public Condition isWellFormed(boolean next)
@@ -216,12 +468,30 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			throw new ArrayIndexOutOfBoundsException(getName() + "[" + index + "] out of bounds");
 		}
-		ArrayVariable q = m_arrayFlags;
-		if (next)
+		if (m_hasAtCache == null)
+		{
+			m_hasAtCache = new Condition[2][getSize()];
+		}
+		int s = next ? 1 : 0;
+		Condition c = m_hasAtCache[s][index];
+		if (c == null)
 		{
-			q = q.next();
+			if (m_encoding == Encoding.LENGTH)
+			{
+				c = new GreaterThan(getLength(next), new Constant(index));
+			}
+			else
+			{
+				ArrayVariable q = m_arrayFlags;
+				if (next)
+				{
+					q = q.next();
+				}
+				c = BooleanArrayAccessCondition.get(ArrayAccess.get(q, index));
+			}
+			m_hasAtCache[s][index] = c;
 		}
-		return BooleanArrayAccessCondition.get(ArrayAccess.get(q, index));
+		return c;
 	}
 
 	/**
@@ -236,7 +506,7 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			throw new ArrayIndexOutOfBoundsException(getName() + "[" + index + "] out of bounds");
 		}
-		return BooleanArrayAccessCondition.get(ArrayAccess.get(m_arrayFlags.next(), index));
+		return hasAt(true, index);
 	}
 
 	/**
@@ -252,11 +522,23 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			throw new ArrayIndexOutOfBoundsException(getName() + "[" + index + "] out of bounds");
 		}
-		if (next)
+		if (m_booleanValueAtCache == null)
+		{
+			m_booleanValueAtCache = new Condition[2][getSize()];
+		}
+		int s = next ? 1 : 0;
+		Condition c = m_booleanValueAtCache[s][index];
+		if (c == null)
 		{
-			return BooleanArrayAccessCondition.get(ArrayAccess.get(m_arrayContents.next(), index));	
+			ArrayVariable q = m_arrayContents;
+			if (next)
+			{
+				q = q.next();
+			}
+			c = BooleanArrayAccessCondition.get(ArrayAccess.get(q, index));
+			m_booleanValueAtCache[s][index] = c;
 		}
-		return BooleanArrayAccessCondition.get(ArrayAccess.get(m_arrayContents, index));
+		return c;
 	}
 
 	/**
@@ -273,11 +555,23 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			throw new ArrayIndexOutOfBoundsException(getName() + "[" + index + "] out of bounds");
 		}
-		if (next)
+		if (m_valueAtCache == null)
 		{
-			return ArrayAccess.get(m_arrayContents.next(), index);
+			m_valueAtCache = new Term<?>[2][getSize()];
 		}
-		return ArrayAccess.get(m_arrayContents, index);
+		int s = next ? 1 : 0;
+		Term<?> t = m_valueAtCache[s][index];
+		if (t == null)
+		{
+			ArrayVariable q = m_arrayContents;
+			if (next)
+			{
+				q = q.next();
+			}
+			t = ArrayAccess.get(q, index);
+			m_valueAtCache[s][index] = t;
+		}
+		return t;
 	}
 
 	/**
@@ -292,7 +586,7 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			return FALSE;
 		}
-		return ArrayAccess.get(m_arrayContents.next(), index);
+		return valueAt(true, index);
 	}
 
 	/**
@@ -312,7 +606,18 @@ public class ProcessorQueue extends NusmvQueue
 		{
 			return TRUE;
 		}
-		return new MinLength(next, n);
+		if (m_minLengthCache == null)
+		{
+			m_minLengthCache = new Condition[2][Q + 1];
+		}
+		int s = next ? 1 : 0;
+		Condition c = m_minLengthCache[s][n];
+		if (c == null)
+		{
+			c = new MinLength(next, n);
+			m_minLengthCache[s][n] = c;
+		}
+		return c;
 	}
 
 	public class MinLength extends Conjunction
@@ -331,9 +636,16 @@ public class ProcessorQueue extends NusmvQueue
 			super();
 			m_next = next;
 			m_n = n;
-			for (int i = 0; i <= n - 1; i++)
+			if (m_encoding == Encoding.LENGTH)
 			{
-				add(hasAt(m_next, i));
+				add(new GreaterOrEqual(getLength(m_next), new Constant(n)));
+			}
+			else
+			{
+				for (int i = 0; i <= n - 1; i++)
+				{
+					add(hasAt(m_next, i));
+				}
 			}
 		}
 
@@ -354,7 +666,24 @@ public class ProcessorQueue extends NusmvQueue
 	 */
 	/*@ non_null @*/ public Condition hasLength(boolean next, int n)
 	{
-		return new HasLength(next, n);
+		int Q = getSize();
+		if (n < 0 || n > Q)
+		{
+			// Not cached; the constructor takes care of out of bounds lengths
+			return new HasLength(next, n);
+		}
+		if (m_hasLengthCache == null)
+		{
+			m_hasLengthCache = new Condition[2][Q + 1];
+		}
+		int s = next ? 1 : 0;
+		Condition c = m_hasLengthCache[s][n];
+		if (c == null)
+		{
+			c = new HasLength(next, n);
+			m_hasLengthCache[s][n] = c;
+		}
+		return c;
 	}
 
 	public class HasLength extends Conjunction
@@ -377,15 +706,26 @@ public class ProcessorQueue extends NusmvQueue
 			{
 				add(FALSE);
 			}
-			for (int i = 0; i <= n - 1; i++)
+			if (m_encoding == Encoding.LENGTH)
 			{
-				add(hasAt(m_next, i));
+				// A queue of size 0 is always empty; its length variable is not declared
+				if (n >= 0 && Q > 0)
+				{
+					add(new Equality(getLength(m_next), new Constant(n)));
+				}
 			}
-			for (int i = n; i <= Q - 1; i++)
+			else
 			{
-				Negation not = new Negation();
-				not.add(hasAt(m_next, i));
-				add(not);
+				for (int i = 0; i <= n - 1; i++)
+				{
+					add(hasAt(m_next, i));
+				}
+				for (int i = n; i <= Q - 1; i++)
+				{
+					Negation not = new Negation();
+					not.add(hasAt(m_next, i));
+					add(not);
+				}
 			}
 		}
 
@@ -404,7 +744,7 @@ public class ProcessorQueue extends NusmvQueue
 	 */
 	/*@ non_null @*/ public Condition nextHasLength(int n)
 	{
-		return new HasLength(true, n);
+		return hasLength(true, n);
 	}
 
 	/**
@@ -434,6 +774,8 @@ public class ProcessorQueue extends NusmvQueue
 		}
 		m_arrayContents.setValues(values);
 		m_arrayFlags.setValues(flags);
+		m_length.set(Math.min(elements.length, values.length));
+		m_events = elements;
 		return this;
 	}
 
@@ -444,9 +786,113 @@ public class ProcessorQueue extends NusmvQueue
 	public void assign(Assignment a)
 	{
 		m_arrayContents.assign(a);
-		m_arrayFlags.assign(a);
+		if (m_encoding == Encoding.LENGTH)
+		{
+			m_length.assign(a);
+		}
+		else
+		{
+			m_arrayFlags.assign(a);
+		}
 	}
-	
+
+	/**
+	 * Gets the events contained in the queue in a given state.
+	 * @param s The state vector, whose layout must contain the queue's
+	 * variables
+	 * @return The events, in the order of their cells
+	 */
+	/*@ non_null @*/ public Object[] getContents(/*@ non_null @*/ StateVector s)
+	{
+		List<Object> events = new ArrayList<Object>();
+		if (m_encoding == Encoding.LENGTH)
+		{
+			int n = (Integer) s.get(m_length, 0);
+			for (int i = 0; i < n; i++)
+			{
+				events.add(s.get(m_arrayContents, i));
+			}
+		}
+		else
+		{
+			for (int i = 0; i < getSize(); i++)
+			{
+				if (Boolean.TRUE.equals(s.get(m_arrayFlags, i)))
+				{
+					events.add(s.get(m_arrayContents, i));
+				}
+			}
+		}
+		return events.toArray();
+	}
+
+	/**
+	 * Writes the contents of the queue into a state vector, without
+	 * changing the values held by the queue's variables. Unlike
+	 * {@link #set(Object...)} followed by {@link #assign(StateVector)}, this
+	 * method can be called on the same queue from several threads at once.
+	 * @param s The state vector, whose layout must contain the queue's
+	 * variables
+	 * @param events The events in the queue; events beyond the size of the
+	 * queue are ignored
+	 */
+	public void setContents(/*@ non_null @*/ StateVector s, /*@ non_null @*/ Object ... events)
+	{
+		StateLayout layout = s.getLayout();
+		int[] slots = s.getSlots();
+		int size = getSize(), n = Math.min(events.length, size);
+		int contents = getOffset(layout, m_arrayContents);
+		int default_code = layout.encode(m_arrayContents.getDomain().getDefaultValue());
+		for (int i = 0; i < size; i++)
+		{
+			slots[contents + i] = i < n ? layout.encode(events[i]) : default_code;
+		}
+		if (m_encoding == Encoding.LENGTH)
+		{
+			slots[getOffset(layout, m_length)] = layout.encode(n);
+			return;
+		}
+		int flags = getOffset(layout, m_arrayFlags);
+		for (int i = 0; i < size; i++)
+		{
+			slots[flags + i] = layout.encode(i < n);
+		}
+	}
+
+	/**
+	 * Copies into a state vector the contents of the queue, as set by
+	 * {@link #set(Object...)}. The cells are written directly into the slots
+	 * of the vector; nothing is written if the contents of the queue have
+	 * never been set.
+	 * @param s The state vector, whose layout must contain the queue's
+	 * variables
+	 */
+	public void assign(/*@ non_null @*/ StateVector s)
+	{
+		if (m_events != null)
+		{
+			setContents(s, m_events);
+		}
+	}
+
+	/**
+	 * Gets the first slot of one of the queue's variables in a layout.
+	 * @param layout The layout
+	 * @param v The variable
+	 * @return The slot
+	 * @throws IllegalArgumentException If the layout does not contain the
+	 * variable
+	 */
+	protected static int getOffset(/*@ non_null @*/ StateLayout layout, /*@ non_null @*/ Variable v)
+	{
+		int offset = layout.getOffset(v.getName());
+		if (offset < 0)
+		{
+			throw new IllegalArgumentException("Variable " + v.getName() + " is not in the layout");
+		}
+		return offset;
+	}
+
 	@Override
 	/*@ pure non_null @*/ public List<Variable> getVariables()
 	{
@@ -0,0 +1,704 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ca.uqac.lif.cep.nusmv.PipelineSimulator.ModuleState;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Domain;
+
+/**
+ * Computes the states of a pipeline that can be reached from its initial
+ * states, without calling NuSMV. The states are explored breadth-first:
+ * the states at a given depth are split among the threads of a
+ * {@link ForkJoinPool}, which compute their successors with the modules'
+ * transition relations, as {@link PipelineSimulator} does for a single
+ * state. Unlike the simulator, the checker explores every successor of a
+ * module that is not deterministic.
+ * <p>
+ * The input queues of the pipeline that are instances of
+ * {@link PresetProcessorQueue} produce the events of their sequence; the
+ * state of the pipeline then includes the position in each sequence. Every
+ * other input queue can receive, at each step, any sequence of events of
+ * its domain that fits in the queue.
+ * <p>
+ * A state of the pipeline is packed into an array of <tt>long</tt>, where
+ * each cell of each module takes as many bits as needed to number the
+ * values of its domain; the states already visited are kept in a
+ * {@link PackedStateSet}. For each new state, the checker only keeps the
+ * events that led to it, so that a trace can be given for every state that
+ * violates an invariant.
+ * <p>
+ * Invariants are conditions on the state of a module, added with
+ * {@link #addInvariant(String, ProcessorModule, Condition)}. In addition, a
+ * state where some module has no successor, which is what happens when
+ * the events to put in a queue exceed its size, is reported as a violation.
+ */
+public class ReachabilityChecker
+{
+	/**
+	 * The name of the violations reported when a module has no successor
+	 * state.
+	 */
+	/*@ non_null @*/ public static final String DEADLOCK = "deadlock";
+
+	/**
+	 * The number of states below which a task expands its states instead of
+	 * splitting them among subtasks.
+	 */
+	public static int s_threshold = 16;
+
+	/**
+	 * The pipeline to check.
+	 */
+	/*@ non_null @*/ protected final ContainerModule m_pipeline;
+
+	/**
+	 * The modules of the pipeline, in an order where each module comes after
+	 * the modules producing its inputs.
+	 */
+	/*@ non_null @*/ protected final List<ModuleState> m_modules;
+
+	/**
+	 * The input queues of the pipeline.
+	 */
+	/*@ non_null @*/ protected final ProcessorQueue[] m_inputs;
+
+	/**
+	 * For each input queue of the pipeline, the possible sequences of events
+	 * it can receive at each step, or <tt>null</tt> if the queue is an
+	 * instance of {@link PresetProcessorQueue}.
+	 */
+	/*@ non_null @*/ protected final Object[][][] m_words;
+
+	/**
+	 * The invariants to check.
+	 */
+	/*@ non_null @*/ protected final List<Invariant> m_invariants;
+
+	/**
+	 * For each slot of each module, in the order of {@link #m_modules}, the
+	 * codes of the values of its domain, sorted.
+	 */
+	/*@ non_null @*/ protected final int[][] m_codes;
+
+	/**
+	 * For each slot of each module, and then for each preset input, the
+	 * position of its first bit in a packed state.
+	 */
+	/*@ non_null @*/ protected final int[] m_bits;
+
+	/**
+	 * The number of <tt>long</tt> in a packed state.
+	 */
+	protected final int m_width;
+
+	/**
+	 * The pool where states are expanded.
+	 */
+	/*@ non_null @*/ protected ForkJoinPool m_pool;
+
+	/**
+	 * The maximum number of steps to explore.
+	 */
+	protected int m_maxDepth;
+
+	/**
+	 * Whether to stop the exploration at the first depth where some
+	 * invariant is violated.
+	 */
+	protected boolean m_stopAtViolation;
+
+	/**
+	 * Creates a checker for the pipeline of a model.
+	 * @param m The model
+	 */
+	public ReachabilityChecker(/*@ non_null @*/ BeepBeepModel m)
+	{
+		this(m.getPipeline());
+	}
+
+	/**
+	 * Creates a checker for a pipeline.
+	 * @param pipeline The pipeline
+	 * @throws IllegalArgumentException If some module of the pipeline is
+	 * not connected to the inputs of the pipeline
+	 */
+	public ReachabilityChecker(/*@ non_null @*/ ContainerModule pipeline)
+	{
+		super();
+		m_pipeline = pipeline;
+		m_modules = PipelineSimulator.getModules(pipeline);
+		m_inputs = pipeline.getInputQueues();
+		m_words = new Object[m_inputs.length][][];
+		for (int j = 0; j < m_inputs.length; j++)
+		{
+			if (!(m_inputs[j] instanceof PresetProcessorQueue))
+			{
+				m_words[j] = getWords(m_inputs[j].getDomain(), m_inputs[j].getSize());
+			}
+		}
+		m_invariants = new ArrayList<Invariant>();
+		List<int[]> codes = new ArrayList<int[]>();
+		for (ModuleState ms : m_modules)
+		{
+			for (int i = 0; i < ms.m_layout.getSlotCount(); i++)
+			{
+				Object[] values = CdclSolver.getValues(ms.m_layout.getVariable(i).getDomain());
+				int[] slot_codes = new int[values.length];
+				for (int k = 0; k < values.length; k++)
+				{
+					slot_codes[k] = ms.m_layout.encode(values[k]);
+				}
+				Arrays.sort(slot_codes);
+				codes.add(slot_codes);
+			}
+		}
+		m_codes = codes.toArray(new int[codes.size()][]);
+		m_bits = new int[m_codes.length + m_inputs.length];
+		int bit = 0;
+		for (int i = 0; i < m_bits.length; i++)
+		{
+			int num_values = i < m_codes.length ? m_codes[i].length : getPresetLength(i - m_codes.length) + 1;
+			int width = 64 - Long.numberOfLeadingZeros(Math.max(1, num_values - 1));
+			if (bit / 64 != (bit + width - 1) / 64)
+			{
+				// A value never spans two longs
+				bit = (bit / 64 + 1) * 64;
+			}
+			m_bits[i] = bit;
+			bit += width;
+		}
+		m_width = Math.max(1, (bit + 63) / 64);
+		m_pool = ForkJoinPool.commonPool();
+		m_maxDepth = Integer.MAX_VALUE;
+		m_stopAtViolation = true;
+	}
+
+	/**
+	 * Sets the pool where states are expanded. By default, the checker uses
+	 * the common pool.
+	 * @param pool The pool
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public ReachabilityChecker setPool(/*@ non_null @*/ ForkJoinPool pool)
+	{
+		m_pool = pool;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of steps to explore. By default, the
+	 * exploration stops only when no new state is found.
+	 * @param depth The number of steps
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public ReachabilityChecker setMaxDepth(int depth)
+	{
+		m_maxDepth = depth;
+		return this;
+	}
+
+	/**
+	 * Sets whether to stop the exploration at the first depth where some
+	 * invariant is violated, which is the default.
+	 * @param b <tt>true</tt> to stop, <tt>false</tt> to explore all the
+	 * reachable states
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public ReachabilityChecker setStopAtViolation(boolean b)
+	{
+		m_stopAtViolation = b;
+		return this;
+	}
+
+	/**
+	 * Adds an invariant to check on every reachable state.
+	 * @param name The name given to the violations of the invariant
+	 * @param m The module whose state the invariant is about
+	 * @param c The condition, which refers to the current state of the
+	 * module's variables
+	 * @return This checker
+	 * @throws IllegalArgumentException If the module is not part of the
+	 * pipeline, or if the condition cannot be compiled
+	 */
+	/*@ non_null @*/ public ReachabilityChecker addInvariant(/*@ non_null @*/ String name, /*@ non_null @*/ ProcessorModule m, /*@ non_null @*/ Condition c)
+	{
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			if (m_modules.get(k).m_module == m)
+			{
+				m_invariants.add(new Invariant(name, k, CompiledCondition.compile(c, m_modules.get(k).m_layout)));
+				return this;
+			}
+		}
+		throw new IllegalArgumentException("Module " + m.getName() + " is not part of the pipeline");
+	}
+
+	/**
+	 * Explores the reachable states of the pipeline.
+	 * @return The result of the exploration
+	 */
+	/*@ non_null @*/ public Result run()
+	{
+		PackedStateSet visited = new PackedStateSet(m_width, 16 * m_pool.getParallelism());
+		ConcurrentLinkedQueue<Violation> violations = new ConcurrentLinkedQueue<Violation>();
+		List<Node> frontier = new ArrayList<Node>();
+		frontier.add(new Node(null, null, null, null, new int[m_inputs.length]));
+		int depth = 0;
+		while (!frontier.isEmpty() && depth < m_maxDepth)
+		{
+			ConcurrentLinkedQueue<Node> next = new ConcurrentLinkedQueue<Node>();
+			m_pool.invoke(new ExpandTask(frontier, 0, frontier.size(), visited, next, violations));
+			frontier = new ArrayList<Node>(next);
+			depth++;
+			if (m_stopAtViolation && !violations.isEmpty())
+			{
+				break;
+			}
+		}
+		return new Result(visited.size(), depth, frontier.isEmpty(), new ArrayList<Violation>(violations));
+	}
+
+	/**
+	 * Computes the successors of a state and adds the new ones to the next
+	 * frontier.
+	 * @param n The node of the state
+	 * @param visited The states visited so far
+	 * @param next The next frontier
+	 * @param violations The violations found so far
+	 */
+	protected void expand(Node n, PackedStateSet visited, ConcurrentLinkedQueue<Node> next, ConcurrentLinkedQueue<Violation> violations)
+	{
+		Object[][] inputs = new Object[m_inputs.length][];
+		int[] counters = new int[m_inputs.length];
+		for (int j = 0; j < m_inputs.length; j++)
+		{
+			if (m_words[j] == null)
+			{
+				PresetProcessorQueue q = (PresetProcessorQueue) m_inputs[j];
+				inputs[j] = q.getStep(n.m_counters[j]);
+				int length = getPresetLength(j);
+				counters[j] = q.m_loop && length > 0 ? (n.m_counters[j] + 1) % length : Math.min(n.m_counters[j] + 1, length);
+			}
+		}
+		expandInputs(n, inputs, counters, 0, visited, next, violations);
+		n.m_states = null;
+	}
+
+	/**
+	 * Chooses the events received by the input queues of the pipeline that
+	 * are not preset, starting from a given queue.
+	 */
+	protected void expandInputs(Node n, Object[][] inputs, int[] counters, int j, PackedStateSet visited, ConcurrentLinkedQueue<Node> next, ConcurrentLinkedQueue<Violation> violations)
+	{
+		if (j == m_inputs.length)
+		{
+			Map<ProcessorQueue,Object[]> contents = new HashMap<ProcessorQueue,Object[]>();
+			for (int i = 0; i < m_inputs.length; i++)
+			{
+				contents.put(m_inputs[i], inputs[i]);
+			}
+			expandModules(n, inputs.clone(), counters, contents, new StateVector[m_modules.size()], 0, visited, next, violations);
+			return;
+		}
+		if (m_words[j] == null)
+		{
+			expandInputs(n, inputs, counters, j + 1, visited, next, violations);
+			return;
+		}
+		for (Object[] word : m_words[j])
+		{
+			inputs[j] = word;
+			expandInputs(n, inputs, counters, j + 1, visited, next, violations);
+		}
+	}
+
+	/**
+	 * Chooses the next state of the modules of the pipeline, starting from a
+	 * given module.
+	 */
+	protected void expandModules(Node n, Object[][] inputs, int[] counters, Map<ProcessorQueue,Object[]> contents, StateVector[] states, int k, PackedStateSet visited, ConcurrentLinkedQueue<Node> next, ConcurrentLinkedQueue<Violation> violations)
+	{
+		if (k == states.length)
+		{
+			Node child = new Node(n, inputs, PipelineSimulator.getOutputs(m_pipeline, contents), states.clone(), counters);
+			if (visited.add(pack(child.m_states, counters)))
+			{
+				next.add(child);
+				for (Invariant inv : m_invariants)
+				{
+					if (!inv.m_condition.evaluate(child.m_states[inv.m_module].getSlots()))
+					{
+						violations.add(new Violation(inv.m_name, child));
+					}
+				}
+			}
+			return;
+		}
+		ModuleState ms = m_modules.get(k);
+		List<StateVector> successors = ms.getSuccessors(n.m_states == null ? null : n.m_states[k], contents);
+		if (successors.isEmpty())
+		{
+			violations.add(new Violation(DEADLOCK + " in " + ms.m_module.getName(), new Node(n, inputs, new Object[0][], null, counters)));
+			return;
+		}
+		for (int i = 0; i < successors.size(); i++)
+		{
+			Map<ProcessorQueue,Object[]> branch = i < successors.size() - 1 ? new HashMap<ProcessorQueue,Object[]>(contents) : contents;
+			states[k] = successors.get(i);
+			ms.putOutputs(states[k], branch);
+			expandModules(n, inputs, counters, branch, states, k + 1, visited, next, violations);
+		}
+	}
+
+	/**
+	 * Packs the state of the pipeline into an array of <tt>long</tt>.
+	 * @param states The state of each module
+	 * @param counters The position in the sequence of each preset input
+	 * @return The packed state
+	 */
+	/*@ non_null @*/ protected long[] pack(StateVector[] states, int[] counters)
+	{
+		long[] packed = new long[m_width];
+		int slot = 0;
+		for (StateVector s : states)
+		{
+			for (int code : s.getSlots())
+			{
+				int ordinal = Arrays.binarySearch(m_codes[slot], code);
+				packed[m_bits[slot] / 64] |= ((long) ordinal) << (m_bits[slot] % 64);
+				slot++;
+			}
+		}
+		for (int j = 0; j < counters.length; j++)
+		{
+			int bit = m_bits[m_codes.length + j];
+			packed[bit / 64] |= ((long) counters[j]) << (bit % 64);
+		}
+		return packed;
+	}
+
+	/**
+	 * Gets the number of steps in the sequence of a preset input.
+	 * @param j The index of the input
+	 * @return The number of steps, or 0 if the input is not preset
+	 */
+	protected int getPresetLength(int j)
+	{
+		return m_inputs[j] instanceof PresetProcessorQueue ? ((PresetProcessorQueue) m_inputs[j]).m_steps.size() : 0;
+	}
+
+	/**
+	 * Gets all the sequences of values of a domain up to a given length.
+	 * @param d The domain
+	 * @param max_length The maximum length
+	 * @return The sequences, by increasing length
+	 */
+	/*@ non_null @*/ protected static Object[][] getWords(/*@ non_null @*/ Domain d, int max_length)
+	{
+		Object[] values = CdclSolver.getValues(d);
+		List<Object[]> words = new ArrayList<Object[]>();
+		words.add(new Object[0]);
+		int from = 0;
+		for (int length = 1; length <= max_length; length++)
+		{
+			int to = words.size();
+			for (int w = from; w < to; w++)
+			{
+				for (Object v : values)
+				{
+					Object[] word = Arrays.copyOf(words.get(w), length);
+					word[length - 1] = v;
+					words.add(word);
+				}
+			}
+			from = to;
+		}
+		return words.toArray(new Object[words.size()][]);
+	}
+
+	/**
+	 * A task expanding a range of states of the frontier, splitting it in
+	 * two while it is larger than {@link ReachabilityChecker#s_threshold}.
+	 */
+	protected class ExpandTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected final List<Node> m_frontier;
+
+		protected final int m_from;
+
+		protected final int m_to;
+
+		protected final PackedStateSet m_visited;
+
+		protected final ConcurrentLinkedQueue<Node> m_next;
+
+		protected final ConcurrentLinkedQueue<Violation> m_violations;
+
+		protected ExpandTask(List<Node> frontier, int from, int to, PackedStateSet visited, ConcurrentLinkedQueue<Node> next, ConcurrentLinkedQueue<Violation> violations)
+		{
+			super();
+			m_frontier = frontier;
+			m_from = from;
+			m_to = to;
+			m_visited = visited;
+			m_next = next;
+			m_violations = violations;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_to - m_from > s_threshold)
+			{
+				int middle = (m_from + m_to) / 2;
+				invokeAll(new ExpandTask(m_frontier, m_from, middle, m_visited, m_next, m_violations),
+						new ExpandTask(m_frontier, middle, m_to, m_visited, m_next, m_violations));
+				return;
+			}
+			for (int i = m_from; i < m_to; i++)
+			{
+				expand(m_frontier.get(i), m_visited, m_next, m_violations);
+			}
+		}
+	}
+
+	/**
+	 * A reached state, with the step that led to it.
+	 */
+	protected static class Node
+	{
+		/**
+		 * The node of the previous state, or <tt>null</tt> before the first
+		 * step.
+		 */
+		/*@ null @*/ protected final Node m_parent;
+
+		/**
+		 * The events received by the input queues of the pipeline in the
+		 * step leading to this state.
+		 */
+		/*@ null @*/ protected final Object[][] m_inputs;
+
+		/**
+		 * The events in the output queues of the pipeline in this state.
+		 */
+		/*@ null @*/ protected final Object[][] m_outputs;
+
+		/**
+		 * The state of each module; it is dropped once the successors of the
+		 * state have been computed.
+		 */
+		/*@ null @*/ protected StateVector[] m_states;
+
+		/**
+		 * The position in the sequence of each preset input.
+		 */
+		/*@ non_null @*/ protected final int[] m_counters;
+
+		protected Node(Node parent, Object[][] inputs, Object[][] outputs, StateVector[] states, int[] counters)
+		{
+			super();
+			m_parent = parent;
+			m_inputs = inputs;
+			m_outputs = outputs;
+			m_states = states;
+			m_counters = counters;
+		}
+	}
+
+	/**
+	 * An invariant compiled on the layout of a module.
+	 */
+	protected static class Invariant
+	{
+		protected final String m_name;
+
+		protected final int m_module;
+
+		protected final CompiledCondition m_condition;
+
+		protected Invariant(String name, int module, CompiledCondition c)
+		{
+			super();
+			m_name = name;
+			m_module = module;
+			m_condition = c;
+		}
+	}
+
+	/**
+	 * A state violating an invariant, with the steps leading to it.
+	 */
+	public class Violation
+	{
+		/**
+		 * The name of the violated invariant.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The node of the violating state.
+		 */
+		/*@ non_null @*/ protected final Node m_node;
+
+		protected Violation(String name, Node n)
+		{
+			super();
+			m_name = name;
+			m_node = n;
+		}
+
+		/**
+		 * Gets the name of the violated invariant.
+		 * @return The name; violations caused by a module that has no
+		 * successor start with {@link ReachabilityChecker#DEADLOCK}
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the events received by the input queues of the pipeline at
+		 * each step leading to the violation.
+		 * @return The events in each input queue, for each step
+		 */
+		/*@ non_null @*/ public List<Object[][]> getInputTrace()
+		{
+			List<Object[][]> trace = new ArrayList<Object[][]>();
+			for (Node n = m_node; n.m_parent != null; n = n.m_parent)
+			{
+				trace.add(n.m_inputs);
+			}
+			Collections.reverse(trace);
+			return trace;
+		}
+
+		/**
+		 * Gets the events in the output queues of the pipeline at each step
+		 * leading to the violation. If the violation is a deadlock, the last
+		 * step has no output.
+		 * @return The events in each output queue, for each step
+		 */
+		/*@ non_null @*/ public List<Object[][]> getOutputTrace()
+		{
+			List<Object[][]> trace = new ArrayList<Object[][]>();
+			for (Node n = m_node; n.m_parent != null; n = n.m_parent)
+			{
+				trace.add(n.m_outputs);
+			}
+			Collections.reverse(trace);
+			return trace;
+		}
+
+		/**
+		 * Prints the violation, followed by the events received by the input
+		 * queues and by the events in the output queues of the pipeline at
+		 * each step leading to it.
+		 * @param ps The stream where to print
+		 */
+		public void print(/*@ non_null @*/ PrintStream ps)
+		{
+			ps.println("Violation of " + m_name);
+			PipelineSimulator.print(ps, m_inputs, getInputTrace());
+			PipelineSimulator.print(ps, m_pipeline.getOutputQueues(), getOutputTrace());
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_name + " after " + getInputTrace().size() + " steps";
+		}
+	}
+
+	/**
+	 * The result of an exploration.
+	 */
+	public static class Result
+	{
+		protected final long m_stateCount;
+
+		protected final int m_depth;
+
+		protected final boolean m_complete;
+
+		/*@ non_null @*/ protected final List<Violation> m_violations;
+
+		protected Result(long state_count, int depth, boolean complete, List<Violation> violations)
+		{
+			super();
+			m_stateCount = state_count;
+			m_depth = depth;
+			m_complete = complete;
+			m_violations = violations;
+		}
+
+		/**
+		 * Gets the number of distinct states reached.
+		 * @return The number of states
+		 */
+		/*@ pure @*/ public long getStateCount()
+		{
+			return m_stateCount;
+		}
+
+		/**
+		 * Gets the number of steps explored.
+		 * @return The number of steps
+		 */
+		/*@ pure @*/ public int getDepth()
+		{
+			return m_depth;
+		}
+
+		/**
+		 * Determines if all the reachable states have been explored, that is,
+		 * if the exploration was not stopped by the depth bound or by a
+		 * violation.
+		 * @return <tt>true</tt> if all states have been explored
+		 */
+		/*@ pure @*/ public boolean isComplete()
+		{
+			return m_complete;
+		}
+
+		/**
+		 * Gets the violations found during the exploration.
+		 * @return The violations
+		 */
+		/*@ pure non_null @*/ public List<Violation> getViolations()
+		{
+			return m_violations;
+		}
+	}
+}
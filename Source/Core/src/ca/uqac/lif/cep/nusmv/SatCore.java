@@ -0,0 +1,775 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A conflict-driven clause learning (CDCL) SAT solver for formulas in
+ * conjunctive normal form. Variables are numbered from 1, and literals are
+ * written as in the DIMACS format: <i>v</i> for variable <i>v</i> and
+ * &minus;<i>v</i> for its negation.
+ * <p>
+ * The solver implements the usual components of a CDCL core: unit
+ * propagation with two watched literals, conflict analysis up to the first
+ * unique implication point, non-chronological backtracking, a VSIDS
+ * branching heuristic with phase saving, and restarts following the Luby
+ * sequence. It is incremental: clauses can be added after a call to
+ * {@link #solve()}, which is how solutions are enumerated with blocking
+ * clauses. Learned clauses are never deleted, which is adequate for the
+ * size of the formulas produced for a single module.
+ */
+public class SatCore
+{
+	/**
+	 * The number of conflicts before the first restart, which is multiplied
+	 * by the terms of the Luby sequence.
+	 */
+	protected static final int s_restartUnit = 100;
+
+	/**
+	 * The factor by which variable activities decay after each conflict.
+	 */
+	protected static final double s_decay = 0.95;
+
+	/**
+	 * The number of variables of the solver.
+	 */
+	protected int m_numVariables;
+
+	/**
+	 * The value of each variable: 1 for true, -1 for false and 0 if the
+	 * variable is unassigned.
+	 */
+	protected int[] m_values;
+
+	/**
+	 * The decision level at which each variable was assigned.
+	 */
+	protected int[] m_levels;
+
+	/**
+	 * The index of the clause that forced the value of each variable, or -1
+	 * for decisions and facts.
+	 */
+	protected int[] m_reasons;
+
+	/**
+	 * The activity of each variable.
+	 */
+	protected double[] m_activity;
+
+	/**
+	 * The last value given to each variable.
+	 */
+	protected boolean[] m_phases;
+
+	/**
+	 * Marks for the variables visited during conflict analysis.
+	 */
+	protected boolean[] m_seen;
+
+	/**
+	 * The clauses of the solver, original and learned. Literals are stored
+	 * in internal form, and the first two literals of a clause are the ones
+	 * it watches.
+	 */
+	/*@ non_null @*/ protected final List<int[]> m_clauses;
+
+	/**
+	 * For each internal literal, the indices of the clauses watching it.
+	 */
+	protected IntList[] m_watches;
+
+	/**
+	 * The assigned literals, in the order of their assignment.
+	 */
+	protected int[] m_trail;
+
+	/**
+	 * The number of literals in the trail.
+	 */
+	protected int m_trailSize;
+
+	/**
+	 * The position in the trail of the next literal to propagate.
+	 */
+	protected int m_head;
+
+	/**
+	 * The position in the trail where each decision level starts.
+	 */
+	/*@ non_null @*/ protected final IntList m_levelStarts;
+
+	/**
+	 * The order in which unassigned variables are picked for decisions.
+	 */
+	/*@ non_null @*/ protected final VariableHeap m_order;
+
+	/**
+	 * The amount by which the activity of a variable is increased.
+	 */
+	protected double m_increment;
+
+	/**
+	 * The value of each variable in the last model found.
+	 */
+	protected boolean[] m_model;
+
+	/**
+	 * A flag indicating that the clauses are known to be unsatisfiable.
+	 */
+	protected boolean m_unsatisfiable;
+
+	/**
+	 * The number of conflicts met since the solver was created.
+	 */
+	protected long m_conflicts;
+
+	/**
+	 * Creates a new solver without variables.
+	 */
+	public SatCore()
+	{
+		super();
+		m_numVariables = 0;
+		m_values = new int[1];
+		m_levels = new int[1];
+		m_reasons = new int[1];
+		m_activity = new double[1];
+		m_phases = new boolean[1];
+		m_seen = new boolean[1];
+		m_model = new boolean[1];
+		m_watches = new IntList[2];
+		m_trail = new int[1];
+		m_clauses = new ArrayList<int[]>();
+		m_levelStarts = new IntList();
+		m_order = new VariableHeap();
+		m_increment = 1;
+		m_unsatisfiable = false;
+		m_conflicts = 0;
+	}
+
+	/**
+	 * Creates a new variable.
+	 * @return The number of the variable
+	 */
+	public int newVariable()
+	{
+		int v = ++m_numVariables;
+		if (v >= m_values.length)
+		{
+			int size = 2 * v;
+			m_values = Arrays.copyOf(m_values, size);
+			m_levels = Arrays.copyOf(m_levels, size);
+			m_reasons = Arrays.copyOf(m_reasons, size);
+			m_activity = Arrays.copyOf(m_activity, size);
+			m_phases = Arrays.copyOf(m_phases, size);
+			m_seen = Arrays.copyOf(m_seen, size);
+			m_model = Arrays.copyOf(m_model, size);
+			m_trail = Arrays.copyOf(m_trail, size);
+			m_watches = Arrays.copyOf(m_watches, 2 * size);
+		}
+		m_watches[2 * v] = new IntList();
+		m_watches[2 * v + 1] = new IntList();
+		m_reasons[v] = -1;
+		m_order.insert(v);
+		return v;
+	}
+
+	/**
+	 * Gets the number of variables of the solver.
+	 * @return The number of variables
+	 */
+	/*@ pure @*/ public int getVariableCount()
+	{
+		return m_numVariables;
+	}
+
+	/**
+	 * Gets the number of clauses of the solver, including learned clauses.
+	 * @return The number of clauses
+	 */
+	/*@ pure @*/ public int getClauseCount()
+	{
+		return m_clauses.size();
+	}
+
+	/**
+	 * Gets the number of conflicts met since the solver was created.
+	 * @return The number of conflicts
+	 */
+	/*@ pure @*/ public long getConflictCount()
+	{
+		return m_conflicts;
+	}
+
+	/**
+	 * Adds a clause to the solver.
+	 * @param literals The literals of the clause
+	 * @return <tt>false</tt> if the clauses are now known to be
+	 * unsatisfiable, <tt>true</tt> otherwise
+	 */
+	public boolean addClause(int ... literals)
+	{
+		if (m_unsatisfiable)
+		{
+			return false;
+		}
+		backtrack(0);
+		IntList lits = new IntList();
+		for (int l : literals)
+		{
+			int lit = toInternal(l);
+			int val = valueOf(lit);
+			if (val > 0 || lits.contains(lit ^ 1))
+			{
+				// Clause satisfied at level 0, or tautology
+				return true;
+			}
+			if (val == 0 && !lits.contains(lit))
+			{
+				lits.add(lit);
+			}
+		}
+		if (lits.size() == 0)
+		{
+			m_unsatisfiable = true;
+			return false;
+		}
+		if (lits.size() == 1)
+		{
+			enqueue(lits.get(0), -1);
+			if (propagate() >= 0)
+			{
+				m_unsatisfiable = true;
+				return false;
+			}
+			return true;
+		}
+		attach(lits.toArray());
+		return true;
+	}
+
+	/**
+	 * Determines if the clauses of the solver are satisfiable.
+	 * @return <tt>true</tt> if a model has been found, <tt>false</tt> if the
+	 * clauses are unsatisfiable
+	 */
+	public boolean solve()
+	{
+		if (m_unsatisfiable)
+		{
+			return false;
+		}
+		backtrack(0);
+		int luby_index = 1;
+		long restart_at = m_conflicts + s_restartUnit * luby(luby_index);
+		while (true)
+		{
+			int conflict = propagate();
+			if (conflict >= 0)
+			{
+				m_conflicts++;
+				if (decisionLevel() == 0)
+				{
+					m_unsatisfiable = true;
+					return false;
+				}
+				learn(conflict);
+				m_increment /= s_decay;
+				if (m_conflicts >= restart_at)
+				{
+					backtrack(0);
+					luby_index++;
+					restart_at = m_conflicts + s_restartUnit * luby(luby_index);
+				}
+				continue;
+			}
+			int v = pickBranchingVariable();
+			if (v == 0)
+			{
+				for (int i = 1; i <= m_numVariables; i++)
+				{
+					m_model[i] = m_values[i] > 0;
+				}
+				return true;
+			}
+			m_levelStarts.add(m_trailSize);
+			enqueue(2 * v + (m_phases[v] ? 0 : 1), -1);
+		}
+	}
+
+	/**
+	 * Gets the value of a variable in the last model found.
+	 * @param v The number of the variable
+	 * @return The value of the variable
+	 */
+	/*@ pure @*/ public boolean getValue(int v)
+	{
+		return m_model[v];
+	}
+
+	/**
+	 * Gets the value of a literal in the last model found.
+	 * @param lit The literal
+	 * @return The value of the literal
+	 */
+	/*@ pure @*/ public boolean isTrue(int lit)
+	{
+		return lit > 0 ? m_model[lit] : !m_model[-lit];
+	}
+
+	/**
+	 * Converts a literal in DIMACS form into its internal form, where
+	 * variable <i>v</i> is written 2<i>v</i> and its negation
+	 * 2<i>v</i>+1.
+	 * @param lit The literal
+	 * @return The internal literal
+	 */
+	protected static int toInternal(int lit)
+	{
+		return lit > 0 ? 2 * lit : -2 * lit + 1;
+	}
+
+	/**
+	 * Gets the current value of an internal literal.
+	 * @param lit The literal
+	 * @return 1 if the literal is true, -1 if it is false, 0 if it is
+	 * unassigned
+	 */
+	protected int valueOf(int lit)
+	{
+		int val = m_values[lit >> 1];
+		return (lit & 1) == 0 ? val : -val;
+	}
+
+	protected int decisionLevel()
+	{
+		return m_levelStarts.size();
+	}
+
+	/**
+	 * Adds a clause of at least two literals to the solver and watches its
+	 * first two literals.
+	 * @param lits The internal literals of the clause
+	 * @return The index of the clause
+	 */
+	protected int attach(int[] lits)
+	{
+		int index = m_clauses.size();
+		m_clauses.add(lits);
+		m_watches[lits[0]].add(index);
+		m_watches[lits[1]].add(index);
+		return index;
+	}
+
+	/**
+	 * Makes a literal true.
+	 * @param lit The internal literal
+	 * @param reason The index of the clause forcing the literal, or -1
+	 */
+	protected void enqueue(int lit, int reason)
+	{
+		int v = lit >> 1;
+		m_values[v] = (lit & 1) == 0 ? 1 : -1;
+		m_levels[v] = decisionLevel();
+		m_reasons[v] = reason;
+		m_trail[m_trailSize++] = lit;
+	}
+
+	/**
+	 * Propagates the literals of the trail that have not been propagated
+	 * yet.
+	 * @return The index of a clause whose literals are all false, or -1 if
+	 * there is no conflict
+	 */
+	protected int propagate()
+	{
+		while (m_head < m_trailSize)
+		{
+			int false_lit = m_trail[m_head++] ^ 1;
+			IntList watchers = m_watches[false_lit];
+			int i = 0, j = 0;
+			while (i < watchers.size())
+			{
+				int ci = watchers.get(i++);
+				int[] c = m_clauses.get(ci);
+				if (c[0] == false_lit)
+				{
+					c[0] = c[1];
+					c[1] = false_lit;
+				}
+				if (valueOf(c[0]) > 0)
+				{
+					watchers.set(j++, ci);
+					continue;
+				}
+				boolean moved = false;
+				for (int k = 2; k < c.length; k++)
+				{
+					if (valueOf(c[k]) >= 0)
+					{
+						c[1] = c[k];
+						c[k] = false_lit;
+						m_watches[c[1]].add(ci);
+						moved = true;
+						break;
+					}
+				}
+				if (moved)
+				{
+					continue;
+				}
+				watchers.set(j++, ci);
+				if (valueOf(c[0]) < 0)
+				{
+					while (i < watchers.size())
+					{
+						watchers.set(j++, watchers.get(i++));
+					}
+					watchers.truncate(j);
+					m_head = m_trailSize;
+					return ci;
+				}
+				enqueue(c[0], ci);
+			}
+			watchers.truncate(j);
+		}
+		return -1;
+	}
+
+	/**
+	 * Analyzes a conflict, learns a clause asserting the negation of the
+	 * first unique implication point, backtracks and asserts the clause.
+	 * @param conflict The index of the conflicting clause
+	 */
+	protected void learn(int conflict)
+	{
+		IntList learnt = new IntList();
+		learnt.add(0);
+		int paths = 0, lit = -1, index = m_trailSize - 1;
+		int level = decisionLevel();
+		do
+		{
+			int[] c = m_clauses.get(conflict);
+			for (int k = (lit == -1 ? 0 : 1); k < c.length; k++)
+			{
+				int q = c[k], v = q >> 1;
+				if (!m_seen[v] && m_levels[v] > 0)
+				{
+					bump(v);
+					m_seen[v] = true;
+					if (m_levels[v] >= level)
+					{
+						paths++;
+					}
+					else
+					{
+						learnt.add(q);
+					}
+				}
+			}
+			while (!m_seen[m_trail[index] >> 1])
+			{
+				index--;
+			}
+			lit = m_trail[index--];
+			conflict = m_reasons[lit >> 1];
+			m_seen[lit >> 1] = false;
+			paths--;
+		} while (paths > 0);
+		learnt.set(0, lit ^ 1);
+		int bt_level = 0, bt_index = 1;
+		for (int k = 1; k < learnt.size(); k++)
+		{
+			int v = learnt.get(k) >> 1;
+			m_seen[v] = false;
+			if (m_levels[v] > bt_level)
+			{
+				bt_level = m_levels[v];
+				bt_index = k;
+			}
+		}
+		backtrack(bt_level);
+		if (learnt.size() == 1)
+		{
+			enqueue(learnt.get(0), -1);
+			return;
+		}
+		int[] clause = learnt.toArray();
+		int tmp = clause[1];
+		clause[1] = clause[bt_index];
+		clause[bt_index] = tmp;
+		enqueue(clause[0], attach(clause));
+	}
+
+	/**
+	 * Undoes all the assignments made above a decision level.
+	 * @param level The level
+	 */
+	protected void backtrack(int level)
+	{
+		if (decisionLevel() <= level)
+		{
+			return;
+		}
+		int start = m_levelStarts.get(level);
+		for (int i = m_trailSize - 1; i >= start; i--)
+		{
+			int v = m_trail[i] >> 1;
+			m_phases[v] = m_values[v] > 0;
+			m_values[v] = 0;
+			m_reasons[v] = -1;
+			m_order.insert(v);
+		}
+		m_trailSize = start;
+		m_head = start;
+		m_levelStarts.truncate(level);
+	}
+
+	/**
+	 * Picks the unassigned variable of highest activity.
+	 * @return The variable, or 0 if all variables are assigned
+	 */
+	protected int pickBranchingVariable()
+	{
+		while (!m_order.isEmpty())
+		{
+			int v = m_order.removeMax();
+			if (m_values[v] == 0)
+			{
+				return v;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Increases the activity of a variable.
+	 * @param v The variable
+	 */
+	protected void bump(int v)
+	{
+		m_activity[v] += m_increment;
+		if (m_activity[v] > 1e100)
+		{
+			for (int i = 1; i <= m_numVariables; i++)
+			{
+				m_activity[i] *= 1e-100;
+			}
+			m_increment *= 1e-100;
+		}
+		m_order.increase(v);
+	}
+
+	/**
+	 * Computes the <i>i</i>-th term of the Luby sequence (1, 1, 2, 1, 1, 2,
+	 * 4, ...).
+	 * @param i The position of the term, starting at 1
+	 * @return The term
+	 */
+	protected static long luby(int i)
+	{
+		int k = 1;
+		while ((1L << k) - 1 < i)
+		{
+			k++;
+		}
+		while (i != (1L << k) - 1)
+		{
+			i -= (1 << (k - 1)) - 1;
+			k = 1;
+			while ((1L << k) - 1 < i)
+			{
+				k++;
+			}
+		}
+		return 1L << (k - 1);
+	}
+
+	/**
+	 * A binary max-heap of variables, ordered by their activity.
+	 */
+	protected class VariableHeap
+	{
+		/**
+		 * The variables in the heap.
+		 */
+		/*@ non_null @*/ protected final IntList m_heap = new IntList();
+
+		/**
+		 * The position of each variable in the heap, or -1 if it is not in
+		 * the heap.
+		 */
+		protected int[] m_positions = new int[0];
+
+		protected boolean isEmpty()
+		{
+			return m_heap.size() == 0;
+		}
+
+		protected void insert(int v)
+		{
+			if (v >= m_positions.length)
+			{
+				int old = m_positions.length;
+				m_positions = Arrays.copyOf(m_positions, 2 * v + 1);
+				Arrays.fill(m_positions, old, m_positions.length, -1);
+			}
+			if (m_positions[v] >= 0)
+			{
+				return;
+			}
+			m_positions[v] = m_heap.size();
+			m_heap.add(v);
+			up(m_positions[v]);
+		}
+
+		protected void increase(int v)
+		{
+			if (v < m_positions.length && m_positions[v] >= 0)
+			{
+				up(m_positions[v]);
+			}
+		}
+
+		protected int removeMax()
+		{
+			int top = m_heap.get(0);
+			int last = m_heap.get(m_heap.size() - 1);
+			m_heap.truncate(m_heap.size() - 1);
+			m_positions[top] = -1;
+			if (m_heap.size() > 0)
+			{
+				m_heap.set(0, last);
+				m_positions[last] = 0;
+				down(0);
+			}
+			return top;
+		}
+
+		protected void up(int i)
+		{
+			int v = m_heap.get(i);
+			while (i > 0)
+			{
+				int parent = (i - 1) / 2;
+				int p = m_heap.get(parent);
+				if (m_activity[p] >= m_activity[v])
+				{
+					break;
+				}
+				m_heap.set(i, p);
+				m_positions[p] = i;
+				i = parent;
+			}
+			m_heap.set(i, v);
+			m_positions[v] = i;
+		}
+
+		protected void down(int i)
+		{
+			int v = m_heap.get(i);
+			int size = m_heap.size();
+			while (2 * i + 1 < size)
+			{
+				int child = 2 * i + 1;
+				if (child + 1 < size && m_activity[m_heap.get(child + 1)] > m_activity[m_heap.get(child)])
+				{
+					child++;
+				}
+				int c = m_heap.get(child);
+				if (m_activity[c] <= m_activity[v])
+				{
+					break;
+				}
+				m_heap.set(i, c);
+				m_positions[c] = i;
+				i = child;
+			}
+			m_heap.set(i, v);
+			m_positions[v] = i;
+		}
+	}
+
+	/**
+	 * A growable list of primitive integers.
+	 */
+	protected static class IntList
+	{
+		/**
+		 * The elements of the list.
+		 */
+		protected int[] m_elements = new int[4];
+
+		/**
+		 * The number of elements in the list.
+		 */
+		protected int m_size = 0;
+
+		protected int size()
+		{
+			return m_size;
+		}
+
+		protected int get(int i)
+		{
+			return m_elements[i];
+		}
+
+		protected void set(int i, int x)
+		{
+			m_elements[i] = x;
+		}
+
+		protected void add(int x)
+		{
+			if (m_size == m_elements.length)
+			{
+				m_elements = Arrays.copyOf(m_elements, 2 * m_size);
+			}
+			m_elements[m_size++] = x;
+		}
+
+		protected boolean contains(int x)
+		{
+			for (int i = 0; i < m_size; i++)
+			{
+				if (m_elements[i] == x)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		protected void truncate(int size)
+		{
+			m_size = size;
+		}
+
+		protected int[] toArray()
+		{
+			return Arrays.copyOf(m_elements, m_size);
+		}
+	}
+}
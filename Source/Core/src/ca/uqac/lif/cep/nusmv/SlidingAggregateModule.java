@@ -0,0 +1,67 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+    
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+    
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+    
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import ca.uqac.lif.nusmv4j.Comment;
+
+/**
+ * Module computing the cumulative value of a function over a sliding window
+ * of events, such as the sum of the last <i>n</i> events. It produces the
+ * same output as a {@link WindowModule} running a {@link CumulateModule},
+ * but uses the sliding encoding of the window: the only state it keeps is
+ * the window's buffer of the last <i>width</i>&minus;1 events, instead of
+ * one instance of the inner processor per window position.
+ */
+public class SlidingAggregateModule extends WindowModule
+{
+	/**
+	 * Creates a new sliding aggregate module.
+	 * @param name The name of the module
+	 * @param f The function to accumulate over each window. It must be
+	 * possible to write it as a term (see
+	 * {@link BinaryFunctionCall#getTerm(ca.uqac.lif.nusmv4j.Term, ca.uqac.lif.nusmv4j.Term)}).
+	 * @param width The width of the window
+	 * @param Q_in The size of the front porch
+	 * @param Q_out The size of the back porch
+	 * @throws IllegalArgumentException If the function cannot be written as
+	 * a term
+	 */
+	public SlidingAggregateModule(String name, BinaryFunctionCall f, int width, int Q_in, int Q_out)
+	{
+		super(name, new CumulateModule("Cumulate", f, width, width), width, f.getInputDomain(0), f.getOutputDomain(), Q_in, Q_out, true);
+		if (!isSliding())
+		{
+			throw new IllegalArgumentException("Function " + f + " cannot be written as a term");
+		}
+	}
+	
+	@Override
+	public void addToComment(Comment c)
+	{
+		c.addLine("Module: Sliding window of " + m_width + " of Cumulate(" + m_slidingAggregate + ")");
+	}
+	
+	@Override
+	public SlidingAggregateModule duplicate()
+	{
+		SlidingAggregateModule m = new SlidingAggregateModule(getName(), m_slidingAggregate, m_width, getFrontPorch(0).getSize(), getBackPorch(0).getSize());
+		copyInto(m);
+		return m;
+	}
+}
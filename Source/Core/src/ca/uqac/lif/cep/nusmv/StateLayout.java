@@ -0,0 +1,244 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * Associates each cell of a set of variables with a slot of an array of
+ * integers, called a state vector. A scalar variable occupies one slot,
+ * and an array variable occupies as many consecutive slots as its
+ * dimension.
+ * <p>
+ * Values are stored in slots as integer codes:
+ * <ul>
+ * <li>an integer is stored as itself;</li>
+ * <li>a Boolean is stored as 1 for <tt>true</tt> and 0 for
+ * <tt>false</tt>;</li>
+ * <li>any other value (such as the symbols of an enumerated domain) is
+ * stored as a code starting at {@link #SYMBOL_BASE}, which is far from the
+ * integers used in models.</li>
+ * </ul>
+ * Codes of symbols are given in the order in which values are met in the
+ * domains of the variables. Comparing two codes for equality is hence the
+ * same as comparing the values they stand for.
+ */
+public class StateLayout
+{
+	/**
+	 * The code of the first symbol.
+	 */
+	public static final int SYMBOL_BASE = Integer.MIN_VALUE / 2;
+
+	/**
+	 * The variables of the layout, in the order of their slots.
+	 */
+	/*@ non_null @*/ protected final List<Variable> m_variables;
+
+	/**
+	 * The first slot of each variable, indexed by name.
+	 */
+	/*@ non_null @*/ protected final Map<String,Integer> m_offsets;
+
+	/**
+	 * The variable occupying each slot.
+	 */
+	/*@ non_null @*/ protected final Variable[] m_slotVariables;
+
+	/**
+	 * The symbols, in the order of their codes.
+	 */
+	/*@ non_null @*/ protected final List<Object> m_symbols;
+
+	/**
+	 * The code of each symbol.
+	 */
+	/*@ non_null @*/ protected final Map<Object,Integer> m_symbolCodes;
+
+	/**
+	 * Creates the layout of a set of variables.
+	 * @param vars The variables, which are given slots in this order
+	 */
+	public StateLayout(/*@ non_null @*/ Collection<? extends Variable> vars)
+	{
+		super();
+		m_variables = new ArrayList<Variable>(vars);
+		m_offsets = new HashMap<String,Integer>();
+		m_symbols = new ArrayList<Object>();
+		m_symbolCodes = new HashMap<Object,Integer>();
+		List<Variable> slots = new ArrayList<Variable>();
+		for (Variable v : m_variables)
+		{
+			m_offsets.put(v.getName(), slots.size());
+			int width = v instanceof ArrayVariable ? ((ArrayVariable) v).getDimension() : 1;
+			for (int i = 0; i < width; i++)
+			{
+				slots.add(v);
+			}
+			if (v.getDomain() instanceof BooleanDomain)
+			{
+				continue;
+			}
+			for (Object o : CdclSolver.getValues(v.getDomain()))
+			{
+				if (!(o instanceof Integer) && !(o instanceof Boolean) && !m_symbolCodes.containsKey(o))
+				{
+					m_symbolCodes.put(o, SYMBOL_BASE + m_symbols.size());
+					m_symbols.add(o);
+				}
+			}
+		}
+		m_slotVariables = slots.toArray(new Variable[slots.size()]);
+	}
+
+	/**
+	 * Creates the layout of the variables of a module.
+	 * @param m The module
+	 * @see ProcessorModule#getDeclaredVariables()
+	 */
+	public StateLayout(/*@ non_null @*/ ProcessorModule m)
+	{
+		this(m.getDeclaredVariables());
+	}
+
+	/**
+	 * Gets the number of slots of a state vector.
+	 * @return The number of slots
+	 */
+	/*@ pure @*/ public int getSlotCount()
+	{
+		return m_slotVariables.length;
+	}
+
+	/**
+	 * Gets the variables of the layout.
+	 * @return The variables, in the order of their slots
+	 */
+	/*@ pure non_null @*/ public List<Variable> getVariables()
+	{
+		return m_variables;
+	}
+
+	/**
+	 * Gets the first slot of a variable.
+	 * @param name The name of the variable
+	 * @return The slot, or -1 if the layout has no such variable
+	 */
+	/*@ pure @*/ public int getOffset(/*@ non_null @*/ String name)
+	{
+		Integer offset = m_offsets.get(name);
+		return offset == null ? -1 : offset;
+	}
+
+	/**
+	 * Gets the slot of a variable or of an array cell.
+	 * @param name The name of the variable, or of the cell written as
+	 * <tt>x[i]</tt>
+	 * @return The slot, or -1 if the layout has no such variable or cell
+	 */
+	/*@ pure @*/ public int getSlot(/*@ non_null @*/ String name)
+	{
+		int bracket = name.indexOf('[');
+		if (bracket < 0)
+		{
+			int offset = getOffset(name);
+			return offset >= 0 && !(m_slotVariables[offset] instanceof ArrayVariable) ? offset : -1;
+		}
+		int offset = getOffset(name.substring(0, bracket));
+		if (offset < 0 || !(m_slotVariables[offset] instanceof ArrayVariable))
+		{
+			return -1;
+		}
+		int index = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+		return index < ((ArrayVariable) m_slotVariables[offset]).getDimension() ? offset + index : -1;
+	}
+
+	/**
+	 * Gets the variable occupying a slot.
+	 * @param slot The slot
+	 * @return The variable
+	 */
+	/*@ pure non_null @*/ public Variable getVariable(int slot)
+	{
+		return m_slotVariables[slot];
+	}
+
+	/**
+	 * Determines if a value has a code in this layout.
+	 * @param o The value
+	 * @return <tt>true</tt> if the value is an integer, a Boolean or a
+	 * symbol of the domain of some variable
+	 */
+	/*@ pure @*/ public boolean canEncode(/*@ non_null @*/ Object o)
+	{
+		return o instanceof Integer || o instanceof Boolean || m_symbolCodes.containsKey(o);
+	}
+
+	/**
+	 * Gets the code of a value.
+	 * @param o The value
+	 * @return The code
+	 * @throws IllegalArgumentException If the value has no code
+	 */
+	public int encode(/*@ non_null @*/ Object o)
+	{
+		if (o instanceof Integer)
+		{
+			return (Integer) o;
+		}
+		if (o instanceof Boolean)
+		{
+			return ((Boolean) o) ? 1 : 0;
+		}
+		Integer code = m_symbolCodes.get(o);
+		if (code == null)
+		{
+			throw new IllegalArgumentException("No code for value " + o);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the value stored in a slot.
+	 * @param slot The slot
+	 * @param code The code found in the slot
+	 * @return The value
+	 */
+	/*@ pure non_null @*/ public Object decode(int slot, int code)
+	{
+		if (m_slotVariables[slot].getDomain() instanceof BooleanDomain)
+		{
+			return code != 0;
+		}
+		int symbol = code - SYMBOL_BASE;
+		if (symbol >= 0 && symbol < m_symbols.size())
+		{
+			return m_symbols.get(symbol);
+		}
+		return code;
+	}
+}
@@ -0,0 +1,291 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import ca.uqac.lif.nusmv4j.ArrayAccess;
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * A state of a set of variables, stored as an array of integer codes
+ * following a {@link StateLayout}. A state vector is a dense alternative
+ * to an {@link Assignment}: it can be copied, compared and hashed
+ * cheaply, and read by a {@link CompiledCondition} without boxing.
+ * <p>
+ * A state vector can be filled from an assignment and written back to
+ * one; when doing so, it can stand either for the current state or for
+ * the next state of the variables.
+ */
+public class StateVector
+{
+	/**
+	 * The layout of the vector.
+	 */
+	/*@ non_null @*/ protected final StateLayout m_layout;
+
+	/**
+	 * The codes stored in the slots.
+	 */
+	/*@ non_null @*/ protected final int[] m_slots;
+
+	/**
+	 * Creates a state vector where every cell holds the default value of
+	 * its domain.
+	 * @param layout The layout of the vector
+	 */
+	public StateVector(/*@ non_null @*/ StateLayout layout)
+	{
+		super();
+		m_layout = layout;
+		m_slots = new int[layout.getSlotCount()];
+		for (int i = 0; i < m_slots.length; i++)
+		{
+			m_slots[i] = layout.encode(layout.getVariable(i).getDomain().getDefaultValue());
+		}
+	}
+
+	/**
+	 * Creates a state vector from an array of codes.
+	 * @param layout The layout of the vector
+	 * @param slots The codes, which are not copied
+	 */
+	public StateVector(/*@ non_null @*/ StateLayout layout, /*@ non_null @*/ int[] slots)
+	{
+		super();
+		m_layout = layout;
+		m_slots = slots;
+	}
+
+	/**
+	 * Creates a state vector from the values of an assignment.
+	 * @param layout The layout of the vector
+	 * @param a The assignment
+	 * @param next Whether to read the next state of the variables instead
+	 * of the current one
+	 * @return The vector; cells that the assignment does not define hold
+	 * the default value of their domain
+	 */
+	/*@ non_null @*/ public static StateVector of(/*@ non_null @*/ StateLayout layout, /*@ non_null @*/ Assignment a, boolean next)
+	{
+		StateVector s = new StateVector(layout);
+		s.read(a, next, layout.getVariables());
+		return s;
+	}
+
+	/**
+	 * Gets the layout of this vector.
+	 * @return The layout
+	 */
+	/*@ pure non_null @*/ public StateLayout getLayout()
+	{
+		return m_layout;
+	}
+
+	/**
+	 * Gets the codes stored in the slots. The array is not copied, so that
+	 * changes made to it are reflected in the vector.
+	 * @return The codes
+	 */
+	/*@ pure non_null @*/ public int[] getSlots()
+	{
+		return m_slots;
+	}
+
+	/**
+	 * Gets the value of a cell.
+	 * @param v The variable
+	 * @param index The index of the cell, ignored for scalar variables
+	 * @return The value
+	 */
+	/*@ pure non_null @*/ public Object get(/*@ non_null @*/ Variable v, int index)
+	{
+		int slot = getSlot(v, index);
+		return m_layout.decode(slot, m_slots[slot]);
+	}
+
+	/**
+	 * Sets the value of a cell.
+	 * @param v The variable
+	 * @param index The index of the cell, ignored for scalar variables
+	 * @param value The value
+	 * @return This vector
+	 */
+	/*@ non_null @*/ public StateVector set(/*@ non_null @*/ Variable v, int index, /*@ non_null @*/ Object value)
+	{
+		m_slots[getSlot(v, index)] = m_layout.encode(value);
+		return this;
+	}
+
+	/**
+	 * Sets the values of the cells of an array variable, starting from the
+	 * first cell.
+	 * @param v The variable
+	 * @param values The values
+	 * @return This vector
+	 */
+	/*@ non_null @*/ public StateVector setValues(/*@ non_null @*/ ArrayVariable v, /*@ non_null @*/ Object ... values)
+	{
+		int offset = getSlot(v, 0);
+		for (int i = 0; i < values.length; i++)
+		{
+			m_slots[offset + i] = m_layout.encode(values[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Copies into this vector the values some variables take in an
+	 * assignment. Cells that the assignment does not define are left
+	 * unchanged.
+	 * @param a The assignment
+	 * @param next Whether to read the next state of the variables
+	 * @param vars The variables to read
+	 * @return This vector
+	 */
+	/*@ non_null @*/ public StateVector read(/*@ non_null @*/ Assignment a, boolean next, /*@ non_null @*/ Collection<? extends Variable> vars)
+	{
+		for (Variable v : vars)
+		{
+			int offset = getSlot(v, 0);
+			if (v instanceof ArrayVariable)
+			{
+				ArrayVariable av = next ? ((ArrayVariable) v).next() : (ArrayVariable) v;
+				for (int i = 0; i < av.getDimension(); i++)
+				{
+					Object o = CdclSolver.getValue(ArrayAccess.get(av, i), a);
+					if (o != null)
+					{
+						m_slots[offset + i] = m_layout.encode(o);
+					}
+				}
+			}
+			else
+			{
+				ScalarVariable sv = next ? ((ScalarVariable) v).next() : (ScalarVariable) v;
+				Object o = CdclSolver.getValue(sv, a);
+				if (o != null)
+				{
+					m_slots[offset] = m_layout.encode(o);
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds to an assignment the values of all the cells of this vector.
+	 * Note that this sets the values held by the variables themselves.
+	 * @param a The assignment
+	 * @param next Whether the vector stands for the next state of the
+	 * variables
+	 */
+	public void assign(/*@ non_null @*/ Assignment a, boolean next)
+	{
+		assign(a, next, m_layout.getVariables());
+	}
+
+	/**
+	 * Adds to an assignment the values of the cells of some variables.
+	 * @param a The assignment
+	 * @param next Whether the vector stands for the next state of the
+	 * variables
+	 * @param vars The variables to write
+	 */
+	public void assign(/*@ non_null @*/ Assignment a, boolean next, /*@ non_null @*/ Collection<? extends Variable> vars)
+	{
+		for (Variable v : vars)
+		{
+			int offset = getSlot(v, 0);
+			if (v instanceof ArrayVariable)
+			{
+				ArrayVariable av = next ? ((ArrayVariable) v).next() : (ArrayVariable) v;
+				Object[] values = new Object[av.getDimension()];
+				for (int i = 0; i < values.length; i++)
+				{
+					values[i] = m_layout.decode(offset + i, m_slots[offset + i]);
+				}
+				av.setValues(values);
+				av.assign(a);
+			}
+			else
+			{
+				ScalarVariable sv = next ? ((ScalarVariable) v).next() : (ScalarVariable) v;
+				sv.set(m_layout.decode(offset, m_slots[offset])).assign(a);
+			}
+		}
+	}
+
+	/**
+	 * Creates an assignment holding the values of this vector as the
+	 * current state of the variables.
+	 * @return The assignment
+	 */
+	/*@ non_null @*/ public Assignment toAssignment()
+	{
+		Assignment a = new Assignment();
+		assign(a, false);
+		return a;
+	}
+
+	/**
+	 * Gets the slot of a cell.
+	 * @param v The variable
+	 * @param index The index of the cell
+	 * @return The slot
+	 * @throws IllegalArgumentException If the layout does not contain the
+	 * variable
+	 */
+	protected int getSlot(Variable v, int index)
+	{
+		int offset = m_layout.getOffset(v.getName());
+		if (offset < 0)
+		{
+			throw new IllegalArgumentException("Variable " + v.getName() + " is not in the layout");
+		}
+		return v instanceof ArrayVariable ? offset + index : offset;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof StateVector))
+		{
+			return false;
+		}
+		StateVector s = (StateVector) o;
+		return s.m_layout == m_layout && Arrays.equals(s.m_slots, m_slots);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(m_slots);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(m_slots);
+	}
+}
@@ -18,6 +18,8 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.List;
+
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.ConstantFalse;
@@ -42,18 +44,45 @@ public abstract class SubsetProcessorModule extends UnaryProcessorModule
 	
 	/**
 	 * Produces the condition stipulating that up to and including position m,
-	 * there are n events that are sent to the output.
+	 * there are n events that are sent to the output. The condition for each
+	 * pair (m, n) is generated only once and shared by all the formulas that
+	 * refer to it, so that the size of the transition relation grows
+	 * polynomially with the size of the queues.
 	 * @param m The position in the input queue
 	 * @param n The number of input events
 	 * @return The condition
 	 */
-	/*@ non_null @*/ public Condition numOutputs(boolean next, int m, int n)
+	/*@ non_null @*/ public Condition numOutputs(boolean next, final int m, final int n)
 	{
 		if (n > m + 1)
 		{
 			// Impossible to output n events from m inputs if n > m
 			return ConstantFalse.FALSE;
 		}
+		if (m < 0)
+		{
+			// Empty prefix of the queue: nothing to share
+			return buildNumOutputs(next, m, n);
+		}
+		return new SharedFormula("nout_" + m + "_" + n) {
+			@Override
+			protected Condition build(boolean nx)
+			{
+				return buildNumOutputs(nx, m, n);
+			}
+		}.get(next);
+	}
+	
+	/**
+	 * Builds the condition returned by {@link #numOutputs(boolean, int, int)}.
+	 * Recursive references to smaller values of m go through
+	 * {@link #numOutputs(boolean, int, int)}, and are therefore shared.
+	 * @param m The position in the input queue
+	 * @param n The number of input events
+	 * @return The condition
+	 */
+	/*@ non_null @*/ protected Condition buildNumOutputs(boolean next, int m, int n)
+	{
 		if (n == 0)
 		{
 			// n = 0, so no event should be output from index 0 up to m
@@ -98,7 +127,9 @@ public abstract class SubsetProcessorModule extends UnaryProcessorModule
 	{
 		ProcessorQueue back_porch = getBackPorch(0);
 		Conjunction and = new Conjunction();
-		int last_pos = back_porch.getSize() - 1;
+		// Outputs are counted over the whole front porch, which may be larger
+		// than the back porch
+		int last_pos = getFrontPorch(0).getSize() - 1;
 		for (int i = 0; i <= back_porch.getSize(); i++)
 		{
 			Implication imp = new Implication();
@@ -157,6 +188,39 @@ public abstract class SubsetProcessorModule extends UnaryProcessorModule
 		return and;
 	}
 	
+	/**
+	 * Adds the definitions of the length and contents of the back porch. This
+	 * method does not define the internal state of the processor, if any;
+	 * descendants that are functional must add these definitions themselves.
+	 * @param list The list to which definitions are added
+	 */
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		ProcessorQueue front_porch = getFrontPorch(0);
+		ProcessorQueue back_porch = getBackPorch(0);
+		int last_pos = front_porch.getSize() - 1;
+		Condition[] has_length = new Condition[back_porch.getSize() + 1];
+		for (int i = 0; i < has_length.length; i++)
+		{
+			has_length[i] = numOutputs(false, last_pos, i);
+		}
+		assignLength(list, back_porch, has_length);
+		for (int i = 0; i < back_porch.getSize(); i++)
+		{
+			CaseAssignment ca = assignCell(back_porch, i);
+			for (int j = 0; j < front_porch.getSize(); j++)
+			{
+				Condition c = isOutputAt(false, j, i);
+				if (c != ConstantFalse.FALSE)
+				{
+					ca.add(c, front_porch.valueAt(false, j));
+				}
+			}
+			list.add(ca);
+		}
+	}
+	
 	@Override
 	protected void addToInit(Conjunction and_init)
 	{
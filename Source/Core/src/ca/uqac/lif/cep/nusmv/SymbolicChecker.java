@@ -0,0 +1,1365 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.cep.nusmv.PipelineSimulator.ModuleState;
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * Computes the states of a pipeline that can be reached from its initial
+ * states with binary decision diagrams, without calling NuSMV. The
+ * initial condition and the transition relation of each module are
+ * translated into diagrams of a {@link Bdd} package; the sets of states
+ * reached at each step are then computed by image computation, as NuSMV
+ * does.
+ * <p>
+ * Each cell of each module is given as many Boolean variables as needed
+ * to number the values of its domain, for its current and for its next
+ * state. The front porch of a module connected to the back porch of
+ * another module shares the variables of that back porch, as the NuSMV
+ * model of the pipeline does. Input queues of the pipeline are treated as
+ * in {@link ReachabilityChecker}: an instance of
+ * {@link PresetProcessorQueue} produces its sequence, with an additional
+ * variable for the position in the sequence, and any other input queue can
+ * receive any sequence of events that fits in it. Unlike the simulator, the
+ * value of a cell that is not constrained by the formulas of its module is
+ * free.
+ * <p>
+ * By default, the variables of the current and next state of each bit are
+ * interleaved, and cells are ordered as their modules in the pipeline;
+ * {@link #setInterleaved(boolean)} places all the variables of the next
+ * state after those of the current state instead.
+ */
+public class SymbolicChecker
+{
+	/**
+	 * The name of the violations reported for states where some input has
+	 * no successor.
+	 */
+	/*@ non_null @*/ public static final String DEADLOCK = ReachabilityChecker.DEADLOCK;
+
+	/**
+	 * The pipeline to check.
+	 */
+	/*@ non_null @*/ protected final ContainerModule m_pipeline;
+
+	/**
+	 * The modules of the pipeline, in an order where each module comes after
+	 * the modules producing its inputs.
+	 */
+	/*@ non_null @*/ protected final List<ModuleState> m_modules;
+
+	/**
+	 * The input queues of the pipeline.
+	 */
+	/*@ non_null @*/ protected final ProcessorQueue[] m_inputs;
+
+	/**
+	 * The invariants to check.
+	 */
+	/*@ non_null @*/ protected final List<Invariant> m_invariants;
+
+	/**
+	 * Whether the variables of the current and next state are interleaved.
+	 */
+	protected boolean m_interleaved;
+
+	/**
+	 * The maximum number of steps to explore.
+	 */
+	protected int m_maxDepth;
+
+	/**
+	 * Whether to stop the exploration at the first depth where some
+	 * invariant is violated.
+	 */
+	protected boolean m_stopAtViolation;
+
+	/**
+	 * The diagrams of the last exploration.
+	 */
+	/*@ null @*/ protected Bdd m_bdd;
+
+	/**
+	 * All the cells, in the order of their variables.
+	 */
+	/*@ non_null @*/ protected List<Cell> m_cells;
+
+	/**
+	 * For each module, the cells of its variables, indexed by the name of
+	 * the variable or of the array cell.
+	 */
+	/*@ non_null @*/ protected List<Map<String,Cell>> m_moduleCells;
+
+	/**
+	 * For each input queue of the pipeline, the index of the first module
+	 * reading from it.
+	 */
+	/*@ non_null @*/ protected int[] m_inputModules;
+
+	/**
+	 * For each input queue of the pipeline, the front porch of the first
+	 * module reading from it.
+	 */
+	/*@ non_null @*/ protected ProcessorQueue[] m_inputPorches;
+
+	/**
+	 * For each input queue of the pipeline, the cell of the position in its
+	 * sequence, or <tt>null</tt> if the queue is not preset.
+	 */
+	/*@ non_null @*/ protected Cell[] m_counters;
+
+	/**
+	 * The values of domains that are printed as symbols, indexed by their
+	 * string.
+	 */
+	/*@ non_null @*/ protected Map<String,Object> m_symbols;
+
+	/**
+	 * The condition stating that the input queues of the pipeline that are
+	 * not preset hold a sequence of events in the next state.
+	 */
+	protected int m_nextInputs;
+
+	/**
+	 * The pairs of a current state and next inputs of the pipeline for which
+	 * there exists a next state.
+	 */
+	protected int m_canStep;
+
+	/**
+	 * Creates a checker for the pipeline of a model.
+	 * @param m The model
+	 */
+	public SymbolicChecker(/*@ non_null @*/ BeepBeepModel m)
+	{
+		this(m.getPipeline());
+	}
+
+	/**
+	 * Creates a checker for a pipeline.
+	 * @param pipeline The pipeline
+	 * @throws IllegalArgumentException If some module of the pipeline is
+	 * not connected to the inputs of the pipeline
+	 */
+	public SymbolicChecker(/*@ non_null @*/ ContainerModule pipeline)
+	{
+		super();
+		m_pipeline = pipeline;
+		m_modules = PipelineSimulator.getModules(pipeline);
+		m_inputs = pipeline.getInputQueues();
+		m_invariants = new ArrayList<Invariant>();
+		m_interleaved = true;
+		m_maxDepth = Integer.MAX_VALUE;
+		m_stopAtViolation = true;
+	}
+
+	/**
+	 * Sets whether the variables of the current and next state of each bit
+	 * are interleaved, which is the default.
+	 * @param b <tt>true</tt> to interleave the variables, <tt>false</tt> to
+	 * place all the variables of the next state after those of the current
+	 * state
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public SymbolicChecker setInterleaved(boolean b)
+	{
+		m_interleaved = b;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of steps to explore. By default, the
+	 * exploration stops only when no new state is found.
+	 * @param depth The number of steps
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public SymbolicChecker setMaxDepth(int depth)
+	{
+		m_maxDepth = depth;
+		return this;
+	}
+
+	/**
+	 * Sets whether to stop the exploration at the first depth where some
+	 * invariant is violated, which is the default.
+	 * @param b <tt>true</tt> to stop, <tt>false</tt> to explore all the
+	 * reachable states
+	 * @return This checker
+	 */
+	/*@ non_null @*/ public SymbolicChecker setStopAtViolation(boolean b)
+	{
+		m_stopAtViolation = b;
+		return this;
+	}
+
+	/**
+	 * Adds an invariant to check on every reachable state.
+	 * @param name The name given to the violation of the invariant
+	 * @param m The module whose state the invariant is about
+	 * @param c The condition, which refers to the current state of the
+	 * module's variables
+	 * @return This checker
+	 * @throws IllegalArgumentException If the module is not part of the
+	 * pipeline
+	 */
+	/*@ non_null @*/ public SymbolicChecker addInvariant(/*@ non_null @*/ String name, /*@ non_null @*/ ProcessorModule m, /*@ non_null @*/ Condition c)
+	{
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			if (m_modules.get(k).m_module == m)
+			{
+				m_invariants.add(new Invariant(name, k, NusmvExpression.expand(c)));
+				return this;
+			}
+		}
+		throw new IllegalArgumentException("Module " + m.getName() + " is not part of the pipeline");
+	}
+
+	/**
+	 * Gets the diagram package of the last exploration, for instance to
+	 * compare the number of nodes created with different orderings.
+	 * @return The package, or <tt>null</tt> if {@link #run()} has not been
+	 * called
+	 */
+	/*@ pure null @*/ public Bdd getBdd()
+	{
+		return m_bdd;
+	}
+
+	/**
+	 * Explores the reachable states of the pipeline.
+	 * @return The result of the exploration
+	 * @throws IllegalArgumentException If the formulas of some module cannot
+	 * be translated
+	 */
+	/*@ non_null @*/ public Result run()
+	{
+		createCells();
+		Bdd bdd = m_bdd;
+		int[] cur_vars = getVariables(false);
+		int[] next_vars = getVariables(true);
+		int cur_cube = bdd.cube(cur_vars);
+		int next_cube = bdd.cube(next_vars);
+		int[] to_cur = new int[bdd.getVariableCount()];
+		int[] to_next = new int[bdd.getVariableCount()];
+		for (int i = 0; i < cur_vars.length; i++)
+		{
+			to_cur[next_vars[i]] = cur_vars[i];
+			to_cur[cur_vars[i]] = cur_vars[i];
+			to_next[cur_vars[i]] = next_vars[i];
+			to_next[next_vars[i]] = next_vars[i];
+		}
+		int init = getInit();
+		int trans = getTrans();
+		int dead = getDeadlocks(trans);
+		int[] invariants = new int[m_invariants.size()];
+		for (int i = 0; i < invariants.length; i++)
+		{
+			Invariant inv = m_invariants.get(i);
+			invariants[i] = new Translator(inv.m_module).formula(inv.m_formula, false);
+		}
+		boolean[] reported = new boolean[invariants.length + 1];
+		List<Violation> violations = new ArrayList<Violation>();
+		List<Integer> layers = new ArrayList<Integer>();
+		int reached = init;
+		int layer = init;
+		int depth = 1;
+		while (layer != Bdd.FALSE)
+		{
+			layers.add(layer);
+			for (int i = 0; i <= invariants.length; i++)
+			{
+				int bad = i < invariants.length ? bdd.and(layer, bdd.not(invariants[i])) : bdd.and(layer, dead);
+				if (!reported[i] && bad != Bdd.FALSE)
+				{
+					reported[i] = true;
+					violations.add(getViolation(i < invariants.length ? m_invariants.get(i).m_name : DEADLOCK, bad, layers, trans, to_next, next_cube, i == invariants.length));
+				}
+			}
+			if ((m_stopAtViolation && !violations.isEmpty()) || depth >= m_maxDepth)
+			{
+				break;
+			}
+			int image = bdd.replace(bdd.andExists(layer, trans, cur_cube), to_cur);
+			layer = bdd.and(image, bdd.not(reached));
+			reached = bdd.or(reached, layer);
+			depth++;
+		}
+		return new Result(bdd.satCount(reached, cur_vars), depth, layer == Bdd.FALSE, bdd.size(reached), bdd.size(trans), violations);
+	}
+
+	/**
+	 * Creates the cells of the modules and of the input queues, and the
+	 * diagram package with their variables.
+	 */
+	protected void createCells()
+	{
+		m_cells = new ArrayList<Cell>();
+		m_moduleCells = new ArrayList<Map<String,Cell>>();
+		m_inputModules = new int[m_inputs.length];
+		m_inputPorches = new ProcessorQueue[m_inputs.length];
+		m_counters = new Cell[m_inputs.length];
+		m_symbols = new HashMap<String,Object>();
+		Map<ProcessorQueue,List<Cell>> owners = new HashMap<ProcessorQueue,List<Cell>>();
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			ModuleState ms = m_modules.get(k);
+			Map<String,Cell> cells = new LinkedHashMap<String,Cell>();
+			m_moduleCells.add(cells);
+			for (int j = 0; j < ms.m_inputs.length; j++)
+			{
+				List<String> keys = getKeys(ms.m_module.getFrontPorch(j));
+				List<Cell> owned = owners.get(ms.m_inputs[j]);
+				if (owned == null)
+				{
+					int q = indexOf(m_inputs, ms.m_inputs[j]);
+					if (q >= 0 && m_inputs[q] instanceof PresetProcessorQueue)
+					{
+						m_counters[q] = new Cell(getCounterValues(q));
+						m_cells.add(m_counters[q]);
+					}
+					if (q >= 0)
+					{
+						m_inputModules[q] = k;
+						m_inputPorches[q] = ms.m_module.getFrontPorch(j);
+					}
+					continue;
+				}
+				if (owned.size() != keys.size())
+				{
+					throw new IllegalArgumentException("Incompatible queues at input " + j + " of module " + ms.m_module.getName());
+				}
+				for (int i = 0; i < keys.size(); i++)
+				{
+					cells.put(keys.get(i), owned.get(i));
+				}
+			}
+			for (Variable v : ms.m_layout.getVariables())
+			{
+				int width = v instanceof ArrayVariable ? ((ArrayVariable) v).getDimension() : 1;
+				for (int i = 0; i < width; i++)
+				{
+					String key = getKey(v, i);
+					if (!cells.containsKey(key))
+					{
+						Cell c = new Cell(CdclSolver.getValues(v.getDomain()));
+						cells.put(key, c);
+						m_cells.add(c);
+					}
+				}
+				for (Object o : CdclSolver.getValues(v.getDomain()))
+				{
+					if (o instanceof String)
+					{
+						m_symbols.put((String) o, o);
+					}
+				}
+			}
+			for (int j = 0; j < ms.m_inputs.length; j++)
+			{
+				owners.putIfAbsent(ms.m_inputs[j], getCells(k, ms.m_module.getFrontPorch(j)));
+			}
+			for (int i = 0; i < ms.m_outputs.length; i++)
+			{
+				if (ms.m_outputs[i] != null)
+				{
+					owners.putIfAbsent(ms.m_outputs[i], getCells(k, ms.m_module.getBackPorch(i)));
+				}
+			}
+		}
+		int num_bits = 0;
+		for (Cell c : m_cells)
+		{
+			num_bits += c.m_current.length;
+		}
+		int bit = 0;
+		for (Cell c : m_cells)
+		{
+			for (int b = 0; b < c.m_current.length; b++, bit++)
+			{
+				c.m_current[b] = m_interleaved ? 2 * bit : bit;
+				c.m_next[b] = m_interleaved ? 2 * bit + 1 : num_bits + bit;
+			}
+		}
+		m_bdd = new Bdd(2 * num_bits);
+	}
+
+	/**
+	 * Gets the initial condition of the pipeline.
+	 * @return The diagram, over the variables of the current state
+	 */
+	protected int getInit()
+	{
+		Bdd bdd = m_bdd;
+		int init = getConstraints(false);
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			Translator t = new Translator(k);
+			for (NusmvExpression e : m_modules.get(k).m_init)
+			{
+				init = bdd.and(init, t.formula(e, false));
+			}
+		}
+		for (int q = 0; q < m_inputs.length; q++)
+		{
+			if (m_inputPorches[q] == null)
+			{
+				continue;
+			}
+			if (m_counters[q] != null)
+			{
+				init = bdd.and(init, bdd.and(getContents(q, getStep(q, 0), false), m_counters[q].is(bdd, getNextCount(q, 0), false)));
+			}
+			else
+			{
+				init = bdd.and(init, getInputs(q, false));
+			}
+		}
+		return init;
+	}
+
+	/**
+	 * Gets the transition relation of the pipeline.
+	 * @return The diagram, over the variables of the current and next state
+	 */
+	protected int getTrans()
+	{
+		Bdd bdd = m_bdd;
+		int trans = getConstraints(true);
+		for (int q = 0; q < m_inputs.length; q++)
+		{
+			if (m_inputPorches[q] == null)
+			{
+				continue;
+			}
+			if (m_counters[q] != null)
+			{
+				for (int c = 0; c < m_counters[q].m_values.length; c++)
+				{
+					int step = bdd.and(getContents(q, getStep(q, c), true), m_counters[q].is(bdd, getNextCount(q, c), true));
+					trans = bdd.and(trans, bdd.implies(m_counters[q].is(bdd, c, false), step));
+				}
+			}
+			else
+			{
+				trans = bdd.and(trans, getInputs(q, true));
+			}
+		}
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			Translator t = new Translator(k);
+			for (NusmvExpression e : m_modules.get(k).m_trans)
+			{
+				trans = bdd.and(trans, t.formula(e, false));
+			}
+		}
+		return trans;
+	}
+
+	/**
+	 * Gets the states where some input of the pipeline leads to no
+	 * successor.
+	 * @param trans The transition relation
+	 * @return The diagram, over the variables of the current state
+	 */
+	protected int getDeadlocks(int trans)
+	{
+		Bdd bdd = m_bdd;
+		List<Integer> input_vars = new ArrayList<Integer>();
+		m_nextInputs = Bdd.TRUE;
+		for (int q = 0; q < m_inputs.length; q++)
+		{
+			if (m_counters[q] == null && m_inputPorches[q] != null)
+			{
+				m_nextInputs = bdd.and(m_nextInputs, getInputs(q, true));
+				for (Cell c : getCells(m_inputModules[q], m_inputPorches[q]))
+				{
+					for (int v : c.m_next)
+					{
+						input_vars.add(v);
+					}
+				}
+			}
+		}
+		List<Integer> other_vars = new ArrayList<Integer>();
+		for (int v : getVariables(true))
+		{
+			if (!input_vars.contains(v))
+			{
+				other_vars.add(v);
+			}
+		}
+		m_canStep = bdd.exists(trans, bdd.cube(toArray(other_vars)));
+		return bdd.exists(bdd.and(m_nextInputs, bdd.not(m_canStep)), bdd.cube(toArray(input_vars)));
+	}
+
+	/**
+	 * Gets the constraints stating that each cell holds a value of its
+	 * domain, and that the reset flags of the modules are false.
+	 * @param next Whether the constraints are on the next state
+	 * @return The diagram
+	 */
+	protected int getConstraints(boolean next)
+	{
+		Bdd bdd = m_bdd;
+		int c = Bdd.TRUE;
+		for (Cell cell : m_cells)
+		{
+			c = bdd.and(c, cell.isValid(bdd, next));
+		}
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			ProcessorModule mod = m_modules.get(k).m_module;
+			if (mod.m_hasReset)
+			{
+				Cell reset = m_moduleCells.get(k).get(mod.getResetFlag().getName());
+				c = bdd.and(c, reset.is(bdd, reset.indexOf(false), next));
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Gets the condition stating that an input queue of the pipeline that is
+	 * not preset holds a sequence of events that fits in it.
+	 * @param q The index of the input queue
+	 * @param next Whether the condition is on the next state
+	 * @return The diagram
+	 */
+	protected int getInputs(int q, boolean next)
+	{
+		int c = Bdd.FALSE;
+		for (Object[] word : ReachabilityChecker.getWords(m_inputs[q].getDomain(), m_inputs[q].getSize()))
+		{
+			c = m_bdd.or(c, getContents(q, word, next));
+		}
+		return c;
+	}
+
+	/**
+	 * Gets the condition stating that an input queue of the pipeline holds
+	 * given events.
+	 * @param q The index of the input queue
+	 * @param events The events
+	 * @param next Whether the condition is on the next state
+	 * @return The diagram
+	 */
+	protected int getContents(int q, Object[] events, boolean next)
+	{
+		int k = m_inputModules[q];
+		ProcessorQueue porch = m_inputPorches[q];
+		StateVector s = new StateVector(m_modules.get(k).m_layout);
+		porch.setContents(s, events);
+		int c = Bdd.TRUE;
+		for (Variable v : porch.getVariables())
+		{
+			int width = v instanceof ArrayVariable ? ((ArrayVariable) v).getDimension() : 1;
+			for (int i = 0; i < width; i++)
+			{
+				Cell cell = m_moduleCells.get(k).get(getKey(v, i));
+				c = m_bdd.and(c, cell.is(m_bdd, cell.indexOf(s.get(v, i)), next));
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Builds the violation found in a set of states, with a trace leading to
+	 * one of them.
+	 * @param name The name of the violation
+	 * @param bad The states violating the invariant, in the last layer
+	 * @param layers The states first reached at each step
+	 * @param trans The transition relation
+	 * @param to_next The map renaming current variables to next variables
+	 * @param next_cube The variables of the next state
+	 * @param deadlock Whether the violation is a deadlock, in which case the
+	 * input leading to no successor is added to the trace
+	 * @return The violation
+	 */
+	protected Violation getViolation(String name, int bad, List<Integer> layers, int trans, int[] to_next, int next_cube, boolean deadlock)
+	{
+		Bdd bdd = m_bdd;
+		int[] cur_vars = getVariables(false);
+		List<int[]> states = new ArrayList<int[]>();
+		int[] state = bdd.satOne(bad);
+		states.add(state);
+		for (int d = layers.size() - 2; d >= 0; d--)
+		{
+			int target = bdd.replace(getMinterm(state, cur_vars), to_next);
+			state = bdd.satOne(bdd.and(layers.get(d), bdd.andExists(trans, target, next_cube)));
+			states.add(state);
+		}
+		Collections.reverse(states);
+		List<Object[][]> inputs = new ArrayList<Object[][]>();
+		List<Object[][]> outputs = new ArrayList<Object[][]>();
+		for (int[] s : states)
+		{
+			StateVector[] vectors = decode(s, false);
+			inputs.add(getInputContents(vectors));
+			outputs.add(getOutputContents(vectors));
+		}
+		if (deadlock)
+		{
+			int last = getMinterm(states.get(states.size() - 1), cur_vars);
+			int stuck = bdd.and(m_nextInputs, bdd.not(bdd.andExists(last, m_canStep, bdd.cube(cur_vars))));
+			inputs.add(getInputContents(decode(bdd.satOne(stuck), true)));
+			outputs.add(new Object[0][]);
+		}
+		return new Violation(name, inputs, outputs);
+	}
+
+	/**
+	 * Gets the contents of the input queues of the pipeline in a state.
+	 * @param vectors The state of each module
+	 * @return The events in each input queue
+	 */
+	protected Object[][] getInputContents(StateVector[] vectors)
+	{
+		Object[][] contents = new Object[m_inputs.length][];
+		for (int q = 0; q < m_inputs.length; q++)
+		{
+			contents[q] = m_inputPorches[q] == null ? new Object[0] : m_inputPorches[q].getContents(vectors[m_inputModules[q]]);
+		}
+		return contents;
+	}
+
+	/**
+	 * Gets the contents of the output queues of the pipeline in a state.
+	 * @param vectors The state of each module
+	 * @return The events in each output queue
+	 */
+	protected Object[][] getOutputContents(StateVector[] vectors)
+	{
+		Map<ProcessorQueue,Object[]> contents = new HashMap<ProcessorQueue,Object[]>();
+		for (int k = 0; k < m_modules.size(); k++)
+		{
+			m_modules.get(k).putOutputs(vectors[k], contents);
+		}
+		return PipelineSimulator.getOutputs(m_pipeline, contents);
+	}
+
+	/**
+	 * Decodes the state of each module from an assignment of the variables.
+	 * @param values The value of each variable, as returned by
+	 * {@link Bdd#satOne(int)}
+	 * @param next Whether to decode the next state
+	 * @return The state of each module
+	 */
+	protected StateVector[] decode(int[] values, boolean next)
+	{
+		StateVector[] vectors = new StateVector[m_modules.size()];
+		for (int k = 0; k < vectors.length; k++)
+		{
+			StateLayout layout = m_modules.get(k).m_layout;
+			vectors[k] = new StateVector(layout);
+			for (Variable v : layout.getVariables())
+			{
+				int width = v instanceof ArrayVariable ? ((ArrayVariable) v).getDimension() : 1;
+				for (int i = 0; i < width; i++)
+				{
+					Cell c = m_moduleCells.get(k).get(getKey(v, i));
+					vectors[k].set(v, i, c.m_values[Math.min(c.decode(values, next), c.m_values.length - 1)]);
+				}
+			}
+		}
+		return vectors;
+	}
+
+	/**
+	 * Gets the diagram of a single state.
+	 * @param values The value of each variable, as returned by
+	 * {@link Bdd#satOne(int)}; variables that do not matter are taken as
+	 * false
+	 * @param vars The variables of the state
+	 * @return The diagram
+	 */
+	protected int getMinterm(int[] values, int[] vars)
+	{
+		boolean[] b = new boolean[vars.length];
+		for (int i = 0; i < vars.length; i++)
+		{
+			b[i] = values[vars[i]] == 1;
+		}
+		return m_bdd.minterm(vars, b);
+	}
+
+	/**
+	 * Gets the variables of all the cells.
+	 * @param next Whether to get the variables of the next state
+	 * @return The variables
+	 */
+	protected int[] getVariables(boolean next)
+	{
+		List<Integer> vars = new ArrayList<Integer>();
+		for (Cell c : m_cells)
+		{
+			for (int v : next ? c.m_next : c.m_current)
+			{
+				vars.add(v);
+			}
+		}
+		return toArray(vars);
+	}
+
+	/**
+	 * Gets the cells of the variables of a queue of a module.
+	 * @param k The index of the module
+	 * @param q The queue
+	 * @return The cells, in the order of the queue's variables
+	 */
+	protected List<Cell> getCells(int k, ProcessorQueue q)
+	{
+		List<Cell> cells = new ArrayList<Cell>();
+		for (String key : getKeys(q))
+		{
+			cells.add(m_moduleCells.get(k).get(key));
+		}
+		return cells;
+	}
+
+	protected int getNextCount(int q, int c)
+	{
+		int length = m_counters[q].m_values.length - 1;
+		return ((PresetProcessorQueue) m_inputs[q]).m_loop && length > 0 ? (c + 1) % length : Math.min(c + 1, length);
+	}
+
+	protected Object[] getStep(int q, int c)
+	{
+		return ((PresetProcessorQueue) m_inputs[q]).getStep(c);
+	}
+
+	protected Object[] getCounterValues(int q)
+	{
+		Object[] values = new Object[((PresetProcessorQueue) m_inputs[q]).m_steps.size() + 1];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = i;
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the names of the cells of the variables of a queue.
+	 * @param q The queue
+	 * @return The names
+	 */
+	protected static List<String> getKeys(ProcessorQueue q)
+	{
+		List<String> keys = new ArrayList<String>();
+		for (Variable v : q.getVariables())
+		{
+			int width = v instanceof ArrayVariable ? ((ArrayVariable) v).getDimension() : 1;
+			for (int i = 0; i < width; i++)
+			{
+				keys.add(getKey(v, i));
+			}
+		}
+		return keys;
+	}
+
+	protected static String getKey(Variable v, int index)
+	{
+		return v instanceof ArrayVariable ? v.getName() + "[" + index + "]" : v.getName();
+	}
+
+	protected static int indexOf(Object[] array, Object o)
+	{
+		for (int i = 0; i < array.length; i++)
+		{
+			if (array[i] == o)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected static int[] toArray(List<Integer> list)
+	{
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * A cell of a module, or the position in the sequence of a preset input,
+	 * encoded in binary: value number <i>i</i> of the domain is represented
+	 * by the bits of <i>i</i>, most significant bit first.
+	 */
+	protected static class Cell
+	{
+		/**
+		 * The values of the cell.
+		 */
+		/*@ non_null @*/ protected final Object[] m_values;
+
+		/**
+		 * The variables of the bits in the current state.
+		 */
+		/*@ non_null @*/ protected final int[] m_current;
+
+		/**
+		 * The variables of the bits in the next state.
+		 */
+		/*@ non_null @*/ protected final int[] m_next;
+
+		protected Cell(Object[] values)
+		{
+			super();
+			m_values = values;
+			int width = Math.max(1, 32 - Integer.numberOfLeadingZeros(values.length - 1));
+			m_current = new int[width];
+			m_next = new int[width];
+		}
+
+		/**
+		 * Gets the position of a value in the domain of the cell.
+		 * @param o The value
+		 * @return The position, or -1 if the value is not in the domain
+		 */
+		protected int indexOf(Object o)
+		{
+			for (int i = 0; i < m_values.length; i++)
+			{
+				if (m_values[i].equals(o))
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the condition stating that the cell holds a value.
+		 * @param bdd The diagram package
+		 * @param i The position of the value in the domain
+		 * @param next Whether the condition is on the next state
+		 * @return The diagram, {@link Bdd#FALSE} if the position is -1
+		 */
+		protected int is(Bdd bdd, int i, boolean next)
+		{
+			if (i < 0)
+			{
+				return Bdd.FALSE;
+			}
+			int[] vars = next ? m_next : m_current;
+			boolean[] bits = new boolean[vars.length];
+			for (int b = 0; b < vars.length; b++)
+			{
+				bits[b] = ((i >> (vars.length - 1 - b)) & 1) != 0;
+			}
+			return bdd.minterm(vars, bits);
+		}
+
+		/**
+		 * Gets the condition stating that the cell holds a value of its
+		 * domain.
+		 * @param bdd The diagram package
+		 * @param next Whether the condition is on the next state
+		 * @return The diagram
+		 */
+		protected int isValid(Bdd bdd, boolean next)
+		{
+			int c = Bdd.FALSE;
+			for (int i = 0; i < m_values.length; i++)
+			{
+				c = bdd.or(c, is(bdd, i, next));
+			}
+			return c;
+		}
+
+		/**
+		 * Gets the position of the value of the cell in an assignment.
+		 * @param values The value of each variable
+		 * @param next Whether to read the next state
+		 * @return The position
+		 */
+		protected int decode(int[] values, boolean next)
+		{
+			int i = 0;
+			for (int v : next ? m_next : m_current)
+			{
+				i = 2 * i + (values[v] == 1 ? 1 : 0);
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Translates the formulas of a module into diagrams. As in
+	 * {@link CdclSolver}, each term is translated into a map associating
+	 * each of its possible values with the condition under which the term
+	 * takes this value.
+	 */
+	protected class Translator
+	{
+		/**
+		 * The cells of the module.
+		 */
+		/*@ non_null @*/ protected final Map<String,Cell> m_moduleVars;
+
+		/**
+		 * The translation of the nodes already seen, in the current and in
+		 * the next state.
+		 */
+		/*@ non_null @*/ protected final List<Map<NusmvExpression,Map<Object,Integer>>> m_terms;
+
+		/**
+		 * The condition under which some division by zero occurs.
+		 */
+		protected int m_undefined;
+
+		protected Translator(int k)
+		{
+			super();
+			m_moduleVars = m_moduleCells.get(k);
+			m_terms = List.of(new HashMap<NusmvExpression,Map<Object,Integer>>(), new HashMap<NusmvExpression,Map<Object,Integer>>());
+			m_undefined = Bdd.FALSE;
+		}
+
+		/**
+		 * Translates a formula.
+		 * @param e The formula
+		 * @param next Whether the formula is in the scope of <tt>next</tt>
+		 * @return The diagram of the states where the formula is true and
+		 * defined
+		 */
+		protected int formula(NusmvExpression e, boolean next)
+		{
+			int f = bool(e, next);
+			return m_bdd.and(f, m_bdd.not(m_undefined));
+		}
+
+		protected int bool(NusmvExpression e, boolean next)
+		{
+			Integer f = term(e, next).get(Boolean.TRUE);
+			return f == null ? Bdd.FALSE : f;
+		}
+
+		protected Map<Object,Integer> term(NusmvExpression e, boolean next)
+		{
+			Map<NusmvExpression,Map<Object,Integer>> memo = m_terms.get(next ? 1 : 0);
+			Map<Object,Integer> values = memo.get(e);
+			if (values == null)
+			{
+				values = translate(e, next);
+				memo.put(e, values);
+			}
+			return values;
+		}
+
+		protected Map<Object,Integer> translate(NusmvExpression e, boolean next)
+		{
+			Bdd bdd = m_bdd;
+			String label = e.getLabel();
+			switch (e.getKind())
+			{
+			case CONSTANT:
+				if (e.getValue() != null)
+				{
+					return constant(e.getValue());
+				}
+				return constant(label.equals("TRUE") ? Boolean.TRUE : (label.equals("FALSE") ? Boolean.FALSE : (Object) Integer.valueOf(label)));
+			case VARIABLE:
+				return variable(label, next);
+			default:
+				break;
+			}
+			List<NusmvExpression> children = e.getChildren();
+			switch (label)
+			{
+			case "next":
+				return term(children.get(0), true);
+			case "!":
+				return bool(bdd.not(bool(children.get(0), next)));
+			case "&":
+			{
+				int f = Bdd.TRUE;
+				for (NusmvExpression c : children)
+				{
+					f = bdd.and(f, bool(c, next));
+				}
+				return bool(f);
+			}
+			case "|":
+			{
+				int f = Bdd.FALSE;
+				for (NusmvExpression c : children)
+				{
+					f = bdd.or(f, bool(c, next));
+				}
+				return bool(f);
+			}
+			case "->":
+				return bool(bdd.implies(bool(children.get(0), next), bool(children.get(1), next)));
+			case "<->":
+			case "xnor":
+				return bool(bdd.iff(bool(children.get(0), next), bool(children.get(1), next)));
+			case "xor":
+				return bool(bdd.xor(bool(children.get(0), next), bool(children.get(1), next)));
+			case "=":
+			case "!=":
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				return bool(compare(label, term(children.get(0), next), term(children.get(1), next)));
+			case "[]":
+				return access(children.get(0).getLabel(), term(children.get(1), next), next);
+			default:
+				break;
+			}
+			if (children.size() == 1 && label.equals("-"))
+			{
+				return arithmetic("-", constant(0), term(children.get(0), next));
+			}
+			Map<Object,Integer> result = term(children.get(0), next);
+			for (int i = 1; i < children.size(); i++)
+			{
+				result = arithmetic(label, result, term(children.get(i), next));
+			}
+			return result;
+		}
+
+		protected Map<Object,Integer> constant(Object o)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			values.put(o, Bdd.TRUE);
+			return values;
+		}
+
+		protected Map<Object,Integer> bool(int f)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			values.put(Boolean.TRUE, f);
+			values.put(Boolean.FALSE, m_bdd.not(f));
+			return values;
+		}
+
+		/**
+		 * Gets the translation of a variable or of an array cell accessed
+		 * with a constant index. Identifiers that are not variables of the
+		 * module are looked up among the symbols of the domains.
+		 * @param name The name of the variable or cell
+		 * @param next Whether the variable is taken in the next state
+		 * @return The translation of its values
+		 */
+		protected Map<Object,Integer> variable(String name, boolean next)
+		{
+			Cell c = m_moduleVars.get(name);
+			if (c == null)
+			{
+				if (name.indexOf('[') < 0 && m_symbols.containsKey(name))
+				{
+					return constant(m_symbols.get(name));
+				}
+				throw new IllegalArgumentException("Undeclared variable " + name);
+			}
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			for (int i = 0; i < c.m_values.length; i++)
+			{
+				values.put(c.m_values[i], c.is(m_bdd, i, next));
+			}
+			return values;
+		}
+
+		protected Map<Object,Integer> access(String name, Map<Object,Integer> index, boolean next)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			for (Map.Entry<Object,Integer> i : index.entrySet())
+			{
+				for (Map.Entry<Object,Integer> v : variable(name + "[" + i.getKey() + "]", next).entrySet())
+				{
+					add(values, v.getKey(), m_bdd.and(i.getValue(), v.getValue()));
+				}
+			}
+			return values;
+		}
+
+		protected int compare(String op, Map<Object,Integer> x, Map<Object,Integer> y)
+		{
+			Bdd bdd = m_bdd;
+			int f = Bdd.FALSE;
+			for (Map.Entry<Object,Integer> e1 : x.entrySet())
+			{
+				for (Map.Entry<Object,Integer> e2 : y.entrySet())
+				{
+					boolean holds;
+					if (op.equals("=") || op.equals("!="))
+					{
+						holds = e1.getKey().equals(e2.getKey()) == op.equals("=");
+					}
+					else
+					{
+						int diff = toInt(e1.getKey()) - toInt(e2.getKey());
+						holds = (op.equals("<") && diff < 0) || (op.equals("<=") && diff <= 0) || (op.equals(">") && diff > 0) || (op.equals(">=") && diff >= 0);
+					}
+					if (holds)
+					{
+						f = bdd.or(f, bdd.and(e1.getValue(), e2.getValue()));
+					}
+				}
+			}
+			return f;
+		}
+
+		protected Map<Object,Integer> arithmetic(String op, Map<Object,Integer> x, Map<Object,Integer> y)
+		{
+			Map<Object,Integer> values = new LinkedHashMap<Object,Integer>();
+			for (Map.Entry<Object,Integer> e1 : x.entrySet())
+			{
+				for (Map.Entry<Object,Integer> e2 : y.entrySet())
+				{
+					int a = toInt(e1.getKey()), b = toInt(e2.getKey());
+					int both = m_bdd.and(e1.getValue(), e2.getValue());
+					if ((op.equals("/") || op.equals("mod")) && b == 0)
+					{
+						m_undefined = m_bdd.or(m_undefined, both);
+						continue;
+					}
+					add(values, apply(op, a, b), both);
+				}
+			}
+			return values;
+		}
+
+		protected int apply(String op, int a, int b)
+		{
+			switch (op)
+			{
+			case "+":
+				return a + b;
+			case "-":
+				return a - b;
+			case "*":
+				return a * b;
+			case "/":
+				return a / b;
+			case "mod":
+				return a % b;
+			default:
+				throw new IllegalArgumentException("Unsupported operator " + op);
+			}
+		}
+
+		protected int toInt(Object o)
+		{
+			if (!(o instanceof Integer))
+			{
+				throw new IllegalArgumentException("Not a number: " + o);
+			}
+			return (Integer) o;
+		}
+
+		protected void add(Map<Object,Integer> values, Object value, int f)
+		{
+			if (f == Bdd.FALSE)
+			{
+				return;
+			}
+			Integer g = values.get(value);
+			values.put(value, g == null ? f : m_bdd.or(g, f));
+		}
+	}
+
+	/**
+	 * An invariant to check on the state of a module.
+	 */
+	protected static class Invariant
+	{
+		protected final String m_name;
+
+		protected final int m_module;
+
+		protected final NusmvExpression m_formula;
+
+		protected Invariant(String name, int module, NusmvExpression formula)
+		{
+			super();
+			m_name = name;
+			m_module = module;
+			m_formula = formula;
+		}
+	}
+
+	/**
+	 * A state violating an invariant, with the steps leading to it.
+	 */
+	public class Violation
+	{
+		/*@ non_null @*/ protected final String m_name;
+
+		/*@ non_null @*/ protected final List<Object[][]> m_inputTrace;
+
+		/*@ non_null @*/ protected final List<Object[][]> m_outputTrace;
+
+		protected Violation(String name, List<Object[][]> inputs, List<Object[][]> outputs)
+		{
+			super();
+			m_name = name;
+			m_inputTrace = inputs;
+			m_outputTrace = outputs;
+		}
+
+		/**
+		 * Gets the name of the violated invariant.
+		 * @return The name, or {@link SymbolicChecker#DEADLOCK}
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the events received by the input queues of the pipeline at
+		 * each step leading to the violation.
+		 * @return The events in each input queue, for each step
+		 */
+		/*@ pure non_null @*/ public List<Object[][]> getInputTrace()
+		{
+			return m_inputTrace;
+		}
+
+		/**
+		 * Gets the events in the output queues of the pipeline at each step
+		 * leading to the violation. If the violation is a deadlock, the last
+		 * step has no output.
+		 * @return The events in each output queue, for each step
+		 */
+		/*@ pure non_null @*/ public List<Object[][]> getOutputTrace()
+		{
+			return m_outputTrace;
+		}
+
+		/**
+		 * Prints the violation, followed by the events of the input and
+		 * output queues of the pipeline at each step leading to it.
+		 * @param ps The stream where to print
+		 */
+		public void print(/*@ non_null @*/ PrintStream ps)
+		{
+			ps.println("Violation of " + m_name);
+			PipelineSimulator.print(ps, m_inputs, m_inputTrace);
+			PipelineSimulator.print(ps, m_pipeline.getOutputQueues(), m_outputTrace);
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_name + " after " + m_inputTrace.size() + " steps";
+		}
+	}
+
+	/**
+	 * The result of an exploration.
+	 */
+	public static class Result
+	{
+		protected final double m_stateCount;
+
+		protected final int m_depth;
+
+		protected final boolean m_complete;
+
+		protected final int m_reachedSize;
+
+		protected final int m_transSize;
+
+		/*@ non_null @*/ protected final List<Violation> m_violations;
+
+		protected Result(double state_count, int depth, boolean complete, int reached_size, int trans_size, List<Violation> violations)
+		{
+			super();
+			m_stateCount = state_count;
+			m_depth = depth;
+			m_complete = complete;
+			m_reachedSize = reached_size;
+			m_transSize = trans_size;
+			m_violations = violations;
+		}
+
+		/**
+		 * Gets the number of distinct states reached.
+		 * @return The number of states
+		 */
+		/*@ pure @*/ public double getStateCount()
+		{
+			return m_stateCount;
+		}
+
+		/**
+		 * Gets the number of steps explored.
+		 * @return The number of steps
+		 */
+		/*@ pure @*/ public int getDepth()
+		{
+			return m_depth;
+		}
+
+		/**
+		 * Determines if all the reachable states have been explored.
+		 * @return <tt>true</tt> if all states have been explored
+		 */
+		/*@ pure @*/ public boolean isComplete()
+		{
+			return m_complete;
+		}
+
+		/**
+		 * Gets the number of nodes of the diagram of the reachable states.
+		 * @return The number of nodes
+		 */
+		/*@ pure @*/ public int getReachedSize()
+		{
+			return m_reachedSize;
+		}
+
+		/**
+		 * Gets the number of nodes of the diagram of the transition relation.
+		 * @return The number of nodes
+		 */
+		/*@ pure @*/ public int getTransitionSize()
+		{
+			return m_transSize;
+		}
+
+		/**
+		 * Gets the violations found during the exploration.
+		 * @return The violations
+		 */
+		/*@ pure non_null @*/ public List<Violation> getViolations()
+		{
+			return m_violations;
+		}
+	}
+}
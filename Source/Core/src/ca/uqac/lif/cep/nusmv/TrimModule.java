@@ -18,6 +18,8 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.List;
+
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
@@ -55,6 +57,13 @@ public class TrimModule extends SubsetProcessorModule
 		c.addLine("Module: Trim(" + m_interval + ")");
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		key.append(m_interval);
+		return true;
+	}
+
 	/**
 	 * Gets the internal variable acting as the processor's counter.
 	 * @return The variable
@@ -184,6 +193,42 @@ public class TrimModule extends SubsetProcessorModule
 		return big_and;
 	}
 
+	@Override
+	protected boolean isFunctional()
+	{
+		return true;
+	}
+	
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		super.addAssignments(list);
+		list.add(new CaseAssignment(CaseAssignment.Kind.INIT, m_counter, new Constant(m_counter.getDomain().getDefaultValue())));
+		// Cases are ordered: the first one that applies determines the value
+		CaseAssignment next_counter = new CaseAssignment(CaseAssignment.Kind.NEXT, m_counter, m_counter);
+		for (int i = 0; i < m_interval; i++)
+		{
+			Conjunction and = new Conjunction();
+			and.add(new IsReset(false));
+			and.add(getFrontPorch(0).hasLength(false, i));
+			next_counter.add(and, new Constant(i));
+		}
+		next_counter.add(new IsReset(false), new Constant(m_interval));
+		next_counter.add(new Equality(m_counter, new Constant(m_interval)), new Constant(m_interval));
+		for (int cnt = 0; cnt < m_interval; cnt++)
+		{
+			for (int nf = 0; nf < m_interval - cnt; nf++)
+			{
+				Conjunction and = new Conjunction();
+				and.add(new Equality(m_counter, new Constant(cnt)));
+				and.add(getFrontPorch(0).hasLength(false, nf));
+				next_counter.add(and, new Constant(cnt + nf));
+			}
+			next_counter.add(new Equality(m_counter, new Constant(cnt)), new Constant(m_interval));
+		}
+		list.add(next_counter);
+	}
+
 	@Override
 	public TrimModule duplicate()
 	{
@@ -197,4 +242,10 @@ public class TrimModule extends SubsetProcessorModule
 	{
 		return new IntegerRange(Math.max(0, ranges[0].getLowerBound() - m_interval), ranges[0].getUpperBound());
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return ranges[0];
+	}
 }
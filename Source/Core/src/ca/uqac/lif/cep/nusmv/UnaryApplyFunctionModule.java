@@ -18,6 +18,9 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import java.util.List;
+
+import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Implication;
 import ca.uqac.lif.nusmv4j.IntegerRange;
@@ -44,6 +47,18 @@ public class UnaryApplyFunctionModule extends UnaryProcessorModule
 	{
 		return ranges[0];
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		return m_function.getValueRange(ranges[0]);
+	}
+
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		return addToKey(key, m_function);
+	}
 
 	@Override
 	protected void addToInit(Conjunction c)
@@ -57,6 +72,31 @@ public class UnaryApplyFunctionModule extends UnaryProcessorModule
 		c.add(new MatchingPorches(true));
 	}
 	
+	@Override
+	protected boolean isFunctional()
+	{
+		return m_function.getTerm(getFrontPorch(0).valueAt(false, 0)) != null;
+	}
+	
+	@Override
+	protected void addAssignments(List<CaseAssignment> list)
+	{
+		ProcessorQueue front = getFrontPorch(0);
+		ProcessorQueue back = getBackPorch(0);
+		Condition[] has_length = new Condition[front.getSize() + 1];
+		for (int len = 0; len < has_length.length; len++)
+		{
+			has_length[len] = front.hasLength(false, len);
+		}
+		assignLength(list, back, has_length);
+		for (int i = 0; i < front.getSize(); i++)
+		{
+			CaseAssignment ca = assignCell(back, i);
+			ca.add(front.hasAt(false, i), m_function.getTerm(front.valueAt(false, i)));
+			list.add(ca);
+		}
+	}
+	
 	protected class MatchingPorches extends Conjunction
 	{
 		protected final boolean m_next;
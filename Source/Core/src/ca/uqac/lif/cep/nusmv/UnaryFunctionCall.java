@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.nusmv;
 
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Term;
 
 /**
@@ -49,5 +50,31 @@ public interface UnaryFunctionCall
 	 * @param y The output of the function
 	 * @return The condition
 	 */
-	public Condition getCondition(Term<?> x, Term<?> y);		
+	public Condition getCondition(Term<?> x, Term<?> y);
+	
+	/**
+	 * Produces a term computing the output value of the function from its
+	 * argument. Functions that can only be expressed as a condition linking
+	 * their argument and their output return <tt>null</tt>.
+	 * @param x The argument of the function
+	 * @return The term, or <tt>null</tt> if no such term can be produced
+	 */
+	public default Term<?> getTerm(Term<?> x)
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the interval of values the function can return, given an interval
+	 * on the value of its argument. This only applies to functions returning
+	 * integers.
+	 * @param x The range of the argument, or <tt>null</tt> if nothing is
+	 * known about it
+	 * @return The range of the output value, or <tt>null</tt> if no range
+	 * can be inferred
+	 */
+	public default IntegerRange getValueRange(IntegerRange x)
+	{
+		return null;
+	}
 }
\ No newline at end of file
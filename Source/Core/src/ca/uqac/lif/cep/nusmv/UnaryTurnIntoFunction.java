@@ -22,6 +22,7 @@ import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Constant;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.Term;
 
 /**
@@ -87,4 +88,15 @@ public class UnaryTurnIntoFunction implements UnaryFunctionCall
 	{
 		return new Equality(y, new Constant(m_value));
 	}
+	
+	@Override
+	public IntegerRange getValueRange(IntegerRange x)
+	{
+		if (m_value instanceof Integer)
+		{
+			int v = (Integer) m_value;
+			return new IntegerRange(v, v);
+		}
+		return null;
+	}
 }
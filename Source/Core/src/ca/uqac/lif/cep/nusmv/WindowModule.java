@@ -22,11 +22,13 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.Assignment;
 import ca.uqac.lif.nusmv4j.BooleanDomain;
 import ca.uqac.lif.nusmv4j.Comment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
+import ca.uqac.lif.nusmv4j.Constant;
 import ca.uqac.lif.nusmv4j.ConstantTrue;
 import ca.uqac.lif.nusmv4j.Disjunction;
 import ca.uqac.lif.nusmv4j.Domain;
@@ -36,7 +38,9 @@ import ca.uqac.lif.nusmv4j.Implication;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.ModuleDomain;
 import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 import ca.uqac.lif.nusmv4j.ScalarVariable;
+import ca.uqac.lif.nusmv4j.Term;
 
 import static ca.uqac.lif.cep.nusmv.ProcessorModule.QueueType.BUFFER;
 import static ca.uqac.lif.cep.nusmv.ProcessorModule.QueueType.PORCH;
@@ -76,8 +80,46 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	 * to run on each window.
 	 */
 	protected final ProcessorModule[] m_processors;
+	
+	/**
+	 * The function applied by the inner processor when the window uses the
+	 * sliding encoding, or <tt>null</tt> if inner processor instances are
+	 * used.
+	 */
+	/*@ null @*/ protected final UnaryFunctionCall m_slidingFunction;
+	
+	/**
+	 * The function accumulated by the inner processor when the window uses
+	 * the sliding encoding on a {@link CumulateModule}, or <tt>null</tt>
+	 * otherwise.
+	 */
+	/*@ null @*/ protected final BinaryFunctionCall m_slidingAggregate;
 
 	public WindowModule(String name, ProcessorModule processor, int width, Domain in_domain, Domain out_domain, int Q_in, int Q_out)
+	{
+		this(name, processor, width, in_domain, out_domain, Q_in, Q_out, false);
+	}
+	
+	/**
+	 * Creates a new window module.
+	 * @param name The name of the module
+	 * @param processor The processor to run on each window
+	 * @param width The width of the window
+	 * @param in_domain The domain of the input events
+	 * @param out_domain The domain of the output events
+	 * @param Q_in The size of the front porch
+	 * @param Q_out The size of the back porch
+	 * @param sliding Set to <tt>true</tt> to use the sliding encoding when
+	 * the inner processor allows it (see {@link #canSlide(ProcessorModule)}).
+	 * In this encoding, the module has no inner processor instance: since
+	 * the inner processor is reset on every window, the output for a window
+	 * is expressed directly on the events of that window. For a processor
+	 * that handles each event independently, this is its function applied to
+	 * the last event of the window; for a {@link CumulateModule}, this is its
+	 * function folded over all the events of the window. This parameter is
+	 * ignored for other inner processors.
+	 */
+	public WindowModule(String name, ProcessorModule processor, int width, Domain in_domain, Domain out_domain, int Q_in, int Q_out, boolean sliding)
 	{
 		super(name, 1, new Domain[] {in_domain}, 1, new Domain[] {out_domain}, true, Q_in, width - 1, Q_out);
 		m_width = width;
@@ -86,14 +128,31 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 		{
 			throw new IncompatibleQueueSizeException("Inner processor has a queue size of " + m_processor.getFrontPorch(0).getSize() + ", expected " + width);
 		}
+		m_innerFrontPorches = new HashMap<Integer,ProcessorQueue>();
+		m_innerBackPorches = new HashMap<Integer,ProcessorQueue>();
+		m_innerResetFlag = new ScalarVariable("innerr", BooleanDomain.instance);
+		if (sliding && canSlide(processor))
+		{
+			if (processor instanceof CumulateModule)
+			{
+				m_slidingFunction = null;
+				m_slidingAggregate = ((CumulateModule) processor).m_function;
+			}
+			else
+			{
+				m_slidingFunction = ((UnaryApplyFunctionModule) processor).m_function;
+				m_slidingAggregate = null;
+			}
+			m_processors = new ProcessorModule[0];
+			return;
+		}
+		m_slidingFunction = null;
+		m_slidingAggregate = null;
 		m_processors = new ProcessorModule[Q_in + width];
 		for (int i = 0; i < m_processors.length; i++)
 		{
 			m_processors[i] = m_processor.duplicate();
 		}
-		m_innerFrontPorches = new HashMap<Integer,ProcessorQueue>();
-		m_innerBackPorches = new HashMap<Integer,ProcessorQueue>();
-		m_innerResetFlag = new ScalarVariable("innerr", BooleanDomain.instance);
 		add(m_innerResetFlag);
 		for (int i = 0; i < Q_in + width; i++)
 		{
@@ -102,12 +161,105 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 			m_innerFrontPorches.put(i, in_q);
 			m_innerBackPorches.put(i, out_q);
 			add(in_q.m_arrayContents);
-			add(in_q.m_arrayFlags);
+			add(in_q.getOccupancyVariable());
 			add(out_q.m_arrayContents);
-			add(out_q.m_arrayFlags);
-			ModuleDomain dom = new ModuleDomain(m_processors[i], in_q.m_arrayContents, in_q.m_arrayFlags, out_q.m_arrayContents, out_q.m_arrayFlags, m_innerResetFlag);
-			add("in_p" + i, dom);
+			add(out_q.getOccupancyVariable());
+			add("in_p" + i, getInnerDomain(i));
+		}
+	}
+	
+	/**
+	 * Determines if a processor can be run on windows with the sliding
+	 * encoding. This is the case of processors that apply a function to each
+	 * input event independently, and of {@link CumulateModule}s whose
+	 * function can be written as a term.
+	 * @param p The processor
+	 * @return <tt>true</tt> if the sliding encoding can be used,
+	 * <tt>false</tt> otherwise
+	 */
+	public static boolean canSlide(/*@ non_null @*/ ProcessorModule p)
+	{
+		if (p instanceof CumulateModule)
+		{
+			return ((CumulateModule) p).isFunctional();
+		}
+		return p instanceof UnaryApplyFunctionModule;
+	}
+	
+	/**
+	 * Determines if this window uses the sliding encoding, where no inner
+	 * processor instance is declared.
+	 * @return <tt>true</tt> if the sliding encoding is used, <tt>false</tt>
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isSliding()
+	{
+		return m_slidingFunction != null || m_slidingAggregate != null;
+	}
+	
+	/**
+	 * Gets the domain of the variable standing for an inner processor
+	 * instance, which gives the arguments passed to that instance.
+	 * @param i The index of the inner processor instance
+	 * @return The domain
+	 */
+	/*@ non_null @*/ protected ModuleDomain getInnerDomain(int i)
+	{
+		ProcessorQueue in_q = m_innerFrontPorches.get(i);
+		ProcessorQueue out_q = m_innerBackPorches.get(i);
+		return new ModuleDomain(m_processors[i], in_q.m_arrayContents, in_q.getOccupancyVariable(), out_q.m_arrayContents, out_q.getOccupancyVariable(), m_innerResetFlag);
+	}
+	
+	@Override
+	protected void print(PrettyPrintStream ps, boolean streaming)
+	{
+		updateInstanceNames();
+		super.print(ps, streaming);
+	}
+	
+	/**
+	 * Gives the inner processor instances the name of the processor. The
+	 * instances are declared with the definition of the processor, whose
+	 * name may have been changed by a {@link BeepBeepModel}.
+	 */
+	protected void updateInstanceNames()
+	{
+		for (ProcessorModule p : m_processors)
+		{
+			p.setName(m_processor.getName());
+		}
+	}
+	
+	@Override
+	public long getLastModified()
+	{
+		return Math.max(super.getLastModified(), m_processor.getLastModified());
+	}
+	
+	@Override
+	public boolean isResizable()
+	{
+		// The number of inner processor instances depends on Q_in
+		return false;
+	}
+	
+	@Override
+	public WindowModule setQueueEncoding(Encoding e)
+	{
+		super.setQueueEncoding(e);
+		m_processor.setQueueEncoding(e);
+		for (int i = 0; i < m_processors.length; i++)
+		{
+			ProcessorQueue in_q = m_innerFrontPorches.get(i);
+			ProcessorQueue out_q = m_innerBackPorches.get(i);
+			in_q.setEncoding(e);
+			out_q.setEncoding(e);
+			declareOccupancyVariable(in_q);
+			declareOccupancyVariable(out_q);
+			m_processors[i].setQueueEncoding(e);
+			add("in_p" + i, getInnerDomain(i));
 		}
+		return this;
 	}
 
 	@Override
@@ -116,6 +268,19 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 		c.addLine("Module: Window of " + m_width + " of " + m_processor.toString());
 	}
 
+	@Override
+	protected boolean addToKey(StringBuilder key)
+	{
+		String inner = m_processor.getDefinitionKey();
+		if (inner == null)
+		{
+			return false;
+		}
+		updateInstanceNames();
+		key.append(m_width).append(" ").append(isSliding()).append("\n").append(inner);
+		return true;
+	}
+
 	/**
 	 * Produces the condition stipulating that the n-th inner processor
 	 * instance is active in the current (or the next) computation step. 
@@ -223,6 +388,11 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	@Override
 	public void addModules(/*@ non_null @*/ Set<ProcessorModule> modules)
 	{
+		if (isSliding())
+		{
+			// The inner processor is never instantiated
+			return;
+		}
 		if (m_processor instanceof CompositeProcessorModule)
 		{
 			((CompositeProcessorModule) m_processor).addModules(modules);
@@ -411,6 +581,80 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 		}
 	}
 
+	/**
+	 * Produces the condition stipulating that, in the sliding encoding, the
+	 * event at a given position of the back porch is the output of the inner
+	 * processor on the corresponding window.
+	 */
+	public class SlidingBackPorchContents extends Conjunction
+	{
+		protected final boolean m_next;
+
+		protected final int m_offset;
+
+		public SlidingBackPorchContents(boolean next, int offset)
+		{
+			super();
+			m_next = next;
+			m_offset = offset;
+			if (m_slidingAggregate != null)
+			{
+				addAggregate();
+				return;
+			}
+			for (QueueType sigma : new QueueType[] {PORCH, BUFFER})
+			{
+				for (int m = 0; m < getSize(sigma, 0); m++)
+				{
+					Implication imp = new Implication();
+					imp.add(at(next, sigma, 0, m, offset + m_width - 1));
+					imp.add(m_slidingFunction.getCondition(valueAt(next, sigma, 0, m), getBackPorch(0).valueAt(next, offset)));
+					add(imp);
+				}
+			}
+		}
+
+		/**
+		 * Adds the conditions for a window over a {@link CumulateModule}. For
+		 * each possible length of the buffer, the output is the fold of the
+		 * inner function over the cells of the buffer and the front porch
+		 * making up the window, starting from the function's default value.
+		 */
+		protected void addAggregate()
+		{
+			ProcessorQueue buffer = getBuffer(0);
+			ProcessorQueue porch = getFrontPorch(0);
+			Constant start = new Constant(m_slidingAggregate.getInputDomain(0).getDefaultValue());
+			for (int nb = 0; nb <= buffer.getSize(); nb++)
+			{
+				if (m_offset + m_width - nb > porch.getSize())
+				{
+					// The window cannot be complete with this buffer length
+					continue;
+				}
+				Term<?> t = start;
+				for (int j = 0; j < m_width; j++)
+				{
+					int p = m_offset + j;
+					t = m_slidingAggregate.getTerm(t, p < nb ? buffer.valueAt(m_next, p) : porch.valueAt(m_next, p - nb));
+				}
+				Conjunction guard = new Conjunction();
+				guard.add(buffer.hasLength(m_next, nb));
+				guard.add(new IsActive(m_next, m_offset));
+				Implication imp = new Implication();
+				imp.add(guard);
+				imp.add(new Equality(getBackPorch(0).valueAt(m_next, m_offset), t));
+				add(imp);
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "SlidingBackPorchContents(" + m_next + "," + m_offset + ")"; 
+		}
+	}
+
 	public class BackPorchLength extends Conjunction
 	{
 		protected final boolean m_next;
@@ -424,7 +668,14 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 			{
 				Equivalence eq = new Equivalence();
 				eq.add(back_porch.hasAt(next, i));
-				eq.add(m_innerFrontPorches.get(i).hasLength(next, m_width));
+				if (isSliding())
+				{
+					eq.add(new IsActive(next, i));
+				}
+				else
+				{
+					eq.add(m_innerFrontPorches.get(i).hasLength(next, m_width));
+				}
 				add(eq);
 			}
 		}
@@ -561,6 +812,16 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	@Override
 	protected void addToInit(Conjunction c)
 	{
+		if (isSliding())
+		{
+			c.add(getBuffer(0).hasLength(false, 0));
+			for (int i = 0; i < m_backPorches[0].getSize(); i++)
+			{
+				c.add(new SlidingBackPorchContents(false, i));
+			}
+			c.add(new BackPorchLength(false));
+			return;
+		}
 		c.add(new Equality(m_innerResetFlag, ConstantTrue.TRUE));
 		c.add(innerFrontPorchContents(false));
 		c.add(innerFrontPorchSizes(false));
@@ -584,6 +845,17 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	@Override
 	protected void addToTrans(Conjunction c)
 	{
+		if (isSliding())
+		{
+			for (int i = 0; i < m_backPorches[0].getSize(); i++)
+			{
+				c.add(new SlidingBackPorchContents(true, i));
+			}
+			c.add(new BackPorchLength(true));
+			c.add(new NextBufferLength());
+			c.add(new NextBufferContents());
+			return;
+		}
 		c.add(new Equality(m_innerResetFlag.next(), ConstantTrue.TRUE));
 		c.add(innerFrontPorchContents(true));
 		c.add(innerFrontPorchSizes(true));
@@ -610,7 +882,7 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	@Override
 	public WindowModule duplicate()
 	{
-		WindowModule m = new WindowModule(getName(), m_processor, m_width, getFrontPorch(0).getDomain(), getBackPorch(0).getDomain(), getFrontPorch(0).getSize(), getBackPorch(0).getSize());
+		WindowModule m = new WindowModule(getName(), m_processor, m_width, getFrontPorch(0).getDomain(), getBackPorch(0).getDomain(), getFrontPorch(0).getSize(), getBackPorch(0).getSize(), isSliding());
 		super.copyInto(m);
 		return m;
 	}
@@ -620,4 +892,12 @@ public class WindowModule extends ProcessorModule implements CompositeProcessorM
 	{
 		return new IntegerRange(Math.max(0, ranges[0].getLowerBound() - m_width + 1), ranges[0].getUpperBound());
 	}
+	
+	@Override
+	public IntegerRange getValueRange(int index, IntegerRange ... ranges)
+	{
+		// Each output event is computed by the inner processor from input
+		// events
+		return m_processor.getValueRange(0, ranges);
+	}
 }
@@ -18,14 +18,33 @@
  */
 package ca.uqac.lif.cep.nusmv;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 
 public class BeepBeepModelTest
@@ -100,4 +119,653 @@ public class BeepBeepModelTest
 		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
 		System.out.println(out);
 	}
+	
+	@Test
+	public void testPrintLength1()
+	{
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", 2, s_domLetters, 4, false);
+		in_q.addStep("a").addStep("b").addStep("c").addStep("a");
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", 2, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		BeepBeepModel mod = new BeepBeepModel(pipeline, Encoding.LENGTH);
+		assertEquals(Encoding.LENGTH, pt1.getBuffer(0).getEncoding());
+		assertEquals(Encoding.LENGTH, pt2.getBackPorch(0).getEncoding());
+		assertEquals(Encoding.LENGTH, in_q.getEncoding());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		mod.print(ps);
+		String out = baos.toString();
+		assertNotNull(out);
+		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
+		assertFalse(out.contains("inb_0[")); // No more flag arrays
+		assertFalse(out.contains("qb_0["));
+	}
+	
+	@Test
+	public void testPrintInvar1()
+	{
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", 2, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", 2, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		pipeline.add(pt1);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt1, 0, 0);
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		ProcessorModule.s_invar = true;
+		try
+		{
+			mod.print(ps);
+		}
+		finally
+		{
+			ProcessorModule.s_invar = false;
+		}
+		String out = baos.toString();
+		assertTrue(out.contains("INVAR"));
+		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
+		// Well-formedness is no longer stated on the next state
+		assertFalse(out.contains("next(in_b[1]) -> next(in_b[0])"));
+	}
+	
+	@Test
+	public void testSlice1()
+	{
+		int Q_in = 2;
+		ProcessorQueue in_q1 = new ProcessorQueue("in1", "in1_c", "in1_b", 2, s_domLetters);
+		ProcessorQueue in_q2 = new ProcessorQueue("in2", "in2_c", "in2_b", 2, s_domLetters);
+		ProcessorQueue out_q1 = new ProcessorQueue("out1", "ou1_c", "ou1_b", 2, s_domLetters);
+		ProcessorQueue out_q2 = new ProcessorQueue("out2", "ou2_c", "ou2_b", 2, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Two branches", new ProcessorQueue[] {in_q1, in_q2}, new ProcessorQueue[] {out_q1, out_q2});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt1, 0, 0);
+		pipeline.setInput(pt2, 0, 1);
+		pipeline.setOutput(pt2, 0, 1);
+		BeepBeepModel mod = new BeepBeepModel(pipeline, "LTLSPEC G !ou1_b[0]");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		mod.print(ps);
+		String out = baos.toString();
+		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
+		assertTrue(out.contains("Trim1"));
+		assertTrue(out.contains("LTLSPEC G !ou1_b[0]"));
+		// The other branch cannot influence the property
+		assertFalse(out.contains("MODULE Passthrough"));
+		assertFalse(out.contains("in2_c"));
+		assertFalse(out.contains("ou2_b"));
+	}
+	
+	@Test
+	public void testSlice2()
+	{
+		// A fork feeding a module that is sliced away loses the output to it
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q1 = new ProcessorQueue("out1", "ou1_c", "ou1_b", Q_in, s_domLetters);
+		ProcessorQueue out_q2 = new ProcessorQueue("out2", "ou2_c", "ou2_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Fork", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q1, out_q2});
+		ForkModule fork = new ForkModule("Fork", s_domLetters, 2, Q_in);
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(fork, pt1, pt2);
+		pipeline.setInput(fork, 0, 0);
+		pipeline.connect(fork, 0, pt1, 0);
+		pipeline.connect(fork, 1, pt2, 0);
+		pipeline.setOutput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 1);
+		BeepBeepModel mod = new BeepBeepModel(pipeline, "LTLSPEC G !ou1_b[0]");
+		ForkModule narrow = null;
+		for (ProcessorModule pm : pipeline.m_contents.keySet())
+		{
+			if (pm instanceof ForkModule)
+			{
+				narrow = (ForkModule) pm;
+			}
+		}
+		assertNotNull(narrow);
+		assertEquals(1, narrow.getOutputArity());
+		assertEquals(2, pipeline.m_contents.size());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mod.print(new PrettyPrintStream(baos));
+		String out = baos.toString();
+		assertFalse(out.contains("ERROR"));
+		assertTrue(out.contains("qc_0"));
+		// The queue of the dead branch is not declared
+		assertFalse(out.contains("qc_1"));
+		assertFalse(out.contains("ou2_b"));
+		assertFalse(out.contains("MODULE Passthrough"));
+	}
+	
+	@Test
+	public void testSlice3()
+	{
+		// A fork named by the property keeps all its outputs
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q1 = new ProcessorQueue("out1", "ou1_c", "ou1_b", Q_in, s_domLetters);
+		ProcessorQueue out_q2 = new ProcessorQueue("out2", "ou2_c", "ou2_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Fork", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q1, out_q2});
+		ForkModule fork = new ForkModule("Fork", s_domLetters, 2, Q_in);
+		pipeline.add(fork);
+		pipeline.setInput(fork, 0, 0);
+		pipeline.setOutput(fork, 0, 0);
+		pipeline.setOutput(fork, 1, 1);
+		pipeline.slice(List.of(pipeline.m_contents.get(fork)));
+		assertTrue(pipeline.m_contents.containsKey(fork));
+		assertEquals(2, fork.getOutputArity());
+	}
+	
+	@Test
+	public void testInferQueueSizes1()
+	{
+		CountDecimateModule pt1 = getDecimatePipeline(2);
+		// Decimating by 2 outputs at most one event per step
+		assertEquals(2, pt1.getFrontPorch(0).getSize());
+		assertEquals(1, pt1.getBackPorch(0).getSize());
+		// The counter is at 1: only the second event is output
+		List<Assignment> sols = solveDecimate(pt1, 1, new Object[] {"a", "b"});
+		assertEquals(1, sols.size());
+		Assignment a = sols.get(0);
+		pt1.getBackPorch(0).next().set("b").assign(a);
+		assertTrue(pt1.getTrans().evaluate(a));
+		pt1.getBackPorch(0).next().set().assign(a);
+		assertFalse(pt1.getTrans().evaluate(a));
+	}
+	
+	@Test
+	public void testInferQueueSizes3()
+	{
+		CountDecimateModule pt1 = getDecimatePipeline(4);
+		assertEquals(4, pt1.getFrontPorch(0).getSize());
+		assertEquals(2, pt1.getBackPorch(0).getSize());
+		List<Assignment> sols = solveDecimate(pt1, 0, new Object[] {"a", "b", "c", "a"});
+		assertEquals(1, sols.size());
+		Assignment a = sols.get(0);
+		pt1.getBackPorch(0).next().set("a", "c").assign(a);
+		assertTrue(pt1.getTrans().evaluate(a));
+	}
+	
+	/**
+	 * Builds a pipeline made of a decimation by 2 followed by a passthrough,
+	 * and infers its queue sizes.
+	 * @param Q The size of the queues before inference
+	 * @return The decimation module, once resized
+	 */
+	protected static CountDecimateModule getDecimatePipeline(int Q)
+	{
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Decimate + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		CountDecimateModule pt1 = new CountDecimateModule("Decimate", 2, s_domLetters, Q, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		pipeline.inferQueueSizes();
+		assertEquals(pt1.getBackPorch(0).getSize(), pt2.getFrontPorch(0).getSize());
+		assertEquals(pt1.getBackPorch(0).getSize(), out_q.getSize());
+		return pt1;
+	}
+	
+	/**
+	 * Solves the transition relation of a decimation module from an empty
+	 * state, for given events in the next front porch.
+	 * @param mod The module
+	 * @param counter The value of the counter
+	 * @param front The events of the next front porch
+	 * @return The solutions
+	 */
+	protected static List<Assignment> solveDecimate(CountDecimateModule mod, int counter, Object[] front)
+	{
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set().assign(a);
+		mod.getBackPorch(0).set().assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(counter).assign(a);
+		mod.getFrontPorch(0).next().set(front).assign(a);
+		mod.getResetFlag().next().set(false).assign(a);
+		return new CdclSolver().declare(mod).solveAll(mod.getTrans(), a);
+	}
+	
+	@Test
+	public void testInferQueueSizes2()
+	{
+		// Two modules with the same name are sized separately
+		int Q = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, s_domLetters);
+		ProcessorQueue out_q1 = new ProcessorQueue("out1", "ou1_c", "ou1_b", Q, s_domLetters);
+		ProcessorQueue out_q2 = new ProcessorQueue("out2", "ou2_c", "ou2_b", Q, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Fork", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q1, out_q2});
+		ForkModule f = new ForkModule("Fork", s_domLetters, 2, Q);
+		CountDecimateModule pt1 = new CountDecimateModule("Decimate", 2, s_domLetters, Q, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q);
+		PassthroughModule pt3 = new PassthroughModule("Passthrough", s_domLetters, Q);
+		pipeline.add(f, pt1, pt2, pt3);
+		pipeline.setInput(f, 0, 0);
+		pipeline.connect(f, 0, pt1, 0);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.connect(f, 1, pt3, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		pipeline.setOutput(pt3, 0, 1);
+		pipeline.inferQueueSizes();
+		// pt2 needs a single event, unlike pt3
+		assertEquals(1, pt1.getBackPorch(0).getSize());
+		assertEquals(1, pt2.getFrontPorch(0).getSize());
+		assertEquals(2, pt3.getFrontPorch(0).getSize());
+		assertEquals(1, out_q1.getSize());
+		assertEquals(2, out_q2.getSize());
+		// The model then declares them as two different modules
+		new BeepBeepModel(pipeline);
+		assertFalse(pt2.getName().equals(pt3.getName()));
+	}
+	
+	@Test
+	public void testInferQueueSizes4()
+	{
+		// Two modules with the same name but different arities, one of whose
+		// inputs is not connected
+		int Q = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Passthrough + Filter", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt = new PassthroughModule("X", s_domLetters, Q);
+		FilterModule f = new FilterModule("X", s_domLetters, Q, Q, Q);
+		pipeline.add(pt, f);
+		pipeline.setInput(pt, 0, 0);
+		pipeline.connect(pt, 0, f, 0);
+		pipeline.setOutput(f, 0, 0);
+		pipeline.inferQueueSizes();
+		assertEquals(2, pt.getFrontPorch(0).getSize());
+		assertEquals(2, f.getFrontPorch(0).getSize());
+		assertEquals(2, f.getFrontPorch(1).getSize());
+		assertEquals(2, f.getBackPorch(0).getSize());
+	}
+	
+	@Test
+	public void testOutputRange1()
+	{
+		int Q = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Decimate + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		CountDecimateModule pt1 = new CountDecimateModule("Decimate", 2, s_domLetters, Q, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		IntegerRange r = pipeline.getOutputRange(new IntegerRange(0, 4));
+		assertEquals(0, r.getLowerBound());
+		assertEquals(2, r.getUpperBound());
+	}
+	
+	@Test
+	public void testNarrowDomains1()
+	{
+		int Q = 2;
+		IntegerRange dom = new IntegerRange(0, 7);
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, dom);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, dom);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("TurnInto + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TurnIntoModule pt1 = new TurnIntoModule("TurnInto", dom, dom, 2, Q, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", dom, Q);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		pipeline.narrowDomains();
+		ProcessorQueue inner = pipeline.m_connector.getInnerQueues().get(0);
+		IntegerRange r = (IntegerRange) inner.getDomain();
+		// The lower bound is kept for the empty cells
+		assertEquals(0, r.getLowerBound());
+		assertEquals(2, r.getUpperBound());
+		assertEquals(7, ((IntegerRange) out_q.getDomain()).getUpperBound());
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		mod.print(ps);
+		String out = baos.toString();
+		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
+		assertTrue(out.contains("0..2"));
+	}
+	
+	@Test
+	public void testNarrowDomains2()
+	{
+		int Q = 2;
+		IntegerRange dom = new IntegerRange(0, 7);
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, dom);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, dom);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("TurnInto + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TurnIntoModule pt1 = new TurnIntoModule("TurnInto", dom, dom, 2, Q, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", dom, Q);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		pipeline.narrowDomains();
+		// The porches on the inner queue take its domain
+		assertEquals(2, ((IntegerRange) pt1.getBackPorch(0).getDomain()).getUpperBound());
+		assertEquals(2, ((IntegerRange) pt2.getFrontPorch(0).getDomain()).getUpperBound());
+		assertEquals(2, ((IntegerRange) pt2.getBuffer(0).getDomain()).getUpperBound());
+		// The porches on the pipeline's queues are left unchanged
+		assertEquals(7, ((IntegerRange) pt1.getFrontPorch(0).getDomain()).getUpperBound());
+		assertEquals(7, ((IntegerRange) pt2.getBackPorch(0).getDomain()).getUpperBound());
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		mod.print(ps);
+		String out = baos.toString();
+		assertFalse(out.contains("ERROR"));
+		assertTrue(out.contains("0..7"));
+	}
+	
+	@Test
+	public void testDeduplicate1()
+	{
+		// Two modules with the same definition under different names
+		int Q = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Passthrough x 2", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt1 = new PassthroughModule("Passthrough1", s_domLetters, Q);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough2", s_domLetters, Q);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		assertEquals(pt1.getName(), pt2.getName());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mod.print(new PrettyPrintStream(baos));
+		String out = baos.toString();
+		assertFalse(out.contains("ERROR"));
+		assertEquals(2, out.split("MODULE ").length - 1);
+		assertFalse(out.contains(pt1.getName().equals("Passthrough1") ? "Passthrough2" : "Passthrough1"));
+	}
+	
+	@Test
+	public void testDeduplicate2()
+	{
+		// Two modules with the same name but different queue sizes
+		ProcessorQueue in_q1 = new ProcessorQueue("in1", "in1_c", "in1_b", 2, s_domLetters);
+		ProcessorQueue in_q2 = new ProcessorQueue("in2", "in2_c", "in2_b", 1, s_domLetters);
+		ProcessorQueue out_q1 = new ProcessorQueue("out1", "ou1_c", "ou1_b", 2, s_domLetters);
+		ProcessorQueue out_q2 = new ProcessorQueue("out2", "ou2_c", "ou2_b", 1, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim x 2", new ProcessorQueue[] {in_q1, in_q2}, new ProcessorQueue[] {out_q1, out_q2});
+		TrimModule pt1 = new TrimModule("Trim", 1, s_domLetters, 2);
+		TrimModule pt2 = new TrimModule("Trim", 1, s_domLetters, 1);
+		pipeline.add(pt1, pt2);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setInput(pt2, 0, 1);
+		pipeline.setOutput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 1);
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		assertFalse(pt1.getName().equals(pt2.getName()));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mod.print(new PrettyPrintStream(baos));
+		String out = baos.toString();
+		assertEquals(3, out.split("MODULE ").length - 1);
+		assertTrue(out.contains("MODULE Trim("));
+		assertTrue(out.contains("MODULE Trim_1("));
+	}
+	
+	@Test
+	public void testDeduplicate3()
+	{
+		// Modules with a key are compared without generating their formulas
+		BeepBeepPipeline pipeline = getGroupPipeline();
+		new BeepBeepModel(pipeline);
+		int keyed = 0;
+		for (List<ProcessorModule> level : BeepBeepModel.getLevels(pipeline))
+		{
+			for (ProcessorModule mod : level)
+			{
+				if (mod.getDefinitionKey() != null)
+				{
+					keyed++;
+					assertNull(mod.m_init);
+					assertNull(mod.m_trans);
+					assertNull(mod.m_fingerprint);
+				}
+			}
+		}
+		assertEquals(3, keyed);
+	}
+	
+	@Test
+	public void testMetrics1()
+	{
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", 2, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", 2, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("main", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt = new PassthroughModule("Passthrough", s_domLetters, 2);
+		pipeline.add(pt);
+		pipeline.setInput(pt, 0, 0);
+		pipeline.setOutput(pt, 0, 0);
+		BeepBeepModel model = new BeepBeepModel(pipeline);
+		Map<String,FormulaMetrics[]> metrics = model.getMetrics();
+		assertEquals(2, metrics.size());
+		assertTrue(metrics.containsKey("Passthrough"));
+		FormulaMetrics trans = metrics.get("Passthrough")[1];
+		assertTrue(trans.getNodeCount() > 0);
+		FormulaMetrics total = model.getTotalMetrics();
+		long nodes = 0;
+		for (FormulaMetrics[] fms : metrics.values())
+		{
+			nodes += fms[0].getNodeCount() + fms[1].getNodeCount();
+		}
+		assertEquals(nodes, total.getNodeCount());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		model.printMetrics(new PrintStream(baos));
+		assertEquals(6, baos.toString().split("\\n").length);
+	}
+	
+	@Test
+	public void testWrite() throws IOException
+	{
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", Q_in, s_domLetters, 4, false);
+		in_q.addStep("a").addStep("b").addStep("c").addStep("a");
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		BeepBeepModel mod = new BeepBeepModel(pipeline);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mod.print(new PrettyPrintStream(baos));
+		String expected = baos.toString();
+		// Forget the formulas kept by printing, so that they are streamed
+		pt1.setDirty();
+		pt2.setDirty();
+		String out;
+		Path p = Files.createTempFile("model", ".smv");
+		try
+		{
+			mod.write(p);
+			out = new String(Files.readAllBytes(p));
+		}
+		finally
+		{
+			Files.delete(p);
+		}
+		assertNull(pt1.m_trans);
+		assertNull(pt2.m_init);
+		assertFalse(out.contains("ERROR"));
+		// The streamed formulas have the same conjuncts, only grouped differently
+		List<String> expected_sections = getSections(expected);
+		List<String> out_sections = getSections(out);
+		assertEquals(expected_sections.size(), out_sections.size());
+		for (int i = 0; i < expected_sections.size(); i++)
+		{
+			assertEquals(getConjuncts(expected_sections.get(i)), getConjuncts(out_sections.get(i)));
+		}
+	}
+	
+	@Test
+	public void testParallel()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		boolean simplify = ProcessorModule.s_simplify;
+		try
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			new BeepBeepModel(getGroupPipeline()).print(new PrettyPrintStream(baos));
+			String expected = baos.toString();
+			baos = new ByteArrayOutputStream();
+			new BeepBeepModel(getGroupPipeline(), null, pool).print(new PrettyPrintStream(baos));
+			assertEquals(expected, baos.toString());
+			// Worker threads use the flags of the calling thread
+			ProcessorModule.s_simplify = !simplify;
+			baos = new ByteArrayOutputStream();
+			new BeepBeepModel(getGroupPipeline()).print(new PrettyPrintStream(baos));
+			expected = baos.toString();
+			baos = new ByteArrayOutputStream();
+			ProcessorModule.s_simplify = simplify;
+			Integer flags = ProcessorModule.setThreadFlags(ProcessorModule.getFlags() ^ ProcessorModule.FLAG_SIMPLIFY);
+			try
+			{
+				new BeepBeepModel(getGroupPipeline(), null, pool).print(new PrettyPrintStream(baos));
+			}
+			finally
+			{
+				ProcessorModule.setThreadFlags(flags);
+			}
+			assertEquals(expected, baos.toString());
+		}
+		finally
+		{
+			ProcessorModule.s_simplify = simplify;
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testParallel2()
+	{
+		// Formulas generated in the pool are kept until the model is printed
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			BeepBeepPipeline pipeline = getGroupPipeline();
+			BeepBeepModel mod = new BeepBeepModel(pipeline, null, pool);
+			Set<String> names = new HashSet<String>();
+			List<ProcessorModule> printed = new ArrayList<ProcessorModule>();
+			for (List<ProcessorModule> level : BeepBeepModel.getLevels(pipeline))
+			{
+				for (ProcessorModule pm : level)
+				{
+					// Only the first module with a given name is printed
+					if (names.add(pm.getName()))
+					{
+						printed.add(pm);
+					}
+				}
+			}
+			assertEquals(3, printed.size());
+			List<Condition> formulas = new ArrayList<Condition>();
+			for (ProcessorModule pm : printed)
+			{
+				assertNotNull(pm.m_init);
+				assertNotNull(pm.m_trans);
+				formulas.add(pm.m_init);
+				formulas.add(pm.m_trans);
+			}
+			mod.print(new PrettyPrintStream(new ByteArrayOutputStream()));
+			for (int i = 0; i < printed.size(); i++)
+			{
+				assertSame(formulas.get(2 * i), printed.get(i).getInit());
+				assertSame(formulas.get(2 * i + 1), printed.get(i).getTrans());
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	protected static BeepBeepPipeline getGroupPipeline()
+	{
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("main", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		GroupModule group = new GroupModule("Group", 1, new Domain[] {s_domLetters}, 1, new Domain[] {s_domLetters}, Q_in, Q_in);
+		TrimModule t1 = new TrimModule("Trim", 1, s_domLetters, Q_in);
+		PassthroughModule pt1 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		group.add(t1, pt1);
+		group.connect(t1, 0, pt1, 0);
+		group.associateInput(0, t1, 0);
+		group.associateOutput(0, pt1, 0);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(group, pt2);
+		pipeline.connect(group, 0, pt2, 0);
+		pipeline.setInput(group, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		return pipeline;
+	}
+	
+	/**
+	 * Gets the text of the INIT and TRANS sections of a model, in the order
+	 * in which they appear.
+	 * @param model The text of the model
+	 * @return The sections
+	 */
+	protected static List<String> getSections(String model)
+	{
+		List<String> sections = new ArrayList<String>();
+		StringBuilder section = null;
+		for (String line : model.split("\\n"))
+		{
+			if (line.matches("(MODULE|VAR|INIT|TRANS|INVAR|ASSIGN|DEFINE)\\b.*|--.*"))
+			{
+				if (section != null)
+				{
+					sections.add(section.toString());
+				}
+				section = line.equals("INIT") || line.equals("TRANS") ? new StringBuilder() : null;
+			}
+			else if (section != null)
+			{
+				section.append(line).append("\n");
+			}
+		}
+		if (section != null)
+		{
+			sections.add(section.toString());
+		}
+		return sections;
+	}
+	
+	protected static List<String> getConjuncts(String formula)
+	{
+		List<String> conjuncts = new ArrayList<String>();
+		for (String c : formula.replaceAll("[()\\s]", "").split("&"))
+		{
+			if (!c.isEmpty() && !c.equals("TRUE"))
+			{
+				conjuncts.add(c);
+			}
+		}
+		Collections.sort(conjuncts);
+		return conjuncts;
+	}
 }
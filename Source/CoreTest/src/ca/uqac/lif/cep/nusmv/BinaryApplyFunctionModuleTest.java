@@ -21,15 +21,14 @@ package ca.uqac.lif.cep.nusmv;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
-import ca.uqac.lif.nusmv4j.Solver;
 
 import static org.junit.Assert.*;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class BinaryApplyFunctionModuleTest
 {
@@ -37,8 +36,6 @@ public class BinaryApplyFunctionModuleTest
 	
 	protected static Domain s_domNumbers = new IntegerRange(0, 3);
 
-	protected static Solver s_solver = new BruteSolver();
-
 	@Test
 	public void testNumFronts1()
 	{
@@ -167,7 +164,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getBuffer(1).set().assign(a);
 		mod.getFrontPorch(1).set("a").assign(a);
 		//mod.getBackPorch().set(true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 	}
 
@@ -221,7 +218,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getFrontPorch(1).set().assign(a);
 		//c = Condition.simplify(c);
 		//mod.getBackPorch().set(true, true, true, true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		Condition len = mod.getBackPorch(0).hasLength(false, 2);
 		for (Assignment sol : solutions)
 		{
@@ -312,7 +309,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getBuffer(1).set("a").assign(a);
 		mod.getFrontPorch(1).set().assign(a);
 		//mod.getBackPorch().set(true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 	}
 
@@ -347,7 +344,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getBuffer(1).set("b").assign(a);
 		mod.getFrontPorch(1).set().assign(a);
 		//mod.getBackPorch().set(false).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 	}
 
@@ -382,7 +379,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getBuffer(1).set().assign(a);
 		mod.getFrontPorch(1).set("a").assign(a);
 		//mod.getBackPorch().set(true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 	}
 
@@ -434,7 +431,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getBuffer(1).set().assign(a);
 		mod.getFrontPorch(1).set("a", "c").assign(a);
 		//mod.getBackPorch().set(true, false).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, mod.frontsVsBackPorch(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 	}
 
@@ -476,7 +473,7 @@ public class BinaryApplyFunctionModuleTest
 			mod.getBuffer(1).next().set().assign(a);
 			assertEquals(true, mod.getTrans().evaluate(a));
 		}*/
-		List<Assignment> sols = s_solver.solveAll(mod.getTrans(), a);
+		List<Assignment> sols = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(mod.getTrans(), a);
 		assertEquals(1, sols.size());
 		/*{
 			mod.getBuffer(0).next().set().assign(a);
@@ -692,7 +689,7 @@ public class BinaryApplyFunctionModuleTest
 		mod.getFrontPorch(1).set().assign(a);
 		mod.getResetFlag().set(false).assign(a);
 		Condition c = mod.nextBufferSize(0);
-		List<Assignment> sols = s_solver.solveAll(c, a);
+		List<Assignment> sols = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, sols.size());
 	}
 
@@ -0,0 +1,219 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Constant;
+import ca.uqac.lif.nusmv4j.Disjunction;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+
+public class CdclSolverTest
+{
+	protected static Domain s_domNumbers = new IntegerRange(0, 4);
+
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testCore1()
+	{
+		// (x1 | x2) & (!x1 | x2) & (x1 | !x2)
+		SatCore core = new SatCore();
+		int x1 = core.newVariable(), x2 = core.newVariable();
+		core.addClause(x1, x2);
+		core.addClause(-x1, x2);
+		core.addClause(x1, -x2);
+		assertTrue(core.solve());
+		assertTrue(core.isTrue(x1));
+		assertTrue(core.isTrue(x2));
+		core.addClause(-x1, -x2);
+		assertFalse(core.solve());
+	}
+
+	@Test
+	public void testCorePigeonhole()
+	{
+		// 4 pigeons in 3 holes: unsatisfiable, and requires learning
+		int pigeons = 4, holes = 3;
+		SatCore core = new SatCore();
+		for (int i = 0; i < pigeons * holes; i++)
+		{
+			core.newVariable();
+		}
+		for (int p = 0; p < pigeons; p++)
+		{
+			int[] clause = new int[holes];
+			for (int h = 0; h < holes; h++)
+			{
+				clause[h] = p * holes + h + 1;
+			}
+			core.addClause(clause);
+		}
+		for (int h = 0; h < holes; h++)
+		{
+			for (int p1 = 0; p1 < pigeons; p1++)
+			{
+				for (int p2 = p1 + 1; p2 < pigeons; p2++)
+				{
+					core.addClause(-(p1 * holes + h + 1), -(p2 * holes + h + 1));
+				}
+			}
+		}
+		assertFalse(core.solve());
+	}
+
+	@Test
+	public void testScalar1()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domNumbers);
+		Condition c = new Negation(new Equality(x, new Constant(2)));
+		List<Assignment> sols = new CdclSolver().declare(x).solveAll(c, new Assignment());
+		assertEquals(4, sols.size());
+		for (Assignment s : sols)
+		{
+			assertTrue(c.evaluate(s));
+		}
+	}
+
+	@Test
+	public void testScalar2()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", s_domLetters);
+		Condition c = new Disjunction(new Equality(x, y), new Equality(x, new Constant("a")));
+		List<Assignment> sols = new CdclSolver().declare(x, y).solveAll(c, new Assignment());
+		// x = y gives 3 solutions, x = a gives 3 more, one being shared
+		assertEquals(5, sols.size());
+	}
+
+	@Test
+	public void testScalarFixed()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", s_domLetters);
+		Assignment a = new Assignment();
+		x.set("b").assign(a);
+		Condition c = new Equality(x, y);
+		List<Assignment> sols = new CdclSolver().declare(x, y).solveAll(c, a);
+		assertEquals(1, sols.size());
+		assertEquals("b", y.evaluate(sols.get(0)));
+	}
+
+	@Test
+	public void testUnsatisfiable()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domNumbers);
+		Assignment a = new Assignment();
+		x.set(1).assign(a);
+		Condition c = new Equality(x, new Constant(3));
+		assertEquals(0, new CdclSolver().declare(x).solveAll(c, a).size());
+	}
+
+	@Test
+	public void testUndeclared()
+	{
+		// Variables are found in the condition, as with other solvers
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", s_domLetters);
+		Condition c = new Disjunction(new Equality(x, y), new Equality(x, new Constant("a")));
+		List<Assignment> sols = new CdclSolver().solveAll(c, new Assignment());
+		assertEquals(5, sols.size());
+		for (Assignment s : sols)
+		{
+			assertTrue(c.evaluate(s));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUndeclaredText()
+	{
+		// A formula parsed from text only knows the declared variables
+		new CdclSolver().solveAll(List.of(NusmvExpression.parse("x = 3")), new Assignment());
+	}
+
+	@Test
+	public void testUndeclaredModule()
+	{
+		int Q_in = 2, Q_out = 2;
+		CumulateModule mod = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 0).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
+		Condition c = mod.getTrans();
+		List<Assignment> declared = new CdclSolver().declare(mod).solveAll(c, a);
+		List<Assignment> found = new CdclSolver().solveAll(c, a);
+		assertFalse(found.isEmpty());
+		assertEquals(declared.size(), found.size());
+		for (Assignment s : found)
+		{
+			assertTrue(c.evaluate(s));
+		}
+	}
+
+	@Test
+	public void testLargeQueue()
+	{
+		// Out of reach of exhaustive enumeration: 5^8 contents for the back porch
+		int Q_in = 8, Q_out = 8;
+		CumulateModule mod = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 0, 1, 0, 1, 0, 1, 0).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
+		Condition c = mod.backPorchValues(false);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
+		assertEquals(1, solutions.size());
+		mod.getBackPorch(0).set(1, 1, 2, 2, 3, 3, 4, 4).assign(a);
+		assertTrue(c.evaluate(a));
+	}
+
+	@Test
+	public void testParallel()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", s_domLetters);
+		ScalarVariable z = new ScalarVariable("z", s_domNumbers);
+		Condition c = new Disjunction(new Equality(x, y), new Equality(z, new Constant(0)));
+		List<Assignment> expected = new CdclSolver().declare(x, y, z).solveAll(c, new Assignment());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		List<Assignment> sols = new CdclSolver().setPool(pool).declare(x, y, z).solveAll(c, new Assignment());
+		pool.shutdown();
+		// 3 * 5 with x = y, plus 6 more with z = 0
+		assertEquals(21, expected.size());
+		assertEquals(expected.size(), sols.size());
+		for (Assignment s : sols)
+		{
+			assertTrue(c.evaluate(s));
+		}
+	}
+}
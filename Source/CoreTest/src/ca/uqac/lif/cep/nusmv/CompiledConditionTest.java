@@ -0,0 +1,154 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.Addition;
+import ca.uqac.lif.nusmv4j.ArrayAccess;
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Constant;
+import ca.uqac.lif.nusmv4j.Disjunction;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+import ca.uqac.lif.nusmv4j.Variable;
+
+public class CompiledConditionTest
+{
+	protected static Domain s_domNumbers = new IntegerRange(0, 4);
+
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testSymbols()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", s_domLetters);
+		Condition c = new Disjunction(new Equality(x, y), new Equality(x, new Constant("a")));
+		StateLayout layout = new StateLayout(List.of(x, y));
+		CompiledCondition cc = CompiledCondition.compile(c, layout);
+		assertEquals(2, layout.getSlotCount());
+		for (String v1 : new String[] {"a", "b", "c"})
+		{
+			for (String v2 : new String[] {"a", "b", "c"})
+			{
+				Assignment a = new Assignment();
+				x.set(v1).assign(a);
+				y.set(v2).assign(a);
+				int[] state = new int[] {layout.encode(v1), layout.encode(v2)};
+				assertEquals(c.evaluate(a), cc.evaluate(state));
+			}
+		}
+	}
+
+	@Test
+	public void testNext()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domNumbers);
+		Condition c = new Equality(x.next(), new Addition(x, new Constant(1)));
+		StateLayout layout = new StateLayout(List.of(x));
+		CompiledCondition cc = CompiledCondition.compile(c, layout);
+		assertTrue(cc.evaluate(new int[] {2}, new int[] {3}));
+		assertFalse(cc.evaluate(new int[] {2}, new int[] {2}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUndeclared()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domNumbers);
+		ScalarVariable y = new ScalarVariable("y", s_domNumbers);
+		CompiledCondition.compile(new Equality(x, y), new StateLayout(List.of(x)));
+	}
+
+	@Test
+	public void testModule()
+	{
+		int Q_in = 3, Q_out = 3;
+		CumulateModule mod = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 1, 2).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
+		Condition c = mod.backPorchValues(false);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
+		assertEquals(1, solutions.size());
+		StateLayout layout = new StateLayout(mod);
+		CompiledCondition cc = CompiledCondition.compile(c, layout);
+		int[] state = toVector(layout, solutions.get(0));
+		assertTrue(cc.evaluate(state));
+		// Change the last output value
+		int slot = layout.getOffset(mod.getBackPorch(0).m_arrayContents.getName()) + Q_out - 1;
+		state[slot] = (state[slot] + 1) % 5;
+		assertFalse(cc.evaluate(state));
+	}
+
+	@Test
+	public void testDefines()
+	{
+		boolean defines = ProcessorModule.s_defines;
+		ProcessorModule.s_defines = true;
+		try
+		{
+			CountDecimateModule mod = new CountDecimateModule("dec", 2, s_domNumbers, 2, 2);
+			// The condition refers to macros, which are expanded when compiling
+			Condition c = mod.backPorchLength(false);
+			StateLayout layout = new StateLayout(mod);
+			CompiledCondition cc = CompiledCondition.compile(c, layout);
+			Assignment a = new Assignment();
+			mod.getFrontPorch(0).set(1, 2).assign(a);
+			mod.getResetFlag().set(false).assign(a);
+			a.set(mod.getCounter(), 0);
+			mod.getBackPorch(0).set(1).assign(a);
+			assertTrue(c.evaluate(a));
+			assertTrue(cc.evaluate(toVector(layout, a)));
+			mod.getBackPorch(0).set(1, 2).assign(a);
+			assertFalse(c.evaluate(a));
+			assertFalse(cc.evaluate(toVector(layout, a)));
+		}
+		finally
+		{
+			ProcessorModule.s_defines = defines;
+		}
+	}
+
+	/**
+	 * Reads the values of the slots of a layout from an assignment.
+	 */
+	protected static int[] toVector(StateLayout layout, Assignment a)
+	{
+		int[] state = new int[layout.getSlotCount()];
+		for (int i = 0; i < state.length; i++)
+		{
+			Variable v = layout.getVariable(i);
+			Object o = CdclSolver.getValue(v instanceof ArrayVariable ? ArrayAccess.get((ArrayVariable) v, i - layout.getOffset(v.getName())) : (ScalarVariable) v, a);
+			state[i] = layout.encode(o == null ? v.getDomain().getDefaultValue() : o);
+		}
+		return state;
+	}
+}
@@ -26,19 +26,15 @@ import java.util.List;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.PrettyPrintStream;
-import ca.uqac.lif.nusmv4j.Solver;
 
 public class CountDecimateModuleTest 
 {
 	protected static Domain s_domNumbers = new IntegerRange(0, 3);
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	@Test
 	public void testShouldBeOutput1()
 	{
@@ -165,6 +161,136 @@ public class CountDecimateModuleTest
 		assertEquals(false, mod.numOutputs(false, 5, 3).evaluate(a));
 	}
 	
+	@Test
+	public void testNumOutputsDefines1()
+	{
+		int Q_in = 6, Q_out = 6;
+		CountDecimateModule mod = new CountDecimateModule("dec", 3, s_domNumbers, Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 2, 3, 3, 2, 1).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(2).assign(a);
+		ProcessorModule.s_defines = true;
+		try
+		{
+			// Same formula is returned for the same (m, n)
+			assertSame(mod.numOutputs(false, 4, 2), mod.numOutputs(false, 4, 2));
+			// Macro references evaluate as the formula they stand for
+			assertEquals(true, mod.numOutputs(false, 4, 2).evaluate(a));
+			assertEquals(true, mod.numOutputs(false, 5, 2).evaluate(a));
+			assertEquals(false, mod.numOutputs(false, 5, 3).evaluate(a));
+		}
+		finally
+		{
+			ProcessorModule.s_defines = false;
+		}
+	}
+	
+	@Test
+	public void testPrintDefines1()
+	{
+		int Q_in = 6, Q_out = 6;
+		CountDecimateModule mod = new CountDecimateModule("dec", 3, s_domNumbers, Q_in, Q_out);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		ProcessorModule.s_defines = true;
+		try
+		{
+			mod.print(ps);
+		}
+		finally
+		{
+			ProcessorModule.s_defines = false;
+		}
+		String out = baos.toString();
+		assertTrue(out.contains("DEFINE"));
+		assertTrue(out.contains("nout_5_2 :="));
+		assertFalse(out.contains("ERROR"));
+	}
+	
+	@Test
+	public void testAssignments1()
+	{
+		int Q_in = 6, Q_out = 6;
+		CountDecimateModule mod = new CountDecimateModule("dec", 2, s_domNumbers, Q_in, Q_out);
+		ProcessorQueue back = mod.getBackPorch(0);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 2, 3, 3, 2).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(1).assign(a);
+		List<CaseAssignment> list = mod.getAssignments();
+		Object[] expected = new Object[] {2, 3, 0, 0, 0, 0};
+		for (int i = 0; i < Q_out; i++)
+		{
+			assertEquals(expected[i], getAssignment(list, back.valueAt(false, i)).evaluate(a));
+			assertEquals(i < 2, getAssignment(list, back.hasAt(false, i)).evaluate(a));
+		}
+		assertEquals(0, getAssignment(list, mod.getCounter()).evaluate(a));
+	}
+	
+	@Test
+	public void testAssignments2()
+	{
+		int Q_in = 6, Q_out = 6;
+		CountDecimateModule mod = new CountDecimateModule("dec", 2, s_domNumbers, Q_in, Q_out);
+		ProcessorQueue back = mod.getBackPorch(0);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 2, 3).assign(a);
+		mod.getResetFlag().set(true).assign(a);
+		mod.getCounter().set(1).assign(a);
+		List<CaseAssignment> list = mod.getAssignments();
+		Object[] expected = new Object[] {1, 3, 0, 0, 0, 0};
+		for (int i = 0; i < Q_out; i++)
+		{
+			assertEquals(expected[i], getAssignment(list, back.valueAt(false, i)).evaluate(a));
+			assertEquals(i < 2, getAssignment(list, back.hasAt(false, i)).evaluate(a));
+		}
+		assertEquals(1, getAssignment(list, mod.getCounter()).evaluate(a));
+	}
+	
+	@Test
+	public void testPrintAssignments1()
+	{
+		int Q_in = 3, Q_out = 3;
+		CountDecimateModule mod = new CountDecimateModule("dec", 2, s_domNumbers, Q_in, Q_out);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrettyPrintStream ps = new PrettyPrintStream(baos);
+		ProcessorModule.s_assign = true;
+		try
+		{
+			assertTrue(mod.usesAssignments());
+			mod.print(ps);
+		}
+		finally
+		{
+			ProcessorModule.s_assign = false;
+		}
+		String out = baos.toString();
+		assertTrue(out.contains("ASSIGN"));
+		assertTrue(out.contains("init(cnt) := 0;"));
+		assertTrue(out.contains("next(cnt) := case"));
+		assertFalse(out.contains("ERROR"));
+	}
+	
+	/**
+	 * Finds the definition of the next value of a term (or of its value in
+	 * every state) in a list of assignments.
+	 * @param list The list
+	 * @param target The term
+	 * @return The definition
+	 */
+	protected static CaseAssignment getAssignment(List<CaseAssignment> list, Object target)
+	{
+		for (CaseAssignment ca : list)
+		{
+			if (ca.getTarget() == target && ca.getKind() != CaseAssignment.Kind.INIT)
+			{
+				return ca;
+			}
+		}
+		return null;
+	}
+	
 	@Test
 	public void testBackPorchLength1()
 	{
@@ -239,7 +365,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(2).assign(a);
 		assertTrue(c.evaluate(a));
@@ -255,7 +381,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(2, 3).assign(a);
 		assertTrue(c.evaluate(a));
@@ -271,7 +397,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(2, 2).assign(a);
 		assertTrue(c.evaluate(a));
@@ -289,7 +415,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 2);
 		assertTrue(c.evaluate(a));
@@ -307,7 +433,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 2);
 		assertTrue(c.evaluate(a));
@@ -325,7 +451,7 @@ public class CountDecimateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 0);
 		assertTrue(c.evaluate(a));
@@ -26,18 +26,14 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
-import ca.uqac.lif.nusmv4j.Solver;
 
 public class CumulateModuleTest
 {
 	protected static Domain s_domNumbers = new IntegerRange(0, 4);
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	public interface NextCounterValue { };
 	
 	@Test
@@ -64,7 +60,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(1, 3).assign(a);
 		assertTrue(c.evaluate(a));
@@ -80,7 +76,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(1, 2, 4).assign(a);
 		assertTrue(c.evaluate(a));
@@ -96,7 +92,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		a.set(mod.getCounter(), 2);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(3, 4, 1).assign(a);
 		assertTrue(c.evaluate(a));
@@ -112,7 +108,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(true).assign(a);
 		a.set(mod.getCounter(), 2);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(1, 2, 4).assign(a);
 		assertTrue(c.evaluate(a));
@@ -129,7 +125,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(3, 3, 4).assign(a);
 		assertTrue(c.evaluate(a));
@@ -146,7 +142,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(true).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(3, 3, 4).assign(a);
 		assertTrue(c.evaluate(a));
@@ -164,7 +160,7 @@ public class CumulateModuleTest
 		mod.getBackPorch(0).set(1).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 1);
 		assertTrue(c.evaluate(a));
@@ -182,7 +178,7 @@ public class CumulateModuleTest
 		mod.getBackPorch(0).set(1, 2, 4).assign(a);
 		a.set(mod.getCounter(), 1);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 4);
 		assertTrue(c.evaluate(a));
@@ -216,7 +212,7 @@ public class CumulateModuleTest
 		mod.getBackPorch(0).set(1, 1, 3).assign(a);
 		a.set(mod.getCounter(), 1);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 3);
 		assertTrue(c.evaluate(a));
@@ -234,7 +230,7 @@ public class CumulateModuleTest
 		mod.getBackPorch(0).set(1, 2, 4).assign(a);
 		a.set(mod.getCounter(), 1);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 4);
 		assertTrue(c.evaluate(a));
@@ -252,7 +248,7 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getBackPorch(0).set(3).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		a.set(mod.getCounter().next(), 3);
 		assertTrue(c.evaluate(a));
@@ -268,7 +264,37 @@ public class CumulateModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		a.set(mod.getCounter(), s_domNumbers.getDefaultValue());
 		Condition c = mod.getInit();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 	}
+	
+	@Test
+	public void testAssignmentsMatchTrans1()
+	{
+		int Q_in = 2, Q_out = 2;
+		CumulateModule mod = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 2).assign(a);
+		mod.getBackPorch(0).set(2, 4).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(1).assign(a);
+		mod.getFrontPorch(0).next().set(3, 1).assign(a);
+		mod.getResetFlag().next().set(false).assign(a);
+		ProcessorModuleTest.assertAssignmentsMatchTrans(mod, a, mod.getCounter());
+	}
+	
+	@Test
+	public void testAssignmentsMatchTrans2()
+	{
+		int Q_in = 2, Q_out = 2;
+		CumulateModule mod = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_out);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(3).assign(a);
+		mod.getBackPorch(0).set(4).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(1).assign(a);
+		mod.getFrontPorch(0).next().set(2).assign(a);
+		mod.getResetFlag().next().set(true).assign(a);
+		ProcessorModuleTest.assertAssignmentsMatchTrans(mod, a, mod.getCounter());
+	}
 }
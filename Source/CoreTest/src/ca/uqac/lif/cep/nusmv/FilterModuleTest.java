@@ -19,20 +19,23 @@
 package ca.uqac.lif.cep.nusmv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Disjunction;
 import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 
 import static ca.uqac.lif.cep.nusmv.ProcessorModule.QueueType.BUFFER;
 import static ca.uqac.lif.cep.nusmv.ProcessorModule.QueueType.PORCH;
@@ -49,8 +52,6 @@ public class FilterModuleTest
 	
 	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
 
-	protected static BruteSolver s_solver = new BruteSolver();
-
 	@Test
 	public void testHasNTrueBuffer1()
 	{
@@ -184,6 +185,34 @@ public class FilterModuleTest
 		assertEquals(true, mod.isNthTrue(false, PORCH, 1, 2, 5).evaluate(a));
 	}
 
+	@Test
+	public void testIsNthTrueDefines1()
+	{
+		int Q_in = 5, Q_b = 5, Q_out = 5;
+		FilterModule mod = new FilterModule("f", s_domLetters, Q_in, Q_b, Q_out);
+		Assignment a = new Assignment();
+		mod.getBuffer(1).set(true, false, true, true, false).assign(a); // 3 true
+		mod.getFrontPorch(1).set(true, false, true, true, false).assign(a);
+		ProcessorModule.s_defines = true;
+		try
+		{
+			assertEquals(true, mod.isNthTrue(false, BUFFER, 1, 2, 2).evaluate(a));
+			assertEquals(false, mod.isNthTrue(false, BUFFER, 1, 3, 4).evaluate(a));
+			assertEquals(true, mod.isNthTrue(false, PORCH, 1, 0, 4).evaluate(a));
+			assertEquals(true, mod.isNthTrue(false, PORCH, 1, 2, 5).evaluate(a));
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			mod.print(new PrettyPrintStream(baos));
+			String out = baos.toString();
+			assertTrue(out.contains("DEFINE"));
+			assertTrue(out.contains("tnt_b1_"));
+			assertFalse(out.contains("ERROR"));
+		}
+		finally
+		{
+			ProcessorModule.s_defines = false;
+		}
+	}
+
 	@Test
 	public void testIsNthTrue2()
 	{
@@ -299,7 +328,7 @@ public class FilterModuleTest
 		mod.getBuffer(1).set(true, false, false).assign(a);
 		mod.getFrontPorch(1).set(true, true).assign(a);
 		mod.getResetFlag().set(false).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set("a", "a", "a").assign(a);
 		assertTrue(c.evaluate(a));
@@ -318,7 +347,7 @@ public class FilterModuleTest
 		mod.getFrontPorch(0).set("a").assign(a);
 		mod.getBuffer(1).set(true, false, true).assign(a);
 		mod.getFrontPorch(1).set(true, true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set("a", "c", "a", "a").assign(a);
 		assertTrue(c.evaluate(a));
@@ -347,7 +376,7 @@ public class FilterModuleTest
 		}
 		mod.getBackPorch(0).set("a").assign(a);
 		assertTrue(c.evaluate(a));
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set("a").assign(a);
 		assertTrue(c.evaluate(a));
@@ -366,7 +395,7 @@ public class FilterModuleTest
 		mod.getFrontPorch(0).next().set("a").assign(a);
 		mod.getBuffer(1).next().set().assign(a);
 		mod.getFrontPorch(1).next().set(true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).next().set("a").assign(a);
 		assertTrue(c.evaluate(a));
@@ -386,7 +415,7 @@ public class FilterModuleTest
 		mod.getBuffer(1).set().assign(a);
 		mod.getFrontPorch(1).set(false).assign(a);
 		mod.getResetFlag().set(false).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, 20);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, 20);
 		assertEquals(1, solutions.size());
 	}
 
@@ -412,7 +441,7 @@ public class FilterModuleTest
 		mod.getFrontPorch(1).next().set(true).assign(a);
 		mod.getBackPorch(0).next().set("b").assign(a);
 		mod.getResetFlag().next().set(false).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, 20);
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, 20);
 		assertEquals(1, solutions.size());
 	}
 
@@ -429,7 +458,7 @@ public class FilterModuleTest
 		mod.getFrontPorch(0).set("a").assign(a);
 		mod.getBuffer(1).set(true, false, true).assign(a);
 		mod.getFrontPorch(1).set(true, true).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.getBackPorch(0).isWellFormed(false), mod.frontsVsBackPorch(false));
+		List<Assignment> solutions = new CdclSolver().setPool(ForkJoinPool.commonPool()).declare(mod).solveAll(c, a, mod.getBackPorch(0).isWellFormed(false), mod.frontsVsBackPorch(false));
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set("a", "c", "a", "a").assign(a);
 		assertTrue(c.evaluate(a));
@@ -1,24 +1,24 @@
 package ca.uqac.lif.cep.nusmv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
 import org.junit.Test;
 
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Constant;
 import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.Equality;
 import ca.uqac.lif.nusmv4j.IntegerRange;
-import ca.uqac.lif.nusmv4j.Solver;
 
 public class ForkModuleTest
 {
 	protected static Domain s_domNumbers = new IntegerRange(0, 4);
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	@Test
 	public void test1()
 	{
@@ -27,7 +27,54 @@ public class ForkModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getFrontPorch(0).set(1).assign(a);
 		Condition c = mod.getInit();
-		List<Assignment> sols = s_solver.solveAll(c, a);
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, sols.size());
 	}
+	
+	@Test
+	public void testLengthEncoding1()
+	{
+		// The same condition holds whatever the encoding of the queues
+		ForkModule mod = new ForkModule("Fork", s_domNumbers, 2, 2);
+		mod.setQueueEncoding(Encoding.LENGTH);
+		Assignment a = new Assignment();
+		mod.getResetFlag().set(false).assign(a);
+		mod.getFrontPorch(0).set(1).assign(a);
+		Condition c = mod.getInit();
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a);
+		assertEquals(1, sols.size());
+		for (int i = 0; i < 2; i++)
+		{
+			ProcessorQueue back = mod.getBackPorch(i);
+			assertTrue(back.hasLength(false, 1).evaluate(sols.get(0)));
+			assertTrue(new Equality(back.valueAt(false, 0), new Constant(1)).evaluate(sols.get(0)));
+		}
+	}
+	
+	@Test
+	public void testAssignmentsMatchTrans1()
+	{
+		ForkModule mod = new ForkModule("Fork", s_domNumbers, 2, 2);
+		assertAssignmentsMatchTrans(mod);
+	}
+	
+	@Test
+	public void testAssignmentsMatchTrans2()
+	{
+		ForkModule mod = new ForkModule("Fork", s_domNumbers, 2, 2);
+		mod.setQueueEncoding(Encoding.LENGTH);
+		assertAssignmentsMatchTrans(mod);
+	}
+	
+	protected static void assertAssignmentsMatchTrans(ForkModule mod)
+	{
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(4).assign(a);
+		mod.getBackPorch(0).set(4).assign(a);
+		mod.getBackPorch(1).set(4).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getFrontPorch(0).next().set(2, 3).assign(a);
+		mod.getResetFlag().next().set(false).assign(a);
+		ProcessorModuleTest.assertAssignmentsMatchTrans(mod, a);
+	}
 }
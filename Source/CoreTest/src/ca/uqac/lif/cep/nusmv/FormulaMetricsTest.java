@@ -0,0 +1,167 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+    
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+    
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+    
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.BooleanVariableCondition;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Conjunction;
+import ca.uqac.lif.nusmv4j.Constant;
+import ca.uqac.lif.nusmv4j.Disjunction;
+import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.Negation;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+
+public class FormulaMetricsTest
+{
+	@Test
+	public void testLeaf()
+	{
+		FormulaMetrics fm = FormulaMetrics.of("x");
+		assertEquals(1, fm.getNodeCount());
+		assertEquals(1, fm.getDepth());
+		assertEquals(1, fm.getVariableCount());
+		assertEquals(0, fm.getRepeatedCount());
+	}
+	
+	@Test
+	public void testAssociative()
+	{
+		FormulaMetrics fm = FormulaMetrics.of("(a & b & c)");
+		assertEquals(4, fm.getNodeCount());
+		assertEquals(2, fm.getDepth());
+		assertEquals(3, fm.getVariableCount());
+	}
+	
+	@Test
+	public void testPrecedence()
+	{
+		// Parsed as (!a & (x[0] = 1)) | next(x[0]) = 2
+		FormulaMetrics fm = FormulaMetrics.of("!a & x[0] = 1 | next(x[0]) = 2");
+		assertEquals(11, fm.getNodeCount());
+		assertEquals(4, fm.getDepth());
+		assertEquals(2, fm.getVariableCount());
+		assertTrue(fm.getVariables().contains("x[0]"));
+	}
+	
+	@Test
+	public void testRepeated()
+	{
+		FormulaMetrics fm = FormulaMetrics.of("((a -> b) & (c | (a -> b)) & !(a -> b))");
+		assertEquals(2, fm.getRepeatedCount());
+		assertEquals(3, fm.getVariableCount());
+	}
+	
+	@Test
+	public void testComputedIndex()
+	{
+		FormulaMetrics fm = FormulaMetrics.of("x[i + 1] = TRUE");
+		assertEquals(7, fm.getNodeCount());
+		assertEquals(2, fm.getVariableCount());
+	}
+	
+	@Test
+	public void testAdd()
+	{
+		FormulaMetrics fm = FormulaMetrics.of("a & b");
+		fm.add(FormulaMetrics.of("!(b | c)"));
+		assertEquals(7, fm.getNodeCount());
+		assertEquals(3, fm.getDepth());
+		assertEquals(3, fm.getVariableCount());
+	}
+	
+	@Test
+	public void testCondition()
+	{
+		// The metrics of the objects are those of their printed form
+		ArrayVariable x = new ArrayVariable("x", new IntegerRange(0, 3), 2);
+		ScalarVariable a = new ScalarVariable("a", BooleanDomain.instance);
+		Condition eq = new Equality(x.next().at(false, 0), new Constant(2));
+		Conjunction and = new Conjunction();
+		and.add(new Negation(new BooleanVariableCondition(a)));
+		and.add(new Disjunction(new Equality(x.at(false, 1), new Constant(1)), eq));
+		and.add(eq);
+		FormulaMetrics fm = FormulaMetrics.of(and);
+		FormulaMetrics printed = FormulaMetrics.of(and.toString());
+		assertEquals(printed.getNodeCount(), fm.getNodeCount());
+		assertEquals(printed.getDepth(), fm.getDepth());
+		assertEquals(printed.getVariables(), fm.getVariables());
+		assertEquals(printed.getRepeatedCount(), fm.getRepeatedCount());
+		assertEquals(2, fm.getRepeatedCount());
+	}
+	
+	@Test
+	public void testSharedObject()
+	{
+		// The same object occurring many times is measured as a repeated subtree
+		ScalarVariable a = new ScalarVariable("a", BooleanDomain.instance);
+		Condition c = new Negation(new BooleanVariableCondition(a));
+		for (int i = 0; i < 20; i++)
+		{
+			c = new Conjunction(c, c);
+		}
+		FormulaMetrics fm = FormulaMetrics.of(c);
+		assertEquals(22, fm.getDepth());
+		// 2^20 negations and 2^20 - 1 conjunctions, of which 21 are distinct
+		assertEquals((1L << 21) - 1 - 21, fm.getRepeatedCount());
+		assertEquals(1, fm.getVariableCount());
+	}
+	
+	@Test
+	public void testDefines()
+	{
+		FilterModule mod = new FilterModule("f", new IntegerRange(0, 3), 3, 3, 3);
+		long inlined = mod.getTransMetrics().getNodeCount();
+		assertEquals(0, mod.getDefineMetrics().getNodeCount());
+		ProcessorModule.s_defines = true;
+		try
+		{
+			mod.setDirty();
+			FormulaMetrics trans = mod.getTransMetrics();
+			FormulaMetrics defines = mod.getDefineMetrics();
+			assertTrue(defines.getNodeCount() > 0);
+			assertTrue(trans.getNodeCount() < inlined);
+			// The macros are variables of the transition relation
+			boolean referenced = false;
+			for (String name : mod.m_sharedFormulas.keySet())
+			{
+				referenced |= trans.getVariables().contains(name);
+			}
+			assertTrue(referenced);
+		}
+		finally
+		{
+			ProcessorModule.s_defines = false;
+			mod.setDirty();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnbalanced()
+	{
+		FormulaMetrics.of("(a & b");
+	}
+}
@@ -0,0 +1,187 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.Domain;
+
+/**
+ * Unit tests for {@link ModuleCache}.
+ */
+public class ModuleCacheTest
+{
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testModel() throws IOException
+	{
+		Path folder = Files.createTempDirectory("cache");
+		try
+		{
+			ModuleCache cache = new ModuleCache(folder, 1 << 20);
+			BeepBeepPipeline pipeline = getPipeline();
+			String expected = write(new BeepBeepModel(pipeline));
+			// First model fills the cache, second one reads from it
+			String out1 = write(new BeepBeepModel(pipeline, cache));
+			assertEquals(2, folder.toFile().list().length);
+			long size = cache.getSize();
+			String out2 = write(new BeepBeepModel(getPipeline(), cache));
+			assertEquals(size, cache.getSize());
+			// Modules may come in a different order from one pipeline to the other
+			assertEquals(getLines(expected), getLines(out1));
+			assertEquals(getLines(expected), getLines(out2));
+		}
+		finally
+		{
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testKey()
+	{
+		TrimModule t1 = new TrimModule("Trim", 1, s_domLetters, 2);
+		TrimModule t2 = new TrimModule("Other", 1, s_domLetters, 2);
+		TrimModule t3 = new TrimModule("Trim", 2, s_domLetters, 2);
+		TrimModule t4 = new TrimModule("Trim", 1, s_domLetters, 3);
+		assertNotNull(t1.getDefinitionKey());
+		assertEquals(t1.getDefinitionKey(), t2.getDefinitionKey());
+		assertFalse(t1.getDefinitionKey().equals(t3.getDefinitionKey()));
+		assertFalse(t1.getDefinitionKey().equals(t4.getDefinitionKey()));
+		// Same key, same definition
+		assertEquals(t1.getFingerprint(), t2.getFingerprint());
+		assertEquals(t1.getFingerprint(), ProcessorModule.getDigest(t2.getDefinition()));
+		// A pipeline depends on its connections and has no key
+		assertNull(getPipeline().getDefinitionKey());
+	}
+
+	@Test
+	public void testEviction() throws IOException, InterruptedException
+	{
+		Path folder = Files.createTempDirectory("cache");
+		try
+		{
+			ModuleCache cache = new ModuleCache(folder, 25);
+			cache.put("a", new byte[10]);
+			Thread.sleep(10);
+			cache.put("b", new byte[10]);
+			Thread.sleep(10);
+			// Using "a" makes "b" the least recently used
+			assertArrayEquals(new byte[10], cache.get("a"));
+			Thread.sleep(10);
+			cache.put("c", new byte[10]);
+			assertTrue(cache.getSize() <= 25);
+			assertNotNull(cache.get("a"));
+			assertNull(cache.get("b"));
+			assertNotNull(cache.get("c"));
+		}
+		finally
+		{
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testFailedPut() throws IOException
+	{
+		final Path folder = Files.createTempDirectory("cache");
+		try
+		{
+			// The definition cannot replace a folder that is not empty
+			Path sub = Files.createDirectory(folder.resolve("sub"));
+			Files.createFile(sub.resolve("f"));
+			ModuleCache cache = new ModuleCache(folder, 25) {
+				@Override
+				protected Path getPath(String key)
+				{
+					return folder.resolve("sub");
+				}
+			};
+			cache.put("a", new byte[10]);
+			assertEquals(1, folder.toFile().listFiles().length);
+			assertNull(cache.get("a"));
+			Files.delete(sub.resolve("f"));
+		}
+		finally
+		{
+			delete(folder);
+		}
+	}
+
+	protected static BeepBeepPipeline getPipeline()
+	{
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		return pipeline;
+	}
+
+	protected static String write(BeepBeepModel model) throws IOException
+	{
+		Path p = Files.createTempFile("model", ".smv");
+		try
+		{
+			model.write(p);
+			return new String(Files.readAllBytes(p));
+		}
+		finally
+		{
+			Files.delete(p);
+		}
+	}
+
+	protected static List<String> getLines(String s)
+	{
+		List<String> lines = Arrays.asList(s.split("\n"));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	protected static void delete(Path folder)
+	{
+		for (File f : folder.toFile().listFiles())
+		{
+			f.delete();
+		}
+		folder.toFile().delete();
+	}
+}
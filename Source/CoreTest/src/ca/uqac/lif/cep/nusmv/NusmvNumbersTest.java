@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ca.uqac.lif.cep.nusmv.NusmvNumbers.Addition;
 import ca.uqac.lif.cep.nusmv.NusmvNumbers.Maximum;
 import ca.uqac.lif.nusmv4j.Assignment;
 import ca.uqac.lif.nusmv4j.Condition;
@@ -97,4 +98,33 @@ public class NusmvNumbersTest
 		a.set(x, 0).set(y, 1).set(z, 2);
 		assertFalse(c.evaluate(a));
 	}
+	
+	@Test
+	public void testAdditionRange1()
+	{
+		Addition f = new Addition(s_domNumbers);
+		IntegerRange r = f.getValueRange(new IntegerRange(0, 1), new IntegerRange(1, 2));
+		assertEquals(1, r.getLowerBound());
+		assertEquals(3, r.getUpperBound());
+	}
+	
+	@Test
+	public void testAdditionRange2()
+	{
+		// The sum can wrap around the modulus
+		Addition f = new Addition(s_domNumbers);
+		IntegerRange r = f.getValueRange(new IntegerRange(0, 3), new IntegerRange(1, 2));
+		assertEquals(0, r.getLowerBound());
+		assertEquals(4, r.getUpperBound());
+		assertNull(f.getValueRange(null, new IntegerRange(1, 2)));
+	}
+	
+	@Test
+	public void testMaximumRange1()
+	{
+		Maximum f = new Maximum(s_domNumbers);
+		IntegerRange r = f.getValueRange(new IntegerRange(0, 1), new IntegerRange(1, 2));
+		assertEquals(1, r.getLowerBound());
+		assertEquals(2, r.getUpperBound());
+	}
 }
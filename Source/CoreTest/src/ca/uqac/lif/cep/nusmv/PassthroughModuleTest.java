@@ -25,11 +25,9 @@ import java.util.List;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
-import ca.uqac.lif.nusmv4j.Solver;
 
 /**
  * Unit tests for {@link PassthroughModule}.
@@ -38,8 +36,6 @@ public class PassthroughModuleTest
 {
 protected static Domain s_domNumbers = new IntegerRange(0, 3);
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	@Test
 	public void testInOut1()
 	{
@@ -48,7 +44,7 @@ protected static Domain s_domNumbers = new IntegerRange(0, 3);
 		Assignment a = new Assignment();
 		mod.getFrontPorch(0).set(1).assign(a);
 		Condition c = mod.new MatchingPorches(false);
-		List<Assignment> sols = s_solver.solveAll(c, a, mod.getFrontPorch(0).isWellFormed(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a, mod.getFrontPorch(0).isWellFormed(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, sols.size());
 	}
 	
@@ -60,7 +56,7 @@ protected static Domain s_domNumbers = new IntegerRange(0, 3);
 		Assignment a = new Assignment();
 		mod.getFrontPorch(0).set(1, 2).assign(a);
 		Condition c = mod.getInit();
-		List<Assignment> sols = s_solver.solveAll(c, a);
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, sols.size());
 	}
 	
@@ -72,7 +68,7 @@ protected static Domain s_domNumbers = new IntegerRange(0, 3);
 		Assignment a = new Assignment();
 		mod.getFrontPorch(0).next().set(1, 2).assign(a);
 		Condition c = mod.new MatchingPorches(true);
-		List<Assignment> sols = s_solver.solveAll(c, a);
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, sols.size());
 	}
 	
@@ -84,7 +80,21 @@ protected static Domain s_domNumbers = new IntegerRange(0, 3);
 		Assignment a = new Assignment();
 		mod.getFrontPorch(0).next().set(1).assign(a);
 		Condition c = mod.getTrans();
-		List<Assignment> sols = s_solver.solveAll(c, a);
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, sols.size());
 	}
+	
+	@Test
+	public void testAssignmentsMatchTrans1()
+	{
+		int Q_in = 3;
+		PassthroughModule mod = new PassthroughModule("pt", s_domNumbers, Q_in);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1).assign(a);
+		mod.getBackPorch(0).set(1).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getFrontPorch(0).next().set(2, 3).assign(a);
+		mod.getResetFlag().next().set(false).assign(a);
+		ProcessorModuleTest.assertAssignmentsMatchTrans(mod, a);
+	}
 }
@@ -0,0 +1,87 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+
+/**
+ * Unit tests for {@link PipelineSimulator}.
+ */
+public class PipelineSimulatorTest
+{
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	protected static Domain s_domNumbers = new IntegerRange(0, 9);
+
+	@Test
+	public void testTrimPassthrough()
+	{
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", Q_in, s_domLetters, 3, false);
+		in_q.addStep("a", "b").addStep("c").addStep();
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		PipelineSimulator sim = new PipelineSimulator(new BeepBeepModel(pipeline));
+		List<Object[][]> trace = sim.run(4);
+		assertEquals(4, sim.getStepCount());
+		assertArrayEquals(new Object[] {"b"}, trace.get(0)[0]);
+		assertArrayEquals(new Object[] {"c"}, trace.get(1)[0]);
+		assertArrayEquals(new Object[] {}, trace.get(2)[0]);
+		assertArrayEquals(new Object[] {}, trace.get(3)[0]);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		sim.print(new PrintStream(baos), trace);
+		String s = baos.toString();
+		assertTrue(s.startsWith("step\tout"));
+		assertTrue(s.contains("1\t[c]"));
+	}
+
+	@Test
+	public void testCumulate()
+	{
+		int Q_in = 2;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domNumbers);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domNumbers);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Sum", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		CumulateModule sum = new CumulateModule("sum", new NusmvNumbers.Addition(s_domNumbers), Q_in, Q_in);
+		pipeline.add(sum);
+		pipeline.setInput(sum, 0, 0);
+		pipeline.setOutput(sum, 0, 0);
+		PipelineSimulator sim = new PipelineSimulator(pipeline);
+		assertArrayEquals(new Object[] {1, 3}, sim.step(new Object[] {1, 2})[0]);
+		assertArrayEquals(new Object[] {}, sim.step(new Object[] {})[0]);
+		assertArrayEquals(new Object[] {6}, sim.step(new Object[] {3})[0]);
+	}
+}
@@ -25,10 +25,8 @@ import java.util.List;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Domain;
-import ca.uqac.lif.nusmv4j.Solver;
 
 /**
  * Unit tests for {@link PresetProcessorQueue}.
@@ -37,8 +35,6 @@ public class PresetProcessorQueueTest
 {
 	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	@Test
 	public void test1()
 	{
@@ -47,7 +43,7 @@ public class PresetProcessorQueueTest
 		Assignment a = new Assignment();
 		Conjunction c = new Conjunction();
 		q.addToInit(c);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(q.getVariables()).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		q.set("a").assign(a);
 		q.getStateCounter().set(0).assign(a);
@@ -65,7 +61,7 @@ public class PresetProcessorQueueTest
 		Conjunction c = new Conjunction();
 		q.addToTrans(c);
 		q.getStateCounter().set(1).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(q.getVariables()).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		q.next().set("c").assign(a);
 		q.getStateCounter().next().set(2).assign(a);
@@ -83,7 +79,7 @@ public class PresetProcessorQueueTest
 		Conjunction c = new Conjunction();
 		q.addToTrans(c);
 		q.getStateCounter().set(1).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(q.getVariables()).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		q.next().set("c", "b").assign(a);
 		q.getStateCounter().next().set(2).assign(a);
@@ -101,7 +97,7 @@ public class PresetProcessorQueueTest
 		Conjunction c = new Conjunction();
 		q.addToTrans(c);
 		q.getStateCounter().set(2).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(q.getVariables()).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		q.next().set("a").assign(a);
 		q.getStateCounter().next().set(0).assign(a);
@@ -20,6 +20,9 @@ package ca.uqac.lif.cep.nusmv;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
@@ -27,6 +30,7 @@ import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Conjunction;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
 
 /**
  * Unit tests for basic methods of {@link BeepBeepModule}.
@@ -364,6 +368,131 @@ public class ProcessorModuleTest
 		assertTrue(c.evaluate(a));
 	}
 
+	@Test
+	public void testDirty1()
+	{
+		PassthroughModule mod = new PassthroughModule("Passthrough", s_domLetters, 2);
+		assertTrue(mod.isDirty());
+		Condition trans = mod.getTrans();
+		assertFalse(mod.isDirty());
+		assertSame(trans, mod.getTrans());
+		String fingerprint = mod.getFingerprint();
+		assertSame(trans, mod.getTrans());
+		mod.setFrontPorchSize(0, 1);
+		assertTrue(mod.isDirty());
+		assertNotSame(trans, mod.getTrans());
+		assertFalse(fingerprint.equals(mod.getFingerprint()));
+		trans = mod.getTrans();
+		boolean simplify = ProcessorModule.s_simplify;
+		try
+		{
+			ProcessorModule.s_simplify = !simplify;
+			assertTrue(mod.isDirty());
+			assertNotSame(trans, mod.getTrans());
+		}
+		finally
+		{
+			ProcessorModule.s_simplify = simplify;
+		}
+	}
+	
+	@Test
+	public void testDirty2()
+	{
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", 1, s_domLetters, 2, false);
+		in_q.addStep("a");
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", 1, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, 1);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, 1);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		Condition init = pipeline.getInit();
+		pt1.getTrans();
+		assertFalse(pipeline.isDirty());
+		assertSame(init, pipeline.getInit());
+		// Changing the input sequence only affects the pipeline
+		in_q.addStep("b");
+		assertTrue(pipeline.isDirty());
+		assertFalse(pt1.isDirty());
+		assertNotSame(init, pipeline.getInit());
+		// Changing a module affects the pipeline containing it
+		pt2.setQueueEncoding(ProcessorQueue.Encoding.LENGTH);
+		assertTrue(pt2.isDirty());
+		assertTrue(pipeline.isDirty());
+		assertFalse(pt1.isDirty());
+	}
+	
+	/**
+	 * Checks that the ASSIGN definitions of a functional module give the same
+	 * next state as its transition relation. For each solution of the
+	 * relation, the definitions of the next value of a variable are evaluated
+	 * on the current state, and the definitions holding in every state are
+	 * evaluated on the next state; both must give the value the variable has
+	 * in the next state of the solution.
+	 * @param mod The module
+	 * @param a The assignment fixing the current state of the module, and
+	 * the contents of its front porches and its reset flag in the next state
+	 * @param state The variables holding the internal state of the module,
+	 * besides its queues
+	 */
+	protected static void assertAssignmentsMatchTrans(ProcessorModule mod, Assignment a, ScalarVariable ... state)
+	{
+		List<CaseAssignment> list = mod.getAssignments();
+		assertFalse(list.isEmpty());
+		List<Assignment> sols = new CdclSolver().declare(mod).solveAll(mod.getTrans(), a);
+		assertFalse(sols.isEmpty());
+		for (Assignment sol : sols)
+		{
+			// The next state of the solution, on the variables of the current state
+			Assignment next = new Assignment();
+			for (int i = 0; i < mod.getInputArity(); i++)
+			{
+				copyNext(mod.getFrontPorch(i), sol, next);
+			}
+			for (int i = 0; i < mod.getOutputArity(); i++)
+			{
+				copyNext(mod.getBackPorch(i), sol, next);
+			}
+			mod.getResetFlag().set(mod.getResetFlag().next().evaluate(sol)).assign(next);
+			for (ScalarVariable v : state)
+			{
+				v.set(v.next().evaluate(sol)).assign(next);
+			}
+			for (CaseAssignment ca : list)
+			{
+				if (ca.getKind() == CaseAssignment.Kind.INIT)
+				{
+					continue;
+				}
+				Object value = ca.evaluate(ca.getKind() == CaseAssignment.Kind.NEXT ? a : next);
+				assertEquals(ca.getTarget().evaluate(next), value);
+			}
+		}
+	}
+
+	/**
+	 * Copies the contents of a queue in the next state of an assignment to
+	 * its current state in another assignment.
+	 * @param q The queue
+	 * @param from The assignment to read
+	 * @param to The assignment to write
+	 */
+	protected static void copyNext(ProcessorQueue q, Assignment from, Assignment to)
+	{
+		List<Object> events = new ArrayList<Object>();
+		for (int i = 0; i < q.getSize(); i++)
+		{
+			if ((Boolean) q.hasAt(true, i).evaluate(from))
+			{
+				events.add(q.valueAt(true, i).evaluate(from));
+			}
+		}
+		q.set(events.toArray()).assign(to);
+	}
+	
 	protected static class DummyBeepBeepModule extends ProcessorModule
 	{
 		public DummyBeepBeepModule(int in_arity, Domain in_domain, Domain out_domain, int Q_in, int Q_b, int Q_out) 
@@ -20,10 +20,13 @@ package ca.uqac.lif.cep.nusmv;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
 import ca.uqac.lif.nusmv4j.Assignment;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
@@ -217,4 +220,70 @@ public class ProcessorQueueTest
 		pq_next.assign(a);
 		assertFalse(c.evaluate(a));
 	}
+	
+	@Test
+	public void testCache1()
+	{
+		int Q = 5;
+		ProcessorQueue pq = new ProcessorQueue("q", "q_c", "q_b", Q, s_domLetters);
+		assertSame(pq.hasAt(false, 2), pq.hasAt(false, 2));
+		assertSame(pq.hasAt(true, 2), pq.nextHasAt(2));
+		assertNotSame(pq.hasAt(false, 2), pq.hasAt(true, 2));
+		assertSame(pq.valueAt(true, 1), pq.nextValueAt(1));
+		assertSame(pq.minLength(false, 3), pq.minLength(false, 3));
+		assertSame(pq.hasLength(true, 3), pq.nextHasLength(3));
+		assertNotSame(pq.hasLength(false, 3), pq.hasLength(true, 3));
+	}
+	
+	@Test
+	public void testCache2()
+	{
+		int Q = 3;
+		ProcessorQueue pq = new ProcessorQueue("q", "q_c", "q_b", Q, s_domLetters);
+		Condition c = pq.hasLength(false, 3);
+		pq.setSize(5);
+		Condition c2 = pq.hasLength(false, 3);
+		assertNotSame(c, c2);
+		pq.set("a", "b", "c");
+		Assignment a = new Assignment();
+		pq.assign(a);
+		assertTrue(c2.evaluate(a));
+		assertNotNull(pq.hasAt(false, 4));
+	}
+	
+	@Test
+	public void testLengthEncoding1()
+	{
+		int Q = 5;
+		ProcessorQueue pq = new ProcessorQueue("q", "q_c", "q_b", Q, s_domLetters);
+		pq.setEncoding(Encoding.LENGTH);
+		assertSame(pq.getLengthVariable(), pq.getOccupancyVariable());
+		pq.set("a", "b", "c");
+		Assignment a = new Assignment();
+		pq.assign(a);
+		assertTrue(pq.isWellFormed(false).evaluate(a));
+		assertTrue(pq.hasLength(false, 3).evaluate(a));
+		assertFalse(pq.hasLength(false, 2).evaluate(a));
+		assertTrue(pq.minLength(false, 3).evaluate(a));
+		assertFalse(pq.minLength(false, 4).evaluate(a));
+		assertTrue(pq.hasAt(false, 2).evaluate(a));
+		assertFalse(pq.hasAt(false, 3).evaluate(a));
+	}
+	
+	@Test
+	public void testLengthEncoding2()
+	{
+		int Q = 3;
+		ProcessorQueue pq = new ProcessorQueue("q", "q_c", "q_b", Q, s_domLetters);
+		Condition c_flags = pq.hasLength(false, 1);
+		pq.setEncoding(Encoding.LENGTH);
+		Condition c_length = pq.hasLength(false, 1);
+		assertNotSame(c_flags, c_length);
+		pq.set("b");
+		pq.m_arrayContents.setValues("b", "a", "c");
+		Assignment a = new Assignment();
+		pq.assign(a);
+		assertTrue(c_length.evaluate(a));
+		assertFalse(pq.isWellFormed(false).evaluate(a)); // Not default value at index 2
+	}
 }
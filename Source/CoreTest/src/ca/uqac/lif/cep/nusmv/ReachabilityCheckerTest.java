@@ -0,0 +1,126 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.nusmv.ReachabilityChecker.Result;
+import ca.uqac.lif.cep.nusmv.ReachabilityChecker.Violation;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.Negation;
+
+/**
+ * Unit tests for {@link ReachabilityChecker} and {@link PackedStateSet}.
+ */
+public class ReachabilityCheckerTest
+{
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testPackedStateSet()
+	{
+		PackedStateSet set = new PackedStateSet(2, 4);
+		for (long i = 0; i < 1000; i++)
+		{
+			assertTrue(set.add(new long[] {i, i * 7}));
+		}
+		for (long i = 0; i < 1000; i++)
+		{
+			assertFalse(set.add(new long[] {i, i * 7}));
+		}
+		assertEquals(1000, set.size());
+		assertTrue(set.contains(new long[] {5, 35}));
+		assertFalse(set.contains(new long[] {5, 36}));
+	}
+
+	@Test
+	public void testPassthrough()
+	{
+		int Q_in = 1;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt);
+		pipeline.setInput(pt, 0, 0);
+		pipeline.setOutput(pt, 0, 0);
+		Result r = new ReachabilityChecker(pipeline).setPool(new ForkJoinPool(4)).run();
+		// One state for each possible input: nothing, a, b or c
+		assertEquals(4, r.getStateCount());
+		assertTrue(r.isComplete());
+		assertTrue(r.getViolations().isEmpty());
+		r = new ReachabilityChecker(pipeline).setMaxDepth(1).run();
+		assertEquals(4, r.getStateCount());
+		assertFalse(r.isComplete());
+	}
+
+	@Test
+	public void testPreset()
+	{
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", Q_in, s_domLetters, 3, false);
+		in_q.addStep("a", "b").addStep("c").addStep();
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule trim = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		pipeline.add(trim);
+		pipeline.setInput(trim, 0, 0);
+		pipeline.setOutput(trim, 0, 0);
+		Result r = new ReachabilityChecker(pipeline).run();
+		// The sequence is deterministic: one state per step until the end of
+		// the sequence, where the pipeline stays in the same state
+		assertEquals(3, r.getStateCount());
+		assertEquals(4, r.getDepth());
+		assertTrue(r.isComplete());
+	}
+
+	@Test
+	public void testInvariant()
+	{
+		int Q_in = 1;
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt);
+		pipeline.setInput(pt, 0, 0);
+		pipeline.setOutput(pt, 0, 0);
+		ReachabilityChecker checker = new ReachabilityChecker(pipeline);
+		checker.addInvariant("empty", pt, new Negation(pt.getBackPorch(0).hasLength(false, 1)));
+		Result r = checker.run();
+		assertFalse(r.isComplete());
+		List<Violation> violations = r.getViolations();
+		assertEquals(3, violations.size());
+		Violation v = violations.get(0);
+		assertEquals("empty", v.getName());
+		List<Object[][]> inputs = v.getInputTrace();
+		List<Object[][]> outputs = v.getOutputTrace();
+		assertEquals(1, inputs.size());
+		assertEquals(1, inputs.get(0)[0].length);
+		assertArrayEquals(inputs.get(0)[0], outputs.get(0)[0]);
+	}
+}
@@ -0,0 +1,220 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+    
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+    
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+    
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Constant;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.Equality;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+
+/**
+ * Unit tests for {@link SlidingAggregateModule}.
+ */
+public class SlidingAggregateModuleTest
+{
+	protected static Domain s_domNumbers = new IntegerRange(0, 2);
+	
+	@Test
+	public void testStructure1()
+	{
+		SlidingAggregateModule mod = new SlidingAggregateModule("win", new NusmvNumbers.Addition(s_domNumbers), 3, 3, 3);
+		assertTrue(mod.isSliding());
+		assertEquals(0, mod.m_processors.length);
+		assertTrue(mod.m_innerFrontPorches.isEmpty());
+	}
+	
+	@Test
+	public void testBackPorchContents1()
+	{
+		SlidingAggregateModule mod = new SlidingAggregateModule("win", new NusmvNumbers.Addition(s_domNumbers), 3, 3, 3);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(0, 1).assign(a);
+		mod.getBuffer(0).set(0, 2).assign(a);
+		// Windows are [0,2,0] and [2,0,1], whose sums modulo 3 are 2 and 0
+		mod.getBackPorch(0).set(2, 0).assign(a);
+		assertTrue(mod.new SlidingBackPorchContents(false, 0).evaluate(a));
+		assertTrue(mod.new SlidingBackPorchContents(false, 1).evaluate(a));
+		assertTrue(mod.new SlidingBackPorchContents(false, 2).evaluate(a));
+		assertTrue(mod.new BackPorchLength(false).evaluate(a));
+	}
+	
+	@Test
+	public void testBackPorchContents2()
+	{
+		SlidingAggregateModule mod = new SlidingAggregateModule("win", new NusmvNumbers.Addition(s_domNumbers), 3, 3, 3);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(0, 1).assign(a);
+		mod.getBuffer(0).set(0, 2).assign(a);
+		mod.getBackPorch(0).set(2, 1).assign(a);
+		assertTrue(mod.new SlidingBackPorchContents(false, 0).evaluate(a));
+		assertFalse(mod.new SlidingBackPorchContents(false, 1).evaluate(a));
+	}
+	
+	@Test
+	public void testBackPorchContents3()
+	{
+		// Empty buffer: windows are taken from the front porch only
+		SlidingAggregateModule mod = new SlidingAggregateModule("win", new NusmvNumbers.Addition(s_domNumbers), 2, 3, 3);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 1, 2).assign(a);
+		mod.getBuffer(0).set().assign(a);
+		mod.getBackPorch(0).set(2, 0).assign(a);
+		assertTrue(mod.new SlidingBackPorchContents(false, 0).evaluate(a));
+		assertTrue(mod.new SlidingBackPorchContents(false, 1).evaluate(a));
+		assertTrue(mod.new BackPorchLength(false).evaluate(a));
+	}
+	
+	@Test
+	public void testEquivalence1()
+	{
+		testEquivalence(2, 2);
+	}
+	
+	@Test
+	public void testEquivalence2()
+	{
+		testEquivalence(3, 2);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoTerm1()
+	{
+		new SlidingAggregateModule("win", new NusmvNumbers.Maximum(s_domNumbers), 3, 3, 3);
+	}
+	
+	/**
+	 * Checks that a sliding aggregate module produces the same back porches
+	 * as a window module running a cumulate module, for the first two steps
+	 * and for all the contents of the front porch.
+	 * @param width The width of the window
+	 * @param Q The size of the porches
+	 */
+	protected static void testEquivalence(int width, int Q)
+	{
+		NusmvNumbers.Addition f = new NusmvNumbers.Addition(s_domNumbers);
+		WindowModule win = new WindowModule("win", new CumulateModule("sum", f, width, width), width, s_domNumbers, s_domNumbers, Q, Q);
+		SlidingAggregateModule sliding = new SlidingAggregateModule("win", f, width, Q, Q);
+		CdclSolver win_solver = new CdclSolver().declare(win);
+		List<Condition> win_formulas = getFlattened(win, f, win_solver);
+		CdclSolver sliding_solver = new CdclSolver().declare(sliding);
+		List<Object[]> contents = getContents(Q);
+		for (Object[] front : contents)
+		{
+			for (Object[] next_front : contents)
+			{
+				Assignment a = new Assignment();
+				win.getFrontPorch(0).set(front).assign(a);
+				win.getFrontPorch(0).next().set(next_front).assign(a);
+				win.getResetFlag().set(false).assign(a);
+				win.getResetFlag().next().set(false).assign(a);
+				List<Assignment> win_sols = win_solver.solveAll(win.getInit(), a, win_formulas.toArray(new Condition[win_formulas.size()]));
+				List<Assignment> sliding_sols = sliding_solver.solveAll(sliding.getInit(), a, sliding.getTrans());
+				assertEquals(1, win_sols.size());
+				assertEquals(1, sliding_sols.size());
+				// The porches of both modules have the same variables
+				Assignment sol = win_sols.get(0);
+				assertTrue(sliding.getInit().evaluate(sol));
+				assertTrue(sliding.getTrans().evaluate(sol));
+			}
+		}
+	}
+	
+	/**
+	 * Gets the formulas of a window module together with those of its inner
+	 * processor instances. NuSMV instantiates these processors as modules of
+	 * their own; here, the conditions defining the output of each instance
+	 * are expressed directly on the inner porches of the window.
+	 * @param win The window module
+	 * @param f The function of the inner cumulate processor
+	 * @param solver The solver, to which the variables of the instances are
+	 * declared
+	 * @return The formulas, except the initial condition of the window
+	 */
+	protected static List<Condition> getFlattened(WindowModule win, NusmvNumbers.Addition f, CdclSolver solver)
+	{
+		List<Condition> formulas = new ArrayList<Condition>();
+		formulas.add(win.getTrans());
+		// The counter of the instances is not read, since they are reset at
+		// every step; it is fixed so that it does not multiply the solutions
+		ScalarVariable counter = ((CumulateModule) win.m_processor).getCounter();
+		solver.declare(counter);
+		formulas.add(new Equality(counter, new Constant(0)));
+		formulas.add(new Equality(counter.next(), new Constant(0)));
+		for (int i = 0; i < win.m_innerFrontPorches.size(); i++)
+		{
+			CumulateModule sum = new CumulateModule("sum", f, win.m_width, win.m_width) {
+				@Override
+				protected ScalarVariable instantiateResetFlag()
+				{
+					// The reset flag passed to the instances by the window
+					return new ScalarVariable("innerr", BooleanDomain.instance);
+				}
+			};
+			sum.setFrontPorch(win.m_innerFrontPorches.get(i), 0);
+			sum.setBackPorch(win.m_innerBackPorches.get(i), 0);
+			formulas.add(sum.backPorchSize(false));
+			formulas.add(sum.backPorchValues(false));
+			formulas.add(sum.backPorchSize(true));
+			formulas.add(sum.backPorchValues(true));
+		}
+		return formulas;
+	}
+	
+	/**
+	 * Gets all the possible contents of a queue.
+	 * @param Q The size of the queue
+	 * @return The list of contents
+	 */
+	protected static List<Object[]> getContents(int Q)
+	{
+		List<Object[]> contents = new ArrayList<Object[]>();
+		contents.add(new Object[0]);
+		for (int len = 1; len <= Q; len++)
+		{
+			for (Object[] prefix : contents.toArray(new Object[0][]))
+			{
+				if (prefix.length != len - 1)
+				{
+					continue;
+				}
+				for (int v = 0; v < s_domNumbers.getSize(); v++)
+				{
+					Object[] c = new Object[len];
+					System.arraycopy(prefix, 0, c, 0, prefix.length);
+					c[len - 1] = v;
+					contents.add(c);
+				}
+			}
+		}
+		return contents;
+	}
+}
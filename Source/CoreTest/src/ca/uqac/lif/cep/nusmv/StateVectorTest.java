@@ -0,0 +1,98 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.nusmv.ProcessorQueue.Encoding;
+import ca.uqac.lif.nusmv4j.Assignment;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.ScalarVariable;
+
+/**
+ * Unit tests for {@link StateVector} and {@link StateLayout}.
+ */
+public class StateVectorTest
+{
+	protected static Domain s_domNumbers = new IntegerRange(0, 3);
+
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testEncoding()
+	{
+		ScalarVariable x = new ScalarVariable("x", s_domLetters);
+		ScalarVariable y = new ScalarVariable("y", BooleanDomain.instance);
+		ScalarVariable z = new ScalarVariable("z", s_domNumbers);
+		StateLayout layout = new StateLayout(List.of(x, y, z));
+		StateVector s = new StateVector(layout);
+		s.set(x, 0, "c").set(y, 0, true).set(z, 0, 2);
+		assertEquals("c", s.get(x, 0));
+		assertEquals(true, s.get(y, 0));
+		assertEquals(2, s.get(z, 0));
+		assertEquals(1, s.getSlots()[1]);
+		assertEquals(2, s.getSlots()[2]);
+		Assignment a = s.toAssignment();
+		assertEquals("c", x.evaluate(a));
+		assertEquals(s, StateVector.of(layout, a, false));
+	}
+
+	@Test
+	public void testQueue()
+	{
+		int Q_in = 3;
+		PassthroughModule mod = new PassthroughModule("pt", s_domNumbers, Q_in);
+		StateLayout layout = new StateLayout(mod);
+		StateVector s = new StateVector(layout);
+		mod.getFrontPorch(0).set(1, 2).assign(s);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).assign(a);
+		assertEquals(s, StateVector.of(layout, a, false));
+		Condition c = mod.getFrontPorch(0).hasLength(false, 2);
+		assertTrue(c.evaluate(s.toAssignment()));
+		assertTrue(CompiledCondition.compile(c, layout).evaluate(s.getSlots()));
+	}
+
+	@Test
+	public void testQueueLength()
+	{
+		int Q_in = 3;
+		PassthroughModule mod = new PassthroughModule("pt", s_domNumbers, Q_in);
+		mod.setQueueEncoding(Encoding.LENGTH);
+		StateLayout layout = new StateLayout(mod);
+		StateVector s = new StateVector(layout);
+		mod.getFrontPorch(0).set(3, 1).assign(s);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).assign(a);
+		assertEquals(s, StateVector.of(layout, a, false));
+		assertArrayEquals(new Object[] {3, 1}, mod.getFrontPorch(0).getContents(s));
+		// Events beyond the size of the queue are dropped
+		mod.getFrontPorch(0).set(1, 2, 3, 4).assign(s);
+		assertArrayEquals(new Object[] {1, 2, 3}, mod.getFrontPorch(0).getContents(s));
+	}
+}
@@ -0,0 +1,183 @@
+/*
+    Modeling of BeepBeep processor pipelines in NuSMV
+    Copyright (C) 2020-2022 Laboratoire d'informatique formelle
+    Université du Québec à Chicoutimi, Canada
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.nusmv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.nusmv.SymbolicChecker.Result;
+import ca.uqac.lif.cep.nusmv.SymbolicChecker.Violation;
+import ca.uqac.lif.nusmv4j.Condition;
+import ca.uqac.lif.nusmv4j.Domain;
+import ca.uqac.lif.nusmv4j.IntegerRange;
+import ca.uqac.lif.nusmv4j.Negation;
+
+/**
+ * Unit tests for {@link SymbolicChecker} and {@link Bdd}.
+ */
+public class SymbolicCheckerTest
+{
+	protected static Domain s_domLetters = new Domain(new Object[] {"a", "b", "c"});
+
+	@Test
+	public void testBdd()
+	{
+		Bdd bdd = new Bdd(4);
+		int x0 = bdd.var(0), x1 = bdd.var(1), y0 = bdd.var(2), y1 = bdd.var(3);
+		// x = y, on two bits
+		int eq = bdd.and(bdd.iff(x0, y0), bdd.iff(x1, y1));
+		assertEquals(4, bdd.satCount(eq, new int[] {0, 1, 2, 3}), 0);
+		assertEquals(bdd.iff(x0, y0), bdd.exists(eq, bdd.cube(1, 3)));
+		assertEquals(bdd.exists(eq, bdd.cube(0, 1)), bdd.andExists(eq, Bdd.TRUE, bdd.cube(0, 1)));
+		assertEquals(Bdd.TRUE, bdd.exists(eq, bdd.cube(0, 1)));
+		// Renaming x into y gives y = y
+		assertEquals(Bdd.TRUE, bdd.replace(eq, new int[] {2, 3, 2, 3}));
+		assertEquals(Bdd.FALSE, bdd.and(eq, bdd.and(x0, bdd.not(y0))));
+		int[] sat = bdd.satOne(bdd.and(eq, x1));
+		assertEquals(1, sat[1]);
+		assertEquals(1, sat[3]);
+		// Same diagram for the same function, whatever the construction
+		assertEquals(bdd.or(x0, x1), bdd.not(bdd.and(bdd.not(x0), bdd.not(x1))));
+	}
+
+	@Test
+	public void testPassthrough()
+	{
+		BeepBeepPipeline pipeline = getPassthrough(1);
+		Result r = new SymbolicChecker(pipeline).run();
+		assertEquals(new ReachabilityChecker(pipeline).run().getStateCount(), r.getStateCount(), 0);
+		assertEquals(2, r.getDepth());
+		assertTrue(r.isComplete());
+		assertTrue(r.getViolations().isEmpty());
+		Result r2 = new SymbolicChecker(pipeline).setInterleaved(false).run();
+		assertEquals(r.getStateCount(), r2.getStateCount(), 0);
+		r = new SymbolicChecker(pipeline).setMaxDepth(1).run();
+		assertFalse(r.isComplete());
+	}
+
+	@Test
+	public void testPreset()
+	{
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", Q_in, s_domLetters, 3, false);
+		in_q.addStep("a", "b").addStep("c").addStep();
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		Result r = new SymbolicChecker(pipeline).run();
+		assertEquals(3, r.getStateCount(), 0);
+		assertEquals(4, r.getDepth());
+		assertTrue(r.isComplete());
+	}
+
+	@Test
+	public void testInvariantDefines()
+	{
+		// An invariant referring to a DEFINE macro is checked on its body
+		int Q_in = 2;
+		PresetProcessorQueue in_q = new PresetProcessorQueue("in", "in_c", "in_b", "cnt", Q_in, s_domLetters, 3, false);
+		in_q.addStep("a", "b").addStep("c").addStep();
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Trim + Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		TrimModule pt1 = new TrimModule("Trim1", 1, s_domLetters, Q_in);
+		PassthroughModule pt2 = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt1, pt2);
+		pipeline.connect(pt1, 0, pt2, 0);
+		pipeline.setInput(pt1, 0, 0);
+		pipeline.setOutput(pt2, 0, 0);
+		Result expected = new SymbolicChecker(pipeline).addInvariant("none", pt1, new Negation(pt1.numOutputs(false, 1, 1))).run();
+		assertEquals(1, expected.getViolations().size());
+		ProcessorModule.s_defines = true;
+		try
+		{
+			pt1.setDirty();
+			pt1.getTrans();
+			Condition c = new Negation(pt1.numOutputs(false, 1, 1));
+			assertTrue(c.toString().contains("nout_1_1"));
+			Result r = new SymbolicChecker(pipeline).addInvariant("none", pt1, c).run();
+			assertEquals(expected.getStateCount(), r.getStateCount(), 0);
+			assertEquals(1, r.getViolations().size());
+		}
+		finally
+		{
+			ProcessorModule.s_defines = false;
+			pt1.setDirty();
+		}
+	}
+
+	@Test
+	public void testInvariant()
+	{
+		BeepBeepPipeline pipeline = getPassthrough(1);
+		PassthroughModule pt = (PassthroughModule) pipeline.m_contents.keySet().iterator().next();
+		SymbolicChecker checker = new SymbolicChecker(pipeline);
+		checker.addInvariant("empty", pt, new Negation(pt.getBackPorch(0).hasLength(false, 1)));
+		Result r = checker.run();
+		assertFalse(r.isComplete());
+		List<Violation> violations = r.getViolations();
+		assertEquals(1, violations.size());
+		Violation v = violations.get(0);
+		assertEquals("empty", v.getName());
+		assertEquals(1, v.getInputTrace().size());
+		assertEquals(1, v.getInputTrace().get(0)[0].length);
+		assertArrayEquals(v.getInputTrace().get(0)[0], v.getOutputTrace().get(0)[0]);
+	}
+
+	@Test
+	public void testCumulate()
+	{
+		Domain numbers = new IntegerRange(0, 3);
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", 1, numbers);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", 1, numbers);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Sum", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		CumulateModule sum = new CumulateModule("sum", new NusmvNumbers.Addition(numbers), 1, 1);
+		pipeline.add(sum);
+		pipeline.setInput(sum, 0, 0);
+		pipeline.setOutput(sum, 0, 0);
+		Result r = new SymbolicChecker(pipeline).run();
+		ReachabilityChecker.Result r2 = new ReachabilityChecker(pipeline).run();
+		assertEquals(r2.getStateCount(), r.getStateCount(), 0);
+		assertEquals(r2.getDepth(), r.getDepth());
+		assertTrue(r.isComplete());
+		assertTrue(r.getViolations().isEmpty());
+	}
+
+	protected static BeepBeepPipeline getPassthrough(int Q_in)
+	{
+		ProcessorQueue in_q = new ProcessorQueue("in", "in_c", "in_b", Q_in, s_domLetters);
+		ProcessorQueue out_q = new ProcessorQueue("out", "ou_c", "ou_b", Q_in, s_domLetters);
+		BeepBeepPipeline pipeline = new BeepBeepPipeline("Passthrough", new ProcessorQueue[] {in_q}, new ProcessorQueue[] {out_q});
+		PassthroughModule pt = new PassthroughModule("Passthrough", s_domLetters, Q_in);
+		pipeline.add(pt);
+		pipeline.setInput(pt, 0, 0);
+		pipeline.setOutput(pt, 0, 0);
+		return pipeline;
+	}
+}
@@ -26,12 +26,10 @@ import java.util.List;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.PrettyPrintStream;
-import ca.uqac.lif.nusmv4j.Solver;
 
 /**
  * Unit tests for {@link TrimModule}.
@@ -40,8 +38,6 @@ public class TrimModuleTest
 {
 	protected static Domain s_domNumbers = new IntegerRange(0, 3);
 	
-	protected static Solver s_solver = new BruteSolver();
-	
 	@Test
 	public void testShouldBeOutput1()
 	{
@@ -130,7 +126,7 @@ public class TrimModuleTest
 		mod.getResetFlag().set(false).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.backPorchValues(false);
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.backPorchLength(false), mod.getBackPorch(0).isWellFormed(false));
 		assertEquals(1, solutions.size());
 		mod.getBackPorch(0).set(2, 3, 1, 2, 3).assign(a);
 		assertTrue(c.evaluate(a));
@@ -155,12 +151,12 @@ public class TrimModuleTest
 		}
 		{
 			Condition c = mod.backPorchLength(true);
-			List<Assignment> solutions = s_solver.solveAll(c, a, mod.getBackPorch(0).isWellFormed(true));
+			List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.getBackPorch(0).isWellFormed(true));
 			assertEquals(4, solutions.size()); // Values can be 0, 1, 2, 3
 		}
 		{
 			Condition c = mod.backPorchValues(true);
-			List<Assignment> solutions = s_solver.solveAll(c, a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
+			List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
 			assertEquals(1, solutions.size());
 		}
 	}
@@ -190,12 +186,12 @@ public class TrimModuleTest
 		}
 		{
 			Condition c = mod.backPorchLength(true);
-			List<Assignment> solutions = s_solver.solveAll(c, a, mod.getBackPorch(0).isWellFormed(true));
+			List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.getBackPorch(0).isWellFormed(true));
 			assertEquals(1, solutions.size());
 		}
 		{
 			Condition c = mod.backPorchValues(true);
-			List<Assignment> solutions = s_solver.solveAll(c, a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
+			List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
 			assertEquals(1, solutions.size());
 		}
 	}
@@ -270,7 +266,7 @@ public class TrimModuleTest
 		mod.getCounter().next().set(1).assign(a);
 		mod.getResetFlag().next().set(false).assign(a);
 		//mod.getBackPorch(0).next().set(1, 2).assign(a);
-		List<Assignment> solutions = s_solver.solveAll(Condition.simplify(mod.backPorchValues(true)), a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(Condition.simplify(mod.backPorchValues(true)), a, mod.getBackPorch(0).isWellFormed(true), mod.backPorchLength(true));
 		assertEquals(1, solutions.size());
 		/*
 		{
@@ -307,7 +303,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set(2, 3, 1, 2, 3).assign(a);
 		mod.getCounter().set(2).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(0).assign(a);
 		assertEquals(false, c.evaluate(a));
@@ -326,7 +322,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set(2, 3, 1, 2, 3).assign(a);
 		mod.getCounter().set(0).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(3).assign(a);
 		assertTrue(c.evaluate(a));
@@ -343,7 +339,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set().assign(a);
 		mod.getCounter().set(0).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(1).assign(a);
 		assertTrue(c.evaluate(a));
@@ -360,7 +356,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set().assign(a);
 		mod.getCounter().set(1).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(2).assign(a);
 		assertTrue(c.evaluate(a));
@@ -377,7 +373,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set().assign(a);
 		mod.getCounter().set(3).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(3).assign(a);
 		assertTrue(c.evaluate(a));
@@ -394,7 +390,7 @@ public class TrimModuleTest
 		mod.getBackPorch(0).set().assign(a);
 		mod.getCounter().set(3).assign(a);
 		Condition c = mod.nextCounter();
-		List<Assignment> solutions = s_solver.solveAll(c, a);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a);
 		assertEquals(1, solutions.size());
 		mod.getCounter().next().set(1).assign(a);
 		assertTrue(c.evaluate(a));
@@ -413,4 +409,39 @@ public class TrimModuleTest
 		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
 		System.out.println(out);
 	}
+	
+	@Test
+	public void testAssignments1()
+	{
+		int Q_in = 4;
+		TrimModule mod = new TrimModule("trim", 2, s_domNumbers, Q_in);
+		ProcessorQueue back = mod.getBackPorch(0);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1, 2, 3).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(0).assign(a);
+		List<CaseAssignment> list = mod.getAssignments();
+		Object[] expected = new Object[] {3, 0, 0, 0};
+		for (int i = 0; i < Q_in; i++)
+		{
+			assertEquals(expected[i], CountDecimateModuleTest.getAssignment(list, back.valueAt(false, i)).evaluate(a));
+			assertEquals(i < 1, CountDecimateModuleTest.getAssignment(list, back.hasAt(false, i)).evaluate(a));
+		}
+		assertEquals(2, CountDecimateModuleTest.getAssignment(list, mod.getCounter()).evaluate(a));
+	}
+	
+	@Test
+	public void testAssignments2()
+	{
+		int Q_in = 4;
+		TrimModule mod = new TrimModule("trim", 3, s_domNumbers, Q_in);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(1).assign(a);
+		mod.getResetFlag().set(false).assign(a);
+		mod.getCounter().set(1).assign(a);
+		List<CaseAssignment> list = mod.getAssignments();
+		assertEquals(2, CountDecimateModuleTest.getAssignment(list, mod.getCounter()).evaluate(a));
+		mod.getResetFlag().set(true).assign(a);
+		assertEquals(1, CountDecimateModuleTest.getAssignment(list, mod.getCounter()).evaluate(a));
+	}
 }
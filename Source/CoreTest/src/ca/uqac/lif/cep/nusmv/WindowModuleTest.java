@@ -21,6 +21,7 @@ package ca.uqac.lif.cep.nusmv;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.util.List;
@@ -28,7 +29,6 @@ import java.util.List;
 import org.junit.Test;
 
 import ca.uqac.lif.nusmv4j.Assignment;
-import ca.uqac.lif.nusmv4j.BruteSolver;
 import ca.uqac.lif.nusmv4j.Condition;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
@@ -44,8 +44,6 @@ public class WindowModuleTest
 {
 	protected static Domain s_domNumbers = new IntegerRange(0, 2);
 
-	protected static BruteSolver s_solver = new BruteSolver();
-
 	@Test
 	public void testIsActive1()
 	{
@@ -455,7 +453,7 @@ public class WindowModuleTest
 		mod.getFrontPorch(0).set(0).assign(a);
 		mod.getBuffer(0).set(1).assign(a);
 		Condition c = mod.new NextBufferContents();
-		List<Assignment> solutions = s_solver.solveAll(c, a, mod.new NextBufferLength(), mod.getBuffer(0).isWellFormed(false), mod.getBuffer(0).isWellFormed(true));
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, mod.new NextBufferLength(), mod.getBuffer(0).isWellFormed(false), mod.getBuffer(0).isWellFormed(true));
 		assertEquals(1, solutions.size());
 	}
 	
@@ -475,7 +473,7 @@ public class WindowModuleTest
 			mod.m_innerBackPorches.get(i).set().assign(a);
 		}
 		Condition c = mod.getInit();
-		List<Assignment> solutions = s_solver.solveAll(c, a, 3);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, 3);
 		assertEquals(1, solutions.size());
 	}
 	
@@ -504,7 +502,7 @@ public class WindowModuleTest
 			mod.m_innerBackPorches.get(i).next().set().assign(a);
 		}
 		Condition c = mod.getTrans();
-		List<Assignment> solutions = s_solver.solveAll(c, a, 3);
+		List<Assignment> solutions = new CdclSolver().declare(mod).solveAll(c, a, 3);
 		assertEquals(1, solutions.size());
 	}
 
@@ -522,4 +520,47 @@ public class WindowModuleTest
 		assertFalse(out.contains("ERROR")); // Indicating a problem with the transition relation
 		System.out.println(out);
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void testSliding1()
+	{
+		int Q_in = 3, Q_out = 3;
+		PassthroughModule pt = new PassthroughModule("pt", s_domNumbers, 3);
+		WindowModule mod = new WindowModule("win", pt, 3, s_domNumbers, s_domNumbers, Q_in, Q_out, true);
+		assertTrue(mod.isSliding());
+		assertTrue(mod.m_innerFrontPorches.isEmpty());
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(0, 1).assign(a);
+		mod.getBuffer(0).set(0, 2).assign(a);
+		// Windows are [0,2,0] and [2,0,1]; each outputs its last event
+		mod.getBackPorch(0).set(0, 1).assign(a);
+		assertTrue(mod.new SlidingBackPorchContents(false, 0).evaluate(a));
+		assertTrue(mod.new SlidingBackPorchContents(false, 1).evaluate(a));
+		assertTrue(mod.new BackPorchLength(false).evaluate(a));
+	}
+	
+	@Test
+	public void testSliding2()
+	{
+		int Q_in = 3, Q_out = 3;
+		PassthroughModule pt = new PassthroughModule("pt", s_domNumbers, 3);
+		WindowModule mod = new WindowModule("win", pt, 3, s_domNumbers, s_domNumbers, Q_in, Q_out, true);
+		Assignment a = new Assignment();
+		mod.getFrontPorch(0).set(0, 1).assign(a);
+		mod.getBuffer(0).set(0, 2).assign(a);
+		mod.getBackPorch(0).set(0, 2).assign(a);
+		assertTrue(mod.new SlidingBackPorchContents(false, 0).evaluate(a));
+		assertFalse(mod.new SlidingBackPorchContents(false, 1).evaluate(a));
+	}
+	
+	@Test
+	public void testSliding3()
+	{
+		// Stateful inner processors keep one instance per window
+		int Q_in = 3, Q_out = 3;
+		CumulateModule max = new CumulateModule("max", new NusmvNumbers.Maximum(s_domNumbers), Q_in, Q_out);
+		WindowModule mod = new WindowModule("win", max, 3, s_domNumbers, s_domNumbers, Q_in, Q_out, true);
+		assertFalse(mod.isSliding());
+		assertEquals(Q_in + 3, mod.m_innerFrontPorches.size());
+	}
+}
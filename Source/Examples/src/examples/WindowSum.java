@@ -7,6 +7,7 @@ import ca.uqac.lif.cep.nusmv.NusmvNumbers;
 import ca.uqac.lif.cep.nusmv.PassthroughModule;
 import ca.uqac.lif.cep.nusmv.PresetProcessorQueue;
 import ca.uqac.lif.cep.nusmv.ProcessorQueue;
+import ca.uqac.lif.cep.nusmv.SlidingAggregateModule;
 import ca.uqac.lif.cep.nusmv.WindowModule;
 import ca.uqac.lif.nusmv4j.IntegerRange;
 import ca.uqac.lif.nusmv4j.PrettyPrintStream;
@@ -14,14 +15,38 @@ import ca.uqac.lif.nusmv4j.PrettyPrintStream;
 public class WindowSum extends BeepBeepPipeline
 {
 	public WindowSum(ProcessorQueue input_queue, int Q_in, int Q_out, IntegerRange d, int width)
+	{
+		this(input_queue, Q_in, Q_out, d, width, false);
+	}
+	
+	/**
+	 * Creates the pipeline.
+	 * @param input_queue The queue of input events
+	 * @param Q_in The size of the front porch of the window
+	 * @param Q_out The size of the back porch of the window
+	 * @param d The domain of the events
+	 * @param width The width of the window
+	 * @param sliding Set to <tt>true</tt> to compute the sum with a
+	 * {@link SlidingAggregateModule}, which produces the same output with a
+	 * much smaller state than one instance of the sum per window
+	 */
+	public WindowSum(ProcessorQueue input_queue, int Q_in, int Q_out, IntegerRange d, int width, boolean sliding)
 	{
 		super("WindowSum",
 				new ProcessorQueue[] {input_queue}, 
 				new ProcessorQueue[] {new ProcessorQueue("ou", "ou_c", "ou_b", Q_out, d)});
-		WindowModule win = new WindowModule("Window" + width,
-				//new PassthroughModule("pt", d, width),
-				new CumulateModule("Sum", new NusmvNumbers.Addition(d), width, width),
-				width, d, d, Q_in, Q_out);
+		WindowModule win;
+		if (sliding)
+		{
+			win = new SlidingAggregateModule("Window" + width, new NusmvNumbers.Addition(d), width, Q_in, Q_out);
+		}
+		else
+		{
+			win = new WindowModule("Window" + width,
+					//new PassthroughModule("pt", d, width),
+					new CumulateModule("Sum", new NusmvNumbers.Addition(d), width, width),
+					width, d, d, Q_in, Q_out);
+		}
 		add(win);
 		setInput(win, 0, 0);
 		setOutput(win, 0, 0);
@@ -29,7 +54,12 @@ public class WindowSum extends BeepBeepPipeline
 	
 	public WindowSum(int Q_in, int Q_out, IntegerRange d, int width)
 	{
-		this(new ProcessorQueue("in", "in_c", "in_b", Q_in, d), Q_in, Q_out, d, width);
+		this(Q_in, Q_out, d, width, false);
+	}
+	
+	public WindowSum(int Q_in, int Q_out, IntegerRange d, int width, boolean sliding)
+	{
+		this(new ProcessorQueue("in", "in_c", "in_b", Q_in, d), Q_in, Q_out, d, width, sliding);
 	}
 	
 	public static void main(String[] args) 